@@ -1,9 +0,0 @@
-class DataPoint {
-    int eegSignal;
-    int oxygenSaturation;
-
-    public DataPoint(int eegSignal, int oxygenSaturation) {
-        this.eegSignal = eegSignal;
-        this.oxygenSaturation = oxygenSaturation;
-    }
-}    
\ No newline at end of file
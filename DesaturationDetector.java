@@ -0,0 +1,213 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 血氧下降(氧减)事件检测
+ * 逐个样本处理SpO2信号，只保存当前状态(基线、正在进行的事件)，内存占用与记录长度无关
+ * 基线是事件之外样本的指数滑动平均；样本低于基线dropPercent即开始一个事件，
+ * 回升到基线附近时结束，持续时间在minDuration和maxDuration之间的事件被记录，
+ * 下降幅度达到apneaDropPercent的事件标记为疑似呼吸暂停
+ */
+class DesaturationDetector {
+    static final String DESATURATION = "氧减";                          // 氧减事件的注释
+    static final String APNEA = "疑似呼吸暂停";                          // 下降幅度较大的氧减事件的注释
+
+    private static final double MIN_VALID_SPO2 = 50;                    // 低于此值的样本视为伪迹
+    private static final double MAX_VALID_SPO2 = 100;                   // 高于此值的样本视为伪迹
+    private static final double RECOVERY_MARGIN = 1.0;                  // 回升到(基线 - dropPercent + 此值)以上时事件结束
+    private static final long WRITER_TIME_UNITS = 10000;                // EDFwriter.writeAnnotation的时间单位(100微秒)
+
+    private final double sampleRate;                                    // 采样率(Hz)
+    private final double startTime;                                     // 第一个样本相对记录开始的时间(秒)
+
+    // 检测参数
+    private double dropPercent = 3.0;                                   // 氧减判定的下降幅度(%)
+    private double apneaDropPercent = 4.0;                              // 疑似呼吸暂停的下降幅度(%)
+    private double minDuration = 10.0;                                  // 最短持续时间(秒)
+    private double maxDuration = 120.0;                                 // 最长持续时间(秒)，更长的下降视为基线变化
+    private double baselineWindow = 120.0;                              // 基线滑动平均的时间常数(秒)
+
+    // 检测状态
+    private long index = 0;                                             // 下一个样本的序号
+    private long validSamples = 0;                                      // 有效样本数
+    private double baseline = Double.NaN;
+    private boolean inEvent = false;
+    private long eventStart;                                            // 当前事件第一个样本的序号
+    private double eventBaseline;                                       // 当前事件开始时的基线
+    private double nadir;                                               // 当前事件的最低值
+
+    private final List<EDFAnnotationStruct> events = new ArrayList<>();
+    private int apneaCount = 0;
+
+    DesaturationDetector(double sampleRate, double startTime) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("采样率必须大于0: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.startTime = startTime;
+    }
+
+    /**
+     * 氧减判定的下降幅度(%)，默认为3
+     */
+    public DesaturationDetector setDropPercent(double percent) {
+        if (percent <= RECOVERY_MARGIN) {
+            throw new IllegalArgumentException("下降幅度必须大于" + RECOVERY_MARGIN + ": " + percent);
+        }
+        this.dropPercent = percent;
+        return this;
+    }
+
+    /**
+     * 疑似呼吸暂停的下降幅度(%)，默认为4
+     */
+    public DesaturationDetector setApneaDropPercent(double percent) {
+        this.apneaDropPercent = percent;
+        return this;
+    }
+
+    /**
+     * 事件的最短和最长持续时间(秒)，默认为10和120
+     */
+    public DesaturationDetector setDuration(double min, double max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("持续时间范围无效: " + min + " - " + max);
+        }
+        this.minDuration = min;
+        this.maxDuration = max;
+        return this;
+    }
+
+    /**
+     * 基线滑动平均的时间常数(秒)，默认为120
+     */
+    public DesaturationDetector setBaselineWindow(double seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("基线时间常数必须大于0: " + seconds);
+        }
+        this.baselineWindow = seconds;
+        return this;
+    }
+
+    /**
+     * 处理下一个样本(%)
+     */
+    public void process(double value) {
+        long i = index++;
+
+        // 伪迹(探头脱落等)不参与基线和事件判定
+        if (!(value >= MIN_VALID_SPO2 && value <= MAX_VALID_SPO2)) {
+            return;
+        }
+        validSamples++;
+
+        if (Double.isNaN(baseline)) {
+            baseline = value;
+            return;
+        }
+
+        if (!inEvent) {
+            if (value <= baseline - dropPercent) {
+                inEvent = true;
+                eventStart = i;
+                eventBaseline = baseline;
+                nadir = value;
+            } else {
+                baseline += (value - baseline) / Math.max(1.0, baselineWindow * sampleRate);
+            }
+            return;
+        }
+
+        nadir = Math.min(nadir, value);
+        if (value > eventBaseline - dropPercent + RECOVERY_MARGIN) {
+            endEvent(i);
+        } else if ((i - eventStart) / sampleRate > maxDuration) {
+            // 持续过长，不是一次氧减而是基线下降，从当前值重新开始基线
+            inEvent = false;
+            baseline = value;
+        }
+    }
+
+    /**
+     * 处理通道中[from, to)的样本
+     */
+    public void process(SleepRecording.Channel channel, int from, int to) {
+        for (int i = from; i < to; i++) {
+            process(channel.get(i));
+        }
+    }
+
+    /**
+     * 信号结束，记录仍在进行中的事件
+     */
+    public void finish() {
+        if (inEvent && (index - eventStart) / sampleRate <= maxDuration) {
+            endEvent(index);
+        }
+        inEvent = false;
+    }
+
+    private void endEvent(long end) {
+        inEvent = false;
+
+        double duration = (end - eventStart) / sampleRate;
+        if (duration < minDuration || duration > maxDuration) {
+            return;
+        }
+
+        double drop = eventBaseline - nadir;
+        boolean apnea = drop >= apneaDropPercent;
+        if (apnea) {
+            apneaCount++;
+        }
+
+        EDFAnnotationStruct event = new EDFAnnotationStruct();
+        event.onset = Math.round((startTime + eventStart / sampleRate) * EDFreader.EDFLIB_TIME_DIMENSION);
+        event.duration = Math.round(duration * EDFreader.EDFLIB_TIME_DIMENSION);
+        event.description = String.format("%s %.0f%% (最低 %.0f%%)", apnea ? APNEA : DESATURATION, drop, nadir);
+        events.add(event);
+    }
+
+    /**
+     * 已检测到的事件，onset和duration的单位与EDFreader读出的注释相同(EDFLIB_TIME_DIMENSION)
+     */
+    public List<EDFAnnotationStruct> getEvents() {
+        return events;
+    }
+
+    public int getEventCount() {
+        return events.size();
+    }
+
+    public int getApneaCount() {
+        return apneaCount;
+    }
+
+    /**
+     * 氧减指数(ODI)：每小时有效记录的氧减事件数
+     */
+    public double getOdi() {
+        double hours = validSamples / sampleRate / 3600.0;
+        return hours > 0 ? events.size() / hours : 0;
+    }
+
+    /**
+     * 把事件写入EDF+/BDF+文件的注释
+     */
+    public void writeAnnotations(EDFwriter edfWriter) {
+        for (EDFAnnotationStruct event : events) {
+            edfWriter.writeAnnotation(event.onset / (EDFreader.EDFLIB_TIME_DIMENSION / WRITER_TIME_UNITS),
+                    event.duration / (EDFreader.EDFLIB_TIME_DIMENSION / WRITER_TIME_UNITS), event.description);
+        }
+    }
+
+    /**
+     * 检测整个通道
+     */
+    public static DesaturationDetector detect(SleepRecording.Channel spo2) {
+        DesaturationDetector detector = new DesaturationDetector(spo2.getSampleRate(), spo2.getStartTime());
+        detector.process(spo2, 0, spo2.size());
+        detector.finish();
+        return detector;
+    }
+}
\ No newline at end of file
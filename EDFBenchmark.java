@@ -0,0 +1,148 @@
+import java.util.*;
+
+
+/**
+ * Measures the throughput of the physical to digital conversion used by EDFwriter. <br>
+ *<br>
+ * It compares the original conversion loop (one division per sample, truncation)<br>
+ * with EDFwriter.quantize_physical_samples() (multiplication with the reciprocal, clipping<br>
+ * before rounding to nearest) for 16-bit (EDF) and 24-bit (BDF) samples.<br>
+ *<br>
+ * Usage: java EDFBenchmark [number of samples per signal] [number of signals] [iterations]<br>
+ */
+public class EDFBenchmark
+{
+
+public static void main(String[] args)
+{
+  int i, j, k, smp_sz,
+      sf = 1024,
+      signals = 64,
+      iterations = 2000,
+      digmin, digmax,
+      differences;
+
+  long t1, t2, legacy_ns, kernel_ns;
+
+  double phys_min = -3276.8,
+         phys_max = 3276.7,
+         bitvalue, offset;
+
+  double[] buf;
+
+  byte[] dest_legacy, dest_kernel;
+
+  Random rnd = new Random(42);
+
+  if(args.length > 0)  sf = Integer.parseInt(args[0]);
+  if(args.length > 1)  signals = Integer.parseInt(args[1]);
+  if(args.length > 2)  iterations = Integer.parseInt(args[2]);
+
+  buf = new double[sf * signals];
+
+  for(i=0; i<buf.length; i++)
+  {
+    buf[i] = rnd.nextGaussian() * 1000.0;
+  }
+
+  for(smp_sz=2; smp_sz<=3; smp_sz++)
+  {
+    if(smp_sz == 2)
+    {
+      digmin = -32768;
+      digmax = 32767;
+    }
+    else
+    {
+      digmin = -8388608;
+      digmax = 8388607;
+    }
+
+    bitvalue = (phys_max - phys_min) / (digmax - digmin);
+    offset = phys_max / bitvalue - digmax;
+
+    dest_legacy = new byte[buf.length * smp_sz];
+    dest_kernel = new byte[buf.length * smp_sz];
+
+    for(k=0; k<2; k++)  /* the first pass is the warm-up for the JIT compiler */
+    {
+      t1 = System.nanoTime();
+      for(j=0; j<iterations; j++)
+      {
+        for(i=0; i<signals; i++)
+        {
+          legacy_conversion(buf, i * sf, sf, bitvalue, offset, digmin, digmax, smp_sz, dest_legacy, i * sf * smp_sz);
+        }
+      }
+      t2 = System.nanoTime();
+      legacy_ns = t2 - t1;
+
+      t1 = System.nanoTime();
+      for(j=0; j<iterations; j++)
+      {
+        for(i=0; i<signals; i++)
+        {
+          EDFwriter.quantize_physical_samples(buf, i * sf, sf, 1.0 / bitvalue, offset, digmin, digmax, smp_sz, dest_kernel, i * sf * smp_sz);
+        }
+      }
+      t2 = System.nanoTime();
+      kernel_ns = t2 - t1;
+
+      if(k == 1)
+      {
+        differences = 0;
+
+        for(i=0; i<dest_legacy.length; i+=smp_sz)
+        {
+          for(j=0; j<smp_sz; j++)
+          {
+            if(dest_legacy[i + j] != dest_kernel[i + j])
+            {
+              differences++;
+
+              break;
+            }
+          }
+        }
+
+        System.out.printf("%d-bit samples, %d signals x %d samples, %d iterations\n", smp_sz * 8, signals, sf, iterations);
+        System.out.printf("  legacy loop:  %8.1f Msamples/s\n", ((double)buf.length * iterations / 1e6) / (legacy_ns / 1e9));
+        System.out.printf("  kernel:       %8.1f Msamples/s  (%.2fx)\n", ((double)buf.length * iterations / 1e6) / (kernel_ns / 1e9), (double)legacy_ns / kernel_ns);
+        System.out.printf("  samples that differ because of rounding instead of truncation: %.1f%%\n", 100.0 * differences / buf.length);
+      }
+    }
+  }
+}
+
+/* the conversion as it was done by EDFwriter.writePhysicalSamples() originally */
+private static void legacy_conversion(double[] buf, int buf_offset, int sf, double bitvalue, double offset,
+                                      int digmin, int digmax, int smp_sz, byte[] dest, int dest_offset)
+{
+  int i, value;
+
+  for(i=0; i<sf; i++)
+  {
+    value = (int)((buf[i + buf_offset] / bitvalue) - offset);
+
+    if(value > digmax)
+    {
+      value = digmax;
+    }
+
+    if(value < digmin)
+    {
+      value = digmin;
+    }
+
+    dest[dest_offset + i * smp_sz] = (byte)(value & 0xff);
+
+    dest[dest_offset + i * smp_sz + 1] = (byte)((value >> 8) & 0xff);
+
+    if(smp_sz == 3)
+    {
+      dest[dest_offset + i * 3 + 2] = (byte)((value >> 16) & 0xff);
+    }
+  }
+}
+
+}
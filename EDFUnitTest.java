@@ -53,7 +53,8 @@ public static void main(String[] args)
         ibuf20 = new int[20],
         ibuf23 = new int[23],
         ibuf80 = new int[80],
-        ibuf92 = new int[92];
+        ibuf92 = new int[92],
+        ibuf2 = new int[100];
 
   byte[] pbuf = new byte[300],
          str = new byte[1024],
@@ -66,14 +67,69 @@ public static void main(String[] args)
 
   double[] dbuf = new double[11000],
            dbuf20 = new double[20],
-           dbuf23 = new double[23];
+           dbuf23 = new double[23],
+           dbuf2 = new double[100],
+           dbuf3 = new double[100];
+
+  double d_tmp;
 
   EDFwriter hdl_out=null;
 
-  EDFreader hdl_in=null;
+  EDFreader hdl_in=null,
+            hdl_in2=null;
 
   RandomAccessFile fp=null;
 
+  ByteBuffer bbuf=null;
+
+  ByteArrayOutputStream bos=null;
+
+  EDFbatch batch=null;
+
+  String[] lines=null;
+
+  EDFresampler resampler=null;
+
+  EDFvalidator validator=null;
+
+  java.util.ArrayList<EDFvalidator.Problem> problems=null;
+
+  java.util.List<EDFAnnotationStruct> events=null;
+
+  DesaturationDetector desaturation=null;
+
+  SleepRecording.Channel channel=null;
+
+  SpectralFeatures.RealFFT fft=null;
+
+  double[] power=null,
+           power2=null;
+
+  java.util.Random random=null;
+
+  FeatureCache cache=null;
+
+  FeatureCache.Features features=null;
+
+  File[] files=null;
+
+  EDFmontage montage=null;
+
+  EDFstatistics statistics=null;
+
+  EDFstatistics.SignalStatistics[] stats=null, stats2=null;
+
+  EDFfollower follower=null;
+
+  EDFjoin join=null;
+
+  java.util.concurrent.atomic.AtomicLong followed = new java.util.concurrent.atomic.AtomicLong(),
+                                         follow_errors = new java.util.concurrent.atomic.AtomicLong(),
+                                         join_errors = new java.util.concurrent.atomic.AtomicLong(),
+                                         computations = new java.util.concurrent.atomic.AtomicLong();
+
+  final DesaturationDetector joined_desaturation = new DesaturationDetector(10.0, 0.0);
+
 /********************************** EDF writing ******************************/
 
   try
@@ -3722,14 +3778,3155 @@ public static void main(String[] args)
 
   if(hdl_in.annotationslist.size() != 30)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
 
-  System.exit(0);
-}
+/********************************** EDF appending ******************************/
 
-private static void goto_exit(int line)
-{
-  System.out.printf("Error, line: %d\n", line);
+  for(j=0; j<2; j++)
+  {
+    try
+    {
+      if(j == 0)
+      {
+        hdl_out = new EDFwriter("test5.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 2);
+      }
+      else
+      {
+        hdl_out = new EDFwriter("test5.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 2, EDFwriter.EDFLIB_OPEN_APPEND);
+      }
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
 
-  System.exit(1);
+    for(i=0; i<2; i++)
+    {
+      if(hdl_out.setSampleFrequency(i, 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMaximum(i, 1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMinimum(i, -1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setSignalLabel(i, String.format("append %d", i + 1)) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.setStartDateTime(2017, 12, 5, 12, 23, 8, 1234) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    try
+    {
+      for(tmp=j*10; tmp<(j*10+10); tmp++)
+      {
+        for(i=0; i<100; i++)
+        {
+          ibuf[i] = (tmp * 100) + i;
+        }
+
+        if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.writeAnnotation(j * 100000L + 5000L, -1L, String.format("session %d", j + 1)) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    try
+    {
+      if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+
+  try
+  {
+    fp = new RandomAccessFile("test5.edf", "rw");
+
+    fp.setLength(fp.length() - 7);  /* simulate an interrupted write of a datarecord */
+
+    fp.close();
+
+    hdl_out = new EDFwriter("test5.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 2, EDFwriter.EDFLIB_OPEN_APPEND);
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  for(i=0; i<2; i++)
+  {
+    if(hdl_out.setSampleFrequency(i, 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMaximum(i, 1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMinimum(i, -1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setSignalLabel(i, String.format("append %d", i + 1)) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    for(i=0; i<100; i++)
+    {
+      ibuf[i] = 1900 + i;
+    }
+
+    if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    hdl_out = new EDFwriter("test5.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 2, EDFwriter.EDFLIB_OPEN_APPEND);
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  for(i=0; i<2; i++)
+  {
+    if(hdl_out.setSampleFrequency(i, 200) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMaximum(i, 1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMinimum(i, -1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setSignalLabel(i, String.format("append %d", i + 1)) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    if(hdl_out.writeDigitalSamples(ibuf) != EDFwriter.EDFLIB_APPEND_HEADER_MISMATCH)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    hdl_in = new EDFreader("test5.edf");
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_in.getNumDataRecords() != 20)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartTimeSubSecond() != 1234000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.size() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.get(1).onset != 105000000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  try
+  {
+    for(tmp=0; tmp<20; tmp++)
+    {
+      if(hdl_in.readDigitalSamples(1, ibuf) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        if(ibuf[i] != ((tmp * 100) + i))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** parallel encoding ******************************/
+
+  dbuf = new double[64 * 256];
+
+  for(j=0; j<2; j++)
+  {
+    try
+    {
+      hdl_out = new EDFwriter(String.format("test6_%d.bdf", j), EDFwriter.EDFLIB_FILETYPE_BDFPLUS, 64);
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    for(i=0; i<64; i++)
+    {
+      if(hdl_out.setSampleFrequency(i, 256) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMaximum(i, 1000 + i) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMinimum(i, -1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMaximum(i, 8388607) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMinimum(i, -8388608) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.setStartDateTime(2017, 12, 5, 12, 23, 8, 0) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(j == 1)
+    {
+      if(hdl_out.setEncodingPool(new java.util.concurrent.ForkJoinPool(4)) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    try
+    {
+      for(tmp=0; tmp<10; tmp++)
+      {
+        for(i=0; i<(64 * 256); i++)
+        {
+          dbuf[i] = 1100.0 * Math.sin((i + tmp) * 0.01);
+        }
+
+        if(hdl_out.blockWritePhysicalSamples(dbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+
+      if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+
+  try
+  {
+    fp = new RandomAccessFile("test6_0.bdf", "r");
+
+    str = new byte[(int)fp.length()];
+
+    fp.readFully(str);
+
+    fp.close();
+
+    fp = new RandomAccessFile("test6_1.bdf", "r");
+
+    if(fp.length() != str.length)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    rbuf = new byte[str.length];
+
+    fp.readFully(rbuf);
+
+    fp.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  for(i=0; i<str.length; i++)
+  {
+    if(str[i] != rbuf[i])  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** ByteBuffer writing ******************************/
+
+  sbuf = new short[175];
+
+  for(j=0; j<2; j++)
+  {
+    try
+    {
+      hdl_out = new EDFwriter(String.format("test7_%d.edf", j), EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 3);
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    for(i=0; i<3; i++)
+    {
+      if(hdl_out.setSampleFrequency(i, 100 >> i) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMaximum(i, 1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMinimum(i, -1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMaximum(i, 1000 + i) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMinimum(i, -1000 - i) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.setStartDateTime(2017, 12, 5, 12, 23, 8, 0) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    bbuf = ByteBuffer.allocateDirect((175 * 2) + 1);
+
+    try
+    {
+      for(tmp=0; tmp<5; tmp++)
+      {
+        for(i=0; i<175; i++)
+        {
+          sbuf[i] = (short)(((i * 37) + (tmp * 11)) % 2400 - 1200);
+        }
+
+        if(j == 0)
+        {
+          if(hdl_out.blockWriteDigitalShortSamples(sbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+        }
+        else
+        {
+          bbuf.clear();
+
+          bbuf.put((byte)0x55);
+
+          for(i=0; i<175; i++)
+          {
+            bbuf.put((byte)(sbuf[i] & 0xff));
+
+            bbuf.put((byte)((sbuf[i] >> 8) & 0xff));
+          }
+
+          bbuf.position(1);
+
+          bbuf.limit(172);
+
+          if(hdl_out.blockWriteDigitalByteBuffer(bbuf, true) == 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+          bbuf.limit(351);
+
+          if(hdl_out.blockWriteDigitalByteBuffer(bbuf.asReadOnlyBuffer(), true) == 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+          if(hdl_out.blockWriteDigitalByteBuffer(bbuf, true) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+          if(bbuf.position() != 351)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+          if(bbuf.get(0) != 0x55)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+        }
+      }
+
+      if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+
+  try
+  {
+    fp = new RandomAccessFile("test7_0.edf", "r");
+
+    str = new byte[(int)fp.length()];
+
+    fp.readFully(str);
+
+    fp.close();
+
+    fp = new RandomAccessFile("test7_1.edf", "r");
+
+    if(fp.length() != str.length)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    rbuf = new byte[str.length];
+
+    fp.readFully(rbuf);
+
+    fp.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  for(i=0; i<str.length; i++)
+  {
+    if(str[i] != rbuf[i])  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** preallocation ******************************/
+
+  for(j=0; j<2; j++)
+  {
+    try
+    {
+      if(j == 0)
+      {
+        hdl_out = new EDFwriter("test8.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 1);
+      }
+      else
+      {
+        hdl_out = new EDFwriter("test8.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 1, EDFwriter.EDFLIB_OPEN_APPEND);
+      }
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.setSampleFrequency(0, 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMaximum(0, 1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMinimum(0, -1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMaximum(0, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMinimum(0, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setStartDateTime(2017, 12, 5, 12, 23, 8, 0) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setExpectedDuration(0) == 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setExpectedDuration(30) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    try
+    {
+      for(tmp=j*10; tmp<(j*10+10); tmp++)
+      {
+        for(i=0; i<100; i++)
+        {
+          ibuf[i] = (tmp * 100) + i;
+        }
+
+        if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+
+      if(hdl_out.setExpectedDuration(30) == 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(new File("test8.edf").length() != (768L + (30L * 314L)))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(new File("test8.edf").length() != (768L + ((j + 1) * 10L * 314L)))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(j == 0)
+      {
+        fp = new RandomAccessFile("test8.edf", "rw");
+
+        fp.setLength(768L + (30L * 314L));  /* simulate a crash: the preallocated space is still there */
+
+        fp.seek(768L + (10L * 314L));
+
+        fp.write(str, 0, 150);  /* and the last datarecord is incomplete */
+
+        fp.seek(236L);
+
+        fp.writeBytes("-1      ");
+
+        fp.close();
+      }
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+
+  try
+  {
+    hdl_in = new EDFreader("test8.edf");
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_in.getNumDataRecords() != 20)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  try
+  {
+    for(tmp=0; tmp<20; tmp++)
+    {
+      if(hdl_in.readDigitalSamples(0, ibuf) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        if(ibuf[i] != ((tmp * 100) + i))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* a closed writer does not accept an expected duration */
+  try
+  {
+    hdl_out = new EDFwriter("test8.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 1, EDFwriter.EDFLIB_OPEN_APPEND);
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setExpectedDuration(30) != -1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(new File("test8.edf").length() != (768L + (20L * 314L)))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* a TAL that does not continue the timekeeping and is not zero must not be discarded: */
+/* j == 0: a preallocated file with a corrupt TAL in the zeros, j == 1: a jittered last TAL */
+  for(j=0; j<2; j++)
+  {
+    try
+    {
+      hdl_out = new EDFwriter("test26.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 1);
+
+      if(hdl_out.setSampleFrequency(0, 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMaximum(0, 1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMinimum(0, -1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMaximum(0, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMinimum(0, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(tmp=0; tmp<10; tmp++)
+      {
+        for(i=0; i<100; i++)
+        {
+          ibuf[i] = (tmp * 100) + i;
+        }
+
+        if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+
+      if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      fp = new RandomAccessFile("test26.edf", "rw");
+
+      if(j == 0)
+      {
+        fp.setLength(768L + (30L * 314L));
+
+        fp.seek(768L + (20L * 314L) + 200L);
+
+        fp.writeBytes("+20");
+      }
+      else
+      {
+        fp.seek(768L + (9L * 314L) + 200L + 1L);
+
+        fp.writeBytes("8");
+      }
+
+      fp.seek(236L);
+
+      fp.writeBytes("-1      ");
+
+      l_tmp = fp.length();
+
+      fp.close();
+
+      hdl_out = new EDFwriter("test26.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 1, EDFwriter.EDFLIB_OPEN_APPEND);
+
+      if(hdl_out.setSampleFrequency(0, 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMaximum(0, 1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMinimum(0, -1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMaximum(0, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMinimum(0, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.writeDigitalSamples(ibuf) != EDFwriter.EDFLIB_APPEND_HEADER_MISMATCH)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(new File("test26.edf").length() != l_tmp)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+
+/********************************** cropping ******************************/
+
+  try
+  {
+    if(EDFcrop.crop("test5.edf", "test9.edf", 5, 10) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    EDFcrop.crop("test5.edf", "test9.edf", 15, 10);
+
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    if(e.getErrNum() != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    hdl_in = new EDFreader("test9.edf");
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_in.getNumDataRecords() != 10)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartTimeHour() != 12)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartTimeMinute() != 23)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartTimeSecond() != 13)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartTimeSubSecond() != 1234000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartDateDay() != 5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.size() != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.get(0).onset != 55000000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(!hdl_in.annotationslist.get(0).description.equals("session 2"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  try
+  {
+    for(tmp=0; tmp<10; tmp++)
+    {
+      if(hdl_in.readDigitalSamples(1, ibuf) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        if(ibuf[i] != (((tmp + 5) * 100) + i))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** signal extraction ******************************/
+
+  try
+  {
+    EDFextract.extract("test6_0.bdf", "test10.bdf", new int[]{3, 0});
+
+    hdl_in = new EDFreader("test6_0.bdf");
+
+    hdl_in2 = new EDFreader("test10.bdf");
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_in2.getFileType() != EDFreader.EDFLIB_FILETYPE_BDFPLUS)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in2.getNumSignals() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in2.getNumDataRecords() != 10)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  try
+  {
+    for(j=0; j<2; j++)
+    {
+      if(hdl_in2.getPhysicalMaximum(j) != hdl_in.getPhysicalMaximum(3 - (j * 3)))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_in2.getSampelsPerDataRecord(j) != 256)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(tmp=0; tmp<((10 * 256) / 100); tmp++)
+      {
+        if(hdl_in.readDigitalSamples(3 - (j * 3), ibuf) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        if(hdl_in2.readDigitalSamples(j, ibuf2) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        for(i=0; i<100; i++)
+        {
+          if(ibuf[i] != ibuf2[i])  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+        }
+      }
+    }
+
+    hdl_in.close();
+
+    hdl_in2.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** merging ******************************/
+
+  try
+  {
+    if(EDFcrop.crop("test5.edf", "test11.edf", 15, 5) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(EDFcrop.crop("test5.edf", "test12.edf", 0, 5) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(EDFmerge.merge(new String[]{"test11.edf", "test9.edf", "test12.edf"}, "test13.edf") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(EDFmerge.merge(new String[]{"test11.edf", "test12.edf"}, "test14.edf") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    fp = new RandomAccessFile("test14.edf", "r");
+
+    fp.seek(192);
+
+    fp.readFully(rbuf, 0, 5);
+
+    fp.close();
+
+    if(!new String(rbuf, 0, 5, "US-ASCII").equals("EDF+D"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    EDFmerge.merge(new String[]{"test5.edf", "test9.edf"}, "test14.edf");
+
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    if(e.getErrNum() != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    hdl_in = new EDFreader("test13.edf");
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_in.getNumDataRecords() != 20)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartTimeSecond() != 8)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartTimeSubSecond() != 1234000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.size() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.get(0).onset != 5000000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.get(1).onset != 105000000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  try
+  {
+    for(tmp=0; tmp<20; tmp++)
+    {
+      if(hdl_in.readDigitalSamples(1, ibuf) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        if(ibuf[i] != ((tmp * 100) + i))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** converting ******************************/
+
+  try
+  {
+    EDFconvert.convert("test5.edf", "test15.bdf", false);
+
+    EDFconvert.convert("test6_0.bdf", "test16.edf", true);
+
+    hdl_in = new EDFreader("test15.bdf");
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_in.getFileType() != EDFreader.EDFLIB_FILETYPE_BDFPLUS)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getNumDataRecords() != 20)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.getStartTimeSubSecond() != 1234000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.size() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in.annotationslist.get(1).onset != 105000000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  try
+  {
+    if(hdl_in.getDigitalMaximum(1) != (32767 * 256))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.getDigitalMinimum(1) != (-32768 * 256))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.getPhysicalMaximum(1) != 1000)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(tmp=0; tmp<20; tmp++)
+    {
+      if(hdl_in.readDigitalSamples(1, ibuf) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        if(ibuf[i] != (((tmp * 100) + i) * 256))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    hdl_in = new EDFreader("test6_0.bdf");
+
+    hdl_in2 = new EDFreader("test16.edf");
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_in2.getFileType() != EDFreader.EDFLIB_FILETYPE_EDFPLUS)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in2.getNumSignals() != 64)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_in2.getNumDataRecords() != 10)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  try
+  {
+    for(j=0; j<64; j+=21)
+    {
+      if(hdl_in2.getDigitalMaximum(j) != 32767)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_in2.getDigitalMinimum(j) != -32768)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_in2.getPhysicalMaximum(j) != (1000 + j))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* with dither the error stays below 1.5 LSB */
+      d_tmp = 1.5 * (hdl_in2.getPhysicalMaximum(j) - hdl_in2.getPhysicalMinimum(j)) / 65535.0;
+
+      hdl_in.rewind(j);
+
+      for(tmp=0; tmp<((10 * 256) / 100); tmp++)
+      {
+        if(hdl_in.readPhysicalSamples(j, dbuf2) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        if(hdl_in2.readPhysicalSamples(j, dbuf3) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        for(i=0; i<100; i++)
+        {
+          if(Math.abs(dbuf2[i] - dbuf3[i]) > d_tmp)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+        }
+      }
+    }
+
+    hdl_in.close();
+
+    hdl_in2.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** batch processing ******************************/
+
+  try
+  {
+    bos = new ByteArrayOutputStream();
+
+    batch = new EDFbatch(EDFbatch.EDFBATCH_PROBE);
+
+    if(batch.setThreads(3) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(batch.setIOLimit(2) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(batch.setIOLimit(0) != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(batch.run(java.util.Arrays.asList("test5.edf", "test6_0.bdf", "test_nonexisting.edf"), new PrintStream(bos, true)) != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    lines = bos.toString("US-ASCII").split("\n");
+
+    if(lines.length != 4)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!lines[3].startsWith("{\"summary\":true,\"op\":\"probe\",\"files\":3,\"failed\":1,"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0, j=0; i<3; i++)
+    {
+      if(lines[i].startsWith("{\"file\":\"test6_0.bdf\",\"op\":\"probe\",\"type\":\"BDF+\",\"signals\":64,\"datarecords\":10,"))  j++;
+
+      if(lines[i].startsWith("{\"file\":\"test5.edf\",\"op\":\"probe\",\"type\":\"EDF+\",\"signals\":2,\"datarecords\":20,"))  j++;
+
+      if(lines[i].startsWith("{\"file\":\"test_nonexisting.edf\",\"op\":\"probe\",\"ok\":false,"))  j++;
+    }
+
+    if(j != 3)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    batch = new EDFbatch(EDFbatch.EDFBATCH_CONVERT);
+
+    batch.setOutputDirectory("test17");
+
+    if(batch.run(java.util.Arrays.asList("test5.edf"), new PrintStream(new ByteArrayOutputStream())) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in = new EDFreader("test17" + File.separator + "test5.bdf");
+
+    if(hdl_in.getFileType() != EDFreader.EDFLIB_FILETYPE_BDFPLUS)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.getNumDataRecords() != 20)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in.close();
+
+/* files with the same name in different directories */
+    new File("test27" + File.separator + "a").mkdirs();
+
+    new File("test27" + File.separator + "b").mkdirs();
+
+    java.nio.file.Files.copy(new File("test5.edf").toPath(), new File("test27" + File.separator + "a" + File.separator + "x.edf").toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+    java.nio.file.Files.copy(new File("test5.edf").toPath(), new File("test27" + File.separator + "b" + File.separator + "x.edf").toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+    java.nio.file.Files.copy(new File("test6_0.bdf").toPath(), new File("test27" + File.separator + "a" + File.separator + "x.bdf").toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+    batch = new EDFbatch(EDFbatch.EDFBATCH_CROP);
+
+    batch.setOutputDirectory("test27_out");
+
+    if(batch.setCropRange(2, 5) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(batch.run(EDFbatch.listFiles("test27"), new PrintStream(new ByteArrayOutputStream())) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<3; i++)
+    {
+      hdl_in = new EDFreader("test27_out" + File.separator + ((i == 1) ? "b" : "a") + File.separator + ((i == 2) ? "x.bdf" : "x.edf"));
+
+      if(hdl_in.getNumDataRecords() != 5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_in.getNumSignals() != ((i == 2) ? 64 : 2))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      hdl_in.close();
+    }
+
+/* a/x.edf and a/x.bdf are both exported to a/x */
+    bos = new ByteArrayOutputStream();
+
+    batch = new EDFbatch(EDFbatch.EDFBATCH_EXPORT);
+
+    batch.setOutputDirectory("test27_out");
+
+    if(batch.run(EDFbatch.listFiles("test27"), new PrintStream(bos, true)) != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!bos.toString("US-ASCII").contains("is also the output of another file"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!new File("test27_out" + File.separator + "b" + File.separator + "x" + File.separator + "header.json").exists())  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** resampling ******************************/
+
+  try
+  {
+    hdl_out = new EDFwriter("test18.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 2);
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_out.setSampleFrequency(0, 200) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_out.setSampleFrequency(1, 1) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  for(i=0; i<2; i++)
+  {
+    if(hdl_out.setPhysicalMaximum(i, 200) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMinimum(i, -200) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* signal 0: 1 Hz sine at 200 Hz, signal 1: 0.05 Hz sine at 1 Hz */
+  try
+  {
+    for(tmp=0; tmp<60; tmp++)
+    {
+      for(i=0; i<200; i++)
+      {
+        dbuf[i] = 100.0 * Math.sin(2.0 * Math.PI * ((tmp * 200) + i) / 200.0);
+      }
+
+      if(hdl_out.writePhysicalSamples(dbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      dbuf[0] = 100.0 * Math.sin(2.0 * Math.PI * 0.05 * tmp);
+
+      if(hdl_out.writePhysicalSamples(dbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in = new EDFreader("test18.edf");
+
+    resampler = new EDFresampler(hdl_in, new int[]{1, 0}, 10.0);
+
+    if(resampler.getNumFrames() != 600)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(j=0; j<600; j+=tmp)
+    {
+      tmp = resampler.readFrames(dbuf, 7);
+
+      if(tmp != Math.min(7, 600 - j))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* away from the start and the end, the filters need 16 samples of the slowest signal on both sides */
+      for(i=0; i<tmp; i++)
+      {
+        if(((j + i) < 160) || ((j + i) >= 440))  continue;
+
+        if(Math.abs(dbuf[i * 2] - (100.0 * Math.sin(2.0 * Math.PI * 0.05 * (j + i) / 10.0))) > 0.5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        if(Math.abs(dbuf[(i * 2) + 1] - (100.0 * Math.sin(2.0 * Math.PI * (j + i) / 10.0))) > 0.5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    if(resampler.readFrames(dbuf, 7) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    try
+    {
+      resampler = new EDFresampler(hdl_in, new int[]{0}, 2.5);
+
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      if(e.getErrNum() != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** exporting ******************************/
+
+  try
+  {
+    EDFexporter.export("test5.edf", "test19", EDFexporter.EDFLIB_EXPORT_FLOAT32);
+
+    EDFexporter.export("test5.edf", "test19", EDFexporter.EDFLIB_EXPORT_INT16);
+
+    hdl_in = new EDFreader("test5.edf");
+
+    fp = new RandomAccessFile("test19" + File.separator + "signal_001.f32", "r");
+
+    if(fp.length() != (2000 * 4))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    str = new byte[2000 * 4];
+
+    fp.readFully(str);
+
+    fp.close();
+
+    bbuf = ByteBuffer.wrap(str).order(ByteOrder.LITTLE_ENDIAN);
+
+    for(tmp=0; tmp<20; tmp++)
+    {
+      if(hdl_in.readPhysicalSamples(1, dbuf2) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        if(bbuf.getFloat() != (float)dbuf2[i])  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+
+    fp = new RandomAccessFile("test19" + File.separator + "signal_001.i16", "r");
+
+    if(fp.length() != (2000 * 2))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    fp.readFully(str, 0, 2000 * 2);
+
+    fp.close();
+
+    bbuf = ByteBuffer.wrap(str).order(ByteOrder.LITTLE_ENDIAN);
+
+    for(i=0; i<2000; i++)
+    {
+      if(bbuf.getShort() != i)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(!new File("test19" + File.separator + "header.json").exists())  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    EDFexporter.exportCSV("test18.edf", "test20.csv", false);
+
+    EDFexporter.exportCSV("test18.edf", "test20.csv.gz", true);
+
+    fp = new RandomAccessFile("test20.csv", "r");
+
+    str = new byte[(int)fp.length()];
+
+    fp.readFully(str);
+
+    fp.close();
+
+    lines = new String(str, "US-ASCII").split("\n");
+
+    if(lines.length != 12001)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!lines[0].startsWith("time,"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!lines[1].startsWith("0.0000,0.0031,"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!lines[51].startsWith("0.2500,99.9985,"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    bos = new ByteArrayOutputStream();
+
+    try(java.util.zip.GZIPInputStream gz = new java.util.zip.GZIPInputStream(new FileInputStream("test20.csv.gz")))
+    {
+      while((i = gz.read(rbuf)) > 0)
+      {
+        bos.write(rbuf, 0, i);
+      }
+    }
+
+    if(!java.util.Arrays.equals(bos.toByteArray(), str))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    str = new byte[1024];
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    EDFexporter.export("test6_0.bdf", "test19", EDFexporter.EDFLIB_EXPORT_INT16);
+
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    if(e.getErrNum() != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** archiving ******************************/
+
+  try
+  {
+    EDFarchive.compress("test5.edf", "test21.edfz", 3);
+
+    EDFarchive.compress("test6_0.bdf", "test22.edfz", 0);
+
+    if(!EDFarchive.isArchive("test21.edfz"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(EDFarchive.isArchive("test5.edf"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(new File("test22.edfz").length() >= new File("test6_0.bdf").length())  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    EDFarchive.decompress("test21.edfz", "test21.edf");
+
+    EDFarchive.decompress("test22.edfz", "test22.bdf");
+
+    for(j=0; j<2; j++)
+    {
+      fp = new RandomAccessFile((j == 0) ? "test5.edf" : "test6_0.bdf", "r");
+
+      str = new byte[(int)fp.length()];
+
+      fp.readFully(str);
+
+      fp.close();
+
+      fp = new RandomAccessFile((j == 0) ? "test21.edf" : "test22.bdf", "r");
+
+      if(fp.length() != str.length)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      pbuf = new byte[str.length];
+
+      fp.readFully(pbuf);
+
+      fp.close();
+
+      if(!java.util.Arrays.equals(str, pbuf))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    str = new byte[1024];
+
+    pbuf = new byte[300];
+
+    hdl_in = new EDFreader("test21.edfz");
+
+    if(hdl_in.getFileType() != EDFreader.EDFLIB_FILETYPE_EDFPLUS)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.getNumDataRecords() != 20)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.annotationslist.size() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.annotationslist.get(1).onset != 105000000L)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.fseek(1, 1234, EDFreader.EDFSEEK_SET) != 1234)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.readDigitalSamples(1, ibuf) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<100; i++)
+    {
+      if(ibuf[i] != (1234 + i))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    hdl_in.close();
+
+    hdl_in = new EDFreader("test6_0.bdf");
+
+    hdl_in2 = new EDFreader("test22.edfz");
+
+    for(j=0; j<64; j+=9)
+    {
+      hdl_in.fseek(j, 1000 + j, EDFreader.EDFSEEK_SET);
+
+      hdl_in2.fseek(j, 1000 + j, EDFreader.EDFSEEK_SET);
+
+      if(hdl_in.readPhysicalSamples(j, dbuf2) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_in2.readPhysicalSamples(j, dbuf3) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        if(dbuf2[i] != dbuf3[i])  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+
+    hdl_in2.close();
+
+/* the number of datarecords per block is limited to the number of datarecords in the file */
+    EDFarchive.compress("test5.edf", "test23.edfz", 1000000);
+
+    fp = new RandomAccessFile("test23.edfz", "rw");
+
+    fp.seek(24);
+
+    if(Integer.reverseBytes(fp.readInt()) != 20)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* a header that claims blocks which don't fit in an array is rejected */
+    fp.seek(16);
+
+    fp.writeLong(Long.reverseBytes(1000000000L));
+
+    fp.writeInt(Integer.reverseBytes(1000000000));
+
+    fp.close();
+
+    try
+    {
+      hdl_in = new EDFreader("test23.edfz");
+
+      hdl_in.close();
+
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      if(e.getErrNum() != EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* the tools that copy the datarecords directly from the file don't accept archives */
+  for(tmp=0; tmp<6; tmp++)
+  {
+    new File("test28.edf").delete();
+
+    try
+    {
+      switch(tmp)
+      {
+        case 0 : EDFcrop.crop("test21.edfz", "test28.edf", 0, 5);
+                 break;
+        case 1 : EDFextract.extract("test21.edfz", "test28.edf", new int[]{0});
+                 break;
+        case 2 : EDFmerge.merge(new String[]{"test5.edf", "test21.edfz"}, "test28.edf");
+                 break;
+        case 3 : EDFconvert.convert("test21.edfz", "test28.edf", false);
+                 break;
+        case 4 : EDFexporter.export("test21.edfz", "test28.edf", EDFexporter.EDFLIB_EXPORT_FLOAT32);
+                 break;
+        case 5 : EDFarchive.compress("test21.edfz", "test28.edf", 0);
+                 break;
+      }
+
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(IOException e)
+    {
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      if(e.getErrNum() != EDFreader.EDFLIB_FILETYPE_ERROR)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(new File("test28.edf").exists())  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    problems = new EDFvalidator().validate("test21.edfz");
+
+    if(problems.size() != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!problems.get(0).toString().contains("compressed archive"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** validating ******************************/
+
+  try
+  {
+    validator = new EDFvalidator();
+
+    if(validator.setThreads(0) != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(validator.setMaxProblems(0) != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(validator.setThreads(3) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    problems = validator.validate("test5.edf");
+
+    if(problems.size() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    problems = validator.validate("test6_0.bdf");
+
+    if(problems.size() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* test5.edf: 3 signals, 1024 bytes header, 20 datarecords of 514 bytes, annotation signal at offset 400 in the datarecord */
+    str = new byte[11304];
+
+    fp = new RandomAccessFile("test5.edf", "r");
+
+    fp.readFully(str);
+
+    fp.close();
+
+    str[1024 + (3 * 514) + 400 + 1] = 'x';  /* onset of the timekeeping TAL of datarecord 3 */
+
+    System.arraycopy("1000    ".getBytes(), 0, str, 256 + (3 * 128), 8);  /* digital maximum of signal 0 */
+
+    fp = new RandomAccessFile("test23.edf", "rw");
+
+    fp.setLength(0L);
+
+    fp.write(str);
+
+    fp.close();
+
+    problems = validator.validate("test23.edf");
+
+    if(problems.size() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(problems.get(0).offset != 2967)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(problems.get(0).datarecord != 3)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(problems.get(0).signal != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!problems.get(0).message.equals("invalid onset"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* the digital values in datarecord r are (r * 100) + sample, the first one above 1000 is sample 1 of datarecord 10 */
+    if(problems.get(1).offset != (1024 + (10 * 514) + 2))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(problems.get(1).datarecord != 10)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(problems.get(1).signal != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!problems.get(1).message.startsWith("999 samples out of range"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    fp = new RandomAccessFile("test23.edf", "rw");
+
+    fp.seek(1024 + (3 * 514) + 400 + 1);
+
+    fp.write('3');
+
+    fp.seek(1024 + (7 * 514) + 400 + 1);
+
+    fp.write('8');  /* the timekeeping TAL of datarecord 7 becomes +8.1234 */
+
+    fp.setLength(11304 - 7);
+
+    fp.close();
+
+    if(validator.setMaxProblems(2) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    problems = validator.validate("test23.edf");
+
+    if(problems.size() != 3)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(problems.get(0).offset != (1024 + (7 * 514) + 400))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!problems.get(0).message.startsWith("timekeeping TAL is +8.1234000, expected +7.1234000"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(problems.get(1).offset != (1024 + (8 * 514) + 400))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!problems.get(2).message.equals("2 more problems are not reported"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(validator.setMaxProblems(10) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    problems = validator.validate("test23.edf");
+
+    if(problems.size() != 4)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(problems.get(3).offset != (11304 - 7))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!problems.get(3).message.startsWith("filesize is 11297 bytes, expected 11304 bytes"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** montage ******************************/
+
+  try
+  {
+    hdl_out = new EDFwriter("test24.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 4);
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  for(i=0; i<4; i++)
+  {
+    if(hdl_out.setSampleFrequency(i, (i == 3) ? 1 : 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalDimension(i, (i == 3) ? "%" : "uV") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_out.setSignalLabel(0, "F3") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_out.setSignalLabel(1, "C3") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_out.setSignalLabel(2, "Cz") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_out.setSignalLabel(3, "SpO2") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* F3: (datarecord * 100) + sample, C3: twice F3, Cz: 1000, SpO2: 95 */
+  try
+  {
+    for(tmp=0; tmp<5; tmp++)
+    {
+      for(i=0; i<100; i++)
+      {
+        ibuf[i] = (tmp * 100) + i;
+      }
+
+      if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        ibuf[i] *= 2;
+      }
+
+      if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        ibuf[i] = 1000;
+      }
+
+      if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      ibuf[0] = 95;
+
+      if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    hdl_in = new EDFreader("test24.edf");
+
+    montage = new EDFmontage(hdl_in);
+
+    if(montage.addDerivation("F3-C3", "F3-C3") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.addDerivation("C3-avg", "c3 - AVG") != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.addDerivation("mean", "0.5*F3+0.5*C3") != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.getNumDerivations() != 3)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!montage.getSignalLabel(1).equals("C3-avg"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!montage.getPhysicalDimension(1).trim().equals("uV"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.getTotalSamples(0) != 500)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.readPhysicalSamples(0, dbuf2) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.fseek(1, 150, EDFreader.EDFSEEK_SET) != 150)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.readPhysicalSamples(1, dbuf3) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<100; i++)
+    {
+      if(Math.abs(dbuf2[i] + i) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* C3 - (F3 + C3 + Cz) / 3 */
+      if(Math.abs(dbuf3[i] - ((150 + i) - (1000.0 / 3.0))) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(montage.ftell(1) != 250)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.fseek(2, -20, EDFreader.EDFSEEK_END) != 480)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.readPhysicalSamples(2, dbuf2) != 20)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<20; i++)
+    {
+      if(Math.abs(dbuf2[i] - (1.5 * (480 + i))) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(montage.readPhysicalSamples(2, dbuf2) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(j=0; j<3; j++)
+    {
+      try
+      {
+        montage.addDerivation("x", (j == 0) ? "F3-SpO2" : ((j == 1) ? "F3-O1" : "F3*2"));
+
+        goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+      catch(EDFException e)
+      {
+        if(e.getErrNum() != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+
+/* labels that end with an e or contain a -, Pressure: 3, Cz: 1000, EEG Fpz-Cz: 7 */
+    hdl_out = new EDFwriter("test29.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 3);
+
+    for(i=0; i<3; i++)
+    {
+      if(hdl_out.setSampleFrequency(i, 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalDimension(i, "uV") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.setSignalLabel(0, "Pressure") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setSignalLabel(1, "Cz") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setSignalLabel(2, "EEG Fpz-Cz") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(j=0; j<3; j++)
+    {
+      for(i=0; i<100; i++)
+      {
+        ibuf[i] = (j == 0) ? 3 : ((j == 1) ? 1000 : 7);
+      }
+
+      if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in = new EDFreader("test29.edf");
+
+    montage = new EDFmontage(hdl_in);
+
+    if(montage.addDerivation("a", "Pressure-Cz") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.addDerivation("b", "'EEG Fpz-Cz'-Cz") != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.addDerivation("c", "2e-1*Pressure+1E1 * 'EEG Fpz-Cz'") != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(montage.addDerivation("d", "-1e+1*Pressure - ' Cz '") != 3)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    dbuf = new double[]{-997, -993, 70.6, -1030};
+
+    for(j=0; j<4; j++)
+    {
+      if(montage.readPhysicalSamples(j, dbuf2) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        if(Math.abs(dbuf2[i] - dbuf[j]) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    for(j=0; j<5; j++)
+    {
+      try
+      {
+        montage.addDerivation("x", (j == 0) ? "'EEG Fpz-Cz-Cz" : ((j == 1) ? "'EEG Fpz' Cz" : ((j == 2) ? "EEG Fpz-Cz" : ((j == 3) ? "Cz-'avg'" : "Cz-''"))));
+
+        goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+      catch(EDFException e)
+      {
+        if(e.getErrNum() != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+
+/* the derivations equal the same combination of the signals read with EDFreader */
+    dbuf = new double[100];
+
+    hdl_in = new EDFreader("test6_0.bdf");
+
+    hdl_in2 = new EDFreader("test6_0.bdf");
+
+    montage = new EDFmontage(hdl_in2);
+
+    for(j=0; j<20; j++)
+    {
+      if(montage.addDerivation(String.format("d%d", j), new int[]{j, j + 1, 63}, new double[]{1.0, -2.0, 0.25}) != j)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    for(j=0; j<20; j++)
+    {
+      if(montage.fseek(j, 1000 + j, EDFreader.EDFSEEK_SET) != (1000 + j))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(montage.readPhysicalSamples(j, dbuf3) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<100; i++)
+      {
+        dbuf2[i] = 0.0;
+      }
+
+      for(tmp=0; tmp<3; tmp++)
+      {
+        hdl_in.fseek((tmp == 2) ? 63 : (j + tmp), 1000 + j, EDFreader.EDFSEEK_SET);
+
+        if(hdl_in.readPhysicalSamples((tmp == 2) ? 63 : (j + tmp), dbuf) != dbuf.length)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        for(i=0; i<100; i++)
+        {
+          dbuf2[i] += ((tmp == 0) ? 1.0 : ((tmp == 1) ? -2.0 : 0.25)) * dbuf[i];
+        }
+      }
+
+      for(i=0; i<100; i++)
+      {
+        if(Math.abs(dbuf2[i] - dbuf3[i]) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    hdl_in.close();
+
+    hdl_in2.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** statistics ******************************/
+
+  try
+  {
+    stats = EDFstatistics.get("test24.edf");
+
+    if(stats.length != 4)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* F3: 0 - 499 */
+    if(stats[0].getCount() != 500)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(stats[0].getMinimum() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(stats[0].getMaximum() != 499)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(Math.abs(stats[0].getMean() - 249.5) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(Math.abs(stats[0].getVariance() - 20833.25) > 1e-6)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* the bins are 16 units wide */
+    if(Math.abs(stats[0].getPercentile(50) - 249.5) > 8)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(stats[0].getPercentile(0) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(stats[0].getPercentile(100) != 499)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((stats[0].getClippedLow() != 0) || (stats[0].getClippedHigh() != 0))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* Cz: 1000, SpO2: 95 */
+    if((stats[2].getMinimum() != 1000) || (stats[2].getMaximum() != 1000) || (stats[2].getVariance() != 0))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((stats[2].getPercentile(10) != 1000) || (stats[2].getPercentile(90) != 1000))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((stats[3].getCount() != 5) || (Math.abs(stats[3].getMean() - 95) > 1e-9))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* from the cache */
+    if(EDFstatistics.get("test24.edf") != stats)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* partial results of blocks of one datarecord, merged, equal the result of one block */
+  try
+  {
+    hdl_in = new EDFreader("test6_0.bdf");
+
+    statistics = new EDFstatistics();
+
+    if(statistics.setThreads(1) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    stats = statistics.compute(hdl_in);
+
+    if(statistics.setThreads(4) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(statistics.setBlockRecords(1) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    stats2 = statistics.compute(hdl_in);
+
+    if((stats.length != 64) || (stats2.length != 64))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<64; i++)
+    {
+      if((stats[i].getCount() != 2560) || (stats2[i].getCount() != 2560))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if((stats[i].getMinimum() != stats2[i].getMinimum()) || (stats[i].getMaximum() != stats2[i].getMaximum()))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(Math.abs(stats[i].getMean() - stats2[i].getMean()) > 1e-9 * Math.abs(stats[i].getMaximum()))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(Math.abs(stats[i].getVariance() - stats2[i].getVariance()) > 1e-9 * stats[i].getVariance())  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(stats[i].getPercentile(25) != stats2[i].getPercentile(25))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(stats[i].getPercentile(75) != stats2[i].getPercentile(75))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+/* the mean and the extremes of signal 5 read with EDFreader */
+    d_tmp = 0;
+
+    dbuf2[0] = Double.MAX_VALUE;
+
+    dbuf2[1] = -Double.MAX_VALUE;
+
+    hdl_in.rewind(5);
+
+    while((tmp = hdl_in.readPhysicalSamples(5, dbuf3)) > 0)
+    {
+      for(i=0; i<tmp; i++)
+      {
+        d_tmp += dbuf3[i];
+
+        dbuf2[0] = Math.min(dbuf2[0], dbuf3[i]);
+
+        dbuf2[1] = Math.max(dbuf2[1], dbuf3[i]);
+      }
+    }
+
+    if(Math.abs((d_tmp / 2560) - stats2[5].getMean()) > 1e-6)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(Math.abs(dbuf2[0] - stats2[5].getMinimum()) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(Math.abs(dbuf2[1] - stats2[5].getMaximum()) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(statistics.setThreads(0) != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(statistics.setBlockRecords(-1) != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** following ******************************/
+
+  try
+  {
+    hdl_out = new EDFwriter("test25.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 1);
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(hdl_out.setSampleFrequency(0, 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_out.setPhysicalMaximum(0, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_out.setPhysicalMinimum(0, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_out.setDigitalMaximum(0, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(hdl_out.setDigitalMinimum(0, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* the file ends with zeros while it's written */
+  if(hdl_out.setExpectedDuration(60) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* (datarecord * 100) + sample */
+  try
+  {
+    for(tmp=0; tmp<3; tmp++)
+    {
+      for(i=0; i<100; i++)
+      {
+        ibuf[i] = (tmp * 100) + i;
+      }
+
+      if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* the header says -1 datarecords */
+  try
+  {
+    hdl_in = new EDFreader("test25.edf");
+
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    if(e.getErrNum() != EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    hdl_in = new EDFreader("test25.edf", EDFreader.EDFLIB_READ_ALL_ANNOTATIONS, EDFreader.EDFLIB_OPEN_FOLLOW);
+
+    if(hdl_in.getNumDataRecords() != 3)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.getTotalSamples(0) != 300)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.fseek(0, 250, EDFreader.EDFSEEK_SET) != 250)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.readDigitalSamples(0, ibuf2) != 50)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<50; i++)
+    {
+      if(ibuf2[i] != (250 + i))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_in.update() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(tmp=3; tmp<5; tmp++)
+    {
+      for(i=0; i<100; i++)
+      {
+        ibuf[i] = (tmp * 100) + i;
+      }
+
+      if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_in.update() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.getNumDataRecords() != 5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.getFileDuration() != (5 * EDFreader.EDFLIB_TIME_DIMENSION))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* the position of the signal is not changed */
+    if(hdl_in.readDigitalSamples(0, ibuf2) != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<100; i++)
+    {
+      if(ibuf2[i] != (300 + i))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+/* the follower delivers the datarecords that are in the file and the new ones */
+    follower = new EDFfollower("test25.edf", EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+    if(follower.setPollInterval(10) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(follower.setPollInterval(5) != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    follower.addListener((rdr, first, n, buf) ->
+    {
+      if(first != followed.get())  follow_errors.incrementAndGet();
+
+      for(int r=0; r<n; r++)
+      {
+        if(((buf[r * rdr.getDataRecordSize()] & 0xff) | (buf[(r * rdr.getDataRecordSize()) + 1] << 8)) != ((first + r) * 100))
+        {
+          follow_errors.incrementAndGet();
+        }
+      }
+
+      followed.addAndGet(n);
+    });
+
+    follower.start();
+
+    for(i=0; (i<500) && (followed.get() < 5); i++)
+    {
+      Thread.sleep(10);
+    }
+
+    if(followed.get() != 5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<100; i++)
+    {
+      ibuf[i] = 500 + i;
+    }
+
+    if(hdl_out.writeDigitalSamples(ibuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; (i<500) && (followed.get() < 6); i++)
+    {
+      Thread.sleep(10);
+    }
+
+    if(followed.get() != 6)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(follow_errors.get() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(follower.getError() != null)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    follower.close();
+
+/* the writer removes the unused preallocated space */
+    if(hdl_out.writeAnnotation(0, -1, "Recording starts") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.update() != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.update() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.getNumDataRecords() != 6)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in.close();
+
+    hdl_in = new EDFreader("test25.edf");
+
+    if(hdl_in.getNumDataRecords() != 6)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_in.annotationslist.size() != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(InterruptedException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** joining ******************************/
+
+/* test18.edf: signal 0: 1 Hz sine at 200 Hz, signal 1: 0.05 Hz sine at 1 Hz, 60 seconds */
+  try
+  {
+    hdl_in = new EDFreader("test18.edf");
+
+    join = new EDFjoin(hdl_in, new int[]{1, 0}, new int[]{EDFjoin.EDFLIB_JOIN_HOLD, EDFjoin.EDFLIB_JOIN_NEAREST}, 200.0);
+
+    if(join.getNumFrames() != 12000)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(join.getNumChannels() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(j=0; j<12000; j+=tmp)
+    {
+      tmp = join.readFrames(dbuf, 7);
+
+      if(tmp != Math.min(7, 12000 - j))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<tmp; i++)
+      {
+        if(Math.abs(dbuf[i * 2] - (100.0 * Math.sin(2.0 * Math.PI * 0.05 * ((j + i) / 200)))) > 0.01)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        if(Math.abs(dbuf[(i * 2) + 1] - (100.0 * Math.sin(2.0 * Math.PI * (j + i) / 200.0))) > 0.01)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    if(join.readFrames(dbuf, 7) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* random access */
+    if(join.setFramePosition(6001) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(join.readFrames(dbuf, 1) != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(Math.abs(dbuf[0] - (100.0 * Math.sin(2.0 * Math.PI * 0.05 * 30))) > 0.01)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(Math.abs(dbuf[1] - (100.0 * Math.sin(2.0 * Math.PI * 6001 / 200.0))) > 0.01)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(join.setFramePosition(-1) != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* rates that are not a whole number of samples per datarecord */
+    join = new EDFjoin(hdl_in, new int[]{1, 0}, new int[]{EDFjoin.EDFLIB_JOIN_LINEAR, EDFjoin.EDFLIB_JOIN_NEAREST}, 2.5);
+
+    if(join.getNumFrames() != 150)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(j=0; j<150; j+=tmp)
+    {
+      tmp = join.readFrames(dbuf, 50);
+
+      if(tmp != 50)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=j; i<(j + tmp); i++)
+      {
+        d_tmp = i / 2.5;
+
+        l_tmp = (long)d_tmp;
+
+        if(l_tmp < 59)
+        {
+          d_tmp = ((1.0 - (d_tmp - l_tmp)) * Math.sin(2.0 * Math.PI * 0.05 * l_tmp)) + ((d_tmp - l_tmp) * Math.sin(2.0 * Math.PI * 0.05 * (l_tmp + 1)));
+        }
+        else
+        {
+          d_tmp = Math.sin(2.0 * Math.PI * 0.05 * 59);
+        }
+
+        if(Math.abs(dbuf[(i - j) * 2] - (100.0 * d_tmp)) > 0.01)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+        if(Math.abs(dbuf[((i - j) * 2) + 1] - (100.0 * Math.sin(2.0 * Math.PI * i * 80 / 200.0))) > 0.01)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+    if(join.readFrames(dbuf, 50) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    join = new EDFjoin(hdl_in, new int[]{0}, new int[]{EDFjoin.EDFLIB_JOIN_NEAREST}, 30.0);
+
+    if(join.getNumFrames() != 1800)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(j=0; j<1800; j+=tmp)
+    {
+      tmp = join.readFrames(dbuf, 100);
+
+      if(tmp != 100)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=j; i<(j + tmp); i++)
+      {
+        if(Math.abs(dbuf[i - j] - (100.0 * Math.sin(2.0 * Math.PI * Math.min(11999, Math.round(i * 20.0 / 3.0)) / 200.0))) > 0.01)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+
+/* the frames delivered in blocks are the same */
+    if(join.setFramePosition(0) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    l_tmp = join.process((first, n, buf) ->
+    {
+      for(int f=0; f<n; f++)
+      {
+        if(Math.abs(buf[f] - (100.0 * Math.sin(2.0 * Math.PI * Math.min(11999, Math.round((first + f) * 20.0 / 3.0)) / 200.0))) > 0.01)
+        {
+          join_errors.incrementAndGet();
+        }
+      }
+    });
+
+    if(l_tmp != 1800)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(join_errors.get() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    try
+    {
+      join = new EDFjoin(hdl_in, new int[]{0}, new int[]{3}, 30.0);
+
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      if(e.getErrNum() != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    try
+    {
+      join = new EDFjoin(hdl_in, new int[]{0}, new int[]{EDFjoin.EDFLIB_JOIN_HOLD}, 0.0);
+
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(EDFException e)
+    {
+      if(e.getErrNum() != EDFreader.EDFLIB_INVALID_ARGUMENT)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* a consumer of the join: the desaturation detector gets SpO2 (1 Hz, held) aligned with the EEG at 10 Hz */
+  try
+  {
+    hdl_out = new EDFwriter("test30.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 2);
+
+    for(i=0; i<2; i++)
+    {
+      if(hdl_out.setSampleFrequency(i, (i == 0) ? 100 : 1) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMaximum(i, (i == 0) ? 1000 : 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalMinimum(i, (i == 0) ? -1000 : 0) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMaximum(i, 32767) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setDigitalMinimum(i, -32768) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setPhysicalDimension(i, (i == 0) ? "uV" : "%") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_out.setSignalLabel(i, (i == 0) ? "EEG" : "SpO2") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+/* SpO2 96%, a dip to 91% at 100 - 119 s, a dip to 92.5% at 300 - 314 s and a dip of 5 s at 400 s that is too short */
+    for(j=0; j<600; j++)
+    {
+      for(i=0; i<100; i++)
+      {
+        dbuf[i] = 100.0 * Math.sin(2.0 * Math.PI * i / 100.0);
+      }
+
+      if(hdl_out.writePhysicalSamples(dbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      dbuf2[0] = ((j >= 100) && (j < 120)) ? 91.0 : (((j >= 300) && (j < 315)) ? 92.5 : (((j >= 400) && (j < 405)) ? 90.0 : 96.0));
+
+      if(hdl_out.writePhysicalSamples(dbuf2) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in = new EDFreader("test30.edf");
+
+    join = new EDFjoin(hdl_in, new int[]{0, 1}, new int[]{EDFjoin.EDFLIB_JOIN_NEAREST, EDFjoin.EDFLIB_JOIN_HOLD}, 10.0);
+
+    l_tmp = join.process((first, n, buf) ->
+    {
+      for(int f=0; f<n; f++)
+      {
+        joined_desaturation.process(buf[(f * 2) + 1]);
+      }
+    });
+
+    joined_desaturation.finish();
+
+    hdl_in.close();
+
+    if(l_tmp != 6000)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(joined_desaturation.getEventCount() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(joined_desaturation.getApneaCount() != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((joined_desaturation.getEvents().get(0).onset != (100L * EDFreader.EDFLIB_TIME_DIMENSION)) ||
+       (joined_desaturation.getEvents().get(0).duration != (20L * EDFreader.EDFLIB_TIME_DIMENSION)))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!joined_desaturation.getEvents().get(0).description.startsWith(DesaturationDetector.APNEA))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((joined_desaturation.getEvents().get(1).onset != (300L * EDFreader.EDFLIB_TIME_DIMENSION)) ||
+       (joined_desaturation.getEvents().get(1).duration != (15L * EDFreader.EDFLIB_TIME_DIMENSION)))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!joined_desaturation.getEvents().get(1).description.startsWith(DesaturationDetector.DESATURATION))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(Math.abs(joined_desaturation.getOdi() - 12.0) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* the same events as from the SpO2 channel at its own rate */
+    events = DesaturationDetector.detect(EDFProcessor.readSleepRecording("test30.edf").getChannel(SleepRecording.SPO2_CHANNEL)).getEvents();
+
+    if(events.size() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<2; i++)
+    {
+      if((events.get(i).onset != joined_desaturation.getEvents().get(i).onset) ||
+         (events.get(i).duration != joined_desaturation.getEvents().get(i).duration) ||
+         !events.get(i).description.equals(joined_desaturation.getEvents().get(i).description))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** quantizing ******************************/
+
+/* ties are rounded to even, bitvalue is 1 */
+  dbuf2[0] = 0.5;
+  dbuf2[1] = 1.5;
+  dbuf2[2] = 2.5;
+  dbuf2[3] = -0.5;
+  dbuf2[4] = -1.5;
+  dbuf2[5] = -2.5;
+  dbuf2[6] = 3.49;
+  dbuf2[7] = -3.51;
+
+  if(quantize_check(32767, -32768, 32767, -32768, 2, dbuf2, 8, pbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  ibuf[0] = 0;
+  ibuf[1] = 2;
+  ibuf[2] = 2;
+  ibuf[3] = 0;
+  ibuf[4] = -2;
+  ibuf[5] = -2;
+  ibuf[6] = 3;
+  ibuf[7] = -4;
+
+  for(i=0; i<8; i++)
+  {
+    if(((pbuf[i * 2] & 0xff) | (pbuf[(i * 2) + 1] << 8)) != ibuf[i])  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* at and beyond the physical limits */
+  dbuf2[0] = 32767;
+  dbuf2[1] = 32767.4;
+  dbuf2[2] = 32767.5;
+  dbuf2[3] = 40000;
+  dbuf2[4] = 1e12;
+  dbuf2[5] = -32768;
+  dbuf2[6] = -32768.5;
+  dbuf2[7] = -40000;
+  dbuf2[8] = -1e12;
+  dbuf2[9] = Double.MAX_VALUE;
+  dbuf2[10] = -Double.MAX_VALUE;
+
+  if(quantize_check(32767, -32768, 32767, -32768, 2, dbuf2, 11, pbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  for(i=0; i<11; i++)
+  {
+    tmp = (pbuf[i * 2] & 0xff) | (pbuf[(i * 2) + 1] << 8);
+
+    if(tmp != ((dbuf2[i] > 0) ? 32767 : -32768))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  dbuf2[0] = 8388607;
+  dbuf2[1] = 8388607.4;
+  dbuf2[2] = 8388607.5;
+  dbuf2[3] = 9000000;
+  dbuf2[5] = -8388608;
+  dbuf2[6] = -8388608.5;
+  dbuf2[7] = -9000000;
+
+  if(quantize_check(8388607, -8388608, 8388607, -8388608, 3, dbuf2, 11, pbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  for(i=0; i<11; i++)
+  {
+    tmp = (pbuf[i * 3] & 0xff) | ((pbuf[(i * 3) + 1] & 0xff) << 8) | (pbuf[(i * 3) + 2] << 16);
+
+    if(tmp != ((dbuf2[i] > 0) ? 8388607 : -8388608))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* negative values, a bitvalue that is not a power of two and a limited digital range */
+  for(i=0; i<100; i++)
+  {
+    dbuf2[i] = (i - 50) * 4.7321;
+  }
+
+  if(quantize_check(200, -200, 2047, -2048, 2, dbuf2, 100, pbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(quantize_check(-50, -250, 1000, -1000, 3, dbuf2, 100, pbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* negative bitvalue: physical maximum lower than physical minimum */
+  if(quantize_check(-200, 200, 32767, -32768, 2, dbuf2, 100, pbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  for(i=0; i<100; i++)
+  {
+    tmp = (pbuf[i * 2] & 0xff) | (pbuf[(i * 2) + 1] << 8);
+
+    if((dbuf2[i] > 0) && (tmp >= 0))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((dbuf2[i] < 0) && (tmp <= 0))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  if(quantize_check(-2, 2, 8388607, -8388608, 3, dbuf2, 100, pbuf) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/********************************** generating ******************************/
+
+/* the same seed gives the same file with any number of threads, 64 channels at 256 Hz make chunks of 32 seconds */
+  try
+  {
+    for(j=0; j<3; j++)
+    {
+      new SleepDataGenerator().setSeed((j == 2) ? 7L : 12345L)
+                              .setDurationMinutes(3)
+                              .setEegChannels(64)
+                              .setEegSampleRate(256)
+                              .setThreads((j == 0) ? 1 : 4)
+                              .generate(String.format("test31_%d.edf", j));
+    }
+
+    fp = new RandomAccessFile("test31_0.edf", "r");
+
+    str = new byte[(int)fp.length()];
+
+    fp.readFully(str);
+
+    fp.close();
+
+    for(j=1; j<3; j++)
+    {
+      fp = new RandomAccessFile(String.format("test31_%d.edf", j), "r");
+
+      if(fp.length() != str.length)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      pbuf = new byte[str.length];
+
+      fp.readFully(pbuf);
+
+      fp.close();
+
+/* the recording field and the startdate and starttime are the time of generation */
+      for(i=88; i<184; i++)
+      {
+        pbuf[i] = str[i];
+      }
+
+      if(java.util.Arrays.equals(str, pbuf) != (j == 1))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** sleep recording ******************************/
+
+/* physical values outside the 16-bit range are limited to it */
+  channel = SleepRecording.Channel.ofDigital("EEG", "uV", 100.0, 0.0, 3, 0.5, 0.0);
+
+  dbuf2[0] = 100000.0;
+
+  dbuf2[1] = -100000.0;
+
+  dbuf2[2] = 1.0;
+
+  channel.appendPhysical(dbuf2, 3);
+
+  if(channel.get(0) != (0.5 * 32767))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(channel.get(1) != (0.5 * -32768))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(channel.get(2) != 1.0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/********************************** desaturation ******************************/
+
+/* see desaturation_trace() for the dips, 1 Hz, default settings: drop 3%, apnea 4%, 10 - 120 seconds */
+  desaturation = new DesaturationDetector(1.0, 0.0);
+
+  for(i=0; i<1200; i++)
+  {
+    desaturation.process(desaturation_trace(i));
+  }
+
+  desaturation.finish();
+
+  events = desaturation.getEvents();
+
+  if(desaturation.getEventCount() != 5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(desaturation.getApneaCount() != 3)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  ibuf[0] = 100;  ibuf[1] = 20;
+  ibuf[2] = 400;  ibuf[3] = 10;
+  ibuf[4] = 600;  ibuf[5] = 20;
+  ibuf[6] = 850;  ibuf[7] = 20;
+  ibuf[8] = 1180;  ibuf[9] = 20;
+
+  for(i=0; i<5; i++)
+  {
+    if(events.get(i).onset != (ibuf[i * 2] * EDFreader.EDFLIB_TIME_DIMENSION))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(events.get(i).duration != (ibuf[(i * 2) + 1] * EDFreader.EDFLIB_TIME_DIMENSION))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!events.get(i).description.startsWith(((i == 0) || (i == 3)) ? DesaturationDetector.DESATURATION : DesaturationDetector.APNEA))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/* exactly the drop threshold, and 3% below the baseline that was reset to 91% */
+  if(!events.get(0).description.equals(DesaturationDetector.DESATURATION + " 3% (最低 93%)"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(!events.get(3).description.equals(DesaturationDetector.DESATURATION + " 3% (最低 88%)"))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* the 35 artifact samples do not count */
+  if(Math.abs(desaturation.getOdi() - (5.0 * 3600.0 / 1165.0)) > 1e-9)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* the same events from a channel that grows in blocks of 7 samples, as while loading, with the first sample at 2 seconds */
+  channel = SleepRecording.Channel.ofPhysical("SpO2", "%", 1.0, 2.0, 1200, 1.0, 0.0);
+
+  desaturation = new DesaturationDetector(channel.getSampleRate(), channel.getStartTime());
+
+  for(i=0; i<1200; i+=7)
+  {
+    for(j=0; j<7; j++)
+    {
+      dbuf2[j] = desaturation_trace(i + j);
+    }
+
+    channel.appendPhysical(dbuf2, 7);
+
+    desaturation.process(channel, i, channel.size());
+  }
+
+  desaturation.finish();
+
+  if(desaturation.getEventCount() != 5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  for(i=0; i<5; i++)
+  {
+    if(desaturation.getEvents().get(i).onset != (events.get(i).onset + (2L * EDFreader.EDFLIB_TIME_DIMENSION)))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  try
+  {
+    new DesaturationDetector(0.0, 0.0);
+
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IllegalArgumentException e)
+  {
+  }
+
+/* the events written as annotations are read back at the same onsets */
+  try
+  {
+    hdl_out = new EDFwriter("test32.edf", EDFwriter.EDFLIB_FILETYPE_EDFPLUS, 1);
+
+    if(hdl_out.setSampleFrequency(0, 1) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMaximum(0, 100) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalMinimum(0, 0) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMaximum(0, 1000) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setDigitalMinimum(0, 0) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setPhysicalDimension(0, "%") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(hdl_out.setSignalLabel(0, "SpO2") != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<1200; i++)
+    {
+      dbuf2[0] = desaturation_trace(i);
+
+      if(hdl_out.writePhysicalSamples(dbuf2) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    desaturation.writeAnnotations(hdl_out);
+
+    if(hdl_out.close() != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    hdl_in = new EDFreader("test32.edf");
+
+    if(hdl_in.annotationslist.size() != 5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<5; i++)
+    {
+      if(hdl_in.annotationslist.get(i).onset != desaturation.getEvents().get(i).onset)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(hdl_in.annotationslist.get(i).duration != desaturation.getEvents().get(i).duration)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(!hdl_in.annotationslist.get(i).description.equals(desaturation.getEvents().get(i).description))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+/* and the detector finds them again in the file */
+    desaturation = DesaturationDetector.detect(EDFProcessor.readSleepRecording("test32.edf", "SpO2").getChannel(0));
+
+    if(desaturation.getEventCount() != 5)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(i=0; i<5; i++)
+    {
+      if(desaturation.getEvents().get(i).onset != events.get(i).onset)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+    hdl_in.close();
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+/********************************** spectral features ******************************/
+
+/* the fft against a direct dft, the spectrum is added to the array */
+  random = new java.util.Random(42);
+
+  for(tmp=2; tmp<=1024; tmp*=2)
+  {
+    fft = new SpectralFeatures.RealFFT(tmp);
+
+    dbuf = new double[tmp];
+
+    power = new double[(tmp / 2) + 1];
+
+    power2 = new double[(tmp / 2) + 1];
+
+    for(i=0; i<tmp; i++)
+    {
+      dbuf[i] = random.nextGaussian() * 50.0;
+    }
+
+    d_tmp = 0.0;
+
+    for(j=0; j<=(tmp / 2); j++)
+    {
+      dbuf2[0] = 0.0;
+
+      dbuf2[1] = 0.0;
+
+      for(i=0; i<tmp; i++)
+      {
+        dbuf2[0] += dbuf[i] * Math.cos(2.0 * Math.PI * (((long)i * j) % tmp) / tmp);
+
+        dbuf2[1] -= dbuf[i] * Math.sin(2.0 * Math.PI * (((long)i * j) % tmp) / tmp);
+      }
+
+      power2[j] = 2.0 * ((dbuf2[0] * dbuf2[0]) + (dbuf2[1] * dbuf2[1]));
+
+      d_tmp += power2[j];
+    }
+
+    fft.addPowerSpectrum(dbuf.clone(), power);
+
+    fft.addPowerSpectrum(dbuf.clone(), power);
+
+    for(j=0; j<=(tmp / 2); j++)
+    {
+      if(Math.abs(power[j] - power2[j]) > (1e-12 * d_tmp))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+  }
+
+  for(tmp=0; tmp<4; tmp++)
+  {
+    try
+    {
+      new SpectralFeatures.RealFFT((tmp == 0) ? 0 : ((tmp == 1) ? 1 : ((tmp == 2) ? 6 : 1000)));
+
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(IllegalArgumentException e)
+    {
+    }
+  }
+
+/* a sine wave of 10 Hz and 20 uV has a power of 200 uV^2 in the alpha band, */
+/* 100 Hz: segments of 400 samples padded to 512, 60 Hz: segments of 240 samples padded to 256, */
+/* 65 seconds give two epochs, the last 5 seconds are not used */
+  for(tmp=0; tmp<2; tmp++)
+  {
+    channel = SleepRecording.Channel.ofPhysical("EEG", "uV", (tmp == 0) ? 100.0 : 60.0, 0.0, (tmp == 0) ? 6500 : 3900, 1.0, 0.0);
+
+    dbuf = new double[(tmp == 0) ? 6500 : 3900];
+
+    for(i=0; i<dbuf.length; i++)
+    {
+      dbuf[i] = 20.0 * Math.sin(2.0 * Math.PI * 10.0 * i / channel.getSampleRate()) + 5.0;
+    }
+
+    channel.appendPhysical(dbuf, dbuf.length);
+
+    if(SpectralFeatures.getEpochCount(channel) != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    power = new SpectralFeatures().setThreads(1).compute(channel);
+
+    if(power.length != (2 * SpectralFeatures.NUM_BANDS))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(j=0; j<2; j++)
+    {
+      if(Math.abs(power[(j * SpectralFeatures.NUM_BANDS) + SpectralFeatures.ALPHA] - 200.0) > 2.0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<SpectralFeatures.NUM_BANDS; i++)
+      {
+        if((i != SpectralFeatures.ALPHA) && (power[(j * SpectralFeatures.NUM_BANDS) + i] > 0.01))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+    }
+  }
+
+/* the result does not depend on the number of threads, epochs of several channels are computed together */
+  channel = SleepRecording.Channel.ofPhysical("EEG", "uV", 128.0, 0.0, 128 * 3600, 1.0, 0.0);
+
+  dbuf = new double[128 * 3600];
+
+  for(i=0; i<dbuf.length; i++)
+  {
+    dbuf[i] = random.nextGaussian() * 30.0;
+  }
+
+  channel.appendPhysical(dbuf, dbuf.length);
+
+  power = new SpectralFeatures().setThreads(1).compute(channel);
+
+  if(power.length != (120 * SpectralFeatures.NUM_BANDS))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(!java.util.Arrays.equals(new SpectralFeatures().setThreads(4).compute(new SleepRecording.Channel[]{channel, channel})[1], power))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* a channel shorter than one epoch has no epochs */
+  channel = SleepRecording.Channel.ofPhysical("EEG", "uV", 100.0, 0.0, 2999, 1.0, 0.0);
+
+  channel.appendPhysical(dbuf, 2999);
+
+  if(SpectralFeatures.getEpochCount(channel) != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  if(new SpectralFeatures().compute(channel).length != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+  dbuf = new double[100];
+
+/********************************** feature cache ******************************/
+
+/* 3 rows of 2 columns, every computation is counted */
+  try
+  {
+    java.nio.file.Files.copy(new File("test24.edf").toPath(), new File("test33.edf").toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+    cache = new FeatureCache(new File("test33_cache"));
+
+    cache.clear();
+
+    for(j=0; j<2; j++)
+    {
+      features = cache.get("test33.edf", "test", "a=1", 2, () ->
+      {
+        computations.incrementAndGet();
+
+        return new double[]{0, 1, 10, 11, 20, 21};
+      });
+
+/* the first time it is computed, the second time it comes from the cache */
+      if(computations.get() != 1)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if((features.getRows() != 3) || (features.getColumns() != 2))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if((features.get(0, 0) != 0) || (features.get(1, 1) != 11) || (features.get(2, 0) != 20))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+/* range queries, clipped to the rows */
+    if(features.getRows(1, 3, dbuf2) != 4)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((dbuf2[0] != 10) || (dbuf2[1] != 11) || (dbuf2[2] != 20) || (dbuf2[3] != 21))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(features.getRows(-5, 1, dbuf2) != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((dbuf2[0] != 0) || (dbuf2[1] != 1))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(features.getRows(2, 99, dbuf2) != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((dbuf2[0] != 20) || (dbuf2[1] != 21))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if((features.getRows(3, 3, dbuf2) != 0) || (features.getRows(2, 1, dbuf2) != 0))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!java.util.Arrays.equals(features.toArray(), new double[]{0, 1, 10, 11, 20, 21}))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    for(j=0; j<4; j++)
+    {
+      try
+      {
+        features.get((j == 0) ? 3 : ((j == 1) ? -1 : 0), (j == 2) ? 2 : ((j == 3) ? -1 : 0));
+
+        goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+      catch(IndexOutOfBoundsException e)
+      {
+      }
+    }
+
+/* other parameters are a different entry, the first one stays valid */
+    features = cache.get("test33.edf", "test", "a=2", 2, () ->
+    {
+      computations.incrementAndGet();
+
+      return new double[]{5, 6};
+    });
+
+    if((computations.get() != 2) || (features.getRows() != 1) || (features.get(0, 1) != 6))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    features = cache.get("test33.edf", "test", "a=1", 2, () ->
+    {
+      computations.incrementAndGet();
+
+      return new double[]{0, 1, 10, 11, 20, 21};
+    });
+
+    if(computations.get() != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+/* a change of the modification time, the header with the same size and time, and the size */
+    for(j=0; j<3; j++)
+    {
+      l_tmp = new File("test33.edf").lastModified();
+
+      if(j == 0)
+      {
+        if(!new File("test33.edf").setLastModified(l_tmp + 2000))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+      }
+      else if(j == 1)
+        {
+          fp = new RandomAccessFile("test33.edf", "rw");
+
+          fp.seek(8);
+
+          fp.write('Y');
+
+          fp.close();
+
+          if(!new File("test33.edf").setLastModified(l_tmp))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+        }
+        else
+        {
+          fp = new RandomAccessFile("test33.edf", "rw");
+
+          fp.setLength(fp.length() + 1);
+
+          fp.close();
+
+          if(!new File("test33.edf").setLastModified(l_tmp))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+        }
+
+      features = cache.get("test33.edf", "test", "a=1", 2, () ->
+      {
+        computations.incrementAndGet();
+
+        return new double[]{0, 1, 10, 11, 20, 21};
+      });
+
+      if(computations.get() != (3 + j))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(features.get(2, 1) != 21)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+/* a truncated cache file, a cache file shorter than its header and a damaged header are a miss */
+    for(j=0; j<3; j++)
+    {
+      features = null;
+
+      files = new File("test33_cache").listFiles((dir, name) -> name.endsWith(".feat"));
+
+      if(files.length != 2)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      for(i=0; i<files.length; i++)
+      {
+        fp = new RandomAccessFile(files[i], "rw");
+
+        if(j == 0)
+        {
+          fp.setLength(fp.length() - 8);
+        }
+        else if(j == 1)
+          {
+            fp.setLength(10);
+          }
+          else
+          {
+            fp.write('X');
+          }
+
+        fp.close();
+      }
+
+      features = cache.get("test33.edf", "test", "a=1", 2, () ->
+      {
+        computations.incrementAndGet();
+
+        return new double[]{0, 1, 10, 11, 20, 21};
+      });
+
+      if(computations.get() != (6 + j))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+      if(!java.util.Arrays.equals(features.toArray(), new double[]{0, 1, 10, 11, 20, 21}))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+
+/* the number of values must be a multiple of the number of columns */
+    try
+    {
+      cache.get("test33.edf", "test", "a=3", 2, () -> new double[]{1, 2, 3});
+
+      goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+    }
+    catch(IllegalArgumentException e)
+    {
+    }
+
+/* the band power of a file equals the computed band power */
+    features = cache.getBandPower("test30.edf", "EEG");
+
+    power = new SpectralFeatures().compute(EDFProcessor.readSleepRecording("test30.edf", "EEG").getChannel(0));
+
+    if((features.getRows() != 20) || (features.getColumns() != SpectralFeatures.NUM_BANDS))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    if(!java.util.Arrays.equals(features.toArray(), power))  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+
+    cache.clear();
+
+    files = new File("test33_cache").listFiles((dir, name) -> name.endsWith(".feat"));
+
+    if(files.length != 0)  goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(IOException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+  catch(EDFException e)
+  {
+    goto_exit(new Throwable().getStackTrace()[0].getLineNumber());
+  }
+
+  System.exit(0);
+}
+
+private static void goto_exit(int line)
+{
+  System.out.printf("Error, line: %d\n", line);
+
+  System.exit(1);
+}
+
+/* converts n physical samples with EDFwriter.quantize_physical_samples() into dest and */
+/* compares the result with the per-sample formula: clip(physical / bitvalue - offset) rounded half to even, */
+/* values within 1e-6 of a tie are skipped when the bitvalue is not a power of two */
+/* returns the number of samples that differ */
+private static int quantize_check(double physmax, double physmin, int digmax, int digmin, int smp_sz, double[] buf, int n, byte[] dest)
+{
+  int i, value, expected, errors=0;
+
+  double bitvalue, offset, x;
+
+  boolean exact;
+
+  bitvalue = (physmax - physmin) / (digmax - digmin);
+
+  offset = physmax / bitvalue - digmax;
+
+  exact = (Math.abs(bitvalue) == Math.scalb(1.0, Math.getExponent(bitvalue))) && (offset == Math.rint(offset));
+
+  EDFwriter.quantize_physical_samples(buf, 0, n, 1.0 / bitvalue, offset, digmin, digmax, smp_sz, dest, 0);
+
+  for(i=0; i<n; i++)
+  {
+    x = (buf[i] / bitvalue) - offset;
+
+    if(x > digmax)  x = digmax;
+
+    if(x < digmin)  x = digmin;
+
+    if(!exact && (Math.abs(Math.abs(x - Math.floor(x)) - 0.5) < 1e-6))  continue;
+
+    expected = (int)Math.rint(x);
+
+    if(smp_sz == 2)
+    {
+      value = (dest[i * 2] & 0xff) | (dest[(i * 2) + 1] << 8);
+    }
+    else
+    {
+      value = (dest[i * 3] & 0xff) | ((dest[(i * 3) + 1] & 0xff) << 8) | (dest[(i * 3) + 2] << 16);
+    }
+
+    if(value != expected)  errors++;
+  }
+
+  return errors;
+}
+
+/* SpO2 at 1 Hz, 96% with: */
+/*  100 - 119 s: 93%, exactly the drop threshold, desaturation */
+/*  150 - 169 s: 93.5%, not enough */
+/*  300 - 308 s: 91%, too short */
+/*  400 - 409 s: 91%, exactly the minimum duration, apnea */
+/*  500 - 529 s: 0%, artifact */
+/*  600 - 619 s: 91% with an artifact at 605 - 609 s, apnea */
+/*  700 - 899 s: 91%, too long, the baseline is reset to 91% after 120 seconds */
+/*  850 - 869 s: 88%, 3% below the new baseline, desaturation */
+/* 1180 - 1199 s: 91%, still going on at the end, apnea */
+private static double desaturation_trace(int t)
+{
+  if((t >= 100) && (t < 120))  return 93.0;
+
+  if((t >= 150) && (t < 170))  return 93.5;
+
+  if((t >= 300) && (t < 309))  return 91.0;
+
+  if((t >= 400) && (t < 410))  return 91.0;
+
+  if((t >= 500) && (t < 530))  return 0.0;
+
+  if((t >= 605) && (t < 610))  return 0.0;
+
+  if((t >= 600) && (t < 620))  return 91.0;
+
+  if((t >= 850) && (t < 870))  return 88.0;
+
+  if((t >= 700) && (t < 900))  return 91.0;
+
+  if(t >= 1180)  return 91.0;
+
+  return 96.0;
 }
 
 private static int strcpy(byte[] dest, byte[] src)
@@ -0,0 +1,646 @@
+import java.io.*;
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+
+
+/**
+ * Compressed archive format for EDF(+)/BDF(+) files with random access. <br>
+ *<br>
+ * The datarecords are stored in blocks of K datarecords. Inside a block every signal is stored separately:<br>
+ * the samples of the K datarecords are delta encoded (the difference with the previous sample), zigzag encoded<br>
+ * (small negative and positive numbers become small positive numbers) and stored either as varints or bit-packed<br>
+ * with the smallest number of bits that fits all values of the block, whichever is smaller.<br>
+ * The annotation signals are stored as they are, without the trailing zeros of every datarecord.<br>
+ * An index with the position of every block is stored at the end of the archive.<br>
+ *<br>
+ * EDFreader opens archives the same way as EDF and BDF files, all functions work the same.<br>
+ * While reading, only the blocks (and only the signals in those blocks) that are needed are decoded.<br>
+ * The original file can be restored exactly with decompress().<br>
+ *<br>
+ * Layout of the archive (all numbers little-endian):<br>
+ * 48 bytes: "EDFZ", version, header size, datarecord size, number of datarecords, K, number of signals,<br>
+ *           sample size, reserved, position of the index<br>
+ * the header of the EDF(+)/BDF(+) file<br>
+ * per signal (annotation signals included, in the order of the header): bytes per datarecord (int), type (byte)<br>
+ * the blocks: per signal the size of the encoded data (int), followed by the encoded data of every signal<br>
+ * the index: the position of every block and the position of the end of the last block (long)<br>
+ *<br>
+ * Usage: java EDFarchive [-k &lt;datarecords per block&gt;] &lt;input file&gt; &lt;output file&gt;<br>
+ *        java EDFarchive -d &lt;archive&gt; &lt;output file&gt;<br>
+ */
+public class EDFarchive
+{
+
+static final int EDFLIB_ARCHIVE_VERSION = 1;
+
+static final int EDFLIB_ARCHIVE_FIXED_HDR_SZ = 48;
+
+/* signal types */
+static final int EDFLIB_ARCHIVE_SAMPLES = 0;
+static final int EDFLIB_ARCHIVE_RAW     = 1;
+
+/* encodings of the data of one signal in one block */
+static final int EDFLIB_ARCHIVE_VARINT   = 0;
+static final int EDFLIB_ARCHIVE_BITPACK  = 1;
+static final int EDFLIB_ARCHIVE_TRIMMED  = 2;
+
+/* by default the blocks contain approximately this number of bytes of (uncompressed) datarecords */
+private static final int EDFLIB_ARCHIVE_BLOCK_SZ = 64 * 1024;
+
+public static void main(String[] args)
+{
+  int k=0;
+
+  long t;
+
+  try
+  {
+    t = System.nanoTime();
+
+    if((args.length == 3) && args[0].equals("-d"))
+    {
+      decompress(args[1], args[2]);
+    }
+    else if((args.length == 4) && args[0].equals("-k"))
+      {
+        k = Integer.parseInt(args[1]);
+
+        compress(args[2], args[3], k);
+      }
+      else if(args.length == 2)
+        {
+          compress(args[0], args[1], 0);
+        }
+        else
+        {
+          System.out.printf("Usage: java EDFarchive [-k <datarecords per block>] <input file> <output file>\n"
+                            + "       java EDFarchive -d <archive> <output file>\n");
+
+          System.exit(1);
+        }
+
+    t = System.nanoTime() - t;
+
+    System.out.printf("Done in %.3f seconds.\n", t / 1e9);
+  }
+  catch(NumberFormatException e)
+  {
+    System.out.printf("Invalid number.\n");
+
+    System.exit(1);
+  }
+  catch(IOException e)
+  {
+    System.out.printf("An error occurred: %s\n", e.getMessage());
+
+    System.exit(1);
+  }
+  catch(EDFException e)
+  {
+    System.out.printf("An error occurred: %s", e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+/**
+ * Returns true when the file is an archive created by compress(). <br>
+ *
+ * @param path path of the file
+ *
+ * @return true if the file starts with the archive signature
+ */
+public static boolean isArchive(String path)
+{
+  byte[] buf = new byte[4];
+
+  try(RandomAccessFile file = new RandomAccessFile(path, "r"))
+  {
+    if(file.length() < EDFLIB_ARCHIVE_FIXED_HDR_SZ)  return false;
+
+    file.readFully(buf);
+  }
+  catch(IOException e)
+  {
+    return false;
+  }
+
+  return (buf[0] == 'E') && (buf[1] == 'D') && (buf[2] == 'F') && (buf[3] == 'Z');
+}
+
+/* throws an exception when the file is an archive, for the functions that copy the datarecords */
+/* directly from the file instead of reading them with EDFreader (e.g. EDFcrop, EDFextract, EDFconvert) */
+static void reject(String path) throws EDFException
+{
+  if(isArchive(path))
+  {
+    throw new EDFException(EDFreader.EDFLIB_FILETYPE_ERROR, "File is a compressed archive, decompress it first (java EDFarchive -d).\n");
+  }
+}
+
+/**
+ * Compresses an EDF(+)/BDF(+) file into an archive. <br>
+ *
+ * @param src_path path of the EDF(+)/BDF(+) file to read from
+ *
+ * @param dst_path path of the archive to create, an existing file will be overwritten
+ *
+ * @param block_records the number of datarecords per block (K), 0 selects blocks of approximately 64 KB<br>
+ *                      smaller blocks make reading short pieces cheaper, larger blocks compress a little better
+ *
+ * @throws IOException, EDFException
+ */
+public static void compress(String src_path, String dst_path, int block_records) throws IOException, EDFException
+{
+  int i, j, n, ns, smp_sz, hdrsize, recordsize, blocks, pos, start;
+
+  long r, datarecords;
+
+  int[] offset,
+        size,
+        type,
+        smp;
+
+  long[] index;
+
+  byte[] hdr,
+         rbuf,
+         wbuf,
+         tbl;
+
+  ByteBuffer bb;
+
+  EDFreader hdl;
+
+  if((block_records < 0) || (block_records > 1000000))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid number of datarecords per block.\n");
+  }
+
+  EDFarchive.reject(src_path);
+
+  hdl = new EDFreader(src_path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  try
+  {
+    hdr = hdl.getHeader();
+
+    hdrsize = hdl.getHeaderSize();
+
+    recordsize = hdl.getDataRecordSize();
+
+    datarecords = hdl.getNumDataRecords();
+
+    smp_sz = hdl.getSampleSize();
+
+    ns = (hdrsize / 256) - 1;
+
+/* offset and size in the datarecord of every signal, in the order of the header */
+    offset = new int[ns];
+
+    size = new int[ns];
+
+    type = new int[ns];
+
+    for(i=0; i<hdl.getNumSignals(); i++)
+    {
+      j = hdl.getSignalHeaderIndex(i);
+
+      offset[j] = hdl.getSignalRecordOffset(i);
+
+      size[j] = hdl.getSampelsPerDataRecord(i) * smp_sz;
+
+      type[j] = EDFLIB_ARCHIVE_SAMPLES;
+    }
+
+    for(i=0; i<hdl.getNumAnnotationSignals(); i++)
+    {
+      j = hdl.getAnnotationSignalHeaderIndex(i);
+
+      offset[j] = hdl.getAnnotationSignalRecordOffset(i);
+
+      size[j] = hdl.getAnnotationSignalSize(i);
+
+      type[j] = EDFLIB_ARCHIVE_RAW;
+    }
+  }
+  finally
+  {
+    hdl.close();
+  }
+
+  if(block_records == 0)
+  {
+    block_records = Math.max(1, EDFLIB_ARCHIVE_BLOCK_SZ / recordsize);
+  }
+
+/* a block never needs more datarecords than the file has */
+  if(block_records > datarecords)
+  {
+    block_records = (int)Math.max(1L, datarecords);
+  }
+
+  if(block_size(ns, recordsize, block_records) > Integer.MAX_VALUE)
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Too many datarecords per block for this datarecord size.\n");
+  }
+
+  blocks = (int)((datarecords + block_records - 1) / block_records);
+
+  index = new long[blocks + 1];
+
+  rbuf = new byte[block_records * recordsize];
+
+  wbuf = new byte[(int)block_size(ns, recordsize, block_records)];
+
+  smp = new int[(block_records * recordsize) / smp_sz];
+
+  tbl = new byte[ns * 5];
+
+  bb = ByteBuffer.wrap(tbl).order(ByteOrder.LITTLE_ENDIAN);
+
+  for(i=0; i<ns; i++)
+  {
+    bb.putInt(size[i]);
+
+    bb.put((byte)type[i]);
+  }
+
+  try(RandomAccessFile src = new RandomAccessFile(src_path, "r");
+      RandomAccessFile dst = new RandomAccessFile(dst_path, "rw"))
+  {
+    dst.setLength(0L);
+
+    dst.write(fixed_header(hdrsize, recordsize, datarecords, block_records, ns, smp_sz, 0L));
+
+    dst.write(hdr);
+
+    dst.write(tbl);
+
+    src.seek(hdrsize);
+
+    for(j=0, r=0L; j<blocks; j++, r+=n)
+    {
+      n = (int)Math.min(block_records, datarecords - r);
+
+      src.readFully(rbuf, 0, n * recordsize);
+
+      index[j] = dst.getFilePointer();
+
+      pos = ns * 4;
+
+      for(i=0; i<ns; i++)
+      {
+        start = pos;
+
+        if(type[i] == EDFLIB_ARCHIVE_RAW)
+        {
+          pos = encode_raw(rbuf, n, recordsize, offset[i], size[i], wbuf, pos);
+        }
+        else
+        {
+          get_samples(rbuf, n, recordsize, offset[i], size[i] / smp_sz, smp_sz, smp);
+
+          pos = encode_samples(smp, n * (size[i] / smp_sz), wbuf, pos);
+        }
+
+        put_int(wbuf, i * 4, pos - start);
+      }
+
+      dst.write(wbuf, 0, pos);
+    }
+
+    index[blocks] = dst.getFilePointer();
+
+    bb = ByteBuffer.allocate((blocks + 1) * 8).order(ByteOrder.LITTLE_ENDIAN);
+
+    for(j=0; j<=blocks; j++)
+    {
+      bb.putLong(index[j]);
+    }
+
+    dst.write(bb.array());
+
+    dst.seek(0L);
+
+    dst.write(fixed_header(hdrsize, recordsize, datarecords, block_records, ns, smp_sz, index[blocks]));
+  }
+}
+
+/**
+ * Restores the original EDF(+)/BDF(+) file from an archive. <br>
+ *
+ * @param src_path path of the archive
+ *
+ * @param dst_path path of the file to create, an existing file will be overwritten
+ *
+ * @throws IOException, EDFException
+ */
+public static void decompress(String src_path, String dst_path) throws IOException, EDFException
+{
+  int n;
+
+  long pos, len;
+
+  byte[] buf = new byte[EDFLIB_ARCHIVE_BLOCK_SZ * 4];
+
+  try(EDFarchiveFile src = new EDFarchiveFile(src_path);
+      RandomAccessFile dst = new RandomAccessFile(dst_path, "rw"))
+  {
+    dst.setLength(0L);
+
+    len = src.length();
+
+    for(pos=0L; pos<len; pos+=n)
+    {
+      n = (int)Math.min(buf.length, len - pos);
+
+      src.readFully(buf, 0, n);
+
+      dst.write(buf, 0, n);
+    }
+  }
+}
+
+/* The size of the largest compressed block, used as the size of the write buffer. */
+/* Worst case: 3 bytes per 16-bit and 4 bytes per 24-bit sample, plus the sizes, encodings and first values. */
+static long block_size(int ns, int recordsize, int block_records)
+{
+  return (ns * 4L) + ((long)block_records * recordsize * 3L) + (ns * 16L);
+}
+
+private static byte[] fixed_header(int hdrsize, int recordsize, long datarecords, int block_records, int ns, int smp_sz, long index_pos)
+{
+  ByteBuffer bb = ByteBuffer.allocate(EDFLIB_ARCHIVE_FIXED_HDR_SZ).order(ByteOrder.LITTLE_ENDIAN);
+
+  bb.put(new byte[]{'E', 'D', 'F', 'Z'});
+  bb.putInt(EDFLIB_ARCHIVE_VERSION);
+  bb.putInt(hdrsize);
+  bb.putInt(recordsize);
+  bb.putLong(datarecords);
+  bb.putInt(block_records);
+  bb.putInt(ns);
+  bb.putInt(smp_sz);
+  bb.putInt(0);
+  bb.putLong(index_pos);
+
+  return bb.array();
+}
+
+/* collects the samples of one signal from n datarecords */
+private static void get_samples(byte[] buf, int n, int recordsize, int offset, int spr, int smp_sz, int[] smp)
+{
+  int i, j, p, k=0;
+
+  for(i=0; i<n; i++)
+  {
+    p = (i * recordsize) + offset;
+
+    if(smp_sz == 2)
+    {
+      for(j=0; j<spr; j++, p+=2)
+      {
+        smp[k++] = (buf[p] & 0xff) | (buf[p + 1] << 8);
+      }
+    }
+    else
+    {
+      for(j=0; j<spr; j++, p+=3)
+      {
+        smp[k++] = (buf[p] & 0xff) | ((buf[p + 1] & 0xff) << 8) | (buf[p + 2] << 16);
+      }
+    }
+  }
+}
+
+/* Encodes n samples: the first sample and the differences between successive samples, zigzag encoded. */
+/* The differences are stored as varints or bit-packed, whichever is smaller. Returns the new position in out. */
+static int encode_samples(int[] smp, int n, byte[] out, int pos)
+{
+  int i, v, bits=0;
+
+  long varint_sz=0L, packed_sz, acc=0L;
+
+  int nbits=0;
+
+  if(n < 1)  return pos;
+
+  for(i=1; i<n; i++)
+  {
+    v = zigzag(smp[i] - smp[i - 1]);
+
+    varint_sz += varint_size(v);
+
+    bits = Math.max(bits, 32 - Integer.numberOfLeadingZeros(v));
+  }
+
+  packed_sz = 1L + ((((long)bits * (n - 1)) + 7L) / 8L);
+
+  if(varint_sz <= packed_sz)
+  {
+    out[pos++] = EDFLIB_ARCHIVE_VARINT;
+
+    pos = put_varint(out, pos, zigzag(smp[0]));
+
+    for(i=1; i<n; i++)
+    {
+      pos = put_varint(out, pos, zigzag(smp[i] - smp[i - 1]));
+    }
+
+    return pos;
+  }
+
+  out[pos++] = EDFLIB_ARCHIVE_BITPACK;
+
+  pos = put_varint(out, pos, zigzag(smp[0]));
+
+  out[pos++] = (byte)bits;
+
+  for(i=1; i<n; i++)
+  {
+    acc |= ((long)zigzag(smp[i] - smp[i - 1])) << nbits;
+
+    nbits += bits;
+
+    while(nbits >= 8)
+    {
+      out[pos++] = (byte)acc;
+
+      acc >>>= 8;
+
+      nbits -= 8;
+    }
+  }
+
+  if(nbits > 0)
+  {
+    out[pos++] = (byte)acc;
+  }
+
+  return pos;
+}
+
+/* decodes n samples encoded by encode_samples() from in (starting at pos) into smp */
+static void decode_samples(byte[] in, int pos, int n, int[] smp)
+{
+  int i, v, bits, nbits=0;
+
+  long acc=0L, mask;
+
+  int[] p = new int[]{pos};
+
+  if(n < 1)  return;
+
+  if(in[p[0]++] == EDFLIB_ARCHIVE_VARINT)
+  {
+    smp[0] = unzigzag(get_varint(in, p));
+
+    for(i=1; i<n; i++)
+    {
+      smp[i] = smp[i - 1] + unzigzag(get_varint(in, p));
+    }
+
+    return;
+  }
+
+  smp[0] = unzigzag(get_varint(in, p));
+
+  bits = in[p[0]++];
+
+  mask = (1L << bits) - 1L;
+
+  pos = p[0];
+
+  for(i=1; i<n; i++)
+  {
+    while(nbits < bits)
+    {
+      acc |= ((long)(in[pos++] & 0xff)) << nbits;
+
+      nbits += 8;
+    }
+
+    v = (int)(acc & mask);
+
+    acc >>>= bits;
+
+    nbits -= bits;
+
+    smp[i] = smp[i - 1] + unzigzag(v);
+  }
+}
+
+/* stores an annotation signal of n datarecords, every datarecord without its trailing zeros */
+private static int encode_raw(byte[] buf, int n, int recordsize, int offset, int size, byte[] out, int pos)
+{
+  int i, len, p;
+
+  out[pos++] = EDFLIB_ARCHIVE_TRIMMED;
+
+  for(i=0; i<n; i++)
+  {
+    p = (i * recordsize) + offset;
+
+    for(len=size; (len > 0) && (buf[p + len - 1] == 0); len--);
+
+    pos = put_varint(out, pos, len);
+
+    System.arraycopy(buf, p, out, pos, len);
+
+    pos += len;
+  }
+
+  return pos;
+}
+
+/* decodes an annotation signal of n datarecords into buf */
+static void decode_raw(byte[] in, int pos, int n, int recordsize, int offset, int size, byte[] buf)
+{
+  int i, len, p;
+
+  int[] pp = new int[]{pos + 1};
+
+  for(i=0; i<n; i++)
+  {
+    len = get_varint(in, pp);
+
+    p = (i * recordsize) + offset;
+
+    System.arraycopy(in, pp[0], buf, p, len);
+
+    Arrays.fill(buf, p + len, p + size, (byte)0);
+
+    pp[0] += len;
+  }
+}
+
+private static int zigzag(int v)
+{
+  return (v << 1) ^ (v >> 31);
+}
+
+private static int unzigzag(int v)
+{
+  return (v >>> 1) ^ -(v & 1);
+}
+
+private static int varint_size(int v)
+{
+  int n=1;
+
+  while((v & ~0x7f) != 0)
+  {
+    v >>>= 7;
+
+    n++;
+  }
+
+  return n;
+}
+
+private static int put_varint(byte[] buf, int pos, int v)
+{
+  while((v & ~0x7f) != 0)
+  {
+    buf[pos++] = (byte)((v & 0x7f) | 0x80);
+
+    v >>>= 7;
+  }
+
+  buf[pos++] = (byte)v;
+
+  return pos;
+}
+
+/* reads a varint at pos[0], pos[0] is moved to the next byte after the varint */
+private static int get_varint(byte[] buf, int[] pos)
+{
+  int v=0, shift=0, b;
+
+  do
+  {
+    b = buf[pos[0]++];
+
+    v |= (b & 0x7f) << shift;
+
+    shift += 7;
+  }
+  while((b & 0x80) != 0);
+
+  return v;
+}
+
+private static void put_int(byte[] buf, int pos, int v)
+{
+  buf[pos] = (byte)v;
+  buf[pos + 1] = (byte)(v >> 8);
+  buf[pos + 2] = (byte)(v >> 16);
+  buf[pos + 3] = (byte)(v >> 24);
+}
+
+}
+
+
+
+
@@ -0,0 +1,489 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.lang.*;
+import java.util.*;
+
+
+/*
+ * Read-only view of an archive (see EDFarchive) that looks like the original EDF(+)/BDF(+) file.
+ * EDFreader uses it instead of a RandomAccessFile when it opens an archive, seek(), read() and length()
+ * behave exactly as if the original file was opened.
+ *
+ * The data of a signal in a block is decoded the first time it's needed. A few decoded blocks are kept,
+ * this way reading several signals that are not at the same position (e.g. EDFresampler) does not
+ * decode the same block again and again.
+ * The compressed data is read with positional reads on the FileChannel, the file pointer of the
+ * RandomAccessFile itself is not used.
+ */
+class EDFarchiveFile extends RandomAccessFile
+{
+
+/* number of decoded blocks that are kept */
+private static final int EDFLIB_ARCHIVE_CACHED_BLOCKS = 4;
+
+private FileChannel channel;
+
+private byte[] hdr;
+
+private int hdrsize;
+
+private int recordsize;
+
+private long datarecords;
+
+private int block_records;
+
+private int ns;
+
+private int smp_sz;
+
+private long[] index;
+
+private int[] offset;    /* offset of every signal in the datarecord */
+
+private int[] size;      /* bytes of every signal in the datarecord */
+
+private int[] type;
+
+private long length;
+
+private long pntr;
+
+private CachedBlock[] cache;
+
+private long use_counter;
+
+private int[] smp;
+
+private byte[] payload;
+
+private static class CachedBlock
+{
+  int       block=-1;
+
+  int       records;
+
+  long      last_used;
+
+  byte[]    data;
+
+  boolean[] decoded;
+
+  long[]    payload_pos;   /* position of the data of every signal in the archive */
+
+  int[]     payload_size;
+}
+
+EDFarchiveFile(String path) throws IOException, EDFException
+{
+  super(path, "r");
+
+  int i, blocks;
+
+  long index_pos;
+
+  ByteBuffer bb;
+
+  try
+  {
+    channel = getChannel();
+
+    bb = ByteBuffer.allocate(EDFarchive.EDFLIB_ARCHIVE_FIXED_HDR_SZ).order(ByteOrder.LITTLE_ENDIAN);
+
+    read_fully(bb, 0L);
+
+    bb.flip();
+
+    if((bb.get() != 'E') || (bb.get() != 'D') || (bb.get() != 'F') || (bb.get() != 'Z') || (bb.getInt() != EDFarchive.EDFLIB_ARCHIVE_VERSION))
+    {
+      throw new EDFException(EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, "File is not a valid archive.\n");
+    }
+
+    hdrsize = bb.getInt();
+
+    recordsize = bb.getInt();
+
+    datarecords = bb.getLong();
+
+    block_records = bb.getInt();
+
+    ns = bb.getInt();
+
+    smp_sz = bb.getInt();
+
+    bb.getInt();
+
+    index_pos = bb.getLong();
+
+    if((hdrsize != ((ns + 1) * 256)) || (recordsize < 1) || (datarecords < 0L) || (block_records < 1) ||
+       ((smp_sz != 2) && (smp_sz != 3)) || (index_pos < EDFarchive.EDFLIB_ARCHIVE_FIXED_HDR_SZ))
+    {
+      throw new EDFException(EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, "File is not a valid archive.\n");
+    }
+
+/* the same limits as when the archive was written */
+    if(block_records > datarecords)
+    {
+      block_records = (int)Math.max(1L, datarecords);
+    }
+
+    if((EDFarchive.block_size(ns, recordsize, block_records) > Integer.MAX_VALUE) ||
+       (((datarecords + block_records - 1) / block_records) >= ((Integer.MAX_VALUE / 8) - 1)))
+    {
+      throw new EDFException(EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, "File is not a valid archive.\n");
+    }
+
+    hdr = new byte[hdrsize];
+
+    read_fully(ByteBuffer.wrap(hdr), EDFarchive.EDFLIB_ARCHIVE_FIXED_HDR_SZ);
+
+    bb = ByteBuffer.allocate(ns * 5).order(ByteOrder.LITTLE_ENDIAN);
+
+    read_fully(bb, EDFarchive.EDFLIB_ARCHIVE_FIXED_HDR_SZ + hdrsize);
+
+    bb.flip();
+
+    offset = new int[ns];
+
+    size = new int[ns];
+
+    type = new int[ns];
+
+    for(i=0; i<ns; i++)
+    {
+      offset[i] = (i == 0) ? 0 : (offset[i - 1] + size[i - 1]);
+
+      size[i] = bb.getInt();
+
+      type[i] = bb.get();
+    }
+
+    if((offset[ns - 1] + size[ns - 1]) != recordsize)
+    {
+      throw new EDFException(EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, "File is not a valid archive.\n");
+    }
+
+    blocks = (int)((datarecords + block_records - 1) / block_records);
+
+    index = new long[blocks + 1];
+
+    bb = ByteBuffer.allocate((blocks + 1) * 8).order(ByteOrder.LITTLE_ENDIAN);
+
+    read_fully(bb, index_pos);
+
+    bb.flip();
+
+    for(i=0; i<=blocks; i++)
+    {
+      index[i] = bb.getLong();
+    }
+
+    length = hdrsize + (datarecords * recordsize);
+
+    cache = new CachedBlock[EDFLIB_ARCHIVE_CACHED_BLOCKS];
+
+    for(i=0; i<EDFLIB_ARCHIVE_CACHED_BLOCKS; i++)
+    {
+      cache[i] = new CachedBlock();
+    }
+
+    smp = new int[(block_records * recordsize) / smp_sz];
+
+    payload = new byte[1024];
+  }
+  catch(IOException | EDFException | RuntimeException e)
+  {
+    super.close();
+
+    throw e;
+  }
+}
+
+@Override
+public long length()
+{
+  return length;
+}
+
+@Override
+public long getFilePointer()
+{
+  return pntr;
+}
+
+@Override
+public void seek(long pos) throws IOException
+{
+  if(pos < 0L)
+  {
+    throw new IOException("Negative seek offset.");
+  }
+
+  pntr = pos;
+}
+
+@Override
+public int read() throws IOException
+{
+  int b;
+
+  CachedBlock blk;
+
+  long rec;
+
+  if(pntr >= length)  return -1;
+
+  if(pntr < hdrsize)
+  {
+    return hdr[(int)(pntr++)] & 0xff;
+  }
+
+  rec = (pntr - hdrsize) / recordsize;
+
+  blk = get_block((int)(rec / block_records), signal_at((int)((pntr - hdrsize) % recordsize)));
+
+  b = blk.data[(int)((pntr - hdrsize) - ((long)blk.block * block_records * recordsize))] & 0xff;
+
+  pntr++;
+
+  return b;
+}
+
+@Override
+public int read(byte[] b) throws IOException
+{
+  return read(b, 0, b.length);
+}
+
+@Override
+public int read(byte[] b, int off, int len) throws IOException
+{
+  int n, done=0, s, in_rec, blk_pos;
+
+  long rec;
+
+  CachedBlock blk;
+
+  if(len == 0)  return 0;
+
+  if(pntr >= length)  return -1;
+
+  while((done < len) && (pntr < length))
+  {
+    if(pntr < hdrsize)
+    {
+      n = (int)Math.min(len - done, hdrsize - pntr);
+
+      System.arraycopy(hdr, (int)pntr, b, off + done, n);
+    }
+    else
+    {
+      rec = (pntr - hdrsize) / recordsize;
+
+      in_rec = (int)((pntr - hdrsize) % recordsize);
+
+      s = signal_at(in_rec);
+
+      blk = get_block((int)(rec / block_records), s);
+
+/* copy up to the end of the signal in this datarecord */
+      n = Math.min(len - done, offset[s] + size[s] - in_rec);
+
+      blk_pos = (int)((pntr - hdrsize) - ((long)blk.block * block_records * recordsize));
+
+      System.arraycopy(blk.data, blk_pos, b, off + done, n);
+    }
+
+    pntr += n;
+
+    done += n;
+  }
+
+  return done;
+}
+
+@Override
+public void setLength(long newLength) throws IOException
+{
+  throw new IOException("Archive is read-only.");
+}
+
+/* returns the signal at position pos in the datarecord */
+private int signal_at(int pos)
+{
+  int lo=0, hi=ns-1, mid;
+
+  while(lo < hi)
+  {
+    mid = (lo + hi + 1) / 2;
+
+    if(offset[mid] <= pos)
+    {
+      lo = mid;
+    }
+    else
+    {
+      hi = mid - 1;
+    }
+  }
+
+  return lo;
+}
+
+/* returns the block from the cache, the data of signal s is decoded if it's not decoded yet */
+private CachedBlock get_block(int block, int s) throws IOException
+{
+  int i;
+
+  CachedBlock blk=null, lru;
+
+  lru = cache[0];
+
+  for(i=0; i<EDFLIB_ARCHIVE_CACHED_BLOCKS; i++)
+  {
+    if(cache[i].block == block)
+    {
+      blk = cache[i];
+
+      break;
+    }
+
+    if(cache[i].last_used < lru.last_used)  lru = cache[i];
+  }
+
+  if(blk == null)
+  {
+    blk = lru;
+
+    load_block_directory(blk, block);
+  }
+
+  blk.last_used = ++use_counter;
+
+  if(!blk.decoded[s])
+  {
+    decode_signal(blk, s);
+  }
+
+  return blk;
+}
+
+/* reads the sizes of the data of the signals in the block */
+private void load_block_directory(CachedBlock blk, int block) throws IOException
+{
+  int i;
+
+  long pos;
+
+  ByteBuffer bb;
+
+  if(blk.data == null)
+  {
+    blk.data = new byte[block_records * recordsize];
+
+    blk.decoded = new boolean[ns];
+
+    blk.payload_pos = new long[ns];
+
+    blk.payload_size = new int[ns];
+  }
+
+  blk.block = -1;
+
+  bb = ByteBuffer.allocate(ns * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+  read_fully(bb, index[block]);
+
+  bb.flip();
+
+  pos = index[block] + (ns * 4);
+
+  for(i=0; i<ns; i++)
+  {
+    blk.payload_size[i] = bb.getInt();
+
+    blk.payload_pos[i] = pos;
+
+    pos += blk.payload_size[i];
+
+    blk.decoded[i] = false;
+  }
+
+  if(pos > index[block + 1])
+  {
+    throw new IOException("Archive is corrupt.");
+  }
+
+  blk.records = (int)Math.min(block_records, datarecords - ((long)block * block_records));
+
+  blk.block = block;
+}
+
+/* decodes the data of signal s in the block */
+private void decode_signal(CachedBlock blk, int s) throws IOException
+{
+  int i, j, k, p, spr, v;
+
+  if(payload.length < blk.payload_size[s])
+  {
+    payload = new byte[blk.payload_size[s]];
+  }
+
+  read_fully(ByteBuffer.wrap(payload, 0, blk.payload_size[s]), blk.payload_pos[s]);
+
+  if(type[s] == EDFarchive.EDFLIB_ARCHIVE_RAW)
+  {
+    EDFarchive.decode_raw(payload, 0, blk.records, recordsize, offset[s], size[s], blk.data);
+  }
+  else
+  {
+    spr = size[s] / smp_sz;
+
+    EDFarchive.decode_samples(payload, 0, blk.records * spr, smp);
+
+    for(i=0, k=0; i<blk.records; i++)
+    {
+      p = (i * recordsize) + offset[s];
+
+      for(j=0; j<spr; j++)
+      {
+        v = smp[k++];
+
+        blk.data[p++] = (byte)v;
+        blk.data[p++] = (byte)(v >> 8);
+
+        if(smp_sz == 3)
+        {
+          blk.data[p++] = (byte)(v >> 16);
+        }
+      }
+    }
+  }
+
+  blk.decoded[s] = true;
+}
+
+/* positional read of the compressed data, fills bb completely */
+private void read_fully(ByteBuffer bb, long pos) throws IOException
+{
+  int n;
+
+  while(bb.hasRemaining())
+  {
+    n = channel.read(bb, pos);
+
+    if(n < 0)
+    {
+      throw new EOFException("Unexpected end of archive.");
+    }
+
+    pos += n;
+  }
+}
+
+}
+
+
+
+
@@ -0,0 +1,727 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+
+/**
+ * Runs an operation on many EDF(+)/BDF(+) files in parallel. <br>
+ *<br>
+ * The files are processed on a work-stealing pool (ForkJoinPool). The list of files is split recursively,<br>
+ * threads that run out of work take over the unprocessed halves of the other threads, this way a few large files<br>
+ * do not keep the other threads idle. The number of threads that read or write at the same time is limited<br>
+ * separately (by default 4), so a large pool does not flood the disk with requests.<br>
+ * Only the reads and writes themselves are limited, checking and converting the samples is not.<br>
+ *<br>
+ * For every file one line with the result is written in JSON format (JSON lines), in the order the files<br>
+ * are finished. The last line contains the totals: number of files, failures, bytes processed, MB/s and files/s.<br>
+ *<br>
+ * Operations:<br>
+ * probe     reads the header and reports filetype, signals, datarecords, duration and starttime<br>
+ * validate  checks the header, the filesize, all TAL's and the range of the samples (see EDFvalidator)<br>
+ * crop      copies a range of datarecords into the output directory (see EDFcrop)<br>
+ * convert   converts EDF to BDF and BDF to EDF into the output directory (see EDFconvert)<br>
+ * export    exports the signals to float32 files in a subdirectory per file of the output directory (see EDFexporter)<br>
+ *<br>
+ * The directory tree below the deepest directory that contains all input files is kept in the output directory,<br>
+ * e.g. a/x.edf and b/x.edf are copied to &lt;output&gt;/a/x.edf and &lt;output&gt;/b/x.edf. A file whose output would be the same<br>
+ * as the output of another file (e.g. x.edf and x.bdf in the same directory when exporting) fails instead of overwriting it.<br>
+ *<br>
+ * Usage: java EDFbatch [options] &lt;operation&gt; &lt;directory | @manifest&gt;<br>
+ * A directory is searched recursively for files with the extension .edf or .bdf,<br>
+ * a manifest is a textfile with one path per line (empty lines and lines starting with # are skipped).<br>
+ *<br>
+ * Options:<br>
+ * -threads &lt;n&gt;                  number of threads in the pool (default: number of processors)<br>
+ * -io &lt;n&gt;                       maximum number of threads that read or write at the same time (default 4)<br>
+ * -o &lt;directory&gt;                output directory for crop, convert and export<br>
+ * -crop &lt;first&gt; &lt;records&gt;      range of datarecords for crop<br>
+ * -dither                       add dither when converting BDF to EDF<br>
+ */
+public class EDFbatch
+{
+
+public static final int EDFBATCH_PROBE    = 0;
+public static final int EDFBATCH_VALIDATE = 1;
+public static final int EDFBATCH_CROP     = 2;
+public static final int EDFBATCH_CONVERT  = 3;
+public static final int EDFBATCH_EXPORT   = 4;
+
+private static final String[] op_names = {"probe", "validate", "crop", "convert", "export"};
+
+private static final String[] filetype_names = {"EDF", "EDF+", "BDF", "BDF+"};
+
+private int operation;
+
+private int threads;
+
+private int io_limit;
+
+private String out_dir;
+
+/* the deepest directory that contains all input files, the directory tree below it is mirrored in out_dir */
+private Path in_root;
+
+/* the output files that have been claimed by an input file */
+private Set<String> outputs;
+
+private long crop_first;
+
+private long crop_records;
+
+private boolean dither;
+
+private EDFiolimit io;
+
+private PrintStream out;
+
+private LongAdder bytes_processed;
+
+private AtomicInteger failures;
+
+public static void main(String[] args)
+{
+  int i, threads=0, io_limit=0, failed;
+
+  long crop_first=0L, crop_records=-1L;
+
+  boolean dither=false;
+
+  String out_dir=null;
+
+  EDFbatch batch;
+
+  ArrayList<String> files;
+
+  try
+  {
+    for(i=0; (i<args.length) && args[i].startsWith("-"); i++)
+    {
+      if(args[i].equals("-threads") && ((i + 1) < args.length))
+      {
+        threads = Integer.parseInt(args[++i]);
+      }
+      else if(args[i].equals("-io") && ((i + 1) < args.length))
+        {
+          io_limit = Integer.parseInt(args[++i]);
+        }
+        else if(args[i].equals("-o") && ((i + 1) < args.length))
+          {
+            out_dir = args[++i];
+          }
+          else if(args[i].equals("-crop") && ((i + 2) < args.length))
+            {
+              crop_first = Long.parseLong(args[++i]);
+
+              crop_records = Long.parseLong(args[++i]);
+            }
+            else if(args[i].equals("-dither"))
+              {
+                dither = true;
+              }
+              else
+              {
+                usage();
+              }
+    }
+
+    if(((i + 2) != args.length) || (!Arrays.asList(op_names).contains(args[i])))
+    {
+      usage();
+    }
+
+    batch = new EDFbatch(Arrays.asList(op_names).indexOf(args[i]));
+
+    if((threads != 0) && (batch.setThreads(threads) != 0))  usage();
+
+    if((io_limit != 0) && (batch.setIOLimit(io_limit) != 0))  usage();
+
+    if((crop_records != -1L) && (batch.setCropRange(crop_first, crop_records) != 0))  usage();
+
+    batch.setOutputDirectory(out_dir);
+
+    batch.setDither(dither);
+
+    files = listFiles(args[i + 1]);
+
+    failed = batch.run(files, System.out);
+
+    System.exit((failed == 0) ? 0 : 2);
+  }
+  catch(NumberFormatException e)
+  {
+    System.err.printf("Invalid number.\n");
+
+    System.exit(1);
+  }
+  catch(IOException e)
+  {
+    System.err.printf("An error occurred: %s\n", e.getMessage());
+
+    System.exit(1);
+  }
+  catch(EDFException e)
+  {
+    System.err.printf("An error occurred: %s", e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+private static void usage()
+{
+  System.err.printf("Usage: java EDFbatch [-threads <n>] [-io <n>] [-o <directory>] [-crop <first> <records>] [-dither]\n"
+                    + "                    <probe | validate | crop | convert | export> <directory | @manifest>\n");
+
+  System.exit(1);
+}
+
+/**
+ * Creates a batch for one of the operations EDFBATCH_PROBE, EDFBATCH_VALIDATE, EDFBATCH_CROP, EDFBATCH_CONVERT or EDFBATCH_EXPORT. <br>
+ *
+ * @param p_operation the operation to run on every file
+ *
+ * @throws EDFException
+ */
+public EDFbatch(int p_operation) throws EDFException
+{
+  if((p_operation < EDFBATCH_PROBE) || (p_operation > EDFBATCH_EXPORT))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid operation.\n");
+  }
+
+  operation = p_operation;
+
+  threads = Runtime.getRuntime().availableProcessors();
+
+  io_limit = 4;
+
+  crop_records = -1L;
+}
+
+/**
+ * Sets the number of threads in the pool. <br>
+ * Default is the number of processors.<br>
+ *
+ * @param n number of threads, 1 - 256
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setThreads(int n)
+{
+  if((n < 1) || (n > 256))  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  threads = n;
+
+  return 0;
+}
+
+/**
+ * Sets the maximum number of threads that read or write at the same time. <br>
+ * Default is 4. For a single harddisk 1 or 2 is usually faster, for an SSD or a network filesystem<br>
+ * a higher number can be faster.<br>
+ *
+ * @param n maximum number of files, 1 - 256
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setIOLimit(int n)
+{
+  if((n < 1) || (n > 256))  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  io_limit = n;
+
+  return 0;
+}
+
+/**
+ * Sets the directory where the files created by crop, convert and export are stored. <br>
+ * The directory is created when it does not exist. The new files get the name of the original file<br>
+ * (for convert with the extension .edf or .bdf), export creates a subdirectory with the name of the file<br>
+ * without extension.<br>
+ *
+ * @param dir the output directory
+ */
+public void setOutputDirectory(String dir)
+{
+  out_dir = dir;
+}
+
+/**
+ * Sets the range of datarecords to copy for crop. <br>
+ *
+ * @param first the first datarecord to copy, zero-based
+ *
+ * @param records the number of datarecords to copy
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setCropRange(long first, long records)
+{
+  if((first < 0L) || (records < 1L))  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  crop_first = first;
+
+  crop_records = records;
+
+  return 0;
+}
+
+/**
+ * When true, dither is added when converting BDF to EDF. <br>
+ * Default is false.<br>
+ *
+ * @param p_dither true to add dither
+ */
+public void setDither(boolean p_dither)
+{
+  dither = p_dither;
+}
+
+/**
+ * Returns the files in a directory (searched recursively) with the extension .edf or .bdf, sorted by path. <br>
+ * When path starts with @, the rest of path is the name of a manifest: a textfile with one path per line.<br>
+ *
+ * @param path directory or @manifest
+ *
+ * @throws IOException
+ *
+ * @return the list of files
+ */
+public static ArrayList<String> listFiles(String path) throws IOException
+{
+  String line;
+
+  ArrayList<String> files = new ArrayList<String>();
+
+  if(path.startsWith("@"))
+  {
+    try(BufferedReader reader = new BufferedReader(new FileReader(path.substring(1))))
+    {
+      while((line = reader.readLine()) != null)
+      {
+        line = line.trim();
+
+        if((line.length() > 0) && (!line.startsWith("#")))
+        {
+          files.add(line);
+        }
+      }
+    }
+
+    return files;
+  }
+
+  try(Stream<Path> stream = Files.walk(Paths.get(path)))
+  {
+    stream.filter(p -> Files.isRegularFile(p))
+          .map(p -> p.toString())
+          .filter(s -> s.toLowerCase().endsWith(".edf") || s.toLowerCase().endsWith(".bdf"))
+          .sorted()
+          .forEach(s -> files.add(s));
+  }
+
+  return files;
+}
+
+/**
+ * Runs the operation on all files and writes the results to p_out in JSON lines format. <br>
+ * Returns after all files have been processed.<br>
+ *
+ * @param files the paths of the files
+ *
+ * @param p_out destination of the results, one line per file followed by a line with the totals
+ *
+ * @throws EDFException
+ *
+ * @return the number of files that failed
+ */
+public int run(List<String> files, PrintStream p_out) throws EDFException
+{
+  long t;
+
+  double seconds;
+
+  ForkJoinPool pool;
+
+  if(((operation == EDFBATCH_CROP) || (operation == EDFBATCH_CONVERT) || (operation == EDFBATCH_EXPORT)) && (out_dir == null))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "No output directory.\n");
+  }
+
+  if((operation == EDFBATCH_CROP) && (crop_records < 1L))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "No range of datarecords.\n");
+  }
+
+  out = p_out;
+
+  in_root = common_directory(files);
+
+  outputs = ConcurrentHashMap.newKeySet();
+
+  io = new EDFiolimit(io_limit);
+
+  bytes_processed = new LongAdder();
+
+  failures = new AtomicInteger();
+
+  t = System.nanoTime();
+
+  pool = new ForkJoinPool(threads);
+
+  try
+  {
+    pool.invoke(new FileRange(files, 0, files.size()));
+  }
+  finally
+  {
+    pool.shutdown();
+  }
+
+  seconds = Math.max(System.nanoTime() - t, 1L) / 1e9;
+
+  synchronized(out)
+  {
+    out.printf(Locale.ROOT, "{\"summary\":true,\"op\":\"%s\",\"files\":%d,\"failed\":%d,\"bytes\":%d,\"seconds\":%.3f,\"MB_per_s\":%.2f,\"files_per_s\":%.2f}\n",
+               op_names[operation], files.size(), failures.get(), bytes_processed.sum(), seconds,
+               bytes_processed.sum() / 1e6 / seconds, files.size() / seconds);
+
+    out.flush();
+  }
+
+  return failures.get();
+}
+
+/* a part of the list of files, split in halves until there's only one file left */
+private class FileRange extends RecursiveAction
+{
+  private static final long serialVersionUID = 1L;
+
+  List<String> files;
+
+  int start;
+
+  int end;
+
+  FileRange(List<String> p_files, int p_start, int p_end)
+  {
+    files = p_files;
+
+    start = p_start;
+
+    end = p_end;
+  }
+
+  protected void compute()
+  {
+    int mid;
+
+    if((end - start) > 1)
+    {
+      mid = (start + end) / 2;
+
+      invokeAll(new FileRange(files, start, mid), new FileRange(files, mid, end));
+    }
+    else if(end > start)
+      {
+        process_file(files.get(start));
+      }
+  }
+}
+
+/* processes one file and writes the result line */
+private void process_file(String path)
+{
+  long t;
+
+  StringBuilder json = new StringBuilder(256);
+
+  json.append("{\"file\":").append(json_string(path)).append(",\"op\":\"").append(op_names[operation]).append("\"");
+
+  t = System.nanoTime();
+
+/* the permits of io are taken only for reading and writing, not for checking and converting */
+  try
+  {
+    switch(operation)
+    {
+      case EDFBATCH_PROBE    : probe(path, json);
+                               break;
+      case EDFBATCH_VALIDATE : validate(path, json);
+                               break;
+      case EDFBATCH_CROP     : crop(path, json);
+                               break;
+      case EDFBATCH_CONVERT  : convert(path, json);
+                               break;
+      case EDFBATCH_EXPORT   : export(path, json);
+                               break;
+    }
+
+    json.append(",\"ok\":true");
+  }
+  catch(EDFException e)
+  {
+    failures.incrementAndGet();
+
+    json.append(",\"ok\":false,\"errnum\":").append(e.getErrNum()).append(",\"error\":").append(json_string(e.getMessage().trim()));
+  }
+  catch(Exception e)
+  {
+    failures.incrementAndGet();
+
+    json.append(",\"ok\":false,\"error\":").append(json_string(String.valueOf(e.getMessage())));
+  }
+
+  json.append(String.format(Locale.ROOT, ",\"ms\":%.1f}", (System.nanoTime() - t) / 1e6));
+
+  synchronized(out)
+  {
+    out.println(json);
+  }
+}
+
+private void probe(String path, StringBuilder json) throws IOException, EDFException
+{
+  EDFreader hdl;
+
+/* only the header is read */
+  io.acquire();
+
+  try
+  {
+    hdl = new EDFreader(path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+  }
+  finally
+  {
+    io.release();
+  }
+
+  try
+  {
+    bytes_processed.add(hdl.getHeaderSize());
+
+    json.append(",\"type\":\"").append(filetype_names[hdl.getFileType()]).append("\"")
+        .append(",\"signals\":").append(hdl.getNumSignals())
+        .append(",\"datarecords\":").append(hdl.getNumDataRecords())
+        .append(String.format(Locale.ROOT, ",\"duration\":%.7f", hdl.getFileDuration() / (double)EDFreader.EDFLIB_TIME_DIMENSION))
+        .append(String.format(Locale.ROOT, ",\"start\":\"%04d-%02d-%02dT%02d:%02d:%02d\"",
+                              hdl.getStartDateYear(), hdl.getStartDateMonth(), hdl.getStartDateDay(),
+                              hdl.getStartTimeHour(), hdl.getStartTimeMinute(), hdl.getStartTimeSecond()));
+  }
+  finally
+  {
+    hdl.close();
+  }
+}
+
+private void validate(String path, StringBuilder json) throws IOException, EDFException
+{
+  ArrayList<EDFvalidator.Problem> problems;
+
+  EDFvalidator validator = new EDFvalidator();
+
+/* the files are already checked in parallel, one thread per file */
+  validator.setThreads(1);
+
+  validator.setIoLimit(io);
+
+  problems = validator.validate(path);
+
+  bytes_processed.add(new File(path).length());
+
+  json.append(",\"problems\":").append(problems.size());
+
+  if(!problems.isEmpty())
+  {
+    throw new EDFException(EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, problems.get(0).toString());
+  }
+}
+
+private void crop(String path, StringBuilder json) throws IOException, EDFException
+{
+  int not_stored;
+
+  String dst;
+
+  dst = output_path(path, null);
+
+/* the datarecords are copied without decoding them, this is all reading and writing */
+  io.acquire();
+
+  try
+  {
+    not_stored = EDFcrop.crop(path, dst, crop_first, crop_records);
+  }
+  finally
+  {
+    io.release();
+  }
+
+  bytes_processed.add(new File(dst).length());
+
+  json.append(",\"output\":").append(json_string(dst)).append(",\"annotations_not_stored\":").append(not_stored);
+}
+
+private void convert(String path, StringBuilder json) throws IOException, EDFException
+{
+  int filetype;
+
+  String dst;
+
+  EDFreader hdl;
+
+  hdl = new EDFreader(path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  filetype = hdl.getFileType();
+
+  hdl.close();
+
+  dst = output_path(path, ((filetype == EDFreader.EDFLIB_FILETYPE_EDF) || (filetype == EDFreader.EDFLIB_FILETYPE_EDFPLUS)) ? ".bdf" : ".edf");
+
+  EDFconvert.convert(path, dst, dither, io);
+
+  bytes_processed.add(new File(path).length());
+
+  json.append(",\"output\":").append(json_string(dst));
+}
+
+private void export(String path, StringBuilder json) throws IOException, EDFException
+{
+  String dst;
+
+  dst = output_path(path, "");
+
+  EDFexporter.export(path, dst, EDFexporter.EDFLIB_EXPORT_FLOAT32, io);
+
+  bytes_processed.add(new File(path).length());
+
+  json.append(",\"output\":").append(json_string(dst));
+}
+
+/* returns the deepest directory that contains all files, null if there is none */
+private static Path common_directory(List<String> files)
+{
+  Path dir, root=null;
+
+  for(String file : files)
+  {
+    dir = Paths.get(file).toAbsolutePath().normalize().getParent();
+
+    if(root == null)
+    {
+      root = dir;
+    }
+    else
+    {
+      while((root != null) && (dir != null) && (!dir.startsWith(root)))
+      {
+        root = root.getParent();
+      }
+    }
+
+    if((root == null) || (dir == null))  return null;
+  }
+
+  return root;
+}
+
+/* returns the path in the output directory for the file, ext replaces the extension (if not null), */
+/* the path of the file relative to the common directory of all input files is kept, */
+/* so files with the same name in different directories don't overwrite each other */
+private String output_path(String path, String ext) throws IOException
+{
+  int dot;
+
+  String name;
+
+  Path src, dst;
+
+  src = Paths.get(path).toAbsolutePath().normalize();
+
+  name = src.getFileName().toString();
+
+  if(ext != null)
+  {
+    dot = name.lastIndexOf('.');
+
+    name = ((dot > 0) ? name.substring(0, dot) : name) + ext;
+  }
+
+  if((in_root != null) && src.getParent().startsWith(in_root))
+  {
+    dst = Paths.get(out_dir).resolve(in_root.relativize(src.getParent()).toString()).resolve(name);
+  }
+  else
+  {
+    dst = Paths.get(out_dir).resolve(name);
+  }
+
+/* e.g. x.edf and x.bdf in the same directory have the same output directory when exporting */
+  if(!outputs.add(dst.toAbsolutePath().normalize().toString()))
+  {
+    throw new IOException("Output file " + dst + " is also the output of another file.");
+  }
+
+  Files.createDirectories(dst.getParent());
+
+  if(Files.exists(dst) && Files.isSameFile(dst, Paths.get(path)))
+  {
+    throw new IOException("Output file is the same as the input file.");
+  }
+
+  return dst.toString();
+}
+
+/* returns str as a JSON string, including the quotes */
+static String json_string(String str)
+{
+  int i;
+
+  char c;
+
+  StringBuilder sb = new StringBuilder(str.length() + 2);
+
+  sb.append('"');
+
+  for(i=0; i<str.length(); i++)
+  {
+    c = str.charAt(i);
+
+    switch(c)
+    {
+      case '"'  : sb.append("\\\"");
+                  break;
+      case '\\' : sb.append("\\\\");
+                  break;
+      case '\n' : sb.append("\\n");
+                  break;
+      case '\r' : sb.append("\\r");
+                  break;
+      case '\t' : sb.append("\\t");
+                  break;
+      default   : if(c < 0x20)
+                  {
+                    sb.append(String.format("\\u%04x", (int)c));
+                  }
+                  else
+                  {
+                    sb.append(c);
+                  }
+    }
+  }
+
+  sb.append('"');
+
+  return sb.toString();
+}
+
+}
+
+
+
+
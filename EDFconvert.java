@@ -0,0 +1,596 @@
+import java.io.*;
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Converts EDF(+) files to BDF(+) and BDF(+) files to EDF(+). <br>
+ *<br>
+ * EDF to BDF (16 to 24 bits): the digital values, digital minimum and digital maximum are multiplied by 256.<br>
+ * The physical values of the samples do not change.<br>
+ *<br>
+ * BDF to EDF (24 to 16 bits): when the digital range of a signal fits in 16 bits, the samples are copied<br>
+ * without any change. Otherwise the digital range is mapped onto -32768 - 32767, the physical minimum and maximum<br>
+ * stay the same, so the physical values only change by the loss of resolution. Optionally, TPDF dither<br>
+ * (triangular probability density function, +/- 1 LSB) is added before rounding to avoid quantization distortion.<br>
+ *<br>
+ * The annotation signals (EDF+ and BDF+) are copied as they are, padded with zeros to a multiple of the new sample size.<br>
+ *<br>
+ * The file is processed datarecord by datarecord in a pipeline of three threads: one reads blocks of datarecords,<br>
+ * one converts them and one writes them. A fixed number of buffers is recycled between the threads,<br>
+ * so the memory usage does not depend on the size of the file.<br>
+ *<br>
+ * Usage: java EDFconvert [-dither] &lt;input file&gt; &lt;output file&gt;<br>
+ */
+public class EDFconvert
+{
+
+/* the datarecords are read and written in blocks of approximately this size */
+private static final int EDFLIB_CONVERT_BUFSZ = 1024 * 1024;
+
+/* number of blocks that are in the pipeline at the same time */
+private static final int EDFLIB_CONVERT_BLOCKS = 4;
+
+/* one block of datarecords on its way through the pipeline, a block without datarecords ends the pipeline */
+private static class Block
+{
+  byte[] src;
+
+  byte[] dst;
+
+  int    records;
+}
+
+/* conversion parameters of one signal */
+private static class Channel
+{
+  int    src_offset;
+
+  int    dst_offset;
+
+  int    samples;      /* samples per datarecord, for annotation signals: the number of bytes */
+
+  int    annotation;
+
+  int    copy;         /* BDF to EDF: the values fit in 16 bits, no conversion */
+
+  int    dig_min;
+
+  double scale;        /* BDF to EDF: new value = ((value - dig_min) * scale) - 32768 */
+}
+
+public static void main(String[] args)
+{
+  boolean dither=false;
+
+  int i=0;
+
+  long t;
+
+  if((args.length == 3) && args[0].equals("-dither"))
+  {
+    dither = true;
+
+    i = 1;
+  }
+  else if(args.length != 2)
+    {
+      System.out.printf("Usage: java EDFconvert [-dither] <input file> <output file>\n");
+
+      System.exit(1);
+    }
+
+  try
+  {
+    t = System.nanoTime();
+
+    convert(args[i], args[i + 1], dither);
+
+    t = System.nanoTime() - t;
+
+    System.out.printf("Done in %.3f seconds.\n", t / 1e9);
+  }
+  catch(IOException e)
+  {
+    System.out.printf("An error occurred: %s\n", e.getMessage());
+
+    System.exit(1);
+  }
+  catch(EDFException e)
+  {
+    System.out.printf("An error occurred: %s", e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+/**
+ * Converts an EDF(+) file to BDF(+) or a BDF(+) file to EDF(+). <br>
+ *
+ * @param src_path path of the EDF(+)/BDF(+) file to read from
+ *
+ * @param dst_path path of the file to create, an existing file will be overwritten
+ *
+ * @param dither when true, TPDF dither is added when converting BDF to EDF and the digital range must be reduced
+ *
+ * @throws IOException, EDFException
+ */
+public static void convert(String src_path, String dst_path, boolean dither) throws IOException, EDFException
+{
+  convert(src_path, dst_path, dither, null);
+}
+
+/* the same, the blocks are read and written with a permit of io (EDFbatch), the conversion is done without it */
+static void convert(String src_path, String dst_path, boolean dither, EDFiolimit io) throws IOException, EDFException
+{
+  int i, n, ns, signals, src_smp_sz, dst_smp_sz, hdrsize, recordsize, dst_recordsize, records_per_block;
+
+  long datarecords;
+
+  byte[] hdr;
+
+  Channel[] chns;
+
+  EDFreader hdl;
+
+  EDFarchive.reject(src_path);
+
+  hdl = new EDFreader(src_path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  try
+  {
+    hdr = hdl.getHeader();
+
+    hdrsize = hdl.getHeaderSize();
+
+    recordsize = hdl.getDataRecordSize();
+
+    datarecords = hdl.getNumDataRecords();
+
+    src_smp_sz = hdl.getSampleSize();
+
+    dst_smp_sz = (src_smp_sz == 2) ? 3 : 2;
+
+    signals = hdl.getNumSignals();
+
+    n = hdl.getNumAnnotationSignals();
+
+    ns = (hdrsize / 256) - 1;
+
+    chns = new Channel[ns];
+
+/* the channels are stored in the same order as in the file */
+    for(i=0; i<signals; i++)
+    {
+      chns[hdl.getSignalHeaderIndex(i)] = signal_channel(hdl, i, dst_smp_sz);
+    }
+
+    for(i=0; i<n; i++)
+    {
+      chns[hdl.getAnnotationSignalHeaderIndex(i)] = annotation_channel(hdl, i, dst_smp_sz);
+    }
+
+    for(i=0, dst_recordsize=0; i<ns; i++)
+    {
+      chns[i].dst_offset = dst_recordsize;
+
+      if(chns[i].annotation != 0)
+      {
+        dst_recordsize += ((chns[i].samples + dst_smp_sz - 1) / dst_smp_sz) * dst_smp_sz;
+      }
+      else
+      {
+        dst_recordsize += chns[i].samples * dst_smp_sz;
+      }
+    }
+
+    patch_header(hdr, chns, dst_smp_sz, n);
+
+    records_per_block = Math.max(1, EDFLIB_CONVERT_BUFSZ / Math.max(recordsize, dst_recordsize));
+
+    run_pipeline(src_path, dst_path, hdr, hdrsize, recordsize, dst_recordsize, datarecords, records_per_block, chns, dst_smp_sz, dither, io);
+  }
+  finally
+  {
+    hdl.close();
+  }
+}
+
+private static Channel signal_channel(EDFreader hdl, int s, int dst_smp_sz) throws EDFException
+{
+  Channel chn = new Channel();
+
+  chn.src_offset = hdl.getSignalRecordOffset(s);
+
+  chn.samples = hdl.getSampelsPerDataRecord(s);
+
+  chn.dig_min = hdl.getDigitalMinimum(s);
+
+  if(dst_smp_sz == 2)
+  {
+    if((hdl.getDigitalMinimum(s) >= -32768) && (hdl.getDigitalMaximum(s) <= 32767))
+    {
+      chn.copy = 1;
+    }
+    else
+    {
+      chn.scale = 65535.0 / ((double)hdl.getDigitalMaximum(s) - (double)hdl.getDigitalMinimum(s));
+    }
+  }
+
+  return chn;
+}
+
+private static Channel annotation_channel(EDFreader hdl, int n, int dst_smp_sz) throws EDFException
+{
+  Channel chn = new Channel();
+
+  chn.src_offset = hdl.getAnnotationSignalRecordOffset(n);
+
+  chn.samples = hdl.getAnnotationSignalSize(n);
+
+  chn.annotation = 1;
+
+  return chn;
+}
+
+/* rewrites the version, reserved field, annotation labels, digital minimum/maximum and samples per datarecord */
+private static void patch_header(byte[] hdr, Channel[] chns, int dst_smp_sz, int annot_chns)
+{
+  int i, ns, plus, dig_min, dig_max;
+
+  ns = chns.length;
+
+  plus = (annot_chns > 0) ? 1 : 0;
+
+  if(dst_smp_sz == 3)
+  {
+    hdr[0] = (byte)0xff;
+
+    EDFtal.put_field(hdr, 1, "BIOSEMI", 7);
+
+    EDFtal.put_field(hdr, 192, (plus != 0) ? new String(hdr, 192, 5).replace("EDF+", "BDF+") : "24BIT", 44);
+  }
+  else
+  {
+    EDFtal.put_field(hdr, 0, "0", 8);
+
+    EDFtal.put_field(hdr, 192, (plus != 0) ? new String(hdr, 192, 5).replace("BDF+", "EDF+") : "", 44);
+  }
+
+  for(i=0; i<ns; i++)
+  {
+    if(chns[i].annotation != 0)
+    {
+      EDFtal.put_field(hdr, 256 + (i * 16), (dst_smp_sz == 3) ? "BDF Annotations" : "EDF Annotations", 16);
+
+      dig_min = (dst_smp_sz == 3) ? -8388608 : -32768;
+
+      dig_max = (dst_smp_sz == 3) ? 8388607 : 32767;
+
+      EDFtal.put_field(hdr, 256 + (ns * 216) + (i * 8), String.format("%d", (chns[i].samples + dst_smp_sz - 1) / dst_smp_sz), 8);
+    }
+    else if(dst_smp_sz == 3)
+      {
+        dig_min = atoi_field(hdr, 256 + (ns * 120) + (i * 8)) * 256;
+
+        dig_max = atoi_field(hdr, 256 + (ns * 128) + (i * 8)) * 256;
+      }
+      else if(chns[i].copy != 0)
+        {
+          continue;
+        }
+        else
+        {
+          dig_min = -32768;
+
+          dig_max = 32767;
+        }
+
+    EDFtal.put_field(hdr, 256 + (ns * 120) + (i * 8), String.format("%d", dig_min), 8);
+
+    EDFtal.put_field(hdr, 256 + (ns * 128) + (i * 8), String.format("%d", dig_max), 8);
+  }
+}
+
+/* returns the integer number in the header field at offset (8 characters) */
+private static int atoi_field(byte[] hdr, int offset)
+{
+  return Integer.parseInt(new String(hdr, offset, 8).trim());
+}
+
+/* reads, converts and writes the datarecords, each stage in its own thread */
+/* after an error the stages keep passing the blocks on (without processing them) until the end of the pipeline, */
+/* this way every blocked thread gets woken up and the three threads always finish */
+private static void run_pipeline(String src_path, String dst_path, byte[] hdr, int hdrsize, int recordsize, int dst_recordsize,
+                                 long datarecords, int records_per_block, Channel[] chns, int dst_smp_sz, boolean dither,
+                                 EDFiolimit io) throws IOException, EDFException
+{
+  int i;
+
+  Thread[] threads;
+
+  final Throwable[] error = new Throwable[1];
+
+/* there's room for all blocks plus the end of stream block in every queue, put() on a queue of the next stage never blocks */
+  final ArrayBlockingQueue<Block> free = new ArrayBlockingQueue<Block>(EDFLIB_CONVERT_BLOCKS + 1),
+                                  read = new ArrayBlockingQueue<Block>(EDFLIB_CONVERT_BLOCKS + 1),
+                                  converted = new ArrayBlockingQueue<Block>(EDFLIB_CONVERT_BLOCKS + 1);
+
+  for(i=0; i<EDFLIB_CONVERT_BLOCKS; i++)
+  {
+    Block blk = new Block();
+
+    blk.src = new byte[records_per_block * recordsize];
+
+    blk.dst = new byte[records_per_block * dst_recordsize];
+
+    free.add(blk);
+  }
+
+  try(RandomAccessFile src = new RandomAccessFile(src_path, "r");
+      RandomAccessFile dst = new RandomAccessFile(dst_path, "rw"))
+  {
+    dst.setLength(0L);
+
+    dst.write(hdr);
+
+    src.seek(hdrsize);
+
+    threads = new Thread[3];
+
+    threads[0] = new Thread(() -> {
+      long r=0L;
+
+      Block blk;
+
+      try
+      {
+        while((r < datarecords) && (get_error(error) == null))
+        {
+          blk = free.take();
+
+          blk.records = (int)Math.min(records_per_block, datarecords - r);
+
+          if(io != null)  io.acquire();
+
+          try
+          {
+            src.readFully(blk.src, 0, blk.records * recordsize);
+          }
+          finally
+          {
+            if(io != null)  io.release();
+          }
+
+          r += blk.records;
+
+          read.add(blk);
+        }
+      }
+      catch(Throwable e)
+      {
+        set_error(error, e);
+      }
+
+      read.add(new Block());
+    }, "EDFconvert reader");
+
+    threads[1] = new Thread(() -> {
+      int k;
+
+      Block blk;
+
+      SplittableRandom rnd = dither ? new SplittableRandom() : null;
+
+      while(true)
+      {
+        try
+        {
+          blk = read.take();
+        }
+        catch(InterruptedException e)
+        {
+          set_error(error, e);
+
+          continue;
+        }
+
+        if(blk.src == null)  break;
+
+        try
+        {
+          if(get_error(error) == null)
+          {
+            for(k=0; k<blk.records; k++)
+            {
+              convert_record(blk.src, k * recordsize, blk.dst, k * dst_recordsize, chns, dst_smp_sz, rnd);
+            }
+          }
+        }
+        catch(Throwable e)
+        {
+          set_error(error, e);
+        }
+
+        converted.add(blk);
+      }
+
+      converted.add(new Block());
+    }, "EDFconvert converter");
+
+    threads[2] = new Thread(() -> {
+      Block blk;
+
+      while(true)
+      {
+        try
+        {
+          blk = converted.take();
+        }
+        catch(InterruptedException e)
+        {
+          set_error(error, e);
+
+          continue;
+        }
+
+        if(blk.src == null)  break;
+
+        try
+        {
+          if(get_error(error) == null)
+          {
+            if(io != null)  io.acquire();
+
+            try
+            {
+              dst.write(blk.dst, 0, blk.records * dst_recordsize);
+            }
+            finally
+            {
+              if(io != null)  io.release();
+            }
+          }
+        }
+        catch(Throwable e)
+        {
+          set_error(error, e);
+        }
+
+        free.add(blk);
+      }
+    }, "EDFconvert writer");
+
+    for(i=0; i<3; i++)
+    {
+      threads[i].start();
+    }
+
+    for(i=0; i<3; i++)
+    {
+      join_thread(threads[i], error);
+    }
+  }
+
+  if(error[0] instanceof IOException)  throw (IOException)error[0];
+
+  if(error[0] instanceof EDFException)  throw (EDFException)error[0];
+
+  if(error[0] != null)
+  {
+    throw new EDFException(EDFreader.EDFLIB_FILE_WRITE_ERROR, "Conversion failed: " + error[0] + "\n");
+  }
+}
+
+/* waits until thread has finished, an interrupt is passed on as an error so the pipeline stops */
+private static void join_thread(Thread thread, Throwable[] error)
+{
+  while(thread.isAlive())
+  {
+    try
+    {
+      thread.join();
+    }
+    catch(InterruptedException e)
+    {
+      set_error(error, e);
+    }
+  }
+}
+
+/* remembers the first error */
+private static void set_error(Throwable[] error, Throwable e)
+{
+  synchronized(error)
+  {
+    if(error[0] == null)  error[0] = e;
+  }
+}
+
+private static Throwable get_error(Throwable[] error)
+{
+  synchronized(error)
+  {
+    return error[0];
+  }
+}
+
+/* converts one datarecord, rnd is null when no dither must be added */
+private static void convert_record(byte[] src, int src_pos, byte[] dst, int dst_pos, Channel[] chns, int dst_smp_sz, SplittableRandom rnd)
+{
+  int i, j, len, p, q, value;
+
+  double x;
+
+  Channel chn;
+
+  for(i=0; i<chns.length; i++)
+  {
+    chn = chns[i];
+
+    p = src_pos + chn.src_offset;
+
+    q = dst_pos + chn.dst_offset;
+
+    if(chn.annotation != 0)
+    {
+      len = ((chn.samples + dst_smp_sz - 1) / dst_smp_sz) * dst_smp_sz;
+
+      System.arraycopy(src, p, dst, q, chn.samples);
+
+      Arrays.fill(dst, q + chn.samples, q + len, (byte)0);
+
+      continue;
+    }
+
+    if(dst_smp_sz == 3)  /* EDF to BDF */
+    {
+      for(j=0; j<chn.samples; j++, p+=2, q+=3)
+      {
+        dst[q] = 0;
+        dst[q + 1] = src[p];
+        dst[q + 2] = src[p + 1];
+      }
+
+      continue;
+    }
+
+    for(j=0; j<chn.samples; j++, p+=3, q+=2)  /* BDF to EDF */
+    {
+      if(chn.copy != 0)
+      {
+        dst[q] = src[p];
+        dst[q + 1] = src[p + 1];
+
+        continue;
+      }
+
+      value = (src[p] & 0xff) | ((src[p + 1] & 0xff) << 8) | (src[p + 2] << 16);
+
+      x = ((value - chn.dig_min) * chn.scale) - 32768.0;
+
+      if(rnd != null)
+      {
+        x += rnd.nextDouble() - rnd.nextDouble();
+      }
+
+      value = (int)Math.rint(x);
+
+      if(value > 32767)  value = 32767;
+
+      if(value < -32768)  value = -32768;
+
+      dst[q] = (byte)value;
+      dst[q + 1] = (byte)(value >> 8);
+    }
+  }
+}
+
+}
+
+
+
+
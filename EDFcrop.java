@@ -0,0 +1,311 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.lang.*;
+import java.util.*;
+import java.time.*;
+
+
+/**
+ * Copies a range of datarecords of an EDF(+)/BDF(+) file into a new file. <br>
+ *<br>
+ * The samples are not decoded, the datarecords are copied verbatim with FileChannel.transferTo()<br>
+ * so the copy runs at the speed of the page cache / disk.<br>
+ * Only the header fields startdate, starttime and number of datarecords are rewritten.<br>
+ *<br>
+ * The start of the new file is shifted by a whole number of seconds (the start of the first copied datarecord,<br>
+ * rounded down to a whole second). For EDF+ and BDF+ the remaining subsecond part is kept in the timekeeping TAL's,<br>
+ * for EDF and BDF the start of the range must be at a whole second.<br>
+ *<br>
+ * For EDF+ and BDF+ the annotation signals of the copied datarecords are rewritten: the timekeeping TAL's<br>
+ * and the onsets of the annotations are shifted by the same number of seconds. All annotations of the file<br>
+ * with an onset inside the copied range are kept, regardless of the datarecord they were stored in.<br>
+ * When there's not enough space in the annotation signals of the copied datarecords, the remaining<br>
+ * annotations are not stored, crop() returns how many.<br>
+ *<br>
+ * Usage: java EDFcrop &lt;input file&gt; &lt;output file&gt; &lt;first datarecord&gt; &lt;number of datarecords&gt;<br>
+ */
+public class EDFcrop
+{
+
+private static final long EDFLIB_TIME_DIMENSION = EDFreader.EDFLIB_TIME_DIMENSION;
+
+public static void main(String[] args)
+{
+  int not_stored;
+
+  long t;
+
+  if(args.length != 4)
+  {
+    System.out.printf("Usage: java EDFcrop <input file> <output file> <first datarecord> <number of datarecords>\n");
+
+    System.exit(1);
+  }
+
+  try
+  {
+    t = System.nanoTime();
+
+    not_stored = crop(args[0], args[1], Long.parseLong(args[2]), Long.parseLong(args[3]));
+
+    t = System.nanoTime() - t;
+
+    System.out.printf("Done in %.3f seconds.\n", t / 1e9);
+
+    if(not_stored > 0)
+    {
+      System.out.printf("Warning: %d annotations could not be stored.\n", not_stored);
+    }
+  }
+  catch(NumberFormatException e)
+  {
+    System.out.printf("Invalid number.\n");
+
+    System.exit(1);
+  }
+  catch(IOException e)
+  {
+    System.out.printf("An error occurred: %s\n", e.getMessage());
+
+    System.exit(1);
+  }
+  catch(EDFException e)
+  {
+    System.out.printf("An error occurred: %s", e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+/**
+ * Copies the datarecords first_record up to (not including) first_record + records into a new file. <br>
+ *
+ * @param src_path path of the EDF(+)/BDF(+) file to read from
+ *
+ * @param dst_path path of the file to create, an existing file will be overwritten
+ *
+ * @param first_record the first datarecord to copy, zero-based
+ *
+ * @param records the number of datarecords to copy
+ *
+ * @throws IOException, EDFException
+ *
+ * @return the number of annotations that could not be stored in the new file (normally zero)
+ */
+public static int crop(String src_path, String dst_path, long first_record, long records) throws IOException, EDFException
+{
+  int i, n, hdrsize, recordsize, plus, not_stored=0;
+
+  long shift, t0, t1, duration, pos, end;
+
+  byte[] hdr;
+
+  EDFreader hdl;
+
+  ArrayList<EDFtal.Annotation> annotations = null;
+
+  EDFarchive.reject(src_path);
+
+  hdl = new EDFreader(src_path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  hdrsize = hdl.getHeaderSize();
+
+  recordsize = hdl.getDataRecordSize();
+
+  duration = hdl.getLongDataRecordDuration();
+
+  plus = hdl.getNumAnnotationSignals();
+
+  if((first_record < 0L) || (records < 1L) || (records > 99999999L) || ((first_record + records) > hdl.getNumDataRecords()))
+  {
+    hdl.close();
+
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid datarecord range.\n");
+  }
+
+/* t0 and t1 are the start and end of the copied range, expressed in the timebase of the timekeeping TAL's */
+  t0 = hdl.getStartTimeSubSecond() + (first_record * duration);
+
+  t1 = t0 + (records * duration);
+
+  shift = t0 / EDFLIB_TIME_DIMENSION;
+
+  if((plus == 0) && ((t0 % EDFLIB_TIME_DIMENSION) != 0L))
+  {
+    hdl.close();
+
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "For EDF and BDF the range must start at a whole second.\n");
+  }
+
+  hdr = hdl.getHeader();
+
+  patch_header(hdl, hdr, shift, records, plus);
+
+  try(RandomAccessFile src = new RandomAccessFile(src_path, "r");
+      RandomAccessFile dst = new RandomAccessFile(dst_path, "rw"))
+  {
+    FileChannel src_channel = src.getChannel(),
+                dst_channel = dst.getChannel();
+
+    if(plus != 0)
+    {
+      annotations = EDFtal.read_annotations(hdl, src_channel, t0, t1);
+    }
+
+    dst.setLength(0L);
+
+    dst.write(hdr);
+
+    pos = hdrsize + (first_record * recordsize);
+
+    end = pos + (records * recordsize);
+
+    while(pos < end)
+    {
+      n = (int)Math.min(end - pos, (long)Integer.MAX_VALUE);
+
+      n = (int)src_channel.transferTo(pos, n, dst_channel);
+
+      if(n < 1)
+      {
+        throw new EDFException(EDFreader.EDFLIB_FILE_READ_ERROR, "Unexpected end of file.\n");
+      }
+
+      pos += n;
+    }
+
+    if(plus != 0)
+    {
+      not_stored = write_annotations(hdl, dst_channel, annotations, records, t0 - (shift * EDFLIB_TIME_DIMENSION), shift);
+    }
+  }
+  finally
+  {
+    hdl.close();
+  }
+
+  return not_stored;
+}
+
+/* rewrites startdate, starttime and number of datarecords in the header */
+private static void patch_header(EDFreader hdl, byte[] hdr, long shift, long records, int plus) throws EDFException
+{
+  int year;
+
+  LocalDateTime start;
+
+  start = LocalDateTime.of(hdl.getStartDateYear(), hdl.getStartDateMonth(), hdl.getStartDateDay(),
+                           hdl.getStartTimeHour(), hdl.getStartTimeMinute(), hdl.getStartTimeSecond());
+
+  start = start.plusSeconds(shift);
+
+  year = start.getYear();
+
+  if((plus != 0) && (year > 2084))
+  {
+    EDFtal.put_field(hdr, 168, String.format("%02d.%02d.yy", start.getDayOfMonth(), start.getMonthValue()), 8);
+  }
+  else
+  {
+    EDFtal.put_field(hdr, 168, String.format("%02d.%02d.%02d", start.getDayOfMonth(), start.getMonthValue(), year % 100), 8);
+  }
+
+  EDFtal.put_field(hdr, 176, String.format("%02d.%02d.%02d", start.getHour(), start.getMinute(), start.getSecond()), 8);
+
+  EDFtal.put_field(hdr, 236, String.format("%d", records), 8);
+
+/* EDF+ stores the startdate also in the recording field: "Startdate dd-MMM-yyyy" */
+  if((plus != 0) && (new String(hdr, 88, 10).equals("Startdate ")) && (hdr[98] != 'X'))
+  {
+    EDFtal.put_field(hdr, 98, String.format("%02d-%s-%04d", start.getDayOfMonth(), EDFtal.month_names[start.getMonthValue() - 1], year), 11);
+  }
+}
+
+/* rewrites the annotation signals of all datarecords of the new file, starttime is the */
+/* timekeeping onset of the first datarecord, returns the number of annotations that did not fit */
+private static int write_annotations(EDFreader hdl, FileChannel channel, ArrayList<EDFtal.Annotation> annotations,
+                                     long records, long starttime, long shift) throws IOException, EDFException
+{
+  int i, n, k=0, first, last, hdrsize, recordsize;
+
+  long r, duration;
+
+  boolean always_frac;
+
+  int[] offset,
+        size;
+
+  byte[] buf;
+
+  ByteBuffer bbuf;
+
+  n = hdl.getNumAnnotationSignals();
+
+  offset = new int[n];
+
+  size = new int[n];
+
+  first = Integer.MAX_VALUE;
+
+  last = 0;
+
+  for(i=0; i<n; i++)
+  {
+    offset[i] = hdl.getAnnotationSignalRecordOffset(i);
+
+    size[i] = hdl.getAnnotationSignalSize(i);
+
+    if(offset[i] < first)  first = offset[i];
+
+    if((offset[i] + size[i]) > last)  last = offset[i] + size[i];
+  }
+
+  hdrsize = hdl.getHeaderSize();
+
+  recordsize = hdl.getDataRecordSize();
+
+  duration = hdl.getLongDataRecordDuration();
+
+  always_frac = ((duration % EDFLIB_TIME_DIMENSION) != 0L) || ((starttime % EDFLIB_TIME_DIMENSION) != 0L);
+
+/* the part of the datarecord between the annotation signals (if any) is read from the new file first */
+  buf = new byte[last - first];
+
+  bbuf = ByteBuffer.wrap(buf);
+
+  for(r=0; r<records; r++)
+  {
+    bbuf.clear();
+
+    while(bbuf.hasRemaining())
+    {
+      if(channel.read(bbuf, hdrsize + (r * recordsize) + first + bbuf.position()) < 0)
+      {
+        throw new EDFException(EDFreader.EDFLIB_FILE_READ_ERROR, "Unexpected end of file.\n");
+      }
+    }
+
+    for(i=0; i<n; i++)
+    {
+      k = EDFtal.fill_annotation_signal(buf, offset[i] - first, size[i],
+                                        (i == 0) ? EDFtal.timekeeping_tal(starttime + (r * duration), always_frac) : null,
+                                        annotations, k, -shift);
+    }
+
+    bbuf.clear();
+
+    while(bbuf.hasRemaining())
+    {
+      channel.write(bbuf, hdrsize + (r * recordsize) + first + bbuf.position());
+    }
+  }
+
+  return EDFtal.not_stored(annotations);
+}
+
+}
+
+
+
+
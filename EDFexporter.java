@@ -0,0 +1,542 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.lang.*;
+import java.util.*;
+import java.util.zip.*;
+
+
+/**
+ * Exports the signals of an EDF(+)/BDF(+) file to formats that are easy to read by other software (e.g. NumPy). <br>
+ *<br>
+ * Binary export: one file per signal with raw little-endian values, either 32-bit floats (physical values)<br>
+ * or 16-bit integers (digital values, EDF only), plus a file header.json that describes the signals.<br>
+ * In NumPy: numpy.fromfile("signal_000.f32", dtype="&lt;f4") or numpy.fromfile("signal_000.i16", dtype="&lt;i2").<br>
+ * The physical value of a digital value is: scale * (value + offset), scale and offset are stored in header.json.<br>
+ *<br>
+ * CSV export: one column with the time in seconds followed by one column per signal (physical values).<br>
+ * When the signals have different samplerates, they are resampled to the highest samplerate with EDFresampler.<br>
+ * The output can be compressed with gzip. The numbers are formatted directly into a byte buffer,<br>
+ * with enough decimals to represent the resolution of every signal.<br>
+ *<br>
+ * The file is processed a few datarecords at a time, the memory usage does not depend on the size of the file.<br>
+ *<br>
+ * Usage: java EDFexporter [-int16 | -csv | -csv.gz] &lt;input file&gt; &lt;output directory or file&gt;<br>
+ */
+public class EDFexporter
+{
+
+public static final int EDFLIB_EXPORT_FLOAT32 = 0;
+public static final int EDFLIB_EXPORT_INT16   = 1;
+
+/* the datarecords are read in blocks of approximately this size */
+private static final int EDFLIB_EXPORT_BUFSZ = 4 * 1024 * 1024;
+
+/* number of frames per block when exporting to CSV */
+private static final int EDFLIB_EXPORT_CSV_FRAMES = 4096;
+
+private static final long[] pow10 = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+
+public static void main(String[] args)
+{
+  long t;
+
+  if((args.length != 2) && (args.length != 3))
+  {
+    System.out.printf("Usage: java EDFexporter [-int16 | -csv | -csv.gz] <input file> <output directory or file>\n");
+
+    System.exit(1);
+  }
+
+  try
+  {
+    t = System.nanoTime();
+
+    if(args.length == 2)
+    {
+      export(args[0], args[1], EDFLIB_EXPORT_FLOAT32);
+    }
+    else if(args[0].equals("-int16"))
+      {
+        export(args[1], args[2], EDFLIB_EXPORT_INT16);
+      }
+      else if(args[0].equals("-csv") || args[0].equals("-csv.gz"))
+        {
+          exportCSV(args[1], args[2], args[0].equals("-csv.gz"));
+        }
+        else
+        {
+          System.out.printf("Unknown option: %s\n", args[0]);
+
+          System.exit(1);
+        }
+
+    t = System.nanoTime() - t;
+
+    System.out.printf("Done in %.3f seconds.\n", t / 1e9);
+  }
+  catch(IOException e)
+  {
+    System.out.printf("An error occurred: %s\n", e.getMessage());
+
+    System.exit(1);
+  }
+  catch(EDFException e)
+  {
+    System.out.printf("An error occurred: %s", e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+/**
+ * Exports every signal to a separate file with little-endian values in the directory dst_dir. <br>
+ * The files are named signal_000.f32, signal_001.f32, ... (or .i16) and are described in header.json.<br>
+ * The directory is created when it does not exist, existing files will be overwritten.<br>
+ *
+ * @param src_path path of the EDF(+)/BDF(+) file to read from
+ *
+ * @param dst_dir the output directory
+ *
+ * @param format EDFLIB_EXPORT_FLOAT32 (physical values) or EDFLIB_EXPORT_INT16 (digital values, not possible for BDF)
+ *
+ * @throws IOException, EDFException
+ */
+public static void export(String src_path, String dst_dir, int format) throws IOException, EDFException
+{
+  export(src_path, dst_dir, format, null);
+}
+
+/* the same, the blocks are read and written with a permit of io (EDFbatch), the conversion is done without it */
+static void export(String src_path, String dst_dir, int format, EDFiolimit io) throws IOException, EDFException
+{
+  int i, j, k, n, p, q, ns, smp_sz, out_sz, hdrsize, recordsize, records_per_block, value;
+
+  long r, datarecords;
+
+  int[] offset,
+        spr;
+
+  double[] bitvalue,
+           phys_offset;
+
+  byte[] rbuf;
+
+  String[] names;
+
+  ByteBuffer[] wbuf;
+
+  FileChannel[] out=null;
+
+  EDFreader hdl;
+
+  if((format != EDFLIB_EXPORT_FLOAT32) && (format != EDFLIB_EXPORT_INT16))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid format.\n");
+  }
+
+  EDFarchive.reject(src_path);
+
+  hdl = new EDFreader(src_path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  try
+  {
+    smp_sz = hdl.getSampleSize();
+
+    if((format == EDFLIB_EXPORT_INT16) && (smp_sz != 2))
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "The digital values of a BDF file do not fit in 16 bits.\n");
+    }
+
+    out_sz = (format == EDFLIB_EXPORT_INT16) ? 2 : 4;
+
+    ns = hdl.getNumSignals();
+
+    hdrsize = hdl.getHeaderSize();
+
+    recordsize = hdl.getDataRecordSize();
+
+    datarecords = hdl.getNumDataRecords();
+
+    records_per_block = Math.max(1, EDFLIB_EXPORT_BUFSZ / recordsize);
+
+    offset = new int[ns];
+
+    spr = new int[ns];
+
+    bitvalue = new double[ns];
+
+    phys_offset = new double[ns];
+
+    names = new String[ns];
+
+    wbuf = new ByteBuffer[ns];
+
+    for(i=0; i<ns; i++)
+    {
+      offset[i] = hdl.getSignalRecordOffset(i);
+
+      spr[i] = hdl.getSampelsPerDataRecord(i);
+
+      bitvalue[i] = (hdl.getPhysicalMaximum(i) - hdl.getPhysicalMinimum(i)) / (hdl.getDigitalMaximum(i) - hdl.getDigitalMinimum(i));
+
+      phys_offset[i] = (hdl.getPhysicalMaximum(i) / bitvalue[i]) - hdl.getDigitalMaximum(i);
+
+      names[i] = String.format(Locale.ROOT, "signal_%03d.%s", i, (format == EDFLIB_EXPORT_INT16) ? "i16" : "f32");
+
+      wbuf[i] = ByteBuffer.allocate(records_per_block * spr[i] * out_sz);
+
+      wbuf[i].order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    new File(dst_dir).mkdirs();
+
+    write_json_header(hdl, src_path, new File(dst_dir, "header.json"), names, bitvalue, phys_offset, format);
+
+    rbuf = new byte[records_per_block * recordsize];
+
+    out = new FileChannel[ns];
+
+    try(RandomAccessFile src = new RandomAccessFile(src_path, "r"))
+    {
+      for(i=0; i<ns; i++)
+      {
+        out[i] = new FileOutputStream(new File(dst_dir, names[i])).getChannel();
+      }
+
+      src.seek(hdrsize);
+
+      for(r=0; r<datarecords; r+=n)
+      {
+        n = (int)Math.min(records_per_block, datarecords - r);
+
+        if(io != null)  io.acquire();
+
+        try
+        {
+          src.readFully(rbuf, 0, n * recordsize);
+        }
+        finally
+        {
+          if(io != null)  io.release();
+        }
+
+        for(i=0; i<ns; i++)
+        {
+          wbuf[i].clear();
+
+          for(k=0; k<n; k++)
+          {
+            p = (k * recordsize) + offset[i];
+
+            if(format == EDFLIB_EXPORT_INT16)
+            {
+              for(j=0; j<spr[i]; j++, p+=2)
+              {
+                wbuf[i].put(rbuf[p]);
+                wbuf[i].put(rbuf[p + 1]);
+              }
+            }
+            else if(smp_sz == 2)
+              {
+                for(j=0; j<spr[i]; j++, p+=2)
+                {
+                  value = (rbuf[p] & 0xff) | (rbuf[p + 1] << 8);
+
+                  wbuf[i].putFloat((float)(bitvalue[i] * (phys_offset[i] + value)));
+                }
+              }
+              else
+              {
+                for(j=0; j<spr[i]; j++, p+=3)
+                {
+                  value = (rbuf[p] & 0xff) | ((rbuf[p + 1] & 0xff) << 8) | (rbuf[p + 2] << 16);
+
+                  wbuf[i].putFloat((float)(bitvalue[i] * (phys_offset[i] + value)));
+                }
+              }
+          }
+
+          wbuf[i].flip();
+        }
+
+        if(io != null)  io.acquire();
+
+        try
+        {
+          for(i=0; i<ns; i++)
+          {
+            while(wbuf[i].hasRemaining())
+            {
+              out[i].write(wbuf[i]);
+            }
+          }
+        }
+        finally
+        {
+          if(io != null)  io.release();
+        }
+      }
+    }
+    finally
+    {
+      for(i=0; i<ns; i++)
+      {
+        if(out[i] != null)  out[i].close();
+      }
+    }
+  }
+  finally
+  {
+    hdl.close();
+  }
+}
+
+/* writes the description of the exported signals */
+private static void write_json_header(EDFreader hdl, String src_path, File file, String[] names, double[] bitvalue, double[] phys_offset, int format) throws IOException, EDFException
+{
+  int i;
+
+  StringBuilder sb = new StringBuilder(1024);
+
+  sb.append("{\n");
+  sb.append("  \"source\": ").append(EDFbatch.json_string(new File(src_path).getName())).append(",\n");
+  sb.append("  \"format\": \"").append((format == EDFLIB_EXPORT_INT16) ? "int16le" : "float32le").append("\",\n");
+  sb.append("  \"values\": \"").append((format == EDFLIB_EXPORT_INT16) ? "digital" : "physical").append("\",\n");
+  sb.append(String.format(Locale.ROOT, "  \"start\": \"%04d-%02d-%02dT%02d:%02d:%02d.%07d\",\n",
+                          hdl.getStartDateYear(), hdl.getStartDateMonth(), hdl.getStartDateDay(),
+                          hdl.getStartTimeHour(), hdl.getStartTimeMinute(), hdl.getStartTimeSecond(), hdl.getStartTimeSubSecond()));
+  sb.append("  \"datarecords\": ").append(hdl.getNumDataRecords()).append(",\n");
+  sb.append("  \"datarecord_duration\": ").append(json_double(hdl.getLongDataRecordDuration() / (double)EDFreader.EDFLIB_TIME_DIMENSION)).append(",\n");
+  sb.append("  \"signals\": [\n");
+
+  for(i=0; i<names.length; i++)
+  {
+    sb.append("    {\"file\": ").append(EDFbatch.json_string(names[i]))
+      .append(", \"label\": ").append(EDFbatch.json_string(hdl.getSignalLabel(i).trim()))
+      .append(", \"physical_dimension\": ").append(EDFbatch.json_string(hdl.getPhysicalDimension(i).trim()))
+      .append(", \"samplerate\": ").append(json_double(hdl.getSampleFrequency(i)))
+      .append(", \"samples\": ").append(hdl.getTotalSamples(i))
+      .append(", \"physical_min\": ").append(json_double(hdl.getPhysicalMinimum(i)))
+      .append(", \"physical_max\": ").append(json_double(hdl.getPhysicalMaximum(i)))
+      .append(", \"digital_min\": ").append(hdl.getDigitalMinimum(i))
+      .append(", \"digital_max\": ").append(hdl.getDigitalMaximum(i))
+      .append(", \"scale\": ").append(json_double(bitvalue[i]))
+      .append(", \"offset\": ").append(json_double(phys_offset[i]))
+      .append((i < (names.length - 1)) ? "},\n" : "}\n");
+  }
+
+  sb.append("  ]\n");
+  sb.append("}\n");
+
+  try(OutputStream os = new FileOutputStream(file))
+  {
+    os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+  }
+}
+
+/* JSON has no NaN or Infinity */
+private static String json_double(double val)
+{
+  if(Double.isNaN(val) || Double.isInfinite(val))  return "null";
+
+  return Double.toString(val);
+}
+
+/**
+ * Exports all signals to a CSV file. <br>
+ * The first line contains the column names: time and the labels of the signals.<br>
+ * Signals with a lower samplerate than the highest samplerate in the file are resampled.<br>
+ *
+ * @param src_path path of the EDF(+)/BDF(+) file to read from
+ *
+ * @param dst_path path of the CSV file to create, an existing file will be overwritten
+ *
+ * @param gzip when true, the CSV file is compressed with gzip
+ *
+ * @throws IOException, EDFException
+ */
+public static void exportCSV(String src_path, String dst_path, boolean gzip) throws IOException, EDFException
+{
+  int i, j, k, n, ns, p, time_decimals;
+
+  long frame=0L;
+
+  double rate=0.0;
+
+  int[] signals,
+        decimals;
+
+  double[] buf;
+
+  byte[] line;
+
+  EDFreader hdl;
+
+  EDFresampler resampler;
+
+  OutputStream os;
+
+  hdl = new EDFreader(src_path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  try
+  {
+    ns = hdl.getNumSignals();
+
+    signals = new int[ns];
+
+    decimals = new int[ns];
+
+    for(i=0; i<ns; i++)
+    {
+      signals[i] = i;
+
+      rate = Math.max(rate, hdl.getSampleFrequency(i));
+
+/* one decimal more than needed to show the difference between two successive digital values */
+      decimals[i] = (int)Math.ceil(-Math.log10((hdl.getPhysicalMaximum(i) - hdl.getPhysicalMinimum(i)) / (hdl.getDigitalMaximum(i) - hdl.getDigitalMinimum(i)))) + 1;
+
+      decimals[i] = Math.max(0, Math.min(decimals[i], 9));
+    }
+
+    time_decimals = Math.max(0, Math.min((int)Math.ceil(Math.log10(rate)) + 1, 9));
+
+    resampler = new EDFresampler(hdl, signals, rate);
+
+    buf = new double[EDFLIB_EXPORT_CSV_FRAMES * ns];
+
+    line = new byte[(ns + 1) * 32];
+
+    os = new FileOutputStream(dst_path);
+
+    if(gzip)
+    {
+      os = new GZIPOutputStream(os, 65536);
+    }
+
+    try(OutputStream out = new BufferedOutputStream(os, 65536))
+    {
+      out.write("time".getBytes(StandardCharsets.US_ASCII));
+
+      for(i=0; i<ns; i++)
+      {
+        out.write(',');
+
+        out.write(csv_field(hdl.getSignalLabel(i).trim()).getBytes(StandardCharsets.ISO_8859_1));
+      }
+
+      out.write('\n');
+
+      while((n = resampler.readFrames(buf, EDFLIB_EXPORT_CSV_FRAMES)) > 0)
+      {
+        for(j=0; j<n; j++, frame++)
+        {
+          p = format_fixed(frame / rate, time_decimals, line, 0);
+
+          for(k=0; k<ns; k++)
+          {
+            line[p++] = ',';
+
+            p = format_fixed(buf[(j * ns) + k], decimals[k], line, p);
+          }
+
+          line[p++] = '\n';
+
+          out.write(line, 0, p);
+        }
+      }
+    }
+  }
+  finally
+  {
+    hdl.close();
+  }
+}
+
+/* quotes a CSV field when needed */
+private static String csv_field(String str)
+{
+  if((str.indexOf(',') < 0) && (str.indexOf('"') < 0) && (str.indexOf('\n') < 0))  return str;
+
+  return "\"" + str.replace("\"", "\"\"") + "\"";
+}
+
+/* Writes val with a fixed number of decimals (0 - 9) into buf at pos, returns the position after the number. */
+/* Faster than String.format() or Double.toString() and there's no garbage. Values that are too large for */
+/* a long after scaling (and NaN) are written with Double.toString(). */
+static int format_fixed(double val, int decimals, byte[] buf, int pos)
+{
+  int i, start;
+
+  long scaled, ipart, fpart;
+
+  byte tmp;
+
+  String str;
+
+  scaled = Math.round(Math.abs(val) * pow10[decimals]);
+
+  if((scaled == Long.MAX_VALUE) || Double.isNaN(val))
+  {
+    str = Double.toString(val);
+
+    for(i=0; i<str.length(); i++)
+    {
+      buf[pos++] = (byte)str.charAt(i);
+    }
+
+    return pos;
+  }
+
+  if((val < 0.0) && (scaled != 0L))
+  {
+    buf[pos++] = '-';
+  }
+
+  ipart = scaled / pow10[decimals];
+
+  fpart = scaled % pow10[decimals];
+
+/* integer part, the digits are written in reverse order and then swapped */
+  start = pos;
+
+  do
+  {
+    buf[pos++] = (byte)('0' + (ipart % 10L));
+
+    ipart /= 10L;
+  }
+  while(ipart != 0L);
+
+  for(i=start; i<((start + pos) / 2); i++)
+  {
+    tmp = buf[i];
+
+    buf[i] = buf[start + pos - 1 - i];
+
+    buf[start + pos - 1 - i] = tmp;
+  }
+
+  if(decimals > 0)
+  {
+    buf[pos++] = '.';
+
+    for(i=decimals-1; i>=0; i--)
+    {
+      buf[pos + i] = (byte)('0' + (fpart % 10L));
+
+      fpart /= 10L;
+    }
+
+    pos += decimals;
+  }
+
+  return pos;
+}
+
+}
+
+
+
+
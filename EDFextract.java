@@ -0,0 +1,235 @@
+import java.io.*;
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+
+
+/**
+ * Copies a subset of the signals of an EDF(+)/BDF(+) file into a new file. <br>
+ *<br>
+ * The file is processed a few datarecords at a time, the raw bytes of the selected signals<br>
+ * (and of the annotation signals, if any) are copied from each datarecord into the new file.<br>
+ * There's no conversion between digital and physical values and the memory usage does not depend<br>
+ * on the size of the file.<br>
+ * The header of the new file is built from the header fields of the selected signals, copied as they are.<br>
+ *<br>
+ * Usage: java EDFextract &lt;input file&gt; &lt;output file&gt; &lt;signal&gt; [&lt;signal&gt; ...]<br>
+ * The signal numbers are zero-based and do not include the annotation signals (the same as EDFreader).<br>
+ */
+public class EDFextract
+{
+
+/* the datarecords are read and written in blocks of approximately this size */
+private static final int EDFLIB_EXTRACT_BUFSZ = 4 * 1024 * 1024;
+
+/* offset (multiplied by the number of signals) and size of every signal field in the header */
+private static final int[][] signal_fields = {{0, 16}, {16, 80}, {96, 8}, {104, 8}, {112, 8},
+                                               {120, 8}, {128, 8}, {136, 80}, {216, 8}, {224, 32}};
+
+public static void main(String[] args)
+{
+  int i;
+
+  int[] signals;
+
+  long t;
+
+  if(args.length < 3)
+  {
+    System.out.printf("Usage: java EDFextract <input file> <output file> <signal> [<signal> ...]\n");
+
+    System.exit(1);
+  }
+
+  signals = new int[args.length - 2];
+
+  try
+  {
+    for(i=0; i<signals.length; i++)
+    {
+      signals[i] = Integer.parseInt(args[i + 2]);
+    }
+
+    t = System.nanoTime();
+
+    extract(args[0], args[1], signals);
+
+    t = System.nanoTime() - t;
+
+    System.out.printf("Done in %.3f seconds.\n", t / 1e9);
+  }
+  catch(NumberFormatException e)
+  {
+    System.out.printf("Invalid signal number.\n");
+
+    System.exit(1);
+  }
+  catch(IOException e)
+  {
+    System.out.printf("An error occurred: %s\n", e.getMessage());
+
+    System.exit(1);
+  }
+  catch(EDFException e)
+  {
+    System.out.printf("An error occurred: %s", e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+/**
+ * Copies the signals in the array signals, in that order, into a new file. <br>
+ * The annotation signals (EDF+ and BDF+) are always copied, after the selected signals.<br>
+ *
+ * @param src_path path of the EDF(+)/BDF(+) file to read from
+ *
+ * @param dst_path path of the file to create, an existing file will be overwritten
+ *
+ * @param signals the signal numbers to copy, zero-based, annotation signals not included
+ *
+ * @throws IOException, EDFException
+ */
+public static void extract(String src_path, String dst_path, int[] signals) throws IOException, EDFException
+{
+  int i, j, k, ns, src_ns, hdrsize, recordsize, out_recordsize, chns, records_per_block, n, p;
+
+  long r, datarecords;
+
+  int[] hdr_idx,
+        offset,
+        size;
+
+  byte[] src_hdr,
+         hdr,
+         rbuf,
+         wbuf;
+
+  EDFreader hdl;
+
+  EDFarchive.reject(src_path);
+
+  hdl = new EDFreader(src_path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  try
+  {
+    if((signals == null) || (signals.length < 1))
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "No signals selected.\n");
+    }
+
+    chns = signals.length + hdl.getNumAnnotationSignals();
+
+    if(chns > EDFreader.EDFLIB_MAXSIGNALS)
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Too many signals selected.\n");
+    }
+
+/* position in the header, offset and size in the datarecord of every channel of the new file */
+    hdr_idx = new int[chns];
+
+    offset = new int[chns];
+
+    size = new int[chns];
+
+    out_recordsize = 0;
+
+    for(i=0; i<chns; i++)
+    {
+      if(i < signals.length)
+      {
+        hdr_idx[i] = hdl.getSignalHeaderIndex(signals[i]);
+
+        offset[i] = hdl.getSignalRecordOffset(signals[i]);
+
+        size[i] = hdl.getSampelsPerDataRecord(signals[i]) * hdl.getSampleSize();
+      }
+      else
+      {
+        hdr_idx[i] = hdl.getAnnotationSignalHeaderIndex(i - signals.length);
+
+        offset[i] = hdl.getAnnotationSignalRecordOffset(i - signals.length);
+
+        size[i] = hdl.getAnnotationSignalSize(i - signals.length);
+      }
+
+      out_recordsize += size[i];
+    }
+
+/* build the header */
+    src_hdr = hdl.getHeader();
+
+    src_ns = (src_hdr.length / 256) - 1;
+
+    ns = chns;
+
+    hdr = new byte[(ns + 1) * 256];
+
+    System.arraycopy(src_hdr, 0, hdr, 0, 256);
+
+    EDFtal.put_field(hdr, 184, String.format("%d", hdr.length), 8);
+
+    EDFtal.put_field(hdr, 252, String.format("%d", ns), 4);
+
+    for(i=0; i<chns; i++)
+    {
+      for(j=0; j<signal_fields.length; j++)
+      {
+        System.arraycopy(src_hdr, 256 + (src_ns * signal_fields[j][0]) + (hdr_idx[i] * signal_fields[j][1]),
+                         hdr, 256 + (ns * signal_fields[j][0]) + (i * signal_fields[j][1]), signal_fields[j][1]);
+      }
+    }
+
+/* copy the datarecords */
+    hdrsize = hdl.getHeaderSize();
+
+    recordsize = hdl.getDataRecordSize();
+
+    datarecords = hdl.getNumDataRecords();
+
+    records_per_block = Math.max(1, EDFLIB_EXTRACT_BUFSZ / recordsize);
+
+    rbuf = new byte[records_per_block * recordsize];
+
+    wbuf = new byte[records_per_block * out_recordsize];
+
+    try(RandomAccessFile src = new RandomAccessFile(src_path, "r");
+        RandomAccessFile dst = new RandomAccessFile(dst_path, "rw"))
+    {
+      dst.setLength(0L);
+
+      dst.write(hdr);
+
+      src.seek(hdrsize);
+
+      for(r=0; r<datarecords; r+=n)
+      {
+        n = (int)Math.min(records_per_block, datarecords - r);
+
+        src.readFully(rbuf, 0, n * recordsize);
+
+        for(k=0, p=0; k<n; k++)
+        {
+          for(i=0; i<chns; i++)
+          {
+            System.arraycopy(rbuf, (k * recordsize) + offset[i], wbuf, p, size[i]);
+
+            p += size[i];
+          }
+        }
+
+        dst.write(wbuf, 0, p);
+      }
+    }
+  }
+  finally
+  {
+    hdl.close();
+  }
+}
+
+}
+
+
+
+
@@ -0,0 +1,318 @@
+import java.io.*;
+import java.nio.file.*;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Follows an EDF(+)/BDF(+) file that is being written and delivers every new datarecord to listeners. <br>
+ *<br>
+ * The file is opened with EDFreader in follow mode (EDFLIB_OPEN_FOLLOW). A thread waits for changes<br>
+ * of the file (WatchService on the directory of the file) and checks the file at least every poll interval<br>
+ * as well, because not every filesystem reports changes. When new datarecords have been written completely,<br>
+ * they are read with EDFreader.readDataRecords() and handed to the listeners, in order, in blocks of at most<br>
+ * approximately 1 MB.<br>
+ *<br>
+ * The listeners are called by the thread of the follower. The EDFreader (getReader()) may be used by the<br>
+ * listeners to get the layout of the datarecords or to read samples, but it must not be used by other threads<br>
+ * while the follower is running.<br>
+ *<br>
+ * Usage: java EDFfollower &lt;file&gt;<br>
+ */
+public class EDFfollower
+{
+
+/* the new datarecords are delivered in blocks of at most this size */
+private static final int EDFLIB_FOLLOW_BLOCK_SZ = 1024 * 1024;
+
+private EDFreader reader;
+
+private Path file;
+
+private int poll_interval;
+
+private volatile long delivered;
+
+private ArrayList<Listener> listeners = new ArrayList<Listener>();
+
+private Thread thread;
+
+private volatile boolean running;
+
+private volatile Exception error;
+
+/**
+ * Receives the datarecords that have been written to the file. <br>
+ */
+public interface Listener
+{
+  /**
+   * Called for every block of new datarecords. <br>
+   * The datarecords are stored in buf exactly as they are in the file (all signals, annotation signals included).<br>
+   * buf is reused for the next block.<br>
+   *
+   * @param reader the file
+   *
+   * @param first the first datarecord, zero-based
+   *
+   * @param n the number of datarecords
+   *
+   * @param buf the datarecords, n * EDFreader.getDataRecordSize() bytes
+   */
+  void newDataRecords(EDFreader reader, long first, int n, byte[] buf);
+}
+
+public static void main(String[] args)
+{
+  EDFfollower follower;
+
+  if(args.length != 1)
+  {
+    System.out.printf("Usage: java EDFfollower <file>\n");
+
+    System.exit(1);
+  }
+
+  try
+  {
+    follower = new EDFfollower(args[0], EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+    follower.addListener((rdr, first, n, buf) -> System.out.printf("datarecords %d - %d\n", first, first + n - 1));
+
+    follower.run();
+  }
+  catch(IOException | EDFException e)
+  {
+    System.out.printf("%s: %s\n", args[0], e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+/**
+ * Opens a file to follow. <br>
+ * The datarecords that are already in the file are delivered too, the first time the file is checked.<br>
+ *
+ * @param path path of the file
+ *
+ * @param read_annotations_mode EDFLIB_DO_NOT_READ_ANNOTATIONS, EDFLIB_READ_ANNOTATIONS or EDFLIB_READ_ALL_ANNOTATIONS
+ *
+ * @throws IOException, EDFException
+ */
+public EDFfollower(String path, int read_annotations_mode) throws IOException, EDFException
+{
+  reader = new EDFreader(path, read_annotations_mode, EDFreader.EDFLIB_OPEN_FOLLOW);
+
+  file = Paths.get(path).toAbsolutePath();
+
+  poll_interval = 1000;
+
+  running = true;
+}
+
+/**
+ * Returns the EDFreader of the file. <br>
+ *
+ * @return the reader
+ */
+public EDFreader getReader()
+{
+  return reader;
+}
+
+/**
+ * Adds a listener. <br>
+ * Listeners must be added before start().<br>
+ *
+ * @param listener the listener
+ */
+public void addListener(Listener listener)
+{
+  listeners.add(listener);
+}
+
+/**
+ * Sets the maximum time between two checks of the file. <br>
+ * Default is 1000 milliSeconds.<br>
+ *
+ * @param ms time in milliSeconds, 10 - 60000
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setPollInterval(int ms)
+{
+  if((ms < 10) || (ms > 60000))  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  poll_interval = ms;
+
+  return 0;
+}
+
+/**
+ * Returns the number of datarecords that have been delivered to the listeners. <br>
+ *
+ * @return number of datarecords
+ */
+public long getDeliveredDataRecords()
+{
+  return delivered;
+}
+
+/**
+ * Starts following the file in a new (daemon) thread. <br>
+ */
+public synchronized void start()
+{
+  if(thread != null)  return;
+
+  running = true;
+
+  thread = new Thread(() ->
+  {
+    try
+    {
+      run();
+    }
+    catch(IOException | EDFException e)
+    {
+      error = e;
+    }
+  }, "EDFfollower");
+
+  thread.setDaemon(true);
+
+  thread.start();
+}
+
+/**
+ * Stops following the file and closes it. <br>
+ * Waits until the listeners have returned.<br>
+ *
+ * @throws IOException, EDFException
+ */
+public void close() throws IOException, EDFException
+{
+  Thread t;
+
+  running = false;
+
+  synchronized(this)
+  {
+    t = thread;
+  }
+
+  if(t != null)
+  {
+    t.interrupt();
+
+    try
+    {
+      t.join();
+    }
+    catch(InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  reader.close();
+}
+
+/**
+ * Returns the error that stopped the thread of the follower, if any. <br>
+ *
+ * @return the error or null
+ */
+public Exception getError()
+{
+  return error;
+}
+
+/**
+ * Follows the file in the calling thread until the thread is interrupted or close() is called. <br>
+ *
+ * @throws IOException, EDFException
+ */
+public void run() throws IOException, EDFException
+{
+  int n, recordsize, records;
+
+  byte[] buf;
+
+  WatchService watcher=null;
+
+  WatchKey key;
+
+  recordsize = reader.getDataRecordSize();
+
+  records = Math.max(1, EDFLIB_FOLLOW_BLOCK_SZ / recordsize);
+
+  buf = new byte[records * recordsize];
+
+  try
+  {
+/* not every filesystem supports a WatchService, polling is done anyway */
+    try
+    {
+      watcher = FileSystems.getDefault().newWatchService();
+
+      file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+    }
+    catch(IOException | UnsupportedOperationException e)
+    {
+      if(watcher != null)  watcher.close();
+
+      watcher = null;
+    }
+
+    while(running && !Thread.currentThread().isInterrupted())
+    {
+      reader.update();
+
+      while(delivered < reader.getNumDataRecords())
+      {
+        n = reader.readDataRecords(delivered, records, buf);
+
+        if(n < 1)  break;
+
+        for(Listener listener : listeners)
+        {
+          listener.newDataRecords(reader, delivered, n, buf);
+        }
+
+        delivered += n;
+      }
+
+/* wait for a change of a file in the directory or for the poll interval */
+      try
+      {
+        if(watcher != null)
+        {
+          key = watcher.poll(poll_interval, TimeUnit.MILLISECONDS);
+
+          if(key != null)
+          {
+            key.pollEvents();
+
+            key.reset();
+          }
+        }
+        else
+        {
+          Thread.sleep(poll_interval);
+        }
+      }
+      catch(InterruptedException e)
+      {
+        break;
+      }
+    }
+  }
+  finally
+  {
+    if(watcher != null)  watcher.close();
+  }
+}
+
+}
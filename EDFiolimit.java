@@ -0,0 +1,73 @@
+import java.io.*;
+import java.lang.*;
+import java.util.concurrent.*;
+
+
+/*
+ * Limits the number of threads that read or write files at the same time (see EDFbatch).
+ *
+ * Only the reads and writes themselves are done with a permit, the work in between (checking, converting)
+ * is not limited. A thread of a ForkJoinPool waits for a permit with ForkJoinPool.managedBlock(),
+ * so the pool can start another thread to keep the processors busy in the meantime.
+ */
+class EDFiolimit
+{
+
+private final Semaphore permits;
+
+EDFiolimit(int n)
+{
+  permits = new Semaphore(n, true);
+}
+
+/* waits for a permit, every acquire() must be followed by a release() */
+void acquire() throws InterruptedIOException
+{
+  Blocker blocker = new Blocker();
+
+  try
+  {
+    ForkJoinPool.managedBlock(blocker);
+  }
+  catch(InterruptedException e)
+  {
+    Thread.currentThread().interrupt();
+
+    throw new InterruptedIOException("Interrupted.");
+  }
+}
+
+void release()
+{
+  permits.release();
+}
+
+/* acquires one permit */
+private class Blocker implements ForkJoinPool.ManagedBlocker
+{
+  boolean acquired;
+
+  public boolean block() throws InterruptedException
+  {
+    if(!acquired)
+    {
+      permits.acquire();
+
+      acquired = true;
+    }
+
+    return true;
+  }
+
+  public boolean isReleasable()
+  {
+    if(!acquired)
+    {
+      acquired = permits.tryAcquire();
+    }
+
+    return acquired;
+  }
+}
+
+}
@@ -0,0 +1,503 @@
+import java.io.*;
+import java.lang.*;
+import java.util.*;
+
+
+/**
+ * Joins signals with different samplerates on a common time index. <br>
+ *<br>
+ * The output consists of frames: one value of every selected signal, all taken at the same moment.<br>
+ * Frame n is at time n / rate, measured from the start of the file. Every signal has its own method<br>
+ * to get the value at that moment:<br>
+ *<br>
+ * EDFLIB_JOIN_NEAREST: the sample that is nearest in time<br>
+ * EDFLIB_JOIN_HOLD: the last sample at or before that moment (sample and hold, e.g. SpO2 or events)<br>
+ * EDFLIB_JOIN_LINEAR: linear interpolation between the two samples around that moment<br>
+ *<br>
+ * Unlike EDFresampler there's no filter: this is cheap, works with every rate, and never mixes samples<br>
+ * that are further apart than one sample period. Use EDFresampler when the spectrum matters (e.g. downsampling EEG).<br>
+ * Before the start and after the end of a signal the first respectively last sample is used.<br>
+ *<br>
+ * Nothing is joined in advance: the frames are computed when they are read, from a window of a few datarecords<br>
+ * per signal. The memory usage does not depend on the size of the file. A consumer can either read frames<br>
+ * (readFrames()) or have them delivered in blocks (process()). When the EDFreader follows a file that is being<br>
+ * written (EDFLIB_OPEN_FOLLOW), the frames of new datarecords become available after EDFreader.update().<br>
+ * The sample position indicators of the selected signals in EDFreader are used by the join, don't read from<br>
+ * those signals while using the join.<br>
+ *<br>
+ * Example: EEG (256 Hz) with SpO2 (1 Hz) held, at the rate of the EEG:<br>
+ *<br>
+ * EDFjoin join = new EDFjoin(hdl, new int[]{0, 1}, new int[]{EDFjoin.EDFLIB_JOIN_NEAREST, EDFjoin.EDFLIB_JOIN_HOLD}, 256.0);<br>
+ * join.process((first, n, buf) -&gt; { ... buf[(frame * 2) + channel] ... });<br>
+ *<br>
+ * Usage: java EDFjoin [-nearest | -hold | -linear] &lt;file&gt; &lt;rate&gt;<br>
+ */
+public class EDFjoin
+{
+
+public static final int EDFLIB_JOIN_NEAREST = 0;
+public static final int EDFLIB_JOIN_HOLD    = 1;
+public static final int EDFLIB_JOIN_LINEAR  = 2;
+
+/* number of datarecords read from the file at once, per signal (at least 2, the samples around a frame are then always in one window) */
+private static final int EDFLIB_JOIN_WINDOW_RECORDS = 8;
+
+/* number of frames per block delivered by process() */
+private static final int EDFLIB_JOIN_BLOCK_FRAMES = 4096;
+
+/* a sample position closer than this to a whole number is taken as that number */
+private static final double EDFLIB_JOIN_EPSILON = 1e-9;
+
+private EDFreader hdl;
+
+private Channel[] chns;
+
+private long frame_pntr;
+
+private double rate;
+
+/* state of one signal */
+private static class Channel
+{
+  int      signal;
+
+  int      method;
+
+  int      spr;          /* samples per datarecord */
+
+  long     samples;      /* number of samples of the signal in the file */
+
+  double   ratio;        /* samples of the signal per frame */
+
+  double[] win;          /* win[i] contains sample win_start + i */
+
+  long     win_start;
+
+  int      win_len;
+
+  double[] rdbuf;
+}
+
+/**
+ * Receives the frames in blocks. <br>
+ */
+public interface Listener
+{
+  /**
+   * Called for every block of frames. <br>
+   * The values are stored interleaved: buf[(frame * number of channels) + channel].<br>
+   * buf is reused for the next block.<br>
+   *
+   * @param first the first frame, zero-based
+   *
+   * @param n the number of frames
+   *
+   * @param buf the frames
+   */
+  void frames(long first, int n, double[] buf);
+}
+
+public static void main(String[] args)
+{
+  int i, n, nch, method=EDFLIB_JOIN_NEAREST;
+
+  int[] signals, methods;
+
+  double frame_rate;
+
+  double[] buf;
+
+  String path;
+
+  EDFreader hdl;
+
+  EDFjoin join;
+
+  StringBuilder sb;
+
+  if((args.length != 2) && (args.length != 3))
+  {
+    System.out.printf("Usage: java EDFjoin [-nearest | -hold | -linear] <file> <rate>\n");
+
+    System.exit(1);
+  }
+
+  if(args.length == 3)
+  {
+    if(args[0].equals("-hold"))
+    {
+      method = EDFLIB_JOIN_HOLD;
+    }
+    else if(args[0].equals("-linear"))
+      {
+        method = EDFLIB_JOIN_LINEAR;
+      }
+      else if(!args[0].equals("-nearest"))
+        {
+          System.out.printf("Unknown option: %s\n", args[0]);
+
+          System.exit(1);
+        }
+  }
+
+  path = args[args.length - 2];
+
+  try
+  {
+    frame_rate = Double.parseDouble(args[args.length - 1]);
+
+    hdl = new EDFreader(path);
+
+    nch = hdl.getNumSignals();
+
+    signals = new int[nch];
+
+    methods = new int[nch];
+
+    for(i=0; i<nch; i++)
+    {
+      signals[i] = i;
+
+      methods[i] = method;
+    }
+
+    join = new EDFjoin(hdl, signals, methods, frame_rate);
+
+    buf = new double[EDFLIB_JOIN_BLOCK_FRAMES * nch];
+
+    sb = new StringBuilder();
+
+    while((n = join.readFrames(buf, EDFLIB_JOIN_BLOCK_FRAMES)) > 0)
+    {
+      sb.setLength(0);
+
+      for(i=0; i<(n * nch); i++)
+      {
+        if((i % nch) == 0)
+        {
+          sb.append(String.format("%.6f", join.getFrameTime(join.getFramePosition() - n + (i / nch))));
+        }
+
+        sb.append(',').append(buf[i]);
+
+        if((i % nch) == (nch - 1))  sb.append('\n');
+      }
+
+      System.out.print(sb);
+    }
+
+    hdl.close();
+  }
+  catch(NumberFormatException e)
+  {
+    System.out.printf("Invalid rate: %s\n", args[args.length - 1]);
+
+    System.exit(1);
+  }
+  catch(IOException | EDFException e)
+  {
+    System.out.printf("%s: %s\n", path, e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+/**
+ * Creates a join of the signals in the array signals. <br>
+ *
+ * @param p_hdl an opened EDFreader
+ *
+ * @param signals the signal numbers to join, zero-based, the order of the channels in the frames
+ *
+ * @param methods the method of every signal: EDFLIB_JOIN_NEAREST, EDFLIB_JOIN_HOLD or EDFLIB_JOIN_LINEAR
+ *
+ * @param p_rate the number of frames per second, e.g. the samplerate of the fastest signal
+ *
+ * @throws EDFException
+ */
+public EDFjoin(EDFreader p_hdl, int[] signals, int[] methods, double p_rate) throws EDFException
+{
+  int i;
+
+  if((p_hdl == null) || (signals == null) || (signals.length < 1))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "No signals selected.\n");
+  }
+
+  if((methods == null) || (methods.length != signals.length))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Every signal needs a method.\n");
+  }
+
+  if(!(p_rate > 0.0) || Double.isInfinite(p_rate))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "The rate must be greater than zero.\n");
+  }
+
+  hdl = p_hdl;
+
+  rate = p_rate;
+
+  chns = new Channel[signals.length];
+
+  for(i=0; i<signals.length; i++)
+  {
+    if((methods[i] < EDFLIB_JOIN_NEAREST) || (methods[i] > EDFLIB_JOIN_LINEAR))
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid method.\n");
+    }
+
+    chns[i] = new Channel();
+
+    chns[i].signal = signals[i];
+
+    chns[i].method = methods[i];
+
+    chns[i].ratio = p_hdl.getSampleFrequency(signals[i]) / p_rate;
+
+    chns[i].spr = p_hdl.getSampelsPerDataRecord(signals[i]);
+
+    chns[i].rdbuf = new double[chns[i].spr * EDFLIB_JOIN_WINDOW_RECORDS];
+
+    chns[i].win = new double[chns[i].spr * EDFLIB_JOIN_WINDOW_RECORDS * 2];
+  }
+}
+
+/**
+ * Returns the number of frames in the file. <br>
+ * When the file is followed, this number grows after EDFreader.update().<br>
+ *
+ * @return the number of whole frame periods in the duration of the file
+ */
+public long getNumFrames()
+{
+  return (long)Math.floor(((hdl.getNumDataRecords() * hdl.getLongDataRecordDuration() * rate) / (double)EDFreader.EDFLIB_TIME_DIMENSION) + EDFLIB_JOIN_EPSILON);
+}
+
+/**
+ * Returns the number of frames per second. <br>
+ *
+ * @return the rate in Hz
+ */
+public double getRate()
+{
+  return rate;
+}
+
+/**
+ * Returns the number of channels in a frame. <br>
+ *
+ * @return the number of selected signals
+ */
+public int getNumChannels()
+{
+  return chns.length;
+}
+
+/**
+ * Returns the time of a frame. <br>
+ *
+ * @param n the frame, zero-based
+ *
+ * @return the time in seconds from the start of the file
+ */
+public double getFrameTime(long n)
+{
+  return n / rate;
+}
+
+/**
+ * Returns the position of the next frame that will be read. <br>
+ *
+ * @return the frame position, zero-based
+ */
+public long getFramePosition()
+{
+  return frame_pntr;
+}
+
+/**
+ * Sets the position of the next frame that will be read. <br>
+ * Only the datarecords around the new position are read.<br>
+ *
+ * @param n the frame position, zero-based
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setFramePosition(long n)
+{
+  if(n < 0L)  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  frame_pntr = n;
+
+  return 0;
+}
+
+/**
+ * Reads frames of physical values. <br>
+ * The values are stored interleaved: buf[(frame * number of channels) + channel].<br>
+ * Returns the number of frames read, this is less than n at the end of the file.<br>
+ *
+ * @param buf the buffer, must have room for n * number of channels values
+ *
+ * @param n the number of frames to read
+ *
+ * @return the number of frames read (this can be less than n or zero!)
+ *
+ * @throws IOException, EDFException
+ */
+public int readFrames(double[] buf, int n) throws IOException, EDFException
+{
+  int i, j, nch;
+
+  long frames;
+
+  if((n < 0) || (buf == null) || (buf.length < (n * chns.length)))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Buffer is too small.\n");
+  }
+
+  frames = getNumFrames();
+
+  if((frame_pntr + n) > frames)
+  {
+    n = (int)Math.max(0L, frames - frame_pntr);
+  }
+
+  nch = chns.length;
+
+  for(i=0; i<nch; i++)
+  {
+    chns[i].samples = hdl.getTotalSamples(chns[i].signal);
+
+    for(j=0; j<n; j++)
+    {
+      buf[(j * nch) + i] = value(chns[i], frame_pntr + j);
+    }
+  }
+
+  frame_pntr += n;
+
+  return n;
+}
+
+/**
+ * Delivers all frames from the current position up to the end of the file to the listener. <br>
+ * Only one block of frames is in memory at the same time.<br>
+ *
+ * @param listener the listener
+ *
+ * @return the number of frames delivered
+ *
+ * @throws IOException, EDFException
+ */
+public long process(Listener listener) throws IOException, EDFException
+{
+  int n;
+
+  long total=0L;
+
+  double[] buf;
+
+  buf = new double[EDFLIB_JOIN_BLOCK_FRAMES * chns.length];
+
+  while((n = readFrames(buf, EDFLIB_JOIN_BLOCK_FRAMES)) > 0)
+  {
+    listener.frames(frame_pntr - n, n, buf);
+
+    total += n;
+  }
+
+  return total;
+}
+
+/* returns the value of the signal at frame n */
+private double value(Channel chn, long n) throws IOException, EDFException
+{
+  long k;
+
+  double pos, frac;
+
+  pos = n * chn.ratio;
+
+  k = (long)Math.floor(pos);
+
+  if((pos - k) > (1.0 - EDFLIB_JOIN_EPSILON))  k++;
+
+  frac = Math.max(pos - k, 0.0);
+
+  if(chn.method == EDFLIB_JOIN_NEAREST)
+  {
+    if(frac >= 0.5)  k++;
+
+    frac = 0.0;
+  }
+  else if(chn.method == EDFLIB_JOIN_HOLD)
+    {
+      frac = 0.0;
+    }
+
+  if(k >= (chn.samples - 1L))
+  {
+    k = chn.samples - 1L;
+
+    frac = 0.0;
+  }
+
+  if(frac < EDFLIB_JOIN_EPSILON)
+  {
+    fill_window(chn, k, k);
+
+    return chn.win[(int)(k - chn.win_start)];
+  }
+
+  fill_window(chn, k, k + 1L);
+
+  return ((1.0 - frac) * chn.win[(int)(k - chn.win_start)]) + (frac * chn.win[(int)(k + 1L - chn.win_start)]);
+}
+
+/* makes sure the window contains the samples first up to and including last */
+private void fill_window(Channel chn, long first, long last) throws IOException, EDFException
+{
+  int n, skip;
+
+/* outside the window: start a new one at the datarecord of the first sample */
+  if((first < chn.win_start) || (first >= (chn.win_start + chn.win_len)))
+  {
+    chn.win_start = first - (first % chn.spr);
+
+    chn.win_len = 0;
+
+    hdl.fseek(chn.signal, chn.win_start, EDFreader.EDFSEEK_SET);
+  }
+
+  while((chn.win_start + chn.win_len) <= last)
+  {
+/* no room for the next datarecords: drop the datarecords before the one of first */
+    if((chn.win_len + chn.rdbuf.length) > chn.win.length)
+    {
+      skip = (int)(first - chn.win_start);
+
+      skip -= skip % chn.spr;
+
+      System.arraycopy(chn.win, skip, chn.win, 0, chn.win_len - skip);
+
+      chn.win_len -= skip;
+
+      chn.win_start += skip;
+    }
+
+    n = hdl.readPhysicalSamples(chn.signal, chn.rdbuf);
+
+    if(n < 1)
+    {
+      throw new EDFException(EDFreader.EDFLIB_FILE_READ_ERROR, "Unexpected end of signal.\n");
+    }
+
+    System.arraycopy(chn.rdbuf, 0, chn.win, chn.win_len, n);
+
+    chn.win_len += n;
+  }
+}
+
+}
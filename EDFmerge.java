@@ -0,0 +1,554 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.lang.*;
+import java.util.*;
+import java.time.*;
+
+
+/**
+ * Concatenates EDF(+)/BDF(+) files into one EDF+ (or BDF+) file. <br>
+ *<br>
+ * This is useful when a recorder has been restarted and the recording is spread over several files.<br>
+ * The files are sorted on their starttime. The signals (number of signals, labels, physical dimension,<br>
+ * physical and digital minimum and maximum, samples per datarecord) and the datarecord duration must be the same<br>
+ * in all files. The file type of the new file is EDF+ for EDF(+) files and BDF+ for BDF(+) files.<br>
+ *<br>
+ * When every file starts exactly where the previous one ends, the new file is continuous (EDF+C),<br>
+ * when there are gaps between the files, the new file is discontinuous (EDF+D). Files that overlap in time<br>
+ * can not be merged.<br>
+ *<br>
+ * The samples are not decoded, the raw bytes of the datarecords are streamed through a large buffer,<br>
+ * only a few datarecords are in memory at any time. The timekeeping TAL's and the onsets of the annotations<br>
+ * are rebased on the starttime of the first file.<br>
+ *<br>
+ * Note: EDF+D and BDF+D files can not be used as input (EDFreader does not support them).<br>
+ *<br>
+ * Usage: java EDFmerge &lt;output file&gt; &lt;input file&gt; &lt;input file&gt; [&lt;input file&gt; ...]<br>
+ */
+public class EDFmerge
+{
+
+private static final long EDFLIB_TIME_DIMENSION = EDFreader.EDFLIB_TIME_DIMENSION;
+
+/* the datarecords are read and written in blocks of approximately this size */
+private static final int EDFLIB_MERGE_BUFSZ = 4 * 1024 * 1024;
+
+/* default size of an annotation signal in a datarecord, the same as EDFwriter */
+private static final int EDFLIB_ANNOTATION_BYTES = 114;
+
+private static final int EDFLIB_MAX_ANNOTATION_CHANNELS = 64;
+
+/* signal fields that must be the same in all files: offset (multiplied by the number of signals) and size */
+private static final int[][] compared_fields = {{0, 16}, {96, 8}, {104, 8}, {112, 8}, {120, 8}, {128, 8}, {216, 8}};
+
+/* offset (multiplied by the number of signals) and size of every signal field in the header */
+private static final int[][] signal_fields = {{0, 16}, {16, 80}, {96, 8}, {104, 8}, {112, 8},
+                                               {120, 8}, {128, 8}, {136, 80}, {216, 8}, {224, 32}};
+
+/* one input file */
+private static class Segment
+{
+  String path;
+
+  byte[] hdr;
+
+  int    hdrsize;
+
+  int    recordsize;
+
+  long   records;
+
+  long   duration;     /* datarecord duration */
+
+  long   start_sec;    /* starttime in the header, seconds since 1970 */
+
+  long   subsecond;    /* timekeeping onset of the first datarecord in this file */
+
+  long   tal_start;    /* timekeeping onset of the first datarecord, relative to the starttime of the first file */
+
+  int[]  hdr_idx;      /* position of every signal in the header */
+
+  int[]  offset;       /* offset of every signal in the datarecord */
+
+  int[]  size;         /* size of every signal in the datarecord */
+
+  ArrayList<EDFtal.Annotation> annotations;
+}
+
+public static void main(String[] args)
+{
+  int not_stored;
+
+  long t;
+
+  if(args.length < 3)
+  {
+    System.out.printf("Usage: java EDFmerge <output file> <input file> <input file> [<input file> ...]\n");
+
+    System.exit(1);
+  }
+
+  try
+  {
+    t = System.nanoTime();
+
+    not_stored = merge(Arrays.copyOfRange(args, 1, args.length), args[0]);
+
+    t = System.nanoTime() - t;
+
+    System.out.printf("Done in %.3f seconds.\n", t / 1e9);
+
+    if(not_stored > 0)
+    {
+      System.out.printf("Warning: %d annotations could not be stored.\n", not_stored);
+    }
+  }
+  catch(IOException e)
+  {
+    System.out.printf("An error occurred: %s\n", e.getMessage());
+
+    System.exit(1);
+  }
+  catch(EDFException e)
+  {
+    System.out.printf("An error occurred: %s", e.getMessage());
+
+    System.exit(1);
+  }
+}
+
+/**
+ * Concatenates the files in src_paths (in order of their starttime) into a new file. <br>
+ *
+ * @param src_paths paths of the EDF(+)/BDF(+) files to read from
+ *
+ * @param dst_path path of the file to create, an existing file will be overwritten
+ *
+ * @throws IOException, EDFException
+ *
+ * @return the number of annotations that could not be stored in the new file (normally zero)
+ */
+public static int merge(String[] src_paths, String dst_path) throws IOException, EDFException
+{
+  int i, j, k, smp_sz, annot_sz, annot_chns, max_tal_len=0, tk_len;
+
+  long records=0L, end=0L;
+
+  boolean discontinuous=false;
+
+  byte[] hdr;
+
+  int[] tal_len;
+
+  Segment seg, first;
+
+  EDFtal.Annotation annot;
+
+  ArrayList<Segment> segments = new ArrayList<Segment>();
+
+  ArrayList<EDFtal.Annotation> annotations = new ArrayList<EDFtal.Annotation>();
+
+  if((src_paths == null) || (src_paths.length < 1))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "No files to merge.\n");
+  }
+
+  for(i=0; i<src_paths.length; i++)
+  {
+    segments.add(open_segment(src_paths[i]));
+  }
+
+  segments.sort((a, b) -> Long.compare((a.start_sec * EDFLIB_TIME_DIMENSION) + a.subsecond, (b.start_sec * EDFLIB_TIME_DIMENSION) + b.subsecond));
+
+  first = segments.get(0);
+
+  smp_sz = sample_size(first);
+
+/* check the signals and the timeline */
+  for(i=0; i<segments.size(); i++)
+  {
+    seg = segments.get(i);
+
+    if(sample_size(seg) != smp_sz)
+    {
+      throw new EDFException(EDFreader.EDFLIB_FILETYPE_ERROR, String.format("File %s is not of the same type (EDF or BDF) as %s.\n", seg.path, first.path));
+    }
+
+    if(seg.hdr_idx.length != first.hdr_idx.length)
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, String.format("File %s has a different number of signals than %s.\n", seg.path, first.path));
+    }
+
+    if(seg.duration != first.duration)
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, String.format("File %s has a different datarecord duration than %s.\n", seg.path, first.path));
+    }
+
+    for(j=0; j<seg.hdr_idx.length; j++)
+    {
+      if(cmp_signal_fields(first, seg, j) != 0)
+      {
+        throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, String.format("The parameters of signal %d of file %s differ from %s.\n", j, seg.path, first.path));
+      }
+    }
+
+    seg.tal_start = ((seg.start_sec - first.start_sec) * EDFLIB_TIME_DIMENSION) + seg.subsecond;
+
+    if(i > 0)
+    {
+      if(seg.tal_start < end)
+      {
+        throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, String.format("File %s overlaps in time with the previous file.\n", seg.path));
+      }
+
+      if(seg.tal_start > end)
+      {
+        discontinuous = true;
+      }
+    }
+
+    end = seg.tal_start + (seg.records * seg.duration);
+
+    records += seg.records;
+
+/* rebase the annotations on the starttime of the first file */
+    for(j=0; j<seg.annotations.size(); j++)
+    {
+      annot = seg.annotations.get(j);
+
+      annot.onset_txt = EDFtal.shift_onset(annot.onset_txt, seg.start_sec - first.start_sec);
+
+      annot.onset += (seg.start_sec - first.start_sec) * EDFLIB_TIME_DIMENSION;
+
+      annotations.add(annot);
+    }
+
+    seg.annotations = null;
+  }
+
+  if(records > 99999999L)
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Too many datarecords.\n");
+  }
+
+/* choose the size and the number of the annotation signals so that all annotations fit */
+  tal_len = new int[annotations.size()];
+
+  for(i=0; i<tal_len.length; i++)
+  {
+    tal_len[i] = EDFtal.build_tal(annotations.get(i), 0L).length;
+
+    if(tal_len[i] > max_tal_len)  max_tal_len = tal_len[i];
+  }
+
+  tk_len = EDFtal.timekeeping_tal(end, true).length;
+
+  annot_sz = Math.max(EDFLIB_ANNOTATION_BYTES, tk_len + max_tal_len + 1);
+
+  annot_sz = ((annot_sz + smp_sz - 1) / smp_sz) * smp_sz;
+
+  for(annot_chns=1; annot_chns<EDFLIB_MAX_ANNOTATION_CHANNELS; annot_chns++)
+  {
+    if(annotations_fit(tal_len, records, annot_chns, annot_sz, tk_len) != 0)  break;
+  }
+
+  hdr = build_header(first, smp_sz, annot_chns, annot_sz, records, discontinuous);
+
+/* stream the datarecords */
+  try(RandomAccessFile dst = new RandomAccessFile(dst_path, "rw"))
+  {
+    dst.setLength(0L);
+
+    dst.write(hdr);
+
+    for(i=0, k=0; i<segments.size(); i++)
+    {
+      k = write_segment(segments.get(i), dst, annot_chns, annot_sz, annotations, k);
+    }
+  }
+
+  return EDFtal.not_stored(annotations);
+}
+
+/* reads the header and the annotations of a file */
+private static Segment open_segment(String path) throws IOException, EDFException
+{
+  int i, n;
+
+  EDFreader hdl;
+
+  Segment seg = new Segment();
+
+  EDFarchive.reject(path);
+
+  hdl = new EDFreader(path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  try
+  {
+    seg.path = path;
+
+    seg.hdr = hdl.getHeader();
+
+    seg.hdrsize = hdl.getHeaderSize();
+
+    seg.recordsize = hdl.getDataRecordSize();
+
+    seg.records = hdl.getNumDataRecords();
+
+    seg.duration = hdl.getLongDataRecordDuration();
+
+    seg.start_sec = LocalDateTime.of(hdl.getStartDateYear(), hdl.getStartDateMonth(), hdl.getStartDateDay(),
+                                     hdl.getStartTimeHour(), hdl.getStartTimeMinute(), hdl.getStartTimeSecond()).toEpochSecond(ZoneOffset.UTC);
+
+    seg.subsecond = hdl.getStartTimeSubSecond();
+
+    n = hdl.getNumSignals();
+
+    seg.hdr_idx = new int[n];
+
+    seg.offset = new int[n];
+
+    seg.size = new int[n];
+
+    for(i=0; i<n; i++)
+    {
+      seg.hdr_idx[i] = hdl.getSignalHeaderIndex(i);
+
+      seg.offset[i] = hdl.getSignalRecordOffset(i);
+
+      seg.size[i] = hdl.getSampelsPerDataRecord(i) * hdl.getSampleSize();
+    }
+
+    try(RandomAccessFile src = new RandomAccessFile(path, "r"))
+    {
+      seg.annotations = EDFtal.read_annotations(hdl, src.getChannel(), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+  }
+  finally
+  {
+    hdl.close();
+  }
+
+  return seg;
+}
+
+/* BDF files start with 0xFF */
+private static int sample_size(Segment seg)
+{
+  if(seg.hdr[0] == -1)  return 3;
+
+  return 2;
+}
+
+/* compares the header fields of signal s of two files, returns 0 when they are equal */
+private static int cmp_signal_fields(Segment seg1, Segment seg2, int s)
+{
+  int i, j, ns1, ns2, p1, p2;
+
+  ns1 = (seg1.hdr.length / 256) - 1;
+
+  ns2 = (seg2.hdr.length / 256) - 1;
+
+  for(i=0; i<compared_fields.length; i++)
+  {
+    p1 = 256 + (ns1 * compared_fields[i][0]) + (seg1.hdr_idx[s] * compared_fields[i][1]);
+
+    p2 = 256 + (ns2 * compared_fields[i][0]) + (seg2.hdr_idx[s] * compared_fields[i][1]);
+
+    for(j=0; j<compared_fields[i][1]; j++)
+    {
+      if(seg1.hdr[p1 + j] != seg2.hdr[p2 + j])  return -1;
+    }
+  }
+
+  return 0;
+}
+
+/* Simulates EDFtal.fill_annotation_signal() for all datarecords. tal_len contains the length of every TAL, */
+/* tk_len is the (maximum) length of the timekeeping TAL. Returns 1 when all annotations fit, otherwise 0 */
+private static int annotations_fit(int[] tal_len, long records, int annot_chns, int annot_sz, int tk_len)
+{
+  int i, k=0, p, empty;
+
+  long r;
+
+  for(r=0; (r < records) && (k < tal_len.length); r++)
+  {
+    for(i=0; i<annot_chns; i++)
+    {
+      p = (i == 0) ? tk_len : 0;
+
+      empty = p;
+
+      for(; k<tal_len.length; k++)
+      {
+        if((p + tal_len[k]) > annot_sz)
+        {
+          if(p == empty)  continue;
+
+          break;
+        }
+
+        p += tal_len[k];
+      }
+    }
+  }
+
+  if(k < tal_len.length)  return 0;
+
+  return 1;
+}
+
+/* builds the header of the new file, the fields of the signals are copied from the first file */
+private static byte[] build_header(Segment first, int smp_sz, int annot_chns, int annot_sz, long records, boolean discontinuous) throws EDFException
+{
+  int i, j, ns, src_ns, signals;
+
+  String str;
+
+  LocalDateTime start;
+
+  byte[] hdr;
+
+  signals = first.hdr_idx.length;
+
+  ns = signals + annot_chns;
+
+  src_ns = (first.hdr.length / 256) - 1;
+
+  hdr = new byte[(ns + 1) * 256];
+
+  Arrays.fill(hdr, (byte)' ');
+
+/* version, patient, recording, startdate and starttime */
+  System.arraycopy(first.hdr, 0, hdr, 0, 184);
+
+  if(new String(first.hdr, 192, 4).equals((smp_sz == 3) ? "BDF+" : "EDF+") == false)
+  {
+/* the first file is not EDF+/BDF+, convert the patient and recording field to the EDF+ format */
+    start = LocalDateTime.ofEpochSecond(first.start_sec, 0, ZoneOffset.UTC);
+
+    str = "X X X X " + new String(first.hdr, 8, 80).trim();
+
+    EDFtal.put_field(hdr, 8, str, 80);
+
+    str = String.format("Startdate %02d-%s-%04d X X X ", start.getDayOfMonth(), EDFtal.month_names[start.getMonthValue() - 1], start.getYear()) +
+          new String(first.hdr, 88, 80).trim();
+
+    EDFtal.put_field(hdr, 88, str, 80);
+  }
+
+  EDFtal.put_field(hdr, 184, String.format("%d", hdr.length), 8);
+
+  if(smp_sz == 3)
+  {
+    EDFtal.put_field(hdr, 192, discontinuous ? "BDF+D" : "BDF+C", 44);
+  }
+  else
+  {
+    EDFtal.put_field(hdr, 192, discontinuous ? "EDF+D" : "EDF+C", 44);
+  }
+
+  EDFtal.put_field(hdr, 236, String.format("%d", records), 8);
+
+  System.arraycopy(first.hdr, 244, hdr, 244, 8);  /* datarecord duration */
+
+  EDFtal.put_field(hdr, 252, String.format("%d", ns), 4);
+
+/* the signals */
+  for(i=0; i<signals; i++)
+  {
+    for(j=0; j<signal_fields.length; j++)
+    {
+      System.arraycopy(first.hdr, 256 + (src_ns * signal_fields[j][0]) + (first.hdr_idx[i] * signal_fields[j][1]),
+                       hdr, 256 + (ns * signal_fields[j][0]) + (i * signal_fields[j][1]), signal_fields[j][1]);
+    }
+  }
+
+/* the annotation signals, the same as EDFwriter */
+  for(; i<ns; i++)
+  {
+    EDFtal.put_field(hdr, 256 + (i * 16), (smp_sz == 3) ? "BDF Annotations" : "EDF Annotations", 16);
+
+    EDFtal.put_field(hdr, 256 + (ns * 104) + (i * 8), "-1", 8);
+
+    EDFtal.put_field(hdr, 256 + (ns * 112) + (i * 8), "1", 8);
+
+    EDFtal.put_field(hdr, 256 + (ns * 120) + (i * 8), (smp_sz == 3) ? "-8388608" : "-32768", 8);
+
+    EDFtal.put_field(hdr, 256 + (ns * 128) + (i * 8), (smp_sz == 3) ? "8388607" : "32767", 8);
+
+    EDFtal.put_field(hdr, 256 + (ns * 216) + (i * 8), String.format("%d", annot_sz / smp_sz), 8);
+  }
+
+  return hdr;
+}
+
+/* copies the datarecords of one file into the new file, the annotation signals are rebuilt and filled */
+/* with the annotations starting at index k, returns the index of the next annotation to store */
+private static int write_segment(Segment seg, RandomAccessFile dst, int annot_chns, int annot_sz, ArrayList<EDFtal.Annotation> annotations, int k) throws IOException, EDFException
+{
+  int i, j, n, p, signals, out_recordsize, records_per_block;
+
+  long r;
+
+  byte[] rbuf,
+         wbuf;
+
+  signals = seg.hdr_idx.length;
+
+  out_recordsize = annot_chns * annot_sz;
+
+  for(i=0; i<signals; i++)
+  {
+    out_recordsize += seg.size[i];
+  }
+
+  records_per_block = Math.max(1, EDFLIB_MERGE_BUFSZ / Math.max(seg.recordsize, out_recordsize));
+
+  rbuf = new byte[records_per_block * seg.recordsize];
+
+  wbuf = new byte[records_per_block * out_recordsize];
+
+  try(RandomAccessFile src = new RandomAccessFile(seg.path, "r"))
+  {
+    src.seek(seg.hdrsize);
+
+    for(r=0; r<seg.records; r+=n)
+    {
+      n = (int)Math.min(records_per_block, seg.records - r);
+
+      src.readFully(rbuf, 0, n * seg.recordsize);
+
+      for(j=0, p=0; j<n; j++)
+      {
+        for(i=0; i<signals; i++)
+        {
+          System.arraycopy(rbuf, (j * seg.recordsize) + seg.offset[i], wbuf, p, seg.size[i]);
+
+          p += seg.size[i];
+        }
+
+        for(i=0; i<annot_chns; i++)
+        {
+          k = EDFtal.fill_annotation_signal(wbuf, p, annot_sz,
+                                            (i == 0) ? EDFtal.timekeeping_tal(seg.tal_start + ((r + j) * seg.duration), false) : null,
+                                            annotations, k, 0L);
+
+          p += annot_sz;
+        }
+      }
+
+      dst.write(wbuf, 0, p);
+    }
+  }
+
+  return k;
+}
+
+}
+
+
+
+
@@ -0,0 +1,821 @@
+import java.io.*;
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+
+
+/**
+ * Derived signals (a montage) computed on the fly from the signals of an EDFreader. <br>
+ *<br>
+ * A derivation is a linear combination of signals with the same number of samples per datarecord,<br>
+ * e.g. a bipolar derivation F3-C3 (weights 1 and -1) or C3 against the average of all EEG signals.<br>
+ * The derivations are read like the signals of EDFreader: readPhysicalSamples(), fseek(), ftell() and rewind(),<br>
+ * every derivation has its own sample position indicator.<br>
+ *<br>
+ * The datarecords are read in blocks of approximately 1 MB, all signals at once. Every signal used by<br>
+ * the montage is converted to physical values once per block and every derivation is calculated once per block,<br>
+ * no matter how many derivations use the same signal. Reading all derivations of a montage for the same period<br>
+ * (e.g. one page of a viewer) reads that part of the file only once.<br>
+ *<br>
+ * Derivations can be defined with signal numbers and weights or with an expression of signal labels:<br>
+ *<br>
+ * EDFmontage montage = new EDFmontage(hdl);<br>
+ * montage.addDerivation("F3-C3", "F3-C3");<br>
+ * montage.addDerivation("C3-avg", "C3-avg");<br>
+ * montage.addDerivation("mean F", "0.5*F3+0.5*F4");<br>
+ * montage.addDerivation("Fpz-Cz - C3", "'EEG Fpz-Cz'-C3");<br>
+ * n = montage.readPhysicalSamples(0, buf);<br>
+ *<br>
+ * The labels in an expression are compared with the labels of the signals, without the trailing spaces and<br>
+ * ignoring case. The name avg stands for the average of the reference signals, see setAverageReference().<br>
+ * A label that contains + or - must be put between single quotes, a quoted label is never taken for avg.<br>
+ */
+public class EDFmontage
+{
+
+/* approximate number of bytes of datarecords read at once */
+private static final int EDFLIB_MONTAGE_BLOCK_SZ = 1024 * 1024;
+
+private EDFreader hdl;
+
+private ArrayList<Derivation> derivations;
+
+private int[] avg_signals;
+
+private int recordsize;
+
+private int smp_sz;
+
+private int block_records;
+
+private byte[] rbuf;
+
+private long block_first;   /* first datarecord in the block, -1 when the block is empty */
+
+private int block_n;
+
+private Source[] sources;
+
+/* a signal of the file used by one or more derivations */
+private static class Source
+{
+  int      offset;        /* offset in the datarecord in bytes */
+
+  int      spr;
+
+  double   bitvalue;
+
+  double   phys_offset;
+
+  double[] values;        /* physical values of the block */
+
+  boolean  converted;
+}
+
+private static class Derivation
+{
+  String   label;
+
+  int[]    signals;
+
+  double[] weights;
+
+  int      spr;
+
+  long     sample_pntr;
+
+  double[] values;        /* the derivation in the block */
+
+  boolean  calculated;
+}
+
+/**
+ * Creates an empty montage. <br>
+ *
+ * @param p_hdl an opened EDFreader
+ *
+ * @throws EDFException
+ */
+public EDFmontage(EDFreader p_hdl) throws EDFException
+{
+  if(p_hdl == null)
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid argument.\n");
+  }
+
+  hdl = p_hdl;
+
+  derivations = new ArrayList<Derivation>();
+
+  sources = new Source[hdl.getNumSignals()];
+
+  recordsize = hdl.getDataRecordSize();
+
+  smp_sz = hdl.getSampleSize();
+
+  block_records = (int)Math.max(1L, Math.min(EDFLIB_MONTAGE_BLOCK_SZ / recordsize, hdl.getNumDataRecords()));
+
+  block_first = -1L;
+}
+
+/**
+ * Adds a derivation. <br>
+ * The value of the derivation is the sum of the physical values of the signals multiplied by their weights.<br>
+ * All signals must have the same number of samples per datarecord.<br>
+ *
+ * @param label the label of the derivation
+ *
+ * @param signals the signal numbers, zero-based, the same signal can not be used twice
+ *
+ * @param weights the weight of every signal
+ *
+ * @return the number of the derivation, zero-based
+ *
+ * @throws EDFException
+ */
+public int addDerivation(String label, int[] signals, double[] weights) throws EDFException
+{
+  int i, j;
+
+  Derivation deriv;
+
+  if((signals == null) || (weights == null) || (signals.length < 1) || (signals.length != weights.length))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid signals or weights.\n");
+  }
+
+  for(i=0; i<signals.length; i++)
+  {
+    if((signals[i] < 0) || (signals[i] >= hdl.getNumSignals()))
+    {
+      throw new EDFException(EDFreader.EDFLIB_NUMBER_OF_SIGNALS_INVALID, "Invalid signal number.\n");
+    }
+
+    for(j=0; j<i; j++)
+    {
+      if(signals[j] == signals[i])
+      {
+        throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Signal is used twice in a derivation.\n");
+      }
+    }
+
+    if(hdl.getSampelsPerDataRecord(signals[i]) != hdl.getSampelsPerDataRecord(signals[0]))
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "The signals of a derivation must have the same samplerate.\n");
+    }
+  }
+
+  deriv = new Derivation();
+
+  deriv.label = (label == null) ? "" : label;
+
+  deriv.signals = signals.clone();
+
+  deriv.weights = weights.clone();
+
+  deriv.spr = hdl.getSampelsPerDataRecord(signals[0]);
+
+  for(i=0; i<signals.length; i++)
+  {
+    if(sources[signals[i]] == null)
+    {
+      sources[signals[i]] = new_source(signals[i]);
+    }
+  }
+
+  derivations.add(deriv);
+
+  return derivations.size() - 1;
+}
+
+/**
+ * Adds a derivation defined by an expression. <br>
+ * The expression is a sum of terms, every term is a signal label or avg, optionally preceded by a weight and *,<br>
+ * e.g. "F3-C3", "C3-avg", "0.5*F3+0.5*F4-Cz". A signal that appears more than once gets the sum of its weights.<br>
+ * A label that contains + or - must be put between single quotes, e.g. "'EEG Fpz-Cz'-C3".<br>
+ *
+ * @param label the label of the derivation
+ *
+ * @param expression the expression
+ *
+ * @return the number of the derivation, zero-based
+ *
+ * @throws EDFException
+ */
+public int addDerivation(String label, String expression) throws EDFException
+{
+  int i, p, s, end, sign;
+
+  boolean quoted;
+
+  double weight;
+
+  String term;
+
+  double[] w;
+
+  ArrayList<Integer> sigs = new ArrayList<Integer>();
+
+  ArrayList<Double> weights = new ArrayList<Double>();
+
+  if(expression == null)
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid expression.\n");
+  }
+
+  expression = expression.trim();
+
+  for(p=0; p<expression.length(); p=end)
+  {
+    sign = 1;
+
+    if((expression.charAt(p) == '+') || (expression.charAt(p) == '-'))
+    {
+      if(expression.charAt(p) == '-')  sign = -1;
+
+      p++;
+    }
+    else if(p != 0)
+      {
+        throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid expression: " + expression + "\n");
+      }
+
+    p = skip_spaces(expression, p);
+
+    weight = sign;
+
+/* an optional weight, a number followed by *, exponent notation is only recognized here */
+    end = scan_number(expression, p);
+
+    if(end > p)
+    {
+      i = skip_spaces(expression, end);
+
+      if((i < expression.length()) && (expression.charAt(i) == '*'))
+      {
+        try
+        {
+          weight *= Double.parseDouble(expression.substring(p, end));
+        }
+        catch(NumberFormatException e)
+        {
+          throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid weight: " + expression.substring(p, end) + "\n");
+        }
+
+        p = skip_spaces(expression, i + 1);
+      }
+    }
+
+/* a label that contains + or - must be put between single quotes */
+    quoted = false;
+
+    if((p < expression.length()) && (expression.charAt(p) == '\''))
+    {
+      end = expression.indexOf('\'', p + 1);
+
+      if(end < 0)
+      {
+        throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Missing quote: " + expression + "\n");
+      }
+
+      term = expression.substring(p + 1, end).trim();
+
+      quoted = true;
+
+      end++;
+    }
+    else
+    {
+      for(end=p; end<expression.length(); end++)
+      {
+        if((expression.charAt(end) == '+') || (expression.charAt(end) == '-'))  break;
+      }
+
+      term = expression.substring(p, end).trim();
+    }
+
+    end = skip_spaces(expression, end);
+
+    if((term.length() == 0) ||
+       ((end < expression.length()) && (expression.charAt(end) != '+') && (expression.charAt(end) != '-')))
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid expression: " + expression + "\n");
+    }
+
+    if(!quoted && term.equalsIgnoreCase("avg"))
+    {
+      if(avg_signals == null)
+      {
+        if(sigs.isEmpty())
+        {
+          throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "avg can not be the first term.\n");
+        }
+
+        default_average_reference(sigs.get(0));
+      }
+
+      for(i=0; i<avg_signals.length; i++)
+      {
+        add_term(sigs, weights, avg_signals[i], weight / avg_signals.length);
+      }
+    }
+    else
+    {
+      s = find_signal(term);
+
+      if(s < 0)
+      {
+        throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Unknown signal: " + term + "\n");
+      }
+
+      add_term(sigs, weights, s, weight);
+    }
+  }
+
+  if(sigs.isEmpty())
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid expression.\n");
+  }
+
+  w = new double[weights.size()];
+
+  for(i=0; i<w.length; i++)
+  {
+    w[i] = weights.get(i);
+  }
+
+  return addDerivation(label, sigs.stream().mapToInt(Integer::intValue).toArray(), w);
+}
+
+/**
+ * Sets the signals that are averaged for avg in an expression. <br>
+ * By default avg is the average of all signals with the same samplerate and physical dimension<br>
+ * as the first signal of the expression in which avg is used for the first time.<br>
+ * Changing the reference does not change the derivations that are already added.<br>
+ *
+ * @param signals the signal numbers, zero-based
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setAverageReference(int[] signals)
+{
+  int i;
+
+  if((signals == null) || (signals.length < 1))  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  for(i=0; i<signals.length; i++)
+  {
+    if((signals[i] < 0) || (signals[i] >= hdl.getNumSignals()))  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+  }
+
+  avg_signals = signals.clone();
+
+  return 0;
+}
+
+/**
+ * Returns the number of derivations. <br>
+ *
+ * @return the number of derivations
+ */
+public int getNumDerivations()
+{
+  return derivations.size();
+}
+
+/**
+ * Returns the label of a derivation. <br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @return the label
+ *
+ * @throws EDFException
+ */
+public String getSignalLabel(int d) throws EDFException
+{
+  return get_derivation(d).label;
+}
+
+/**
+ * Returns the physical dimension (unit) of a derivation. <br>
+ * This is the physical dimension of the first signal of the derivation.<br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @return the physical dimension
+ *
+ * @throws EDFException
+ */
+public String getPhysicalDimension(int d) throws EDFException
+{
+  return hdl.getPhysicalDimension(get_derivation(d).signals[0]);
+}
+
+/**
+ * Returns the number of samples in a datarecord of a derivation. <br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @return the number of samples in a datarecord
+ *
+ * @throws EDFException
+ */
+public int getSampelsPerDataRecord(int d) throws EDFException
+{
+  return get_derivation(d).spr;
+}
+
+/**
+ * Returns the number of samples of a derivation in the file. <br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @return the number of samples
+ *
+ * @throws EDFException
+ */
+public long getTotalSamples(int d) throws EDFException
+{
+  return get_derivation(d).spr * hdl.getNumDataRecords();
+}
+
+/**
+ * Returns the samplerate of a derivation. <br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @return the samplerate in Hz
+ *
+ * @throws EDFException
+ */
+public double getSampleFrequency(int d) throws EDFException
+{
+  return hdl.getSampleFrequency(get_derivation(d).signals[0]);
+}
+
+/**
+ * Reads physical samples of a derivation. <br>
+ * Reads buf.length samples, starting from the sample position indicator of the derivation, into buf.<br>
+ * The sample position indicator will be increased with the number of samples read.<br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @param buf the buffer
+ *
+ * @return number of samples read into the buffer (this can be less than buf.length or zero!)
+ *
+ * @throws IOException, EDFException
+ */
+public int readPhysicalSamples(int d, double[] buf) throws IOException, EDFException
+{
+  int n, done=0, pos;
+
+  long smp_in_file, rec;
+
+  Derivation deriv;
+
+  deriv = get_derivation(d);
+
+  if((buf == null) || (buf.length < 1))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Invalid buffer length.\n");
+  }
+
+  smp_in_file = deriv.spr * hdl.getNumDataRecords();
+
+  while((done < buf.length) && (deriv.sample_pntr < smp_in_file))
+  {
+    rec = deriv.sample_pntr / deriv.spr;
+
+    if((rec < block_first) || (rec >= (block_first + block_n)) || (block_first < 0L))
+    {
+      load_block(rec - (rec % block_records));
+    }
+
+    if(!deriv.calculated)
+    {
+      calculate(deriv);
+    }
+
+    pos = (int)(deriv.sample_pntr - (block_first * deriv.spr));
+
+    n = Math.min(buf.length - done, (block_n * deriv.spr) - pos);
+
+    System.arraycopy(deriv.values, pos, buf, done, n);
+
+    done += n;
+
+    deriv.sample_pntr += n;
+  }
+
+  return done;
+}
+
+/**
+ * Returns the sample position of a derivation. <br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @return sample position relative to start of file
+ *
+ * @throws EDFException
+ */
+public long ftell(int d) throws EDFException
+{
+  return get_derivation(d).sample_pntr;
+}
+
+/**
+ * Rewinds the sample position of a derivation to zero. <br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @throws EDFException
+ */
+public void rewind(int d) throws EDFException
+{
+  get_derivation(d).sample_pntr = 0L;
+}
+
+/**
+ * Sets the sample position of a derivation. <br>
+ * The new position, measured in samples, is obtained by adding offset samples to the position specified by whence.<br>
+ *
+ * @param d derivation number, zero-based
+ *
+ * @param offset new position
+ *
+ * @param whence EDFSEEK_SET, EDFSEEK_CUR, or EDFSEEK_END
+ *
+ * @return the new sample position relative to the start of the file
+ *
+ * @throws EDFException
+ */
+public long fseek(int d, long offset, int whence) throws EDFException
+{
+  long smp_in_file;
+
+  Derivation deriv;
+
+  deriv = get_derivation(d);
+
+  smp_in_file = deriv.spr * hdl.getNumDataRecords();
+
+  if(whence == EDFreader.EDFSEEK_SET)
+  {
+    deriv.sample_pntr = offset;
+  }
+
+  if(whence == EDFreader.EDFSEEK_CUR)
+  {
+    deriv.sample_pntr += offset;
+  }
+
+  if(whence == EDFreader.EDFSEEK_END)
+  {
+    deriv.sample_pntr = smp_in_file + offset;
+  }
+
+  if(deriv.sample_pntr > smp_in_file)
+  {
+    deriv.sample_pntr = smp_in_file;
+  }
+
+  if(deriv.sample_pntr < 0L)
+  {
+    deriv.sample_pntr = 0L;
+  }
+
+  return deriv.sample_pntr;
+}
+
+private Derivation get_derivation(int d) throws EDFException
+{
+  if((d < 0) || (d >= derivations.size()))
+  {
+    throw new EDFException(EDFreader.EDFLIB_NUMBER_OF_SIGNALS_INVALID, "Invalid derivation number.\n");
+  }
+
+  return derivations.get(d);
+}
+
+private Source new_source(int s) throws EDFException
+{
+  Source src = new Source();
+
+  src.offset = hdl.getSignalRecordOffset(s);
+
+  src.spr = hdl.getSampelsPerDataRecord(s);
+
+  src.bitvalue = (hdl.getPhysicalMaximum(s) - hdl.getPhysicalMinimum(s)) / (hdl.getDigitalMaximum(s) - hdl.getDigitalMinimum(s));
+
+  src.phys_offset = (hdl.getPhysicalMaximum(s) / src.bitvalue) - hdl.getDigitalMaximum(s);
+
+  return src;
+}
+
+/* reads the datarecords of the block starting at datarecord first, the signals are converted when they are needed */
+private void load_block(long first) throws IOException, EDFException
+{
+  int i;
+
+  if(rbuf == null)
+  {
+    rbuf = new byte[block_records * recordsize];
+  }
+
+  block_first = -1L;
+
+  block_n = hdl.readDataRecords(first, block_records, rbuf);
+
+  if(block_n < 1)
+  {
+    throw new EDFException(EDFreader.EDFLIB_FILE_READ_ERROR, "Unexpected end of file.\n");
+  }
+
+  block_first = first;
+
+  for(i=0; i<sources.length; i++)
+  {
+    if(sources[i] != null)  sources[i].converted = false;
+  }
+
+  for(Derivation deriv : derivations)
+  {
+    deriv.calculated = false;
+  }
+}
+
+/* converts the samples of a signal in the block to physical values */
+private void convert(Source src)
+{
+  int i, j, k, p, v;
+
+  if(src.values == null)
+  {
+    src.values = new double[block_records * src.spr];
+  }
+
+  for(i=0, k=0; i<block_n; i++)
+  {
+    p = (i * recordsize) + src.offset;
+
+    for(j=0; j<src.spr; j++, p+=smp_sz)
+    {
+      if(smp_sz == 2)
+      {
+        v = (rbuf[p] & 0xff) | (rbuf[p + 1] << 8);
+      }
+      else
+      {
+        v = (rbuf[p] & 0xff) | ((rbuf[p + 1] & 0xff) << 8) | (rbuf[p + 2] << 16);
+      }
+
+      src.values[k++] = src.bitvalue * (src.phys_offset + v);
+    }
+  }
+
+  src.converted = true;
+}
+
+/* calculates a derivation in the block */
+private void calculate(Derivation deriv)
+{
+  int i, j, n;
+
+  double w;
+
+  double[] val;
+
+  Source src;
+
+  if(deriv.values == null)
+  {
+    deriv.values = new double[block_records * deriv.spr];
+  }
+
+  n = block_n * deriv.spr;
+
+  Arrays.fill(deriv.values, 0, n, 0.0);
+
+  for(i=0; i<deriv.signals.length; i++)
+  {
+    src = sources[deriv.signals[i]];
+
+    if(!src.converted)
+    {
+      convert(src);
+    }
+
+    val = src.values;
+
+    w = deriv.weights[i];
+
+    for(j=0; j<n; j++)
+    {
+      deriv.values[j] += w * val[j];
+    }
+  }
+
+  deriv.calculated = true;
+}
+
+/* adds a signal with a weight to a derivation, a signal that is already there gets the sum of the weights */
+private static void add_term(ArrayList<Integer> sigs, ArrayList<Double> weights, int s, double w)
+{
+  int i;
+
+  i = sigs.indexOf(s);
+
+  if(i < 0)
+  {
+    sigs.add(s);
+
+    weights.add(w);
+  }
+  else
+  {
+    weights.set(i, weights.get(i) + w);
+  }
+}
+
+/* the index of the first character at or after p that is not a space */
+private static int skip_spaces(String str, int p)
+{
+  while((p < str.length()) && (str.charAt(p) == ' '))  p++;
+
+  return p;
+}
+
+/* the end of the number that starts at p, p when there is no number */
+private static int scan_number(String str, int p)
+{
+  int i, digits=0;
+
+  for(i=p; i<str.length(); i++)
+  {
+    if((str.charAt(i) >= '0') && (str.charAt(i) <= '9'))
+    {
+      digits++;
+    }
+    else if(str.charAt(i) != '.')
+      {
+        break;
+      }
+  }
+
+  if(digits == 0)  return p;
+
+  if((i < str.length()) && (Character.toLowerCase(str.charAt(i)) == 'e'))
+  {
+    p = i + 1;
+
+    if((p < str.length()) && ((str.charAt(p) == '+') || (str.charAt(p) == '-')))  p++;
+
+    if((p < str.length()) && (str.charAt(p) >= '0') && (str.charAt(p) <= '9'))
+    {
+      for(i=p; (i<str.length()) && (str.charAt(i) >= '0') && (str.charAt(i) <= '9'); i++);
+    }
+  }
+
+  return i;
+}
+
+/* the signal with the label, -1 when there is none */
+private int find_signal(String label) throws EDFException
+{
+  int i;
+
+  for(i=0; i<hdl.getNumSignals(); i++)
+  {
+    if(hdl.getSignalLabel(i).trim().equalsIgnoreCase(label))  return i;
+  }
+
+  return -1;
+}
+
+/* all signals with the same samplerate and physical dimension as signal s */
+private void default_average_reference(int s) throws EDFException
+{
+  int i;
+
+  ArrayList<Integer> list = new ArrayList<Integer>();
+
+  for(i=0; i<hdl.getNumSignals(); i++)
+  {
+    if((hdl.getSampelsPerDataRecord(i) == hdl.getSampelsPerDataRecord(s)) &&
+       hdl.getPhysicalDimension(i).trim().equals(hdl.getPhysicalDimension(s).trim()))
+    {
+      list.add(i);
+    }
+  }
+
+  avg_signals = list.stream().mapToInt(Integer::intValue).toArray();
+}
+
+}
+
+
+
+
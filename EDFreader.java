@@ -159,6 +159,10 @@ public static final int EDFLIB_DO_NOT_READ_ANNOTATIONS = 0;
 public static final int EDFLIB_READ_ANNOTATIONS        = 1;
 public static final int EDFLIB_READ_ALL_ANNOTATIONS    = 2;
 
+/* open modes */
+public static final int EDFLIB_OPEN_READ               = 0;
+public static final int EDFLIB_OPEN_FOLLOW             = 1;
+
 /* the following defines are possible errors returned by the first sample write action */
 public static final int EDFLIB_NO_SIGNALS                 = -20;
 public static final int EDFLIB_TOO_MANY_SIGNALS           = -21;
@@ -241,6 +245,10 @@ private int    annots_in_file;
 private int    annotlist_sz;
 private int    total_annot_bytes;
 private int    eq_sf;
+private int    follow;
+private int    read_annots_mode;
+private long   annot_records;      /* number of datarecords of which the annotations have been read */
+private long   annot_elapsedtime;  /* timekeeping TAL of the last of these datarecords */
 private int status_ok;
 
 private RandomAccessFile file_in;
@@ -278,20 +286,90 @@ public ArrayList<EDFAnnotationStruct> annotationslist;
  * In order not to loose the subsecond precision, all timevalues have been multiplied by 10000000.<br>
  * This will limit the timeresolution to 100 nanoSeconds. To calculate the amount of seconds, divide<br>
  * the timevalue by 10000000 or use the macro EDFLIB_TIME_DIMENSION.<br>
+ *<br>
+ * Archives<br>
+ * ========<br>
+ *<br>
+ * Archives created by EDFarchive are opened the same way, the library reads them as if the original file was opened.<br>
  *
  * @param  p_path  The path to the file.
  *
  * @throws IOException, EDFException
  */
 public EDFreader(String p_path) throws IOException, EDFException
+{
+  this(p_path, EDFLIB_READ_ALL_ANNOTATIONS);
+}
+
+/**
+ * Creates an EDFreader object that reads from an EDF(+)/BDF(+) file. <br>
+ * Same as EDFreader(String p_path) but the annotations will only be read when read_annotations_mode is<br>
+ * EDFLIB_READ_ANNOTATIONS or EDFLIB_READ_ALL_ANNOTATIONS.<br>
+ * With EDFLIB_DO_NOT_READ_ANNOTATIONS only the first datarecord will be checked, this is much faster<br>
+ * for big files when you don't need the annotations (annotationslist will be empty).<br>
+ *
+ * @param  p_path  The path to the file.
+ *
+ * @param  read_annotations_mode  EDFLIB_DO_NOT_READ_ANNOTATIONS, EDFLIB_READ_ANNOTATIONS or EDFLIB_READ_ALL_ANNOTATIONS
+ *
+ * @throws IOException, EDFException
+ */
+public EDFreader(String p_path, int read_annotations_mode) throws IOException, EDFException
+{
+  this(p_path, read_annotations_mode, EDFLIB_OPEN_READ);
+}
+
+/**
+ * Creates an EDFreader object that reads from an EDF(+)/BDF(+) file. <br>
+ * Same as EDFreader(String p_path, int read_annotations_mode) but with EDFLIB_OPEN_FOLLOW the file can be<br>
+ * read while it's still being written by EDFwriter (or another program).<br>
+ * The header of such a file contains -1 as the number of datarecords, the number of datarecords is<br>
+ * derived from the filesize instead. Call update() to include the datarecords that have been written<br>
+ * since the file was opened or since the last call to update().<br>
+ * In an EDF+/BDF+ file, a datarecord is complete when its timekeeping TAL has been written, this way<br>
+ * the zeros of a preallocated file (see EDFwriter.setExpectedDuration()) are not read as datarecords.<br>
+ * In an EDF/BDF file there is no way to distinguish zeros from samples, don't use preallocation when<br>
+ * such a file is followed.<br>
+ * Discontinuous files and archives are not followed, EDFLIB_OPEN_FOLLOW has no effect on archives.<br>
+ *
+ * @param  p_path  The path to the file.
+ *
+ * @param  read_annotations_mode  EDFLIB_DO_NOT_READ_ANNOTATIONS, EDFLIB_READ_ANNOTATIONS or EDFLIB_READ_ALL_ANNOTATIONS
+ *
+ * @param  open_mode  EDFLIB_OPEN_READ or EDFLIB_OPEN_FOLLOW
+ *
+ * @throws IOException, EDFException
+ */
+public EDFreader(String p_path, int read_annotations_mode, int open_mode) throws IOException, EDFException
 {
   int i, err;
 
+  if((read_annotations_mode < EDFLIB_DO_NOT_READ_ANNOTATIONS) || (read_annotations_mode > EDFLIB_READ_ALL_ANNOTATIONS))
+  {
+    throw new EDFException(EDFLIB_INVALID_READ_ANNOTS_VALUE, "Invalid annotations read mode.\n");
+  }
+
+  if((open_mode != EDFLIB_OPEN_READ) && (open_mode != EDFLIB_OPEN_FOLLOW))
+  {
+    throw new EDFException(EDFLIB_INVALID_ARGUMENT, "Invalid open mode.\n");
+  }
+
   annotationslist = new ArrayList<EDFAnnotationStruct>(0);
 
   path = p_path;
 
-  file_in = new RandomAccessFile(path, "r");
+  read_annots_mode = read_annotations_mode;
+
+  if(EDFarchive.isArchive(path))
+  {
+    file_in = new EDFarchiveFile(path);
+  }
+  else
+  {
+    file_in = new RandomAccessFile(path, "r");
+
+    if(open_mode == EDFLIB_OPEN_FOLLOW)  follow = 1;
+  }
 
   err = checkEDFheader();
   if(err != 0)
@@ -301,6 +379,11 @@ public EDFreader(String p_path) throws IOException, EDFException
     throw new EDFException(EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, "File is not valid EDF(+) or BDF(+).\n");
   }
 
+  if(follow != 0)
+  {
+    datarecords = count_datarecords(0L);
+  }
+
   if(discontinuous != 0)
   {
     file_in.close();
@@ -329,7 +412,7 @@ public EDFreader(String p_path) throws IOException, EDFException
     patient = "";
     recording = "";
 
-    err = get_annotations(EDFLIB_READ_ALL_ANNOTATIONS);
+    err = get_annotations(read_annotations_mode);
     if(err != 0)
     {
       file_in.close();
@@ -856,6 +939,160 @@ public String getReserved(int s) throws EDFException
   return param_reserved[mapped_signals[s]];
 }
 
+/**
+ * Returns a copy of the header of the file as it is stored in the file. <br>
+ * The size of the header is (number of signals + number of annotation signals + 1) * 256 bytes.<br>
+ *
+ * @return the header
+ */
+public byte[] getHeader()
+{
+  return Arrays.copyOf(hdr, hdrsize);
+}
+
+/**
+ * Returns the size of the header in bytes. <br>
+ * The first datarecord starts at this offset in the file.<br>
+ *
+ * @return size of the header
+ */
+public int getHeaderSize()
+{
+  return hdrsize;
+}
+
+/**
+ * Returns the size of a datarecord in bytes. <br>
+ * Datarecord n starts at offset: header size + (n * datarecord size)<br>
+ *
+ * @return size of a datarecord
+ */
+public int getDataRecordSize()
+{
+  return recordsize;
+}
+
+/**
+ * Returns the size of a sample in bytes. <br>
+ *
+ * @return 2 for EDF(+), 3 for BDF(+)
+ */
+public int getSampleSize()
+{
+  if(bdf != 0)  return 3;
+
+  return 2;
+}
+
+/**
+ * Returns the offset of the samples of a signal in a datarecord, expressed in bytes. <br>
+ *
+ * @param s signal number, zero-based
+ *
+ * @throws EDFException
+ *
+ * @return offset in bytes from the start of the datarecord
+ */
+public int getSignalRecordOffset(int s) throws EDFException
+{
+  if((s < 0) || (s >= (edfsignals - nr_annot_chns)))
+  {
+    throw new EDFException(EDFLIB_NUMBER_OF_SIGNALS_INVALID, "Invalid signal number.\n");
+  }
+
+  return param_buf_offset[mapped_signals[s]];
+}
+
+/**
+ * Returns the position of a signal in the header of the file. <br>
+ * This differs from the signal number when there are annotation signals in front of it.<br>
+ * The header fields of the signal can be found in getHeader(), e.g. the label at offset 256 + (position * 16).<br>
+ *
+ * @param s signal number, zero-based
+ *
+ * @throws EDFException
+ *
+ * @return position in the header, zero-based
+ */
+public int getSignalHeaderIndex(int s) throws EDFException
+{
+  if((s < 0) || (s >= (edfsignals - nr_annot_chns)))
+  {
+    throw new EDFException(EDFLIB_NUMBER_OF_SIGNALS_INVALID, "Invalid signal number.\n");
+  }
+
+  return mapped_signals[s];
+}
+
+/**
+ * Returns the number of annotation signals in the file. <br>
+ * These signals are not included in getNumSignals().<br>
+ *
+ * @return number of annotation signals, zero for EDF and BDF
+ */
+public int getNumAnnotationSignals()
+{
+  return nr_annot_chns;
+}
+
+/**
+ * Returns the position of an annotation signal in the header of the file. <br>
+ *
+ * @param n annotation signal number, zero-based
+ *
+ * @throws EDFException
+ *
+ * @return position in the header, zero-based
+ */
+public int getAnnotationSignalHeaderIndex(int n) throws EDFException
+{
+  if((n < 0) || (n >= nr_annot_chns))
+  {
+    throw new EDFException(EDFLIB_NUMBER_OF_SIGNALS_INVALID, "Invalid annotation signal number.\n");
+  }
+
+  return annot_ch[n];
+}
+
+/**
+ * Returns the offset of an annotation signal in a datarecord, expressed in bytes. <br>
+ * Annotation signal 0 starts with the timekeeping TAL of the datarecord.<br>
+ *
+ * @param n annotation signal number, zero-based
+ *
+ * @throws EDFException
+ *
+ * @return offset in bytes from the start of the datarecord
+ */
+public int getAnnotationSignalRecordOffset(int n) throws EDFException
+{
+  if((n < 0) || (n >= nr_annot_chns))
+  {
+    throw new EDFException(EDFLIB_NUMBER_OF_SIGNALS_INVALID, "Invalid annotation signal number.\n");
+  }
+
+  return param_buf_offset[annot_ch[n]];
+}
+
+/**
+ * Returns the size of an annotation signal in a datarecord, expressed in bytes. <br>
+ *
+ * @param n annotation signal number, zero-based
+ *
+ * @throws EDFException
+ *
+ * @return size in bytes
+ */
+public int getAnnotationSignalSize(int n) throws EDFException
+{
+  if((n < 0) || (n >= nr_annot_chns))
+  {
+    throw new EDFException(EDFLIB_NUMBER_OF_SIGNALS_INVALID, "Invalid annotation signal number.\n");
+  }
+
+  return param_smp_per_record[annot_ch[n]] * getSampleSize();
+}
+
 /**
  * Read digital samples. <br>
  * Reads buf.length samples from edfsignal, starting from the current sample position indicator, into buf.<br>
@@ -1195,6 +1432,90 @@ public long fseek(int edfsignal, long offset, int whence) throws EDFException
   return param_sample_pntr[channel];
 }
 
+/**
+ * Reads complete datarecords. <br>
+ * Reads n datarecords, starting at datarecord first, as they are stored in the file (all signals, annotation signals included)<br>
+ * into buf. Use getSignalRecordOffset(), getSampelsPerDataRecord() and getSampleSize() to find the samples of a signal.<br>
+ * The sample position indicators of the signals are not changed.<br>
+ *
+ * @param first the first datarecord, zero-based
+ *
+ * @param n the number of datarecords
+ *
+ * @param buf the buffer, must have room for n * getDataRecordSize() bytes
+ *
+ * @return number of datarecords read (this can be less than n at the end of the file)
+ *
+ * @throws IOException, EDFException
+ */
+public int readDataRecords(long first, int n, byte[] buf) throws IOException, EDFException
+{
+  if(status_ok == 0)
+  {
+    throw new EDFException(EDFLIB_FILE_CLOSED, "File is closed.\n");
+  }
+
+  if((first < 0L) || (n < 0) || (buf == null) || (buf.length < ((long)n * recordsize)))
+  {
+    throw new EDFException(EDFLIB_INVALID_ARGUMENT, "Invalid argument.\n");
+  }
+
+  if(first >= datarecords)  return 0;
+
+  if((first + n) > datarecords)
+  {
+    n = (int)(datarecords - first);
+  }
+
+  file_in.seek(hdrsize + (first * recordsize));
+
+  file_in.readFully(buf, 0, n * recordsize);
+
+  return n;
+}
+
+/**
+ * Only for files opened with EDFLIB_OPEN_FOLLOW. <br>
+ * Includes the datarecords that have been written completely since the file was opened or since the<br>
+ * last call to this function. The number of datarecords, the duration and the number of samples of<br>
+ * the signals increase accordingly, the annotations of the new datarecords are added to annotationslist<br>
+ * (depending on read_annotations_mode).<br>
+ * The positions of the signals (see fseek()) are not changed.<br>
+ *
+ * @throws IOException, EDFException
+ *
+ * @return the number of new datarecords, 0 when the file did not grow or when it's not opened with EDFLIB_OPEN_FOLLOW
+ */
+public long update() throws IOException, EDFException
+{
+  long n;
+
+  if(status_ok == 0)
+  {
+    throw new EDFException(EDFLIB_FILE_CLOSED, "File is closed.\n");
+  }
+
+  if(follow == 0)  return 0L;
+
+  n = count_datarecords(datarecords);
+
+  if(n == datarecords)  return 0L;
+
+  n -= datarecords;
+
+  datarecords += n;
+
+  if(((edfplus != 0) || (bdfplus != 0)) && ((read_annots_mode != EDFLIB_DO_NOT_READ_ANNOTATIONS) || (annot_records == 0L)))
+  {
+    if(get_annotations(read_annots_mode) != 0)
+    {
+      throw new EDFException(EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, "File contains format errors.\n");
+    }
+  }
+
+  return n;
+}
+
 /**
  * Closes the file. <br>
  *
@@ -1473,7 +1794,8 @@ private int checkEDFheader()
 
   datarecords = atoi_nonlocalized(str8, 0);
 
-  if(datarecords < 1)  return -1;
+/* -1 means that the file is still being written */
+  if((datarecords < 1) && ((follow == 0) || (datarecords != -1)))  return -1;
 
 /********************* DATARECORD DURATION *************************************/
   for(i=0; i<8; i++)
@@ -2275,7 +2597,14 @@ private int checkEDFheader()
 
   try
   {
-    if(file_in.length() != ((long)recordsize * datarecords + (long)hdrsize))
+    if(follow != 0)
+    {
+      if(file_in.length() < hdrsize)
+      {
+        return -1;
+      }
+    }
+    else if(file_in.length() != ((long)recordsize * datarecords + (long)hdrsize))
     {
       return -1;
     }
@@ -2365,11 +2694,11 @@ private int get_annotations(int read_annotations_mode) throws IOException
 
   duration_in_txt = new byte[max_tal_ln + 3];
 
-  file_in.seek((edfsignals + 1) * 256);
+  file_in.seek(((edfsignals + 1) * 256) + (annot_records * recordsize));
 
-  elapsedtime = 0;
+  elapsedtime = annot_elapsedtime;
 
-  for(i=0; i<datarecords; i++)
+  for(i=(int)annot_records; i<datarecords; i++)
   {
     file_in.read(cnv_buf);
 
@@ -2449,6 +2778,8 @@ private int get_annotations(int read_annotations_mode) throws IOException
                   starttime_offset = time_tmp;
                   if(read_annotations_mode == EDFLIB_DO_NOT_READ_ANNOTATIONS)
                   {
+                    annot_records = 1L;
+
                     return 0;
                   }
                 }
@@ -2602,11 +2933,57 @@ private int get_annotations(int read_annotations_mode) throws IOException
         n++;
       }
     }
+
+    annot_records = i + 1;
+
+    annot_elapsedtime = elapsedtime;
   }
 
   return 0;
 }
 
+/* follow mode: returns the number of complete datarecords, at least known */
+private long count_datarecords(long known) throws IOException
+{
+  long n, lo, hi, mid;
+
+  n = (file_in.length() - hdrsize) / recordsize;
+
+  if(n <= known)  return known;
+
+  if((edfplus == 0) && (bdfplus == 0))  return n;
+
+/* the timekeeping TAL is written after the samples of a datarecord, a file that is */
+/* preallocated ends with zeros: search for the last datarecord that has a TAL */
+  if(datarecord_has_tal(n - 1L))  return n;
+
+  lo = known;
+  hi = n - 1L;
+
+  while(lo < hi)
+  {
+    mid = (lo + hi + 1L) / 2L;
+
+    if(datarecord_has_tal(mid - 1L))
+    {
+      lo = mid;
+    }
+    else
+    {
+      hi = mid - 1L;
+    }
+  }
+
+  return lo;
+}
+
+private boolean datarecord_has_tal(long r) throws IOException
+{
+  file_in.seek(hdrsize + (r * recordsize) + param_buf_offset[annot_ch[0]]);
+
+  return file_in.read() > 0;
+}
+
 /* Checks a string for a valid integer number (left-aligned, filled-up with spaces, etc.) */
 private int is_integer_number(byte[] str)
 {
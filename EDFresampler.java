@@ -0,0 +1,406 @@
+import java.io.*;
+import java.nio.*;
+import java.lang.*;
+import java.util.*;
+
+
+/**
+ * Resamples signals with different samplerates to one common samplerate. <br>
+ *<br>
+ * The output consists of frames: one sample of every selected signal, all taken at the same moment.<br>
+ * Frame n is at time n / target samplerate, measured from the start of the file.<br>
+ *<br>
+ * Every signal is resampled by the rational factor L / M (target samples per datarecord / samples per datarecord,<br>
+ * reduced) with a polyphase FIR filter: a windowed sinc (Kaiser window) at the upsampled rate of which only every L-th<br>
+ * coefficient is evaluated. The cutoff frequency is 0.45 times the lowest of the two samplerates, so upsampling<br>
+ * interpolates and downsampling removes the frequencies above the new Nyquist frequency before decimating.<br>
+ * Every phase of the filter is normalized to a gain of one, a constant signal stays exactly constant.<br>
+ * Signals that already have the target samplerate are passed through unchanged.<br>
+ * Before the start and after the end of the file the first respectively last sample is repeated.<br>
+ *<br>
+ * The signals are read in small blocks while the frames are produced, only a window of samples around<br>
+ * the current position is kept in memory. The sample position indicators of the selected signals in EDFreader<br>
+ * are used by the resampler, don't read from those signals while using the resampler.<br>
+ *<br>
+ * Example: resample EEG (60 Hz) and SpO2 (1 Hz) to 60 Hz:<br>
+ *<br>
+ * EDFresampler rs = new EDFresampler(hdl, new int[]{0, 1}, 60.0);<br>
+ * double[] buf = new double[2 * 600];<br>
+ * while((n = rs.readFrames(buf, 600)) &gt; 0) { ... buf[(frame * 2) + channel] ... }<br>
+ */
+public class EDFresampler
+{
+
+/* number of zero crossings of the sinc on each side of the center (at the lowest of the two samplerates) */
+private static final int EDFLIB_RESAMPLER_ZERO_CROSSINGS = 16;
+
+/* beta of the Kaiser window, approximately 80 dB stopband attenuation */
+private static final double EDFLIB_RESAMPLER_KAISER_BETA = 8.0;
+
+/* the cutoff frequency relative to the Nyquist frequency of the lowest samplerate */
+private static final double EDFLIB_RESAMPLER_CUTOFF = 0.9;
+
+/* maximum value of L and M (after reduction), limits the size of the filter */
+private static final int EDFLIB_RESAMPLER_MAX_FACTOR = 4096;
+
+/* number of samples read from the file at once */
+private static final int EDFLIB_RESAMPLER_READ_BLOCK = 4096;
+
+private EDFreader hdl;
+
+private Channel[] chns;
+
+private long frames;
+
+private long frame_pntr;
+
+private double target_rate;
+
+/* resampling state of one signal */
+private static class Channel
+{
+  int      signal;
+
+  int      up;           /* L */
+
+  int      down;         /* M */
+
+  int      half;         /* the filter has 2 * half + 1 coefficients at the upsampled rate */
+
+  double[] taps;
+
+  long     samples;      /* number of samples of the signal in the file */
+
+  double[] win;          /* win[i] contains sample win_start + i */
+
+  long     win_start;
+
+  int      win_len;
+
+  double[] rdbuf;
+}
+
+/**
+ * Creates a resampler for the signals in the array signals. <br>
+ * The target samplerate multiplied by the datarecord duration must be a whole number,<br>
+ * e.g. with a datarecord duration of one second every samplerate of a whole number of Hz can be used.<br>
+ *
+ * @param p_hdl an opened EDFreader
+ *
+ * @param signals the signal numbers to resample, zero-based, the order of the channels in the frames
+ *
+ * @param p_target_rate the samplerate of the frames in Hz
+ *
+ * @throws EDFException
+ */
+public EDFresampler(EDFreader p_hdl, int[] signals, double p_target_rate) throws EDFException
+{
+  int i, spr, target_spr, gcd;
+
+  double exact_spr;
+
+  if((p_hdl == null) || (signals == null) || (signals.length < 1))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "No signals selected.\n");
+  }
+
+  exact_spr = p_target_rate * p_hdl.getLongDataRecordDuration() / (double)EDFreader.EDFLIB_TIME_DIMENSION;
+
+  target_spr = (int)Math.round(exact_spr);
+
+  if((target_spr < 1) || (Math.abs(exact_spr - target_spr) > 1e-6))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "The target samplerate multiplied by the datarecord duration must be a whole number.\n");
+  }
+
+  hdl = p_hdl;
+
+  target_rate = p_target_rate;
+
+  frames = p_hdl.getNumDataRecords() * target_spr;
+
+  chns = new Channel[signals.length];
+
+  for(i=0; i<signals.length; i++)
+  {
+    chns[i] = new Channel();
+
+    chns[i].signal = signals[i];
+
+    spr = p_hdl.getSampelsPerDataRecord(signals[i]);
+
+    gcd = gcd(spr, target_spr);
+
+    chns[i].up = target_spr / gcd;
+
+    chns[i].down = spr / gcd;
+
+    if((chns[i].up > EDFLIB_RESAMPLER_MAX_FACTOR) || (chns[i].down > EDFLIB_RESAMPLER_MAX_FACTOR))
+    {
+      throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "The ratio of the samplerates is too complex.\n");
+    }
+
+    chns[i].samples = p_hdl.getTotalSamples(signals[i]);
+
+    make_filter(chns[i]);
+
+    chns[i].rdbuf = new double[EDFLIB_RESAMPLER_READ_BLOCK];
+
+    chns[i].win = new double[((2 * chns[i].half) / chns[i].up) + 2 + EDFLIB_RESAMPLER_READ_BLOCK];
+  }
+
+  rewind();
+}
+
+/**
+ * Returns the number of frames in the file. <br>
+ *
+ * @return the number of datarecords multiplied by the target samples per datarecord
+ */
+public long getNumFrames()
+{
+  return frames;
+}
+
+/**
+ * Returns the samplerate of the frames. <br>
+ *
+ * @return the target samplerate in Hz
+ */
+public double getTargetRate()
+{
+  return target_rate;
+}
+
+/**
+ * Returns the number of channels in a frame. <br>
+ *
+ * @return the number of selected signals
+ */
+public int getNumChannels()
+{
+  return chns.length;
+}
+
+/**
+ * Returns the position of the next frame that will be read. <br>
+ *
+ * @return the frame position, zero-based
+ */
+public long getFramePosition()
+{
+  return frame_pntr;
+}
+
+/**
+ * Sets the frame position to the start of the file. <br>
+ *
+ * @throws EDFException
+ */
+public void rewind() throws EDFException
+{
+  int i;
+
+  for(i=0; i<chns.length; i++)
+  {
+    hdl.rewind(chns[i].signal);
+
+    chns[i].win_start = 0L;
+
+    chns[i].win_len = 0;
+  }
+
+  frame_pntr = 0L;
+}
+
+/**
+ * Reads frames of physical values. <br>
+ * The values are stored interleaved: buf[(frame * number of channels) + channel].<br>
+ * Returns the number of frames read, this is less than n at the end of the file.<br>
+ *
+ * @param buf the buffer, must have room for n * number of channels values
+ *
+ * @param n the number of frames to read
+ *
+ * @return the number of frames read (this can be less than n or zero!)
+ *
+ * @throws IOException, EDFException
+ */
+public int readFrames(double[] buf, int n) throws IOException, EDFException
+{
+  int i, j, nch;
+
+  if((n < 0) || (buf == null) || (buf.length < (n * chns.length)))
+  {
+    throw new EDFException(EDFreader.EDFLIB_INVALID_ARGUMENT, "Buffer is too small.\n");
+  }
+
+  if((frame_pntr + n) > frames)
+  {
+    n = (int)(frames - frame_pntr);
+  }
+
+  nch = chns.length;
+
+  for(i=0; i<nch; i++)
+  {
+    for(j=0; j<n; j++)
+    {
+      buf[(j * nch) + i] = resample(chns[i], frame_pntr + j);
+    }
+  }
+
+  frame_pntr += n;
+
+  return n;
+}
+
+/* returns the value of the signal at output sample n */
+private double resample(Channel chn, long n) throws IOException, EDFException
+{
+  int t;
+
+  long k, kmin, kmax, pos;
+
+  double sum=0.0;
+
+  if((chn.up == 1) && (chn.down == 1))
+  {
+    fill_window(chn, n, n);
+
+    return chn.win[(int)(n - chn.win_start)];
+  }
+
+/* sample k of the input is at position k * L of the upsampled signal, output sample n at position n * M */
+  pos = n * chn.down;
+
+  kmin = Math.floorDiv(pos - chn.half + chn.up - 1, chn.up);
+
+  kmax = Math.floorDiv(pos + chn.half, chn.up);
+
+  fill_window(chn, Math.max(kmin, 0L), Math.min(kmax, chn.samples - 1L));
+
+  for(k=kmin; k<=kmax; k++)
+  {
+    t = (int)(pos - (k * chn.up)) + chn.half;
+
+    sum += chn.taps[t] * chn.win[(int)(Math.max(0L, Math.min(k, chn.samples - 1L)) - chn.win_start)];
+  }
+
+  return sum;
+}
+
+/* makes sure the window contains the samples first up to and including last */
+private void fill_window(Channel chn, long first, long last) throws IOException, EDFException
+{
+  int n, skip;
+
+/* drop the samples before first */
+  skip = (int)Math.min(Math.max(first - chn.win_start, 0L), chn.win_len);
+
+  if(skip > 0)
+  {
+    System.arraycopy(chn.win, skip, chn.win, 0, chn.win_len - skip);
+
+    chn.win_len -= skip;
+
+    chn.win_start += skip;
+  }
+
+  while((chn.win_start + chn.win_len) <= last)
+  {
+    n = hdl.readPhysicalSamples(chn.signal, chn.rdbuf);
+
+    if(n < 1)
+    {
+      throw new EDFException(EDFreader.EDFLIB_FILE_READ_ERROR, "Unexpected end of signal.\n");
+    }
+
+    System.arraycopy(chn.rdbuf, 0, chn.win, chn.win_len, n);
+
+    chn.win_len += n;
+  }
+}
+
+/* calculates the coefficients of the lowpass filter at the upsampled rate */
+private static void make_filter(Channel chn)
+{
+  int i, p, max_factor;
+
+  double x, fc, sum;
+
+  if((chn.up == 1) && (chn.down == 1))  return;
+
+  max_factor = Math.max(chn.up, chn.down);
+
+  chn.half = EDFLIB_RESAMPLER_ZERO_CROSSINGS * max_factor;
+
+  chn.taps = new double[(2 * chn.half) + 1];
+
+/* cutoff frequency in cycles per sample of the upsampled signal */
+  fc = 0.5 * EDFLIB_RESAMPLER_CUTOFF / max_factor;
+
+  for(i=0; i<chn.taps.length; i++)
+  {
+    x = i - chn.half;
+
+    chn.taps[i] = ((x == 0.0) ? (2.0 * fc) : (Math.sin(2.0 * Math.PI * fc * x) / (Math.PI * x)))
+                  * bessel_i0(EDFLIB_RESAMPLER_KAISER_BETA * Math.sqrt(1.0 - ((x / chn.half) * (x / chn.half))))
+                  / bessel_i0(EDFLIB_RESAMPLER_KAISER_BETA);
+  }
+
+/* every output sample uses the coefficients of one phase (every L-th coefficient), each phase gets a gain of one */
+  for(p=0; p<chn.up; p++)
+  {
+    for(i=p, sum=0.0; i<chn.taps.length; i+=chn.up)
+    {
+      sum += chn.taps[i];
+    }
+
+    for(i=p; i<chn.taps.length; i+=chn.up)
+    {
+      chn.taps[i] /= sum;
+    }
+  }
+}
+
+/* modified Bessel function of the first kind, order zero */
+private static double bessel_i0(double x)
+{
+  int k;
+
+  double sum=1.0, term=1.0;
+
+  for(k=1; k<50; k++)
+  {
+    term *= (x / (2.0 * k)) * (x / (2.0 * k));
+
+    sum += term;
+
+    if(term < (sum * 1e-12))  break;
+  }
+
+  return sum;
+}
+
+private static int gcd(int a, int b)
+{
+  int tmp;
+
+  while(b != 0)
+  {
+    tmp = a % b;
+
+    a = b;
+
+    b = tmp;
+  }
+
+  return a;
+}
+
+}
+
+
+
+
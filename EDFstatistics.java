@@ -0,0 +1,700 @@
+import java.io.*;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Computes statistics of every signal of an EDF(+)/BDF(+) file in one pass over the datarecords. <br>
+ *<br>
+ * For every signal: number of samples, minimum, maximum, mean, variance, the number of samples<br>
+ * at or beyond digital minimum and digital maximum (clipping) and approximate percentiles.<br>
+ * The percentiles are taken from a histogram of the digital values with at most 4096 bins between<br>
+ * digital minimum and digital maximum, the error is at most half the width of a bin.<br>
+ *<br>
+ * The datarecords are read in blocks of a few MB (this works for archives too) and the blocks are<br>
+ * processed in parallel by the threads of a pool. Every block produces partial statistics which are<br>
+ * merged in the order of the blocks, the result does not depend on the number of threads.<br>
+ *<br>
+ * The results of get() are cached per file, as long as the file is not modified.<br>
+ *<br>
+ * Usage: java EDFstatistics [-threads &lt;n&gt;] &lt;file&gt; [&lt;file&gt; ...]<br>
+ */
+public class EDFstatistics
+{
+
+/* the datarecords are read in blocks of approximately this size */
+private static final int EDFLIB_STATS_BLOCK_SZ = 4 * 1024 * 1024;
+
+/* maximum number of bins of the histogram of a signal */
+private static final int EDFLIB_STATS_BINS = 4096;
+
+/* maximum number of files in the cache */
+private static final int EDFLIB_STATS_CACHED_FILES = 16;
+
+private static final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+private int threads;
+
+private int block_records;
+
+/* a block of datarecords and its statistics */
+private static class Block
+{
+  byte[] buf;
+
+  int n;
+
+  SignalStatistics[] stats;
+}
+
+private static class CacheEntry
+{
+  long length;
+
+  long last_modified;
+
+  SignalStatistics[] stats;
+}
+
+/**
+ * The statistics of one signal. <br>
+ * All values are physical values, except the clipping counts.<br>
+ */
+public static class SignalStatistics
+{
+  private final double bitvalue;
+
+  private final double offset;
+
+  private final int dig_min;
+
+  private final int dig_max;
+
+  private final int bin_width;
+
+  private long count;
+
+  private int min=Integer.MAX_VALUE;
+
+  private int max=Integer.MIN_VALUE;
+
+  private double mean;
+
+  private double m2;            /* sum of the squared differences from the mean (digital) */
+
+  private long clipped_low;
+
+  private long clipped_high;
+
+  private long[] hist;
+
+  SignalStatistics(double p_bitvalue, double p_offset, int p_dig_min, int p_dig_max)
+  {
+    bitvalue = p_bitvalue;
+
+    offset = p_offset;
+
+    dig_min = p_dig_min;
+
+    dig_max = p_dig_max;
+
+    bin_width = (int)(((long)dig_max - dig_min + EDFLIB_STATS_BINS) / EDFLIB_STATS_BINS);
+
+    hist = new long[(int)(((long)dig_max - dig_min) / bin_width) + 1];
+  }
+
+  /* a new, empty, object for the same signal */
+  SignalStatistics empty_copy()
+  {
+    return new SignalStatistics(bitvalue, offset, dig_min, dig_max);
+  }
+
+  /* adds n consecutive samples of smp_sz bytes in buf, starting at p */
+  void add_samples(byte[] buf, int p, int n, int smp_sz)
+  {
+    int i, v, mn, mx, mid, bin, last_bin;
+
+    long sum=0L, low=0L, high=0L;
+
+    double sum_sq=0.0, d;
+
+    if(n < 1)  return;
+
+    mn = min;
+
+    mx = max;
+
+    last_bin = hist.length - 1;
+
+/* the sums are relative to the middle of the range, this keeps the squares small */
+    mid = (int)(((long)dig_min + dig_max) / 2);
+
+    for(i=0; i<n; i++, p+=smp_sz)
+    {
+      if(smp_sz == 2)
+      {
+        v = (buf[p] & 0xff) | (buf[p + 1] << 8);
+      }
+      else
+      {
+        v = (buf[p] & 0xff) | ((buf[p + 1] & 0xff) << 8) | (buf[p + 2] << 16);
+      }
+
+      if(v < mn)  mn = v;
+
+      if(v > mx)  mx = v;
+
+      if(v <= dig_min)
+      {
+        low++;
+
+        bin = 0;
+      }
+      else if(v >= dig_max)
+      {
+        high++;
+
+        bin = last_bin;
+      }
+      else
+      {
+        bin = (v - dig_min) / bin_width;
+      }
+
+      hist[bin]++;
+
+      d = v - mid;
+
+      sum += v - mid;
+
+      sum_sq += d * d;
+    }
+
+    min = mn;
+
+    max = mx;
+
+    clipped_low += low;
+
+    clipped_high += high;
+
+/* merge the mean and the sum of squares of these samples */
+    merge_moments(n, mid + ((double)sum / n), sum_sq - (((double)sum * sum) / n));
+  }
+
+  /* merges the statistics of the samples that follow the samples of this object */
+  void merge(SignalStatistics other)
+  {
+    int i;
+
+    if(other.count == 0L)  return;
+
+    min = Math.min(min, other.min);
+
+    max = Math.max(max, other.max);
+
+    clipped_low += other.clipped_low;
+
+    clipped_high += other.clipped_high;
+
+    for(i=0; i<hist.length; i++)
+    {
+      hist[i] += other.hist[i];
+    }
+
+    merge_moments(other.count, other.mean, other.m2);
+  }
+
+  /* Chan et al., parallel algorithm for the variance */
+  private void merge_moments(long n, double n_mean, double n_m2)
+  {
+    long total = count + n;
+
+    double delta = n_mean - mean;
+
+    mean += delta * n / total;
+
+    m2 += n_m2 + ((delta * delta) * ((double)count * n / total));
+
+    count = total;
+  }
+
+  private double physical(double dig)
+  {
+    return bitvalue * (dig + offset);
+  }
+
+  /**
+   * Returns the number of samples. <br>
+   *
+   * @return number of samples
+   */
+  public long getCount()
+  {
+    return count;
+  }
+
+  /**
+   * Returns the minimum. <br>
+   *
+   * @return minimum (physical), NaN if there are no samples
+   */
+  public double getMinimum()
+  {
+    if(count == 0L)  return Double.NaN;
+
+    return Math.min(physical(min), physical(max));
+  }
+
+  /**
+   * Returns the maximum. <br>
+   *
+   * @return maximum (physical), NaN if there are no samples
+   */
+  public double getMaximum()
+  {
+    if(count == 0L)  return Double.NaN;
+
+    return Math.max(physical(min), physical(max));
+  }
+
+  /**
+   * Returns the mean. <br>
+   *
+   * @return mean (physical), NaN if there are no samples
+   */
+  public double getMean()
+  {
+    if(count == 0L)  return Double.NaN;
+
+    return physical(mean);
+  }
+
+  /**
+   * Returns the variance of all the samples (the population variance, divided by the number of samples). <br>
+   *
+   * @return variance (physical), NaN if there are no samples
+   */
+  public double getVariance()
+  {
+    if(count == 0L)  return Double.NaN;
+
+    return (m2 / count) * bitvalue * bitvalue;
+  }
+
+  /**
+   * Returns the standard deviation of all the samples. <br>
+   *
+   * @return standard deviation (physical), NaN if there are no samples
+   */
+  public double getStandardDeviation()
+  {
+    return Math.sqrt(getVariance());
+  }
+
+  /**
+   * Returns the number of samples that are equal to or less than digital minimum. <br>
+   *
+   * @return number of samples
+   */
+  public long getClippedLow()
+  {
+    return clipped_low;
+  }
+
+  /**
+   * Returns the number of samples that are equal to or more than digital maximum. <br>
+   *
+   * @return number of samples
+   */
+  public long getClippedHigh()
+  {
+    return clipped_high;
+  }
+
+  /**
+   * Returns an approximate percentile. <br>
+   * The value is the middle of the bin of the histogram that contains the percentile,<br>
+   * limited to the minimum and maximum. Percentile 0 and 100 are exact.<br>
+   *
+   * @param p percentile, 0 - 100
+   *
+   * @return percentile (physical), NaN if there are no samples
+   */
+  public double getPercentile(double p)
+  {
+    int i;
+
+    long rank, n=0L;
+
+    double dig;
+
+    if(count == 0L)  return Double.NaN;
+
+    p = Math.max(0.0, Math.min(100.0, p));
+
+/* the histogram is in the order of the digital values */
+    if(bitvalue < 0.0)  p = 100.0 - p;
+
+    rank = Math.round((p / 100.0) * (count - 1));
+
+/* the extremes are known exactly */
+    if(rank == 0L)  return physical(min);
+
+    if(rank == (count - 1))  return physical(max);
+
+    for(i=0; i<hist.length-1; i++)
+    {
+      n += hist[i];
+
+      if(n > rank)  break;
+    }
+
+    if(i == 0)
+    {
+      dig = min;
+    }
+    else if(i == hist.length - 1)
+    {
+      dig = max;
+    }
+    else
+    {
+      dig = dig_min + ((double)i * bin_width) + ((bin_width - 1) / 2.0);
+    }
+
+    dig = Math.max(min, Math.min(max, dig));
+
+    return physical(dig);
+  }
+}
+
+public static void main(String[] args)
+{
+  int i, s, threads=0, failed=0;
+
+  EDFstatistics statistics = new EDFstatistics();
+
+  SignalStatistics[] stats;
+
+  EDFreader reader;
+
+  for(i=0; (i<args.length) && args[i].startsWith("-"); i++)
+  {
+    if(args[i].equals("-threads") && ((i + 1) < args.length))
+    {
+      try
+      {
+        threads = Integer.parseInt(args[++i]);
+      }
+      catch(NumberFormatException e)
+      {
+        threads = -1;
+      }
+
+      if(statistics.setThreads(threads) != 0)
+      {
+        System.out.printf("Invalid number of threads.\n");
+
+        System.exit(1);
+      }
+    }
+    else
+    {
+      i = args.length;
+    }
+  }
+
+  if(i >= args.length)
+  {
+    System.out.printf("Usage: java EDFstatistics [-threads <n>] <file> [<file> ...]\n");
+
+    System.exit(1);
+  }
+
+  for(; i<args.length; i++)
+  {
+    try
+    {
+      reader = new EDFreader(args[i], EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+      try
+      {
+        stats = statistics.compute(reader);
+
+        System.out.printf("%s:\n", args[i]);
+
+        System.out.printf("%-16s %12s %12s %12s %12s %12s %12s %12s %10s %10s\n", "label", "min", "p1", "median", "p99", "max", "mean", "sd", "clip low", "clip high");
+
+        for(s=0; s<stats.length; s++)
+        {
+          System.out.printf("%-16s %12g %12g %12g %12g %12g %12g %12g %10d %10d\n", reader.getSignalLabel(s).trim(),
+                            stats[s].getMinimum(), stats[s].getPercentile(1), stats[s].getPercentile(50), stats[s].getPercentile(99),
+                            stats[s].getMaximum(), stats[s].getMean(), stats[s].getStandardDeviation(),
+                            stats[s].getClippedLow(), stats[s].getClippedHigh());
+        }
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+    catch(IOException | EDFException e)
+    {
+      System.out.printf("%s: %s\n", args[i], e.getMessage());
+
+      failed++;
+    }
+  }
+
+  System.exit((failed == 0) ? 0 : 2);
+}
+
+public EDFstatistics()
+{
+  threads = Runtime.getRuntime().availableProcessors();
+}
+
+/**
+ * Sets the number of threads that process the datarecords. <br>
+ * Default is the number of processors.<br>
+ *
+ * @param n number of threads, 1 - 256
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setThreads(int n)
+{
+  if((n < 1) || (n > 256))  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  threads = n;
+
+  return 0;
+}
+
+/**
+ * Sets the number of datarecords that are read and processed at once. <br>
+ * Default is 0: blocks of approximately 4 MB.<br>
+ *
+ * @param n number of datarecords, 0 for the default
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setBlockRecords(int n)
+{
+  if(n < 0)  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  block_records = n;
+
+  return 0;
+}
+
+/**
+ * Returns the statistics of every signal of a file, from the cache when the file has not been modified<br>
+ * since they were computed. <br>
+ *
+ * @param path path of the EDF(+)/BDF(+) file or archive
+ *
+ * @throws IOException, EDFException
+ *
+ * @return the statistics, in the order of the signals of EDFreader (annotation signals excluded)
+ */
+public static SignalStatistics[] get(String path) throws IOException, EDFException
+{
+  String key;
+
+  File file;
+
+  CacheEntry entry;
+
+  EDFreader reader;
+
+  file = new File(path);
+
+  key = file.getCanonicalPath();
+
+  synchronized(cache)
+  {
+    entry = cache.get(key);
+
+    if((entry != null) && (entry.length == file.length()) && (entry.last_modified == file.lastModified()))
+    {
+      return entry.stats;
+    }
+  }
+
+  entry = new CacheEntry();
+
+  entry.length = file.length();
+
+  entry.last_modified = file.lastModified();
+
+  reader = new EDFreader(path, EDFreader.EDFLIB_DO_NOT_READ_ANNOTATIONS);
+
+  try
+  {
+    entry.stats = new EDFstatistics().compute(reader);
+  }
+  finally
+  {
+    reader.close();
+  }
+
+  synchronized(cache)
+  {
+    cache.put(key, entry);
+
+    if(cache.size() > EDFLIB_STATS_CACHED_FILES)
+    {
+      cache.remove(cache.keySet().iterator().next());
+    }
+  }
+
+  return entry.stats;
+}
+
+/**
+ * Computes the statistics of every signal of an opened file. <br>
+ * The datarecords are read with EDFreader.readDataRecords(), the file position of the signals is not changed.<br>
+ *
+ * @param reader the file
+ *
+ * @throws IOException, EDFException
+ *
+ * @return the statistics, in the order of the signals of EDFreader (annotation signals excluded)
+ */
+public SignalStatistics[] compute(EDFreader reader) throws IOException, EDFException
+{
+  int s, ns, recordsize, smp_sz, records, max_pending;
+
+  int[] offset, spr;
+
+  long r, datarecords;
+
+  double bitvalue;
+
+  SignalStatistics[] stats;
+
+  Block blk;
+
+  ArrayDeque<Future<Block>> pending;
+
+  ArrayDeque<byte[]> free_bufs;
+
+  ExecutorService pool;
+
+  ns = reader.getNumSignals();
+
+  recordsize = reader.getDataRecordSize();
+
+  smp_sz = reader.getSampleSize();
+
+  datarecords = reader.getNumDataRecords();
+
+  stats = new SignalStatistics[ns];
+
+  offset = new int[ns];
+
+  spr = new int[ns];
+
+  for(s=0; s<ns; s++)
+  {
+    bitvalue = (reader.getPhysicalMaximum(s) - reader.getPhysicalMinimum(s)) / (reader.getDigitalMaximum(s) - reader.getDigitalMinimum(s));
+
+    stats[s] = new SignalStatistics(bitvalue, (reader.getPhysicalMaximum(s) / bitvalue) - reader.getDigitalMaximum(s),
+                                    reader.getDigitalMinimum(s), reader.getDigitalMaximum(s));
+
+    offset[s] = reader.getSignalRecordOffset(s);
+
+    spr[s] = reader.getSampelsPerDataRecord(s);
+  }
+
+  records = (block_records > 0) ? block_records : Math.max(1, EDFLIB_STATS_BLOCK_SZ / recordsize);
+
+/* reading is done by this thread, the blocks are processed by the pool,
+   the number of blocks that are read but not yet merged is limited */
+  max_pending = threads * 2;
+
+  pending = new ArrayDeque<Future<Block>>();
+
+  free_bufs = new ArrayDeque<byte[]>();
+
+  pool = Executors.newFixedThreadPool(threads);
+
+  try
+  {
+    for(r=0L; (r < datarecords) || !pending.isEmpty(); )
+    {
+      if((r < datarecords) && (pending.size() < max_pending))
+      {
+        final Block block = new Block();
+
+        block.buf = free_bufs.isEmpty() ? new byte[records * recordsize] : free_bufs.pop();
+
+        block.n = reader.readDataRecords(r, records, block.buf);
+
+        if(block.n < 1)
+        {
+          throw new EOFException("Unexpected end of file.");
+        }
+
+        pending.add(pool.submit(() -> process_block(stats, block, recordsize, offset, spr, smp_sz)));
+
+        r += block.n;
+
+        continue;
+      }
+
+/* merge in the order of the blocks */
+      blk = pending.remove().get();
+
+      for(s=0; s<ns; s++)
+      {
+        stats[s].merge(blk.stats[s]);
+      }
+
+      free_bufs.push(blk.buf);
+    }
+  }
+  catch(InterruptedException e)
+  {
+    Thread.currentThread().interrupt();
+
+    throw new InterruptedIOException("Interrupted.");
+  }
+  catch(ExecutionException e)
+  {
+    if(e.getCause() instanceof IOException)  throw (IOException)e.getCause();
+
+    throw new IOException(e.getCause());
+  }
+  finally
+  {
+    pool.shutdownNow();
+  }
+
+  return stats;
+}
+
+/* computes the statistics of the datarecords of a block */
+private static Block process_block(SignalStatistics[] stats, Block blk, int recordsize, int[] offset, int[] spr, int smp_sz)
+{
+  int i, s;
+
+  blk.stats = new SignalStatistics[stats.length];
+
+  for(s=0; s<stats.length; s++)
+  {
+    blk.stats[s] = stats[s].empty_copy();
+
+    for(i=0; i<blk.n; i++)
+    {
+      blk.stats[s].add_samples(blk.buf, (i * recordsize) + offset[s], spr[s], smp_sz);
+    }
+  }
+
+  return blk;
+}
+
+}
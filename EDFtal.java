@@ -0,0 +1,443 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.lang.*;
+import java.util.*;
+
+
+/*
+ * Helper functions for the tools that copy datarecords without decoding them (EDFcrop, EDFmerge, ...).
+ * They read the annotations (TAL's: Time-stamped Annotation Lists) from the annotation signals of a file
+ * and write them into the annotation signals of a new file.
+ *
+ * A TAL looks like: +onset[0x15duration]0x14description0x14[description0x14...]0x00
+ * The first TAL of the first annotation signal of every datarecord is the timekeeping TAL: +onset0x140x140x00
+ *
+ * The onsets of the annotations are kept as text. When an onset is shifted by a whole number of seconds
+ * only the integer part changes, this way the precision of the original onset is never lost.
+ *
+ * The tools also share the helpers that fill in the fields of the header of the new file.
+ */
+class EDFtal
+{
+
+private static final long EDFLIB_TIME_DIMENSION = EDFreader.EDFLIB_TIME_DIMENSION;
+
+/* the months as they are written in the startdate of an EDF+ header */
+static final String[] month_names = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN",
+                                     "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+
+/* one annotation, onset is expressed in units of 100 nanoSeconds */
+static class Annotation
+{
+  long    onset;
+
+  byte[]  onset_txt;
+
+  byte[]  duration_txt;
+
+  byte[]  description;
+
+  boolean stored;
+}
+
+/* reads the annotation signals of all datarecords and returns the annotations with an onset */
+/* from t0 up to (not including) t1, the onsets are expressed in the timebase of the TAL's */
+static ArrayList<Annotation> read_annotations(EDFreader hdl, FileChannel channel, long t0, long t1) throws IOException, EDFException
+{
+  int i, n, first, last, hdrsize, recordsize;
+
+  long r, datarecords;
+
+  int[] offset,
+        size;
+
+  byte[] buf;
+
+  ByteBuffer bbuf;
+
+  ArrayList<Annotation> list = new ArrayList<Annotation>();
+
+  n = hdl.getNumAnnotationSignals();
+
+  if(n == 0)  return list;
+
+  offset = new int[n];
+
+  size = new int[n];
+
+  first = Integer.MAX_VALUE;
+
+  last = 0;
+
+  for(i=0; i<n; i++)
+  {
+    offset[i] = hdl.getAnnotationSignalRecordOffset(i);
+
+    size[i] = hdl.getAnnotationSignalSize(i);
+
+    if(offset[i] < first)  first = offset[i];
+
+    if((offset[i] + size[i]) > last)  last = offset[i] + size[i];
+  }
+
+/* read only the part of the datarecord that contains the annotation signals */
+  buf = new byte[last - first];
+
+  bbuf = ByteBuffer.wrap(buf);
+
+  hdrsize = hdl.getHeaderSize();
+
+  recordsize = hdl.getDataRecordSize();
+
+  datarecords = hdl.getNumDataRecords();
+
+  for(r=0; r<datarecords; r++)
+  {
+    bbuf.clear();
+
+    while(bbuf.hasRemaining())
+    {
+      if(channel.read(bbuf, hdrsize + (r * recordsize) + first + bbuf.position()) < 0)
+      {
+        throw new EDFException(EDFreader.EDFLIB_FILE_READ_ERROR, "Unexpected end of file.\n");
+      }
+    }
+
+    for(i=0; i<n; i++)
+    {
+      if(parse_tals(buf, offset[i] - first, size[i], i == 0, t0, t1, list) != 0)
+      {
+        throw new EDFException(EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, String.format("Invalid annotation in datarecord %d.\n", r));
+      }
+    }
+  }
+
+  return list;
+}
+
+/* parses the TAL's of one annotation signal and adds the annotations with an onset from t0 up to (not including) t1 to list */
+static int parse_tals(byte[] buf, int offset, int size, boolean timekeeping, long t0, long t1, ArrayList<Annotation> list)
+{
+  int p, end, tal_start, onset_end, duration_start, duration_end, desc_start;
+
+  long onset;
+
+  Annotation annot;
+
+  p = offset;
+
+  end = offset + size;
+
+  while((p < end) && (buf[p] != 0))
+  {
+/* onset */
+    for(tal_start=p; (p < end) && (buf[p] != 20) && (buf[p] != 21) && (buf[p] != 0); p++);
+
+    if((p >= end) || (buf[p] == 0))  return -1;
+
+    onset_end = p;
+
+    onset = parse_onset(buf, tal_start, onset_end);
+
+    if(onset == Long.MIN_VALUE)  return -1;
+
+/* duration */
+    duration_start = -1;
+
+    duration_end = -1;
+
+    if(buf[p] == 21)
+    {
+      duration_start = ++p;
+
+      for(; (p < end) && (buf[p] != 20) && (buf[p] != 0); p++);
+
+      if((p >= end) || (buf[p] == 0))  return -1;
+
+      duration_end = p;
+    }
+
+    p++;
+
+/* descriptions, the first (empty) one of the first TAL in the first annotation signal is the timekeeping one */
+    while((p < end) && (buf[p] != 0))
+    {
+      for(desc_start=p; (p < end) && (buf[p] != 20) && (buf[p] != 0); p++);
+
+      if((p >= end) || (buf[p] == 0))  return -1;
+
+      if(timekeeping)
+      {
+        timekeeping = false;
+      }
+      else if((onset >= t0) && (onset < t1))
+        {
+          annot = new Annotation();
+
+          annot.onset = onset;
+
+          annot.onset_txt = Arrays.copyOfRange(buf, tal_start, onset_end);
+
+          if(duration_start >= 0)
+          {
+            annot.duration_txt = Arrays.copyOfRange(buf, duration_start, duration_end);
+          }
+
+          annot.description = Arrays.copyOfRange(buf, desc_start, p);
+
+          list.add(annot);
+        }
+
+      p++;
+    }
+
+    if(timekeeping)  return -1;
+
+    p++;  /* skip the zero at the end of the TAL */
+  }
+
+  return 0;
+}
+
+/* returns the onset (e.g. "+123.45") in units of 100 nanoSeconds, or Long.MIN_VALUE when invalid */
+static long parse_onset(byte[] buf, int start, int end)
+{
+  int p, digits=0, frac_digits=0;
+
+  long sec=0L, frac=0L;
+
+  if((end - start) < 2)  return Long.MIN_VALUE;
+
+  if((buf[start] != '+') && (buf[start] != '-'))  return Long.MIN_VALUE;
+
+  for(p=start+1; (p < end) && (buf[p] != '.'); p++)
+  {
+    if((buf[p] < '0') || (buf[p] > '9') || (digits > 12))  return Long.MIN_VALUE;
+
+    sec = (sec * 10L) + (buf[p] - '0');
+
+    digits++;
+  }
+
+  if(digits == 0)  return Long.MIN_VALUE;
+
+  if(p < end)
+  {
+    for(p++; p<end; p++)
+    {
+      if((buf[p] < '0') || (buf[p] > '9'))  return Long.MIN_VALUE;
+
+      if(frac_digits < 7)
+      {
+        frac = (frac * 10L) + (buf[p] - '0');
+
+        frac_digits++;
+      }
+    }
+
+    if(frac_digits == 0)  return Long.MIN_VALUE;
+
+    for(; frac_digits<7; frac_digits++)
+    {
+      frac *= 10L;
+    }
+  }
+
+  if(buf[start] == '-')
+  {
+    return -((sec * EDFLIB_TIME_DIMENSION) + frac);
+  }
+
+  return (sec * EDFLIB_TIME_DIMENSION) + frac;
+}
+
+/* returns the onset text shifted by a whole number of seconds (can be negative) */
+static byte[] shift_onset(byte[] onset_txt, long seconds)
+{
+  int p;
+
+  long sec=0L, onset;
+
+  if(seconds == 0L)  return onset_txt;
+
+  for(p=1; (p < onset_txt.length) && (onset_txt[p] != '.'); p++)
+  {
+    sec = (sec * 10L) + (onset_txt[p] - '0');
+  }
+
+/* a positive onset stays positive: only the integer part changes, the fraction is copied as it is */
+  if((onset_txt[0] == '+') && ((sec + seconds) >= 0L))
+  {
+    return ("+" + (sec + seconds) + new String(onset_txt, p, onset_txt.length - p, StandardCharsets.US_ASCII)).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  onset = parse_onset(onset_txt, 0, onset_txt.length) + (seconds * EDFLIB_TIME_DIMENSION);
+
+  return format_onset(onset, false);
+}
+
+/* returns the onset as text, the fraction is left out when it's zero unless always_frac is true */
+static byte[] format_onset(long onset, boolean always_frac)
+{
+  String sign = "+";
+
+  if(onset < 0L)
+  {
+    sign = "-";
+
+    onset = -onset;
+  }
+
+  if(always_frac || ((onset % EDFLIB_TIME_DIMENSION) != 0L))
+  {
+    return String.format("%s%d.%07d", sign, onset / EDFLIB_TIME_DIMENSION, onset % EDFLIB_TIME_DIMENSION).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  return String.format("%s%d", sign, onset / EDFLIB_TIME_DIMENSION).getBytes(StandardCharsets.US_ASCII);
+}
+
+/* returns the TAL of one annotation, shifted by a whole number of seconds, terminated by a zero */
+static byte[] build_tal(Annotation annot, long seconds)
+{
+  int p;
+
+  byte[] onset_txt,
+         tal;
+
+  onset_txt = shift_onset(annot.onset_txt, seconds);
+
+  tal = new byte[onset_txt.length + ((annot.duration_txt != null) ? (annot.duration_txt.length + 1) : 0) + annot.description.length + 3];
+
+  System.arraycopy(onset_txt, 0, tal, 0, onset_txt.length);
+
+  p = onset_txt.length;
+
+  if(annot.duration_txt != null)
+  {
+    tal[p++] = 21;
+
+    System.arraycopy(annot.duration_txt, 0, tal, p, annot.duration_txt.length);
+
+    p += annot.duration_txt.length;
+  }
+
+  tal[p++] = 20;
+
+  System.arraycopy(annot.description, 0, tal, p, annot.description.length);
+
+  p += annot.description.length;
+
+  tal[p++] = 20;
+
+  tal[p] = 0;
+
+  return tal;
+}
+
+/* returns the timekeeping TAL, terminated by a zero */
+static byte[] timekeeping_tal(long onset, boolean always_frac)
+{
+  byte[] onset_txt,
+         tal;
+
+  onset_txt = format_onset(onset, always_frac);
+
+  tal = Arrays.copyOf(onset_txt, onset_txt.length + 3);
+
+  tal[onset_txt.length] = 20;
+
+  tal[onset_txt.length + 1] = 20;
+
+  return tal;
+}
+
+/* Fills one annotation signal in buf (size bytes, starting at offset) with the timekeeping TAL (if not null) */
+/* followed by as many annotations from list, starting at index k, as possible. The annotations are shifted by */
+/* a whole number of seconds. An annotation that does not fit next to the timekeeping TAL in an otherwise */
+/* empty annotation signal is skipped. */
+/* The rest of the annotation signal is filled with zeros. Returns the index of the next annotation to store. */
+static int fill_annotation_signal(byte[] buf, int offset, int size, byte[] timekeeping, ArrayList<Annotation> list, int k, long seconds) throws EDFException
+{
+  int p=0, empty;
+
+  byte[] tal;
+
+  Annotation annot;
+
+  if(timekeeping != null)
+  {
+    if(timekeeping.length >= size)
+    {
+      throw new EDFException(EDFreader.EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, "Annotation signal is too small for the timekeeping TAL.\n");
+    }
+
+    System.arraycopy(timekeeping, 0, buf, offset, timekeeping.length);
+
+    p = timekeeping.length;
+  }
+
+  empty = p;
+
+  for(; k<list.size(); k++)
+  {
+    annot = list.get(k);
+
+    tal = build_tal(annot, seconds);
+
+    if((p + tal.length) > size)
+    {
+      if(p == empty)  continue;  /* it does not fit in an empty annotation signal, skip it */
+
+      break;
+    }
+
+    System.arraycopy(tal, 0, buf, offset + p, tal.length);
+
+    p += tal.length;
+
+    annot.stored = true;
+  }
+
+  Arrays.fill(buf, offset + p, offset + size, (byte)0);
+
+  return k;
+}
+
+/* returns the number of annotations in list that have not been stored */
+static int not_stored(ArrayList<Annotation> list)
+{
+  int i, n=0;
+
+  for(i=0; i<list.size(); i++)
+  {
+    if(!list.get(i).stored)  n++;
+  }
+
+  return n;
+}
+
+/* writes str into the header field at offset, filled up with spaces */
+static void put_field(byte[] hdr, int offset, String str, int len)
+{
+  int i;
+
+  for(i=0; i<len; i++)
+  {
+    if(i < str.length())
+    {
+      hdr[offset + i] = (byte)str.charAt(i);
+    }
+    else
+    {
+      hdr[offset + i] = ' ';
+    }
+  }
+}
+
+}
+
+
+
+
@@ -0,0 +1,1093 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Checks an EDF(+)/BDF(+) file and reports every problem with its position in the file. <br>
+ *<br>
+ * The following is checked:<br>
+ * the header: every field, the position of the first invalid character or value is reported<br>
+ * the filesize: must match the header size plus the number of datarecords multiplied by the datarecord size<br>
+ * the annotation signals (EDF+ and BDF+): the syntax of every TAL (Time-stamped Annotation List)<br>
+ * the timekeeping TAL's: present in every datarecord, the first one less than one second,<br>
+ * continuous (EDF+C, BDF+C) or increasing by at least the datarecord duration (EDF+D, BDF+D)<br>
+ * the samples: digital values outside the range digital minimum - digital maximum<br>
+ *<br>
+ * The datarecords are checked in parallel: the file is divided in chunks of a few MB that are read with<br>
+ * positional reads (FileChannel) by the threads of a pool. The results of the chunks are merged afterwards,<br>
+ * the continuity of the timekeeping TAL's between chunks is checked after the merge.<br>
+ *<br>
+ * Usage: java EDFvalidator [-threads &lt;n&gt;] &lt;file&gt; [&lt;file&gt; ...]<br>
+ */
+public class EDFvalidator
+{
+
+/* the datarecords are checked in chunks of approximately this size */
+private static final int EDFLIB_VALIDATOR_CHUNK_SZ = 4 * 1024 * 1024;
+
+/* offset (multiplied by the number of signals) of the signal fields in the header that are checked */
+private static final int EDFLIB_HDR_LABEL     = 0;
+private static final int EDFLIB_HDR_PHYS_MIN  = 104;
+private static final int EDFLIB_HDR_PHYS_MAX  = 112;
+private static final int EDFLIB_HDR_DIG_MIN   = 120;
+private static final int EDFLIB_HDR_DIG_MAX   = 128;
+private static final int EDFLIB_HDR_SPR       = 216;
+
+private int threads;
+
+private int max_problems;
+
+/* limits the reads when files are checked in parallel (EDFbatch), null when there's no limit */
+private EDFiolimit io_limit;
+
+/* the layout of the file, from the header */
+private int ns;
+
+private int smp_sz;
+
+private int hdrsize;
+
+private int recordsize;
+
+private long datarecords;
+
+private long duration;
+
+private boolean plus;
+
+private boolean discontinuous;
+
+private int[] spr;
+
+private int[] offset;
+
+private int[] dig_min;
+
+private int[] dig_max;
+
+private boolean[] annot;
+
+private int first_annot;
+
+/**
+ * A problem found in the file. <br>
+ */
+public static class Problem
+{
+  /** position in the file in bytes */
+  public final long offset;
+
+  /** datarecord, zero-based, -1 when the problem is not in a datarecord */
+  public final long datarecord;
+
+  /** signal in the order of the header (annotation signals included), zero-based, -1 when not applicable */
+  public final int signal;
+
+  /** description of the problem */
+  public final String message;
+
+  Problem(long p_offset, long p_datarecord, int p_signal, String p_message)
+  {
+    offset = p_offset;
+
+    datarecord = p_datarecord;
+
+    signal = p_signal;
+
+    message = p_message;
+  }
+
+  public String toString()
+  {
+    if(datarecord < 0L)
+    {
+      return String.format("offset %d: %s", offset, message);
+    }
+
+    if(signal < 0)
+    {
+      return String.format("offset %d, datarecord %d: %s", offset, datarecord, message);
+    }
+
+    return String.format("offset %d, datarecord %d, signal %d: %s", offset, datarecord, signal, message);
+  }
+}
+
+/* the results of one chunk of datarecords */
+private static class ChunkResult
+{
+  ArrayList<Problem> problems = new ArrayList<Problem>();
+
+  long first_rec=-1L;      /* first and last datarecord with a valid timekeeping TAL */
+
+  long first_onset;
+
+  long last_rec=-1L;
+
+  long last_onset;
+
+  long[] out_of_range;     /* number of samples out of range per signal */
+
+  Problem[] first_out_of_range;
+}
+
+public static void main(String[] args)
+{
+  int i, threads=0, failed=0;
+
+  EDFvalidator validator = new EDFvalidator();
+
+  ArrayList<Problem> problems;
+
+  for(i=0; (i<args.length) && args[i].startsWith("-"); i++)
+  {
+    if(args[i].equals("-threads") && ((i + 1) < args.length))
+    {
+      try
+      {
+        threads = Integer.parseInt(args[++i]);
+      }
+      catch(NumberFormatException e)
+      {
+        threads = -1;
+      }
+
+      if(validator.setThreads(threads) != 0)
+      {
+        System.out.printf("Invalid number of threads.\n");
+
+        System.exit(1);
+      }
+    }
+    else
+    {
+      i = args.length;
+    }
+  }
+
+  if(i >= args.length)
+  {
+    System.out.printf("Usage: java EDFvalidator [-threads <n>] <file> [<file> ...]\n");
+
+    System.exit(1);
+  }
+
+  for(; i<args.length; i++)
+  {
+    try
+    {
+      problems = validator.validate(args[i]);
+    }
+    catch(IOException e)
+    {
+      System.out.printf("%s: %s\n", args[i], e.getMessage());
+
+      failed++;
+
+      continue;
+    }
+
+    if(problems.isEmpty())
+    {
+      System.out.printf("%s: OK\n", args[i]);
+    }
+    else
+    {
+      for(Problem problem : problems)
+      {
+        System.out.printf("%s: %s\n", args[i], problem);
+      }
+
+      failed++;
+    }
+  }
+
+  System.exit((failed == 0) ? 0 : 2);
+}
+
+public EDFvalidator()
+{
+  threads = Runtime.getRuntime().availableProcessors();
+
+  max_problems = 1000;
+}
+
+/**
+ * Sets the number of threads that check the datarecords. <br>
+ * Default is the number of processors.<br>
+ *
+ * @param n number of threads, 1 - 256
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setThreads(int n)
+{
+  if((n < 1) || (n > 256))  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  threads = n;
+
+  return 0;
+}
+
+/**
+ * Sets the maximum number of problems that are reported. <br>
+ * Default is 1000. Samples out of range are reported once per signal.<br>
+ *
+ * @param n maximum number of problems, at least 1
+ *
+ * @return 0 on success, otherwise EDFLIB_INVALID_ARGUMENT
+ */
+public int setMaxProblems(int n)
+{
+  if(n < 1)  return EDFreader.EDFLIB_INVALID_ARGUMENT;
+
+  max_problems = n;
+
+  return 0;
+}
+
+/* the datarecords are read with a permit of io, the checks are done without it */
+void setIoLimit(EDFiolimit io)
+{
+  io_limit = io;
+}
+
+/**
+ * Checks a file. <br>
+ * Returns the problems sorted by their position in the file, the list is empty when the file is valid.<br>
+ * When the header is invalid, the datarecords are not checked.<br>
+ *
+ * @param path path of the EDF(+)/BDF(+) file
+ *
+ * @throws IOException when the file can not be read
+ *
+ * @return the list of problems
+ */
+public ArrayList<Problem> validate(String path) throws IOException
+{
+  int chunk_records;
+
+  long file_size, records_in_file, r;
+
+  byte[] hdr;
+
+  ArrayList<Problem> problems = new ArrayList<Problem>();
+
+  ArrayList<Callable<ChunkResult>> tasks;
+
+  ArrayList<ChunkResult> results;
+
+  ForkJoinPool pool;
+
+  if(EDFarchive.isArchive(path))
+  {
+    problems.add(new Problem(0L, -1L, -1, "file is a compressed archive (EDFarchive), decompress it to check it"));
+
+    return problems;
+  }
+
+  try(RandomAccessFile file = new RandomAccessFile(path, "r"))
+  {
+    FileChannel channel = file.getChannel();
+
+    file_size = file.length();
+
+    if(file_size < 512)
+    {
+      problems.add(new Problem(0L, -1L, -1, String.format("file is too small (%d bytes), the header of a file with one signal has 512 bytes", file_size)));
+
+      return problems;
+    }
+
+    hdr = new byte[256];
+
+    file.readFully(hdr);
+
+    if(!check_base_header(hdr, problems))  return problems;
+
+    if(file_size < hdrsize)
+    {
+      problems.add(new Problem(file_size, -1L, -1, String.format("file is smaller (%d bytes) than the header (%d bytes)", file_size, hdrsize)));
+
+      return problems;
+    }
+
+    hdr = new byte[hdrsize];
+
+    file.seek(0L);
+
+    file.readFully(hdr);
+
+    if(!check_signal_header(hdr, problems))  return problems;
+
+/* number of datarecords against the filesize */
+    records_in_file = (file_size - hdrsize) / recordsize;
+
+    if((datarecords >= 0L) && (file_size != (hdrsize + (datarecords * recordsize))))
+    {
+      problems.add(new Problem(Math.min(file_size, hdrsize + (datarecords * recordsize)), -1L, -1,
+                               String.format("filesize is %d bytes, expected %d bytes (%d datarecords of %d bytes), the file contains %d complete datarecords and %d bytes more",
+                                             file_size, hdrsize + (datarecords * recordsize), datarecords, recordsize,
+                                             records_in_file, (file_size - hdrsize) % recordsize)));
+    }
+
+    if(datarecords >= 0L)
+    {
+      records_in_file = Math.min(records_in_file, datarecords);
+    }
+
+/* check the datarecords in parallel */
+    chunk_records = Math.max(1, EDFLIB_VALIDATOR_CHUNK_SZ / recordsize);
+
+    tasks = new ArrayList<Callable<ChunkResult>>();
+
+    for(r=0L; r<records_in_file; r+=chunk_records)
+    {
+      final long first = r;
+
+      final int n = (int)Math.min(chunk_records, records_in_file - r);
+
+      tasks.add(() -> check_records(channel, first, n));
+    }
+
+    pool = new ForkJoinPool(threads);
+
+    results = new ArrayList<ChunkResult>();
+
+    try
+    {
+      for(Future<ChunkResult> future : pool.invokeAll(tasks))
+      {
+        results.add(future.get());
+      }
+    }
+    catch(InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException("Interrupted.");
+    }
+    catch(ExecutionException e)
+    {
+      if(e.getCause() instanceof IOException)  throw (IOException)e.getCause();
+
+      throw new IOException(e.getCause());
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+
+    merge_results(results, problems);
+  }
+
+  Collections.sort(problems, (a, b) -> Long.compare(a.offset, b.offset));
+
+  if(problems.size() > max_problems)
+  {
+    r = problems.size() - max_problems;
+
+    problems.subList(max_problems, problems.size()).clear();
+
+    problems.add(new Problem(problems.get(max_problems - 1).offset, -1L, -1, String.format("%d more problems are not reported", r)));
+  }
+
+  return problems;
+}
+
+/* checks the first 256 bytes of the header, returns false when the rest of the file can not be checked */
+private boolean check_base_header(byte[] hdr, ArrayList<Problem> problems)
+{
+  int i, n;
+
+  String str;
+
+  boolean ok=true;
+
+  if((hdr[0] == (byte)0xff) && field(hdr, 1, 7).equals("BIOSEMI"))
+  {
+    smp_sz = 3;
+  }
+  else if(field(hdr, 0, 8).equals("0       "))
+    {
+      smp_sz = 2;
+    }
+    else
+    {
+      problems.add(new Problem(0L, -1L, -1, "version must be \"0\" (EDF) or 0xFF \"BIOSEMI\" (BDF)"));
+
+      return false;
+    }
+
+  for(i=8; i<256; i++)
+  {
+    if((hdr[i] < 32) || (hdr[i] > 126))
+    {
+      problems.add(new Problem(i, -1L, -1, String.format("invalid character 0x%02X in the header (%s)", hdr[i] & 0xff, base_field_name(i))));
+
+      return false;
+    }
+  }
+
+  str = field(hdr, 168, 8);
+
+  if(!str.matches("[0-9][0-9]\\.[0-9][0-9]\\.[0-9][0-9]"))
+  {
+    problems.add(new Problem(168, -1L, -1, "startdate must be dd.mm.yy: \"" + str + "\""));
+  }
+  else if((Integer.parseInt(str.substring(0, 2)) < 1) || (Integer.parseInt(str.substring(0, 2)) > 31) ||
+          (Integer.parseInt(str.substring(3, 5)) < 1) || (Integer.parseInt(str.substring(3, 5)) > 12))
+    {
+      problems.add(new Problem(168, -1L, -1, "invalid startdate: \"" + str + "\""));
+    }
+
+  str = field(hdr, 176, 8);
+
+  if(!str.matches("[0-9][0-9]\\.[0-9][0-9]\\.[0-9][0-9]"))
+  {
+    problems.add(new Problem(176, -1L, -1, "starttime must be hh.mm.ss: \"" + str + "\""));
+  }
+  else if((Integer.parseInt(str.substring(0, 2)) > 23) || (Integer.parseInt(str.substring(3, 5)) > 59) ||
+          (Integer.parseInt(str.substring(6, 8)) > 59))
+    {
+      problems.add(new Problem(176, -1L, -1, "invalid starttime: \"" + str + "\""));
+    }
+
+  str = field(hdr, 192, 44);
+
+  plus = str.startsWith((smp_sz == 2) ? "EDF+C" : "BDF+C") || str.startsWith((smp_sz == 2) ? "EDF+D" : "BDF+D");
+
+  discontinuous = plus && (str.charAt(4) == 'D');
+
+  if((!plus) && (str.startsWith("EDF+") || str.startsWith("BDF+")))
+  {
+    problems.add(new Problem(192, -1L, -1, "reserved field must start with " + ((smp_sz == 2) ? "EDF+C or EDF+D" : "BDF+C or BDF+D") + ": \"" + str.trim() + "\""));
+  }
+
+  str = field(hdr, 252, 4).trim();
+
+  if((!str.matches("[0-9]+")) || (Integer.parseInt(str) < 1) || (Integer.parseInt(str) > EDFreader.EDFLIB_MAXSIGNALS))
+  {
+    problems.add(new Problem(252, -1L, -1, "invalid number of signals: \"" + str + "\""));
+
+    ok = false;
+  }
+  else
+  {
+    ns = Integer.parseInt(str);
+
+    hdrsize = (ns + 1) * 256;
+
+    str = field(hdr, 184, 8).trim();
+
+    if((!str.matches("[0-9]+")) || (Integer.parseInt(str) != hdrsize))
+    {
+      problems.add(new Problem(184, -1L, -1, String.format("header size is \"%s\", expected %d", str, hdrsize)));
+    }
+  }
+
+  str = field(hdr, 236, 8).trim();
+
+  if(str.equals("-1"))
+  {
+    datarecords = -1L;
+
+    problems.add(new Problem(236, -1L, -1, "number of datarecords is -1 (unknown), the recording was not closed properly"));
+  }
+  else if((!str.matches("[0-9]+")) || (Long.parseLong(str) < 1L))
+    {
+      problems.add(new Problem(236, -1L, -1, "invalid number of datarecords: \"" + str + "\""));
+
+      ok = false;
+    }
+    else
+    {
+      datarecords = Long.parseLong(str);
+    }
+
+  str = field(hdr, 244, 8).trim();
+
+  if(!str.matches("[0-9]+(\\.[0-9]+)?"))
+  {
+    problems.add(new Problem(244, -1L, -1, "invalid datarecord duration: \"" + str + "\""));
+
+    ok = false;
+  }
+  else
+  {
+    duration = EDFtal.parse_onset(("+" + str).getBytes(StandardCharsets.US_ASCII), 0, str.length() + 1);
+
+    if((duration == 0L) && plus)
+    {
+      problems.add(new Problem(244, -1L, -1, "datarecord duration can not be zero in EDF+ and BDF+"));
+    }
+  }
+
+  return ok;
+}
+
+/* checks the signal fields of the header, returns false when the datarecords can not be checked */
+private boolean check_signal_header(byte[] hdr, ArrayList<Problem> problems)
+{
+  int i, p, dmin, dmax, annot_chns=0;
+
+  long size=0L;
+
+  double pmin, pmax;
+
+  String str, label;
+
+  boolean ok=true;
+
+  for(i=256; i<hdrsize; i++)
+  {
+    if((hdr[i] < 32) || (hdr[i] > 126))
+    {
+      problems.add(new Problem(i, -1L, -1, String.format("invalid character 0x%02X in the header of signal %d", hdr[i] & 0xff, signal_of(i))));
+
+      return false;
+    }
+  }
+
+  spr = new int[ns];
+
+  offset = new int[ns];
+
+  dig_min = new int[ns];
+
+  dig_max = new int[ns];
+
+  annot = new boolean[ns];
+
+  first_annot = -1;
+
+  dmin = (smp_sz == 2) ? -32768 : -8388608;
+
+  dmax = (smp_sz == 2) ? 32767 : 8388607;
+
+  for(i=0; i<ns; i++)
+  {
+    label = field(hdr, 256 + (ns * EDFLIB_HDR_LABEL) + (i * 16), 16);
+
+    annot[i] = plus && label.equals((smp_sz == 2) ? "EDF Annotations " : "BDF Annotations ");
+
+    if(annot[i])
+    {
+      annot_chns++;
+
+      if(first_annot < 0)  first_annot = i;
+    }
+
+    p = 256 + (ns * EDFLIB_HDR_SPR) + (i * 8);
+
+    str = field(hdr, p, 8).trim();
+
+    if((!str.matches("[0-9]+")) || (Integer.parseInt(str) < 1))
+    {
+      problems.add(new Problem(p, -1L, i, "invalid number of samples per datarecord: \"" + str + "\""));
+
+      ok = false;
+    }
+    else
+    {
+      spr[i] = Integer.parseInt(str);
+
+      offset[i] = (int)Math.min(size, Integer.MAX_VALUE);
+
+      size += (long)spr[i] * smp_sz;
+    }
+
+    p = 256 + (ns * EDFLIB_HDR_DIG_MIN) + (i * 8);
+
+    str = field(hdr, p, 8).trim();
+
+    if((!str.matches("-?[0-9]+")) || (Integer.parseInt(str) < dmin) || (Integer.parseInt(str) > dmax))
+    {
+      problems.add(new Problem(p, -1L, i, "invalid digital minimum: \"" + str + "\""));
+
+      ok = false;
+    }
+    else
+    {
+      dig_min[i] = Integer.parseInt(str);
+    }
+
+    p = 256 + (ns * EDFLIB_HDR_DIG_MAX) + (i * 8);
+
+    str = field(hdr, p, 8).trim();
+
+    if((!str.matches("-?[0-9]+")) || (Integer.parseInt(str) < dmin) || (Integer.parseInt(str) > dmax))
+    {
+      problems.add(new Problem(p, -1L, i, "invalid digital maximum: \"" + str + "\""));
+
+      ok = false;
+    }
+    else
+    {
+      dig_max[i] = Integer.parseInt(str);
+
+      if(dig_max[i] <= dig_min[i])
+      {
+        problems.add(new Problem(p, -1L, i, "digital maximum must be greater than the digital minimum"));
+      }
+    }
+
+    if(annot[i])
+    {
+      if((dig_min[i] != dmin) || (dig_max[i] != dmax))
+      {
+        problems.add(new Problem(256 + (ns * EDFLIB_HDR_DIG_MIN) + (i * 8), -1L, i,
+                                 String.format("digital minimum and maximum of an annotation signal must be %d and %d", dmin, dmax)));
+      }
+
+      continue;
+    }
+
+    pmin = parse_double(field(hdr, 256 + (ns * EDFLIB_HDR_PHYS_MIN) + (i * 8), 8));
+
+    pmax = parse_double(field(hdr, 256 + (ns * EDFLIB_HDR_PHYS_MAX) + (i * 8), 8));
+
+    if(Double.isNaN(pmin))
+    {
+      problems.add(new Problem(256 + (ns * EDFLIB_HDR_PHYS_MIN) + (i * 8), -1L, i, "invalid physical minimum"));
+    }
+    else if(Double.isNaN(pmax))
+      {
+        problems.add(new Problem(256 + (ns * EDFLIB_HDR_PHYS_MAX) + (i * 8), -1L, i, "invalid physical maximum"));
+      }
+      else if(pmin == pmax)
+        {
+          problems.add(new Problem(256 + (ns * EDFLIB_HDR_PHYS_MAX) + (i * 8), -1L, i, "physical maximum equals the physical minimum"));
+        }
+  }
+
+  if(plus && (annot_chns == 0))
+  {
+    problems.add(new Problem(256, -1L, -1, "EDF+ and BDF+ need at least one annotation signal"));
+
+    plus = false;
+  }
+
+  if(size > (Integer.MAX_VALUE / 2))
+  {
+    problems.add(new Problem(256 + (ns * EDFLIB_HDR_SPR), -1L, -1, "datarecord size is too big"));
+
+    ok = false;
+  }
+
+  recordsize = (int)size;
+
+  return ok;
+}
+
+/* checks n datarecords starting at first, called by the threads of the pool */
+private ChunkResult check_records(FileChannel channel, long first, int n) throws IOException
+{
+  int i, j, k, p, v;
+
+  long r, pos, onset;
+
+  byte[] buf;
+
+  ByteBuffer bb;
+
+  ChunkResult res = new ChunkResult();
+
+  res.out_of_range = new long[ns];
+
+  res.first_out_of_range = new Problem[ns];
+
+  buf = new byte[n * recordsize];
+
+  bb = ByteBuffer.wrap(buf);
+
+  pos = hdrsize + (first * recordsize);
+
+  if(io_limit != null)  io_limit.acquire();
+
+  try
+  {
+    while(bb.hasRemaining())
+    {
+      if(channel.read(bb, pos + bb.position()) < 0)
+      {
+        throw new EOFException("Unexpected end of file.");
+      }
+    }
+  }
+  finally
+  {
+    if(io_limit != null)  io_limit.release();
+  }
+
+  for(k=0; k<n; k++)
+  {
+    r = first + k;
+
+    for(i=0; i<ns; i++)
+    {
+      p = (k * recordsize) + offset[i];
+
+      if(annot[i])
+      {
+        onset = check_annotation_signal(buf, p, spr[i] * smp_sz, i == first_annot, pos + p, r, i, res);
+
+        if(i == first_annot)
+        {
+          check_timekeeping(res, r, onset, pos + p);
+        }
+
+        continue;
+      }
+
+      for(j=0; j<spr[i]; j++, p+=smp_sz)
+      {
+        if(smp_sz == 2)
+        {
+          v = (buf[p] & 0xff) | (buf[p + 1] << 8);
+        }
+        else
+        {
+          v = (buf[p] & 0xff) | ((buf[p + 1] & 0xff) << 8) | (buf[p + 2] << 16);
+        }
+
+        if((v < dig_min[i]) || (v > dig_max[i]))
+        {
+          if(res.out_of_range[i]++ == 0L)
+          {
+            res.first_out_of_range[i] = new Problem(pos + p, r, i, String.format("sample %d has value %d, outside the range %d - %d", j, v, dig_min[i], dig_max[i]));
+          }
+        }
+      }
+    }
+  }
+
+  return res;
+}
+
+/* checks the timekeeping TAL of datarecord r against the previous datarecord of the chunk */
+private void check_timekeeping(ChunkResult res, long r, long onset, long pos)
+{
+  if(onset == Long.MIN_VALUE)  return;
+
+  if(r == 0L)
+  {
+    if((onset < 0L) || (onset >= EDFreader.EDFLIB_TIME_DIMENSION))
+    {
+      res.problems.add(new Problem(pos, r, first_annot, "the timekeeping TAL of the first datarecord must be at least 0 and less than 1 second"));
+    }
+  }
+
+  if((res.last_rec >= 0L) && (res.last_rec == (r - 1L)))
+  {
+    check_continuity(res.problems, res.last_onset, onset, r, pos);
+  }
+
+  if(res.first_rec < 0L)
+  {
+    res.first_rec = r;
+
+    res.first_onset = onset;
+  }
+
+  res.last_rec = r;
+
+  res.last_onset = onset;
+}
+
+private void check_continuity(ArrayList<Problem> problems, long prev_onset, long onset, long r, long pos)
+{
+  if(discontinuous)
+  {
+    if((onset - prev_onset) < duration)
+    {
+      problems.add(new Problem(pos, r, first_annot, String.format("timekeeping TAL %s overlaps the previous datarecord (%s)",
+                                                                   onset_str(onset), onset_str(prev_onset))));
+    }
+  }
+  else if((onset - prev_onset) != duration)
+    {
+      problems.add(new Problem(pos, r, first_annot, String.format("timekeeping TAL is %s, expected %s (the file is continuous)",
+                                                                   onset_str(onset), onset_str(prev_onset + duration))));
+    }
+}
+
+/* merges the results of the chunks (in the order of the file) */
+private void merge_results(ArrayList<ChunkResult> results, ArrayList<Problem> problems)
+{
+  int s;
+
+  long[] out_of_range = new long[ns];
+
+  Problem[] first_out_of_range = new Problem[ns];
+
+  ChunkResult prev=null;
+
+  for(ChunkResult res : results)
+  {
+    problems.addAll(res.problems);
+
+/* continuity between the last datarecord of the previous chunk and the first one of this chunk */
+    if((prev != null) && (prev.last_rec >= 0L) && (res.first_rec == (prev.last_rec + 1L)))
+    {
+      check_continuity(problems, prev.last_onset, res.first_onset, res.first_rec, hdrsize + (res.first_rec * recordsize) + offset[first_annot]);
+    }
+
+    for(s=0; s<ns; s++)
+    {
+      if((res.out_of_range[s] > 0L) && (out_of_range[s] == 0L))
+      {
+        first_out_of_range[s] = res.first_out_of_range[s];
+      }
+
+      out_of_range[s] += res.out_of_range[s];
+    }
+
+    prev = res;
+  }
+
+  for(s=0; s<ns; s++)
+  {
+    if(out_of_range[s] > 0L)
+    {
+      problems.add(new Problem(first_out_of_range[s].offset, first_out_of_range[s].datarecord, s,
+                               String.format("%d samples out of range, the first one: %s", out_of_range[s], first_out_of_range[s].message)));
+    }
+  }
+}
+
+/* Checks the TAL's in an annotation signal (size bytes starting at p in buf, at position file_pos in the file). */
+/* Returns the onset of the timekeeping TAL when timekeeping is true, otherwise (or when invalid) Long.MIN_VALUE. */
+private long check_annotation_signal(byte[] buf, int p, int size, boolean timekeeping, long file_pos, long r, int s, ChunkResult res)
+{
+  int start, end, tal_start, onset_end, err_pos;
+
+  long onset=Long.MIN_VALUE;
+
+  boolean first_tal=true;
+
+  String err=null;
+
+  start = p;
+
+  end = p + size;
+
+  err_pos = p;
+
+  while((p < end) && (buf[p] != 0) && (err == null))
+  {
+    tal_start = p;
+
+/* onset */
+    if((buf[p] != '+') && (buf[p] != '-'))
+    {
+      err = "onset of a TAL must start with '+' or '-'";
+
+      err_pos = p;
+
+      break;
+    }
+
+    p = skip_number(buf, p + 1, end);
+
+    if(p < 0)
+    {
+      err = "invalid onset";
+
+      err_pos = -p - 1;
+
+      break;
+    }
+
+    onset_end = p;
+
+/* duration */
+    if((p < end) && (buf[p] == 21))
+    {
+      p = skip_number(buf, p + 1, end);
+
+      if(p < 0)
+      {
+        err = "invalid duration";
+
+        err_pos = -p - 1;
+
+        break;
+      }
+    }
+
+    if((p >= end) || (buf[p] != 20))
+    {
+      err = "onset (and duration) must be followed by 0x14";
+
+      err_pos = Math.min(p, end - 1);
+
+      break;
+    }
+
+    p++;
+
+    if(timekeeping && first_tal)
+    {
+      if((p >= end) || (buf[p] != 20))
+      {
+        err = "the first TAL must be a timekeeping TAL (an empty annotation)";
+
+        err_pos = tal_start;
+
+        break;
+      }
+
+      onset = EDFtal.parse_onset(buf, tal_start, onset_end);
+    }
+
+/* annotations, each one terminated by 0x14 */
+    while((p < end) && (buf[p] != 0))
+    {
+      for(; (p < end) && (buf[p] != 20) && (buf[p] != 0) && (buf[p] != 21); p++);
+
+      if((p >= end) || (buf[p] != 20))
+      {
+        err = "annotation must be terminated by 0x14";
+
+        err_pos = Math.min(p, end - 1);
+
+        break;
+      }
+
+      p++;
+    }
+
+    if(err != null)  break;
+
+    if(p >= end)
+    {
+      err = "TAL must be terminated by 0x00";
+
+      err_pos = end - 1;
+
+      break;
+    }
+
+    p++;
+
+    first_tal = false;
+  }
+
+  if((err == null) && timekeeping && first_tal)
+  {
+    err = "timekeeping TAL is missing";
+
+    err_pos = start;
+  }
+
+/* the unused bytes must be zero */
+  if(err == null)
+  {
+    for(; p<end; p++)
+    {
+      if(buf[p] != 0)
+      {
+        err = "unused bytes at the end of the annotation signal must be 0x00";
+
+        err_pos = p;
+
+        break;
+      }
+    }
+  }
+
+  if(err != null)
+  {
+    res.problems.add(new Problem(file_pos + (err_pos - start), r, s, err));
+
+    return timekeeping ? Long.MIN_VALUE : onset;
+  }
+
+  return onset;
+}
+
+/* Skips a number (digits with an optional fraction) starting at p, returns the position after the number. */
+/* When the number is invalid, returns -(position of the invalid character) - 1. */
+private static int skip_number(byte[] buf, int p, int end)
+{
+  int digits=0;
+
+  for(; (p < end) && (buf[p] >= '0') && (buf[p] <= '9'); p++)  digits++;
+
+  if(digits == 0)  return -p - 1;
+
+  if((p < end) && (buf[p] == '.'))
+  {
+    for(p++, digits=0; (p < end) && (buf[p] >= '0') && (buf[p] <= '9'); p++)  digits++;
+
+    if(digits == 0)  return -p - 1;
+  }
+
+  if((p < end) && (buf[p] != 20) && (buf[p] != 21))  return -p - 1;
+
+  return p;
+}
+
+private static String field(byte[] hdr, int offset, int len)
+{
+  return new String(hdr, offset, len, StandardCharsets.ISO_8859_1);
+}
+
+private static double parse_double(String str)
+{
+  str = str.trim();
+
+  if(!str.matches("[+-]?([0-9]+\\.?[0-9]*|\\.[0-9]+)([eE][+-]?[0-9]+)?"))  return Double.NaN;
+
+  return Double.parseDouble(str);
+}
+
+private static String onset_str(long onset)
+{
+  return new String(EDFtal.format_onset(onset, false), StandardCharsets.US_ASCII);
+}
+
+/* returns the signal number of a position in the signal fields of the header */
+private int signal_of(int pos)
+{
+  int i, p=256;
+
+  int[] sizes = {16, 80, 8, 8, 8, 8, 8, 80, 8, 32};
+
+  for(i=0; i<sizes.length; i++)
+  {
+    if(pos < (p + (ns * sizes[i])))
+    {
+      return (pos - p) / sizes[i];
+    }
+
+    p += ns * sizes[i];
+  }
+
+  return -1;
+}
+
+private static String base_field_name(int pos)
+{
+  if(pos < 88)   return "patient";
+  if(pos < 168)  return "recording";
+  if(pos < 176)  return "startdate";
+  if(pos < 184)  return "starttime";
+  if(pos < 192)  return "header size";
+  if(pos < 236)  return "reserved";
+  if(pos < 244)  return "number of datarecords";
+  if(pos < 252)  return "datarecord duration";
+  return "number of signals";
+}
+
+}
+
+
+
+
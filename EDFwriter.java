@@ -34,9 +34,11 @@
 
 import java.io.*;
 import java.nio.*;
+import java.nio.channels.*;
 import java.lang.*;
 import java.util.*;
 import java.time.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -148,6 +150,11 @@ public static final int EDFLIB_DIGMIN_IS_DIGMAX           = -23;
 public static final int EDFLIB_DIGMAX_LOWER_THAN_DIGMIN   = -24;
 public static final int EDFLIB_PHYSMIN_IS_PHYSMAX         = -25;
 public static final int EDFLIB_DATARECORD_SIZE_TOO_BIG    = -26;
+public static final int EDFLIB_APPEND_HEADER_MISMATCH     = -27;
+
+/* the following defines are used as the open mode of the constructor */
+public static final int EDFLIB_OPEN_CREATE                = 0;
+public static final int EDFLIB_OPEN_APPEND                = 1;
 
 
 private final int EDFLIB_VERSION = 101;
@@ -163,6 +170,15 @@ private final int EDFLIB_MAX_ANNOTATION_CHANNELS = 64;
 
 private final int EDFLIB_ANNOT_MEMBLOCKSZ = 1000;
 
+/* minimum number of samples that will be converted by one task when encoding in parallel */
+private final int EDFLIB_PARALLEL_ENCODE_MIN_SAMPLES = 4096;
+
+/* the file is preallocated in steps of this size when an expected duration has been set */
+private final long EDFLIB_PREALLOC_EXTENT = 64L * 1024L * 1024L;
+
+/* size of the block of zeros that is used to fill the preallocated space */
+private final int EDFLIB_PREALLOC_CHUNK = 1024 * 1024;
+
 /* signal parameters */
 private String[] param_label;
 private String[] param_transducer;
@@ -177,6 +193,7 @@ private String[] param_reserved;
 private double[] param_offset;
 private int[]    param_buf_offset;
 private double[] param_bitvalue;
+private double[] param_inv_bitvalue;
 
 private String path;
 private int    filetype;
@@ -218,6 +235,13 @@ private int    wrbufsz;
 private byte[] hdr;
 private RandomAccessFile file_out;
 private int status_ok;
+private int    append_mode;
+private long   append_start_record;
+private byte[] recbuf;
+private ForkJoinPool encode_pool;
+private long   expected_duration;
+private long   prealloc_end;
+private ByteBuffer prealloc_buf;
 
 
 /**
@@ -238,6 +262,38 @@ public ArrayList<EDFAnnotationStruct> annotationslist;
  * @throws IOException, EDFException
  */
 public EDFwriter(String p_path, int f_filetype, int number_of_signals) throws IOException, EDFException
+{
+  this(p_path, f_filetype, number_of_signals, EDFLIB_OPEN_CREATE);
+}
+
+/**
+ * Creates an EDFwriter object that writes to an EDF+/BDF+ file. <br>
+ *<br>
+ * When open_mode is EDFLIB_OPEN_CREATE, an already existing file with the same name will be silently overwritten.<br>
+ *<br>
+ * When open_mode is EDFLIB_OPEN_APPEND and the file already exists, the new datarecords will be appended<br>
+ * to the existing EDF+C/BDF+C file. This is useful when a recorder restarts in the middle of a recording.<br>
+ * The signals must be configured exactly as when the file was created (same number of signals and annotation signals,<br>
+ * samplefrequencies, labels, physical dimensions, physical and digital maximum and minimum, datarecord duration).<br>
+ * The existing header is validated against this configuration at the first sample write action,<br>
+ * which returns EDFLIB_APPEND_HEADER_MISMATCH when they differ.<br>
+ * Writing resumes after the last complete datarecord (an incomplete datarecord at the end of the file is discarded)<br>
+ * and the timekeeping continues where the file left off.<br>
+ * The header fields of the existing file (patient, recording, startdate and starttime) are kept,<br>
+ * the functions that set them have no effect. The onset of annotations is relative to the starttime of the existing file.<br>
+ * If the file does not exist or does not contain a complete datarecord yet, a new file will be written.<br>
+ *
+ * @param  p_path  The path to the file.
+ *
+ * @param  f_filetype  Must be EDFLIB_FILETYPE_EDFPLUS (0) or EDFLIB_FILETYPE_BDFPLUS (1).
+ *
+ * @param  number_of_signals  The number of signals you want to write into the file.
+ *
+ * @param  open_mode  EDFLIB_OPEN_CREATE (0) or EDFLIB_OPEN_APPEND (1).
+ *
+ * @throws IOException, EDFException
+ */
+public EDFwriter(String p_path, int f_filetype, int number_of_signals, int open_mode) throws IOException, EDFException
 {
   int i, err;
 
@@ -278,9 +334,29 @@ public EDFwriter(String p_path, int f_filetype, int number_of_signals) throws IO
     bdf = 1;
   }
 
+  if((open_mode != EDFLIB_OPEN_CREATE) && (open_mode != EDFLIB_OPEN_APPEND))
+  {
+    throw new EDFException(EDFLIB_INVALID_ARGUMENT, "Invalid open mode.\n");
+  }
+
   file_out = new RandomAccessFile(path, "rw");
 
-  file_out.setLength(0L);
+  if((open_mode == EDFLIB_OPEN_APPEND) && (file_out.length() > 0L))
+  {
+    err = read_append_header();
+    if(err != 0)
+    {
+      file_out.close();
+
+      throw new EDFException(EDFLIB_FILE_CONTAINS_FORMAT_ERRORS, "File is not a valid EDF+C or BDF+C file, can not append.\n");
+    }
+
+    append_mode = 1;
+  }
+  else
+  {
+    file_out.setLength(0L);
+  }
 
   annotationslist = new ArrayList<EDFAnnotationStruct>(0);
 
@@ -296,6 +372,7 @@ public EDFwriter(String p_path, int f_filetype, int number_of_signals) throws IO
   param_offset = new double[edfsignals];
   param_buf_offset = new int[edfsignals];
   param_bitvalue = new double[edfsignals];
+  param_inv_bitvalue = new double[edfsignals];
 
   status_ok = 1;
 }
@@ -855,6 +932,15 @@ public int close() throws IOException, EDFException
 {
   if(status_ok == 0)  return -1;
 
+  if((append_mode != 0) && (datarecords == 0))  /* nothing has been appended, leave the existing file untouched */
+  {
+    file_out.close();
+
+    status_ok = 0;
+
+    return 0;
+  }
+
   if(datarecords < 100000000L)
   {
     file_out.seek(236L);
@@ -868,6 +954,11 @@ public int close() throws IOException, EDFException
     throw new EDFException(EDFLIB_TOO_MANY_DATARECORDS, "Too many datarecords written.\n");
   }
 
+  if(prealloc_end != 0L)  /* remove the preallocated space that has not been used */
+  {
+    file_out.setLength(((edfsignals + nr_annot_chns + 1L) * 256L) + (datarecords * recordsize));
+  }
+
   write_annotations();
 
   file_out.close();
@@ -915,6 +1006,10 @@ private int write_annotations() throws IOException, UnsupportedEncodingException
     }
   }
 
+  offset += append_start_record * recordsize;  /* in append mode the annotations go into the appended datarecords */
+
+  datrecs = append_start_record;
+
   for(k=0,j=0; k<annots_in_file; k++)
   {
     annot2 = annotationslist.get(k);
@@ -1441,6 +1536,149 @@ public int blockWriteDigitalShortSamples(short[] buf) throws IOException
   return 0;
 }
 
+/**
+ * Writes "raw" digital samples of all signals from a ByteBuffer into the file. <br>
+ * The remaining bytes of buf must start with n samples of signal 0, n samples of signal 1, n samples of signal 2, etc.<br>
+ * where n is the samplefrequency of that signal.<br>
+ * A sample consists of two (EDF) or three (BDF) consecutive bytes (little endian, two's complement).<br>
+ * The bytes are handed to the FileChannel of the file without copying them.<br>
+ * The number of samples written is equal to the sum of the samplefrequencies of all signals.<br>
+ * The number of remaining bytes in buf should be equal to or bigger than the sum of the samplefrequencies<br>
+ * of all signals * 2 (EDF) or * 3 (BDF).<br>
+ * On success, the position of buf is advanced by the number of bytes written.<br>
+ * When clip is true, samples that exceed digital maximum or digital minimum are clipped in place,<br>
+ * i.e. the content of buf will be modified. In that case buf must not be read-only.<br>
+ * When clip is false, the samples will be written to the file without any conversion.<br>
+ *
+ * @param buf
+ *
+ * @param clip
+ *
+ * @throws IOException
+ *
+ * @return 0 on success, otherwise non-zero
+ */
+public int blockWriteDigitalByteBuffer(ByteBuffer buf, boolean clip) throws IOException
+{
+  int  i, j,
+       error,
+       sf,
+       smp_sz,
+       digmax,
+       digmin,
+       value,
+       clipped,
+       pos,
+       total_samples=0;
+
+  ByteBuffer src;
+
+  if(status_ok == 0)  return -1;
+
+  if(signal_write_sequence_pos != 0)  return -1;
+
+  if(buf == null)  return -1;
+
+  if(clip && buf.isReadOnly())  return -1;
+
+  if(edf != 0)
+  {
+    smp_sz = 2;
+  }
+  else
+  {
+    smp_sz = 3;
+  }
+
+  for(j=0; j<edfsignals; j++)
+  {
+    total_samples += param_smp_per_record[j];
+  }
+
+  if(buf.remaining() < (total_samples * smp_sz))  return -1;
+
+  if(datarecords == 0)
+  {
+    error = write_edf_header();
+
+    if(error != 0)
+    {
+      return error;
+    }
+  }
+
+  if(clip)
+  {
+    pos = buf.position();
+
+    for(j=0; j<edfsignals; j++)
+    {
+      sf = param_smp_per_record[j];
+
+      digmax = param_dig_max[j];
+
+      digmin = param_dig_min[j];
+
+      for(i=0; i<sf; i++, pos+=smp_sz)
+      {
+        if(smp_sz == 2)
+        {
+          value = (buf.get(pos) & 0xff) | (buf.get(pos + 1) << 8);
+        }
+        else
+        {
+          value = (buf.get(pos) & 0xff) | ((buf.get(pos + 1) & 0xff) << 8) | (buf.get(pos + 2) << 16);
+        }
+
+        clipped = value;
+
+        if(clipped > digmax)
+        {
+          clipped = digmax;
+        }
+
+        if(clipped < digmin)
+        {
+          clipped = digmin;
+        }
+
+        if(clipped == value)  continue;
+
+        buf.put(pos, (byte)(clipped & 0xff));
+
+        buf.put(pos + 1, (byte)((clipped >> 8) & 0xff));
+
+        if(smp_sz == 3)
+        {
+          buf.put(pos + 2, (byte)((clipped >> 16) & 0xff));
+        }
+      }
+    }
+  }
+
+  pos = buf.position();
+
+  src = buf.duplicate();
+
+  src.limit(pos + (total_samples * smp_sz));
+
+  while(src.hasRemaining())
+  {
+    file_out.getChannel().write(src);
+  }
+
+  buf.position(pos + (total_samples * smp_sz));
+
+  if(write_tal(file_out) != 0)
+  {
+    return -1;
+  }
+
+  datarecords++;
+
+  return 0;
+}
+
 /**
  * Writes n "raw" digital samples from buf belonging to one signal. <br>
  * where n is the samplefrequency of that signal.<br>
@@ -1580,6 +1818,7 @@ public int writeDigitalShortSamples(short[] buf) throws IOException
  * where n is the samplefrequency of that signal.<br>
  * The physical samples will be converted to digital samples using the<br>
  * values of physical maximum, physical minimum, digital maximum and digital minimum.<br>
+ * The digital samples are rounded to the nearest integer and clipped to digital minimum and digital maximum.<br>
  * The number of samples written is equal to the samplefrequency of the signal<br>
  * (actually, it's the value that is set with setSampleFrequency()).<br>
  * Size of buf should be equal to or bigger than the samplefrequency<br>
@@ -1596,13 +1835,10 @@ public int writeDigitalShortSamples(short[] buf) throws IOException
  */
 public int writePhysicalSamples(double[] buf) throws IOException
 {
-  int  i,
-       error,
+  int  error,
        sf,
-       digmax,
-       digmin,
        edfsignal,
-       value;
+       smp_sz;
 
   if(status_ok == 0)  return -1;
 
@@ -1623,74 +1859,27 @@ public int writePhysicalSamples(double[] buf) throws IOException
 
   sf = param_smp_per_record[edfsignal];
 
-  digmax = param_dig_max[edfsignal];
-
-  digmin = param_dig_min[edfsignal];
-
   if(sf > buf.length)  return -1;
 
   if(edf != 0)
   {
-    if(wrbufsz < (sf * 2))
-    {
-      wrbuf = new byte[sf * 2];
-
-      wrbufsz = sf * 2;
-    }
-
-    for(i=0; i<sf; i++)
-    {
-      value = (int)((buf[i] / param_bitvalue[edfsignal]) - param_offset[edfsignal]);
-
-      if(value > digmax)
-      {
-        value = digmax;
-      }
-
-      if(value < digmin)
-      {
-        value = digmin;
-      }
-
-      wrbuf[i * 2] = (byte)(value & 0xff);
-
-      wrbuf[i * 2 + 1] = (byte)((value >> 8) & 0xff);
-    }
-
-    file_out.write(wrbuf, 0, sf * 2);
+    smp_sz = 2;
   }
   else
   {
-    if(wrbufsz < (sf * 3))
-    {
-      wrbuf = new byte[sf * 3];
-
-      wrbufsz = sf * 3;
-    }
-
-    for(i=0; i<sf; i++)
-    {
-      value = (int)((buf[i] / param_bitvalue[edfsignal]) - param_offset[edfsignal]);
-
-      if(value > digmax)
-      {
-        value = digmax;
-      }
-
-      if(value < digmin)
-      {
-        value = digmin;
-      }
+    smp_sz = 3;
+  }
 
-      wrbuf[i * 3] = (byte)(value & 0xff);
+  if(wrbufsz < (sf * smp_sz))
+  {
+    wrbuf = new byte[sf * smp_sz];
 
-      wrbuf[i * 3 + 1] = (byte)((value >> 8) & 0xff);
+    wrbufsz = sf * smp_sz;
+  }
 
-      wrbuf[i * 3 + 2] = (byte)((value >> 16) & 0xff);
-    }
+  encode_physical_samples(buf, 0, edfsignal, wrbuf, 0);
 
-    file_out.write(wrbuf, 0, sf * 3);
-  }
+  file_out.write(wrbuf, 0, sf * smp_sz);
 
   signal_write_sequence_pos++;
 
@@ -1715,6 +1904,7 @@ public int writePhysicalSamples(double[] buf) throws IOException
  * where n is the samplefrequency of that signal.<br>
  * The physical samples will be converted to digital samples using the<br>
  * values of physical maximum, physical minimum, digital maximum and digital minimum.<br>
+ * The digital samples are rounded to the nearest integer and clipped to digital minimum and digital maximum.<br>
  * The number of samples written is equal to the sum of the samplefrequencies of all signals.<br>
  * Size of buf should be equal to or bigger than the sum of the samplefrequencies of all signals.<br>
  *
@@ -1726,14 +1916,9 @@ public int writePhysicalSamples(double[] buf) throws IOException
  */
 public int blockWritePhysicalSamples(double[] buf) throws IOException
 {
-  int  i, j,
+  int  edfsignal,
        error,
-       sf,
-       digmax,
-       digmin,
-       edfsignal,
-       value,
-       buf_offset=0;
+       total_samples=0;
 
   if(status_ok == 0)  return -1;
 
@@ -1751,88 +1936,192 @@ public int blockWritePhysicalSamples(double[] buf) throws IOException
 
   for(edfsignal=0; edfsignal<edfsignals; edfsignal++)
   {
-    sf = param_smp_per_record[edfsignal];
-
-    digmax = param_dig_max[edfsignal];
-
-    digmin = param_dig_min[edfsignal];
+    total_samples += param_smp_per_record[edfsignal];
+  }
 
-    if(sf > buf.length)  return -1;
+  if(total_samples > buf.length)  return -1;
 
-    if(edf != 0)
+  if((encode_pool != null) && (edfsignals > 1) && (total_samples >= (EDFLIB_PARALLEL_ENCODE_MIN_SAMPLES * 2)))
+  {
+    encode_pool.invoke(new EncodeTask(buf, 0, edfsignals));
+  }
+  else
+  {
+    for(edfsignal=0; edfsignal<edfsignals; edfsignal++)
     {
-      if(wrbufsz < (sf * 2))
-      {
-        wrbuf = new byte[sf * 2];
+      encode_physical_samples(buf, param_buf_offset[edfsignal] / ((edf != 0) ? 2 : 3), edfsignal, recbuf, param_buf_offset[edfsignal]);
+    }
+  }
 
-        wrbufsz = sf * 2;
-      }
+  file_out.write(recbuf, 0, recordsize - total_annot_bytes);
 
-      for(i=0; i<sf; i++)
-      {
-        value = (int)((buf[i + buf_offset] / param_bitvalue[edfsignal]) - param_offset[edfsignal]);
+  if(write_tal(file_out) != 0)
+  {
+    return -1;
+  }
 
-        if(value > digmax)
-        {
-          value = digmax;
-        }
+  datarecords++;
 
-        if(value < digmin)
-        {
-          value = digmin;
-        }
+  return 0;
+}
 
-        wrbuf[i * 2] = (byte)(value & 0xff);
+/**
+ * Sets the ForkJoinPool that is used by blockWritePhysicalSamples() to convert the physical samples <br>
+ * of the signals to digital samples in parallel.<br>
+ * Every signal is converted into its own part of the datarecord, so the result is identical to the serial conversion.<br>
+ * This is useful for recordings with many signals and/or high samplerates. Small datarecords are always converted serially.<br>
+ * This function is optional, the default is null (serial conversion). It can be called at any time.<br>
+ *
+ * @param pool the pool to use, e.g. ForkJoinPool.commonPool(), or null for serial conversion
+ *
+ * @return 0 on success, otherwise -1
+ */
+public int setEncodingPool(ForkJoinPool pool)
+{
+  if(status_ok == 0)  return -1;
 
-        wrbuf[i * 2 + 1] = (byte)((value >> 8) & 0xff);
-      }
+  encode_pool = pool;
 
-      file_out.write(wrbuf, 0, sf * 2);
-    }
-    else
-    {
-      if(wrbufsz < (sf * 3))
-      {
-        wrbuf = new byte[sf * 3];
+  return 0;
+}
 
-        wrbufsz = sf * 3;
-      }
+/**
+ * Sets the expected duration of the recording. <br>
+ * This function is optional and, if used, must be called before the first sample write action.<br>
+ * When set, the file will be preallocated in large extents (up to the expected size) while writing<br>
+ * instead of growing one datarecord at a time. This keeps the file contiguous on disk for long recordings.<br>
+ * When the recording takes longer than expected, the file keeps growing in extents.<br>
+ * The unused space will be removed when the file is closed.<br>
+ * Note that, when the program crashes, the file contains zeros after the last datarecord.<br>
+ * Such a file can be resumed with EDFLIB_OPEN_APPEND, the zeros will be discarded.<br>
+ *
+ * @param seconds the expected duration in seconds, range: 1 - 8640000 (100 days)
+ *
+ * @return 0 on success, otherwise -1
+ */
+public int setExpectedDuration(int seconds)
+{
+  if(status_ok == 0)  return -1;
 
-      for(i=0; i<sf; i++)
-      {
-        value = (int)((buf[i + buf_offset] / param_bitvalue[edfsignal]) - param_offset[edfsignal]);
+  if((seconds < 1) || (seconds > 8640000) || (datarecords != 0))
+  {
+    return -1;
+  }
 
-        if(value > digmax)
-        {
-          value = digmax;
-        }
+  expected_duration = seconds * EDFLIB_TIME_DIMENSION;
 
-        if(value < digmin)
-        {
-          value = digmin;
-        }
+  return 0;
+}
 
-        wrbuf[i * 3] = (byte)(value & 0xff);
+/* converts the physical samples of one signal, starting at buf[buf_offset], */
+/* to digital samples and stores them in dest, starting at dest[dest_offset] */
+private void encode_physical_samples(double[] buf, int buf_offset, int edfsignal, byte[] dest, int dest_offset)
+{
+  quantize_physical_samples(buf, buf_offset, param_smp_per_record[edfsignal],
+                            param_inv_bitvalue[edfsignal], param_offset[edfsignal],
+                            param_dig_min[edfsignal], param_dig_max[edfsignal],
+                            (edf != 0) ? 2 : 3, dest, dest_offset);
+}
 
-        wrbuf[i * 3 + 1] = (byte)((value >> 8) & 0xff);
+/* Converts n physical samples to digital samples: value = round((buf[i] * inv_bitvalue) - offset), */
+/* clipped to digmin and digmax, and stores them as 16-bit (smp_sz is 2) or 24-bit (smp_sz is 3) */
+/* little endian samples. inv_bitvalue is the reciprocal of the bitvalue so there is no division */
+/* per sample. The value is clipped while it is still a double, this way Math.rint() (round half */
+/* to even) never has to deal with values that do not fit in an int. */
+static void quantize_physical_samples(double[] buf, int buf_offset, int n,
+                                      double inv_bitvalue, double offset,
+                                      int digmin, int digmax,
+                                      int smp_sz, byte[] dest, int dest_offset)
+{
+  int i, j, value;
 
-        wrbuf[i * 3 + 2] = (byte)((value >> 16) & 0xff);
-      }
+  double x,
+         dmin,
+         dmax;
 
-      file_out.write(wrbuf, 0, sf * 3);
+  dmin = digmin;
+
+  dmax = digmax;
+
+  if(smp_sz == 2)
+  {
+    for(i=0, j=dest_offset; i<n; i++, j+=2)
+    {
+      x = (buf[buf_offset + i] * inv_bitvalue) - offset;
+
+      if(x > dmax)  x = dmax;
+
+      if(x < dmin)  x = dmin;
+
+      value = (int)Math.rint(x);
+
+      dest[j] = (byte)value;
+      dest[j + 1] = (byte)(value >> 8);
     }
+  }
+  else
+  {
+    for(i=0, j=dest_offset; i<n; i++, j+=3)
+    {
+      x = (buf[buf_offset + i] * inv_bitvalue) - offset;
 
-    buf_offset += sf;
+      if(x > dmax)  x = dmax;
+
+      if(x < dmin)  x = dmin;
+
+      value = (int)Math.rint(x);
+
+      dest[j] = (byte)value;
+      dest[j + 1] = (byte)(value >> 8);
+      dest[j + 2] = (byte)(value >> 16);
+    }
   }
+}
 
-  if(write_tal(file_out) != 0)
+/* converts the signals first_signal up to (not including) last_signal into recbuf, */
+/* splits itself until a task has less than EDFLIB_PARALLEL_ENCODE_MIN_SAMPLES samples or only one signal */
+private class EncodeTask extends RecursiveAction
+{
+  private static final long serialVersionUID = 1L;
+
+  private final double[] buf;
+
+  private final int first_signal;
+
+  private final int last_signal;
+
+  EncodeTask(double[] p_buf, int p_first_signal, int p_last_signal)
   {
-    return -1;
+    buf = p_buf;
+
+    first_signal = p_first_signal;
+
+    last_signal = p_last_signal;
   }
 
-  datarecords++;
+  protected void compute()
+  {
+    int i, mid, samples=0;
 
-  return 0;
+    for(i=first_signal; i<last_signal; i++)
+    {
+      samples += param_smp_per_record[i];
+    }
+
+    if(((last_signal - first_signal) < 2) || (samples < EDFLIB_PARALLEL_ENCODE_MIN_SAMPLES))
+    {
+      for(i=first_signal; i<last_signal; i++)
+      {
+        encode_physical_samples(buf, param_buf_offset[i] / ((edf != 0) ? 2 : 3), i, recbuf, param_buf_offset[i]);
+      }
+
+      return;
+    }
+
+    mid = (first_signal + last_signal) / 2;
+
+    invokeAll(new EncodeTask(buf, first_signal, mid), new EncodeTask(buf, mid, last_signal));
+  }
 }
 
 /**
@@ -2013,10 +2302,31 @@ private int write_edf_header() throws IOException, UnsupportedEncodingException
        /* using the function edf_set_datarecord_duration() */
   }
 
-  for(i=0; i<edfsignals; i++)
+  for(i=0, j=0; i<edfsignals; i++)
   {
     param_bitvalue[i] = (param_phys_max[i] - param_phys_min[i]) / (param_dig_max[i] - param_dig_min[i]);
     param_offset[i] = param_phys_max[i] / param_bitvalue[i] - param_dig_max[i];
+    param_inv_bitvalue[i] = 1.0 / param_bitvalue[i];
+    param_buf_offset[i] = j;
+    if(edf != 0)
+    {
+      j += param_smp_per_record[i] * 2;
+    }
+    else
+    {
+      j += param_smp_per_record[i] * 3;
+    }
+  }
+
+  recbuf = new byte[recordsize - total_annot_bytes];
+
+  if(append_mode != 0)
+  {
+    i = resume_append();
+    if((i != 0) || (append_mode != 0))  /* append_mode is cleared when there was nothing to append to */
+    {
+      return i;
+    }
   }
 
   file_out.seek(0L);
@@ -3034,6 +3344,317 @@ private int fprint_ll_number_nonlocalized(RandomAccessFile file, long q, int min
   return j;
 }
 
+/* reads and checks the base part of the header of an existing file that is opened for appending */
+private int read_append_header() throws IOException
+{
+  int i, ns, hdrsize;
+
+  byte[] str = new byte[16];
+
+  if(file_out.length() < 512L)
+  {
+    return -1;
+  }
+
+  hdr = new byte[256];
+
+  file_out.seek(0L);
+
+  file_out.readFully(hdr);
+
+  if(edf != 0)
+  {
+    if(hdr[0] != '0')  return -1;
+
+    for(i=1; i<8; i++)
+    {
+      if(hdr[i] != ' ')  return -1;
+    }
+
+    if((hdr[192] != 'E') || (hdr[193] != 'D') || (hdr[194] != 'F') || (hdr[195] != '+') || (hdr[196] != 'C'))  return -1;
+  }
+  else
+  {
+    if((hdr[0] != -1) || (hdr[1] != 'B') || (hdr[2] != 'I') || (hdr[3] != 'O') ||
+       (hdr[4] != 'S') || (hdr[5] != 'E') || (hdr[6] != 'M') || (hdr[7] != 'I'))  return -1;
+
+    if((hdr[192] != 'B') || (hdr[193] != 'D') || (hdr[194] != 'F') || (hdr[195] != '+') || (hdr[196] != 'C'))  return -1;
+  }
+
+  ns = 0;
+
+  for(i=252; i<256; i++)
+  {
+    if(hdr[i] == ' ')  break;
+
+    if((hdr[i] < '0') || (hdr[i] > '9'))  return -1;
+
+    ns = (ns * 10) + (hdr[i] - '0');
+  }
+
+  if((ns <= edfsignals) || (ns > (edfsignals + EDFLIB_MAX_ANNOTATION_CHANNELS)))  return -1;
+
+  hdrsize = (ns + 1) * 256;
+
+  i = snprint_ll_number_nonlocalized(str, 0, hdrsize, 0, 0);
+
+  if(cmp_hdr_field(184, str, 0, i, 8) != 0)  return -1;
+
+  if(file_out.length() < hdrsize)  return -1;
+
+  hdr = new byte[hdrsize];
+
+  file_out.seek(0L);
+
+  file_out.readFully(hdr);
+
+  return 0;
+}
+
+/* returns true if every byte of the TAL of len bytes, starting at buf[offset], is zero */
+private static boolean tal_is_zero(byte[] buf, int offset, int len)
+{
+  int i;
+
+  for(i=0; i<len; i++)
+  {
+    if(buf[offset + i] != 0)  return false;
+  }
+
+  return true;
+}
+
+/* checks the header of the existing file against the signal parameters, */
+/* discards an incomplete datarecord at the end of the file and positions the file for appending */
+private int resume_append() throws IOException, UnsupportedEncodingException
+{
+  int i, p, n, ns, hdrsize, len;
+
+  long records, onset, lo, first, last, rec;
+
+  byte[] str = new byte[128],
+         buf;
+
+  byte[] tal = new byte[EDFLIB_ANNOTATION_BYTES],
+         annot_label;
+
+  ns = edfsignals + nr_annot_chns;
+
+  hdrsize = (ns + 1) * 256;
+
+  if(hdr.length != hdrsize)
+  {
+    return EDFLIB_APPEND_HEADER_MISMATCH;
+  }
+
+  records = (file_out.length() - hdrsize) / recordsize;
+
+  if(records < 1L)  /* there is no complete datarecord in the file, start a new file */
+  {
+    append_mode = 0;
+
+    file_out.setLength(0L);
+
+    return 0;
+  }
+
+  if(long_data_record_duration == EDFLIB_TIME_DIMENSION)
+  {
+    str[0] = '1';
+    p = 1;
+  }
+  else
+  {
+    p = sprint_number_nonlocalized(str, ((double)long_data_record_duration) / EDFLIB_TIME_DIMENSION);
+  }
+  if(cmp_hdr_field(244, str, 0, p, 8) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+  for(i=0; i<edfsignals; i++)
+  {
+    len = 0;
+    if(param_label[i] != null)
+    {
+      len = param_label[i].length();
+      if(len > 16)  len = 16;
+      strcpy(str, param_label[i].getBytes("ISO-8859-1"));
+      latin1_to_ascii(str, len);
+    }
+    if(cmp_hdr_field(256 + (i * 16), str, 0, len, 16) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    len = 0;
+    if(param_physdimension[i] != null)
+    {
+      len = param_physdimension[i].length();
+      if(len > 8)  len = 8;
+      strcpy(str, param_physdimension[i].getBytes("ISO-8859-1"));
+      latin1_to_ascii(str, len);
+    }
+    if(cmp_hdr_field(256 + (ns * 96) + (i * 8), str, 0, len, 8) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    p = sprint_number_nonlocalized(str, param_phys_min[i]);
+    if(cmp_hdr_field(256 + (ns * 104) + (i * 8), str, 0, p, 8) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    p = sprint_number_nonlocalized(str, param_phys_max[i]);
+    if(cmp_hdr_field(256 + (ns * 112) + (i * 8), str, 0, p, 8) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    p = snprint_ll_number_nonlocalized(str, 0, param_dig_min[i], 0, 0);
+    if(cmp_hdr_field(256 + (ns * 120) + (i * 8), str, 0, p, 8) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    p = snprint_ll_number_nonlocalized(str, 0, param_dig_max[i], 0, 0);
+    if(cmp_hdr_field(256 + (ns * 128) + (i * 8), str, 0, p, 8) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    p = snprint_ll_number_nonlocalized(str, 0, param_smp_per_record[i], 0, 0);
+    if(cmp_hdr_field(256 + (ns * 216) + (i * 8), str, 0, p, 8) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+  }
+
+  if(edf != 0)
+  {
+    annot_label = "EDF Annotations ".getBytes("US-ASCII");
+  }
+  else
+  {
+    annot_label = "BDF Annotations ".getBytes("US-ASCII");
+  }
+
+  for(; i<ns; i++)
+  {
+    if(cmp_hdr_field(256 + (i * 16), annot_label, 0, 16, 16) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    p = snprint_ll_number_nonlocalized(str, 0, (edf != 0) ? (EDFLIB_ANNOTATION_BYTES / 2) : (EDFLIB_ANNOTATION_BYTES / 3), 0, 0);
+    if(cmp_hdr_field(256 + (ns * 216) + (i * 8), str, 0, p, 8) != 0)  return EDFLIB_APPEND_HEADER_MISMATCH;
+  }
+
+/* the subsecond starttime is stored in the timekeeping TAL of the first datarecord */
+  file_out.seek(hdrsize + recordsize - total_annot_bytes);
+  file_out.readFully(tal);
+  onset = parse_tal_onset(tal);
+  if((onset < 0L) || (onset >= EDFLIB_TIME_DIMENSION))  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+  starttime_offset = onset;
+
+/* the last complete datarecord must continue the timekeeping of the first one, */
+/* a file that was preallocated (see setExpectedDuration()) can end with zeros, */
+/* the timekeeping TAL is written last, so a datarecord with a TAL of only zeros has not been written completely */
+  file_out.seek(hdrsize + (records * recordsize) - total_annot_bytes);
+  file_out.readFully(tal);
+  if(parse_tal_onset(tal) != (((records - 1L) * long_data_record_duration) + starttime_offset))
+  {
+    if(!tal_is_zero(tal, 0, tal.length))  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+/* the zeros are never more than one extent (see preallocate()), so only the datarecords */
+/* of the last extent are read, in one sequential pass, to find the last datarecord that has a TAL, */
+/* only the preallocated zeros may be discarded: every datarecord after it must have a TAL of only zeros */
+    first = Math.max(1L, records - (EDFLIB_PREALLOC_EXTENT / recordsize) - 2L);
+
+    n = (int)Math.max(1L, Math.min(records - first + 1L, EDFLIB_PREALLOC_CHUNK / recordsize));
+
+    buf = new byte[n * recordsize];
+
+    last = first - 1L;
+
+    file_out.seek(hdrsize + ((first - 1L) * recordsize));
+
+    for(rec=first; rec<=records; )
+    {
+      n = (int)Math.min(buf.length / recordsize, records - rec + 1L);
+
+      file_out.readFully(buf, 0, n * recordsize);
+
+      for(i=1; i<=n; i++, rec++)
+      {
+        if(!tal_is_zero(buf, (i * recordsize) - total_annot_bytes, EDFLIB_ANNOTATION_BYTES))
+        {
+          if(last != (rec - 1L))  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+          last = rec;
+        }
+      }
+    }
+
+    if(last < first)  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    lo = last;
+
+    file_out.seek(hdrsize + (lo * recordsize) - total_annot_bytes);
+    file_out.readFully(tal);
+    if(parse_tal_onset(tal) != (((lo - 1L) * long_data_record_duration) + starttime_offset))  return EDFLIB_APPEND_HEADER_MISMATCH;
+
+    records = lo;
+  }
+
+  file_out.setLength(hdrsize + (records * recordsize));
+
+  file_out.seek(236L);
+  file_out.writeBytes(String.format("-1      "));
+
+  file_out.seek(hdrsize + (records * recordsize));
+
+  datarecords = records;
+
+  append_start_record = records;
+
+  return 0;
+}
+
+/* compares len bytes of str (starting at offset), filled up with spaces to fieldlen, with the header field at hdr_offset */
+private int cmp_hdr_field(int hdr_offset, byte[] str, int offset, int len, int fieldlen)
+{
+  int i;
+
+  if(len > fieldlen)  len = fieldlen;
+
+  for(i=0; i<len; i++)
+  {
+    if(hdr[hdr_offset + i] != str[offset + i])  return -1;
+  }
+
+  for(; i<fieldlen; i++)
+  {
+    if(hdr[hdr_offset + i] != ' ')  return -1;
+  }
+
+  return 0;
+}
+
+/* returns the onset of the timekeeping TAL at the start of str in units of 100 nanoSeconds, or -1 when invalid */
+private long parse_tal_onset(byte[] str)
+{
+  int i, n=0;
+
+  long onset=0L,
+       frac=0L,
+       mult=EDFLIB_TIME_DIMENSION / 10L;
+
+  if(str[0] != '+')  return -1L;
+
+  for(i=1; i<str.length; i++)
+  {
+    if((str[i] < '0') || (str[i] > '9'))  break;
+
+    onset = (onset * 10L) + (str[i] - '0');
+
+    n++;
+  }
+
+  if((n == 0) || (n > 11))  return -1L;
+
+  if((i < str.length) && (str[i] == '.'))
+  {
+    for(i++; i<str.length; i++)
+    {
+      if((str[i] < '0') || (str[i] > '9'))  break;
+
+      frac += (str[i] - '0') * mult;
+
+      mult /= 10L;
+    }
+  }
+
+  if(((i + 1) >= str.length) || (str[i] != 20) || (str[i + 1] != 20))  return -1L;
+
+  return (onset * EDFLIB_TIME_DIMENSION) + frac;
+}
+
 private int write_tal(RandomAccessFile file) throws IOException
 {
   int p;
@@ -3054,9 +3675,67 @@ private int write_tal(RandomAccessFile file) throws IOException
   }
   file.write(str);
 
+  if(expected_duration != 0L)
+  {
+    preallocate(file);
+  }
+
   return 0;
 }
 
+/* makes sure that there is preallocated space for at least the next datarecord, */
+/* the space is reserved by writing zeros because RandomAccessFile.setLength() */
+/* creates a sparse file on most filesystems */
+private void preallocate(RandomAccessFile file) throws IOException
+{
+  long pos, end, expected_sz;
+
+  FileChannel channel;
+
+  pos = file.getFilePointer();
+
+  if((pos + recordsize) <= prealloc_end)  return;
+
+  expected_sz = ((edfsignals + nr_annot_chns + 1L) * 256L) +
+                (((expected_duration + long_data_record_duration - 1L) / long_data_record_duration) * recordsize);
+
+  if(prealloc_end < pos)
+  {
+    prealloc_end = pos;
+  }
+
+  end = prealloc_end + EDFLIB_PREALLOC_EXTENT;
+
+  if((end > expected_sz) && (prealloc_end < expected_sz))
+  {
+    end = expected_sz;
+  }
+
+  if(end < (pos + recordsize))
+  {
+    end = pos + recordsize;
+  }
+
+  if(prealloc_buf == null)
+  {
+    prealloc_buf = ByteBuffer.allocateDirect(EDFLIB_PREALLOC_CHUNK);
+  }
+
+  channel = file.getChannel();
+
+  while(prealloc_end < end)
+  {
+    prealloc_buf.clear();
+
+    if((end - prealloc_end) < EDFLIB_PREALLOC_CHUNK)
+    {
+      prealloc_buf.limit((int)(end - prealloc_end));
+    }
+
+    prealloc_end += channel.write(prealloc_buf, prealloc_end);
+  }
+}
+
 private int strlen(byte[] str)
 {
   int i;
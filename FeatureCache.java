@@ -0,0 +1,310 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 分期特征的磁盘缓存
+ * 每个(EDF文件, 特征名称, 参数)保存为缓存目录中的一个文件，文件头记录EDF文件的大小、修改时间和文件头的SHA-256，
+ * EDF文件改变后缓存自动失效并重新计算
+ * 特征是按行(分期)保存的double矩阵，缓存文件以内存映射方式只读打开，读取任意范围的分期不需要把整个文件读入内存
+ *
+ * 缓存文件格式(小端序):
+ *   8字节   标识 "EDFFEAT1"
+ *   8字节   EDF文件大小
+ *   8字节   EDF文件修改时间(毫秒)
+ *   32字节  EDF文件头的SHA-256
+ *   4字节   行数
+ *   4字节   列数
+ *   4字节   键(特征名称和参数，UTF-8)的字节数，然后是键，补零到8字节的整数倍
+ *   行数 * 列数 个double
+ */
+class FeatureCache {
+    private static final byte[] MAGIC = "EDFFEAT1".getBytes(StandardCharsets.US_ASCII);
+    private static final int FIXED_HEADER_SIZE = 8 + 8 + 8 + 32 + 4 + 4 + 4;
+    private static final int BASE_HEADER_SIZE = 256;                    // EDF文件头中固定部分的大小
+    private static final int SIGNAL_HEADER_SIZE = 256;                  // EDF文件头中每个信号的大小
+
+    private final File directory;
+
+    /**
+     * 计算特征，缓存中没有有效的结果时调用
+     */
+    interface Computer {
+        /**
+         * 返回按行排列的特征矩阵(行数 * columns个元素)
+         */
+        double[] compute() throws IOException, EDFException;
+    }
+
+    /**
+     * 从缓存文件映射的特征矩阵，只读
+     */
+    static class Features {
+        private final int rows;
+        private final int columns;
+        private final DoubleBuffer data;
+
+        private Features(int rows, int columns, DoubleBuffer data) {
+            this.rows = rows;
+            this.columns = columns;
+            this.data = data;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+
+        public double get(int row, int column) {
+            if (row < 0 || row >= rows || column < 0 || column >= columns) {
+                throw new IndexOutOfBoundsException("行或列超出范围: " + row + ", " + column);
+            }
+            return data.get(row * columns + column);
+        }
+
+        /**
+         * 读取[fromRow, toRow)行，按行排列写入dst，返回写入的元素数
+         */
+        public int getRows(int fromRow, int toRow, double[] dst) {
+            fromRow = Math.max(0, fromRow);
+            toRow = Math.min(rows, toRow);
+            if (toRow <= fromRow) {
+                return 0;
+            }
+            int n = (toRow - fromRow) * columns;
+            data.duplicate().position(fromRow * columns).get(dst, 0, n);
+            return n;
+        }
+
+        /**
+         * 复制全部特征
+         */
+        public double[] toArray() {
+            double[] result = new double[rows * columns];
+            getRows(0, rows, result);
+            return result;
+        }
+    }
+
+    /**
+     * 使用默认的缓存目录(用户目录下的.edfreader/features)
+     */
+    FeatureCache() {
+        this(new File(System.getProperty("user.home"), ".edfreader" + File.separator + "features"));
+    }
+
+    FeatureCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 返回EDF文件的特征：缓存有效时直接映射缓存文件，否则调用computer计算并写入缓存
+     * name和params一起组成缓存的键，参数改变时应该得到不同的params
+     */
+    public Features get(String edfPath, String name, String params, int columns, Computer computer)
+            throws IOException, EDFException {
+        File edfFile = new File(edfPath).getCanonicalFile();
+        byte[] key = (name + "\n" + params).getBytes(StandardCharsets.UTF_8);
+        File cacheFile = new File(directory, hex(sha256(edfFile.getPath().getBytes(StandardCharsets.UTF_8), key)) + ".feat");
+
+        long size = edfFile.length();
+        long modified = edfFile.lastModified();
+        byte[] headerHash = hashEdfHeader(edfFile);
+
+        Features features = open(cacheFile, size, modified, headerHash, key, columns);
+        if (features != null) {
+            return features;
+        }
+
+        double[] values = computer.compute();
+        if (values.length % columns != 0) {
+            throw new IllegalArgumentException("特征数 " + values.length + " 不是列数 " + columns + " 的整数倍");
+        }
+        write(cacheFile, size, modified, headerHash, key, values.length / columns, columns, values);
+
+        features = open(cacheFile, size, modified, headerHash, key, columns);
+        if (features == null) {
+            throw new IOException("无法读取缓存文件: " + cacheFile);
+        }
+        return features;
+    }
+
+    /**
+     * 一个通道的频带功率(见SpectralFeatures)，每行一个分期，每列一个频带
+     */
+    public Features getBandPower(String edfPath, String channelLabel) throws IOException, EDFException {
+        String params = "channel=" + channelLabel.trim().toLowerCase()
+                + ",epoch=" + SpectralFeatures.EPOCH_SECONDS
+                + ",segment=" + SpectralFeatures.SEGMENT_SECONDS
+                + ",bands=" + Arrays.deepToString(SpectralFeatures.BAND_LIMITS);
+        return get(edfPath, "bandpower", params, SpectralFeatures.NUM_BANDS, () -> {
+            SleepRecording recording = EDFProcessor.readSleepRecording(edfPath, channelLabel);
+            return new SpectralFeatures().compute(recording.getChannel(0));
+        });
+    }
+
+    /**
+     * 删除缓存目录中的全部缓存文件
+     */
+    public void clear() {
+        File[] files = directory.listFiles((dir, fileName) -> fileName.endsWith(".feat"));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 打开并检查缓存文件，文件不存在、格式错误或与EDF文件不符时返回null
+     */
+    private static Features open(File cacheFile, long size, long modified, byte[] headerHash, byte[] key, int columns)
+            throws IOException {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r")) {
+            FileChannel channel = file.getChannel();
+            if (channel.size() < FIXED_HEADER_SIZE) {
+                return null;
+            }
+
+            // 映射整个文件，关闭文件后映射仍然有效
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            buf.get(magic);
+            byte[] hash = new byte[32];
+            long cachedSize = buf.getLong();
+            long cachedModified = buf.getLong();
+            buf.get(hash);
+            int rows = buf.getInt();
+            int cachedColumns = buf.getInt();
+            int keyLength = buf.getInt();
+
+            if (!Arrays.equals(magic, MAGIC) || cachedSize != size || cachedModified != modified
+                    || !Arrays.equals(hash, headerHash) || cachedColumns != columns || keyLength != key.length
+                    || rows < 0 || buf.remaining() < keyLength) {
+                return null;
+            }
+
+            byte[] cachedKey = new byte[keyLength];
+            buf.get(cachedKey);
+            if (!Arrays.equals(cachedKey, key)) {
+                return null;
+            }
+
+            int dataOffset = align(FIXED_HEADER_SIZE + keyLength);
+            if (channel.size() != dataOffset + (long) rows * columns * Double.BYTES) {
+                return null;
+            }
+
+            buf.position(dataOffset);
+            return new Features(rows, columns, buf.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+        }
+    }
+
+    /**
+     * 写入缓存文件：先写入临时文件再改名，其他进程不会读到写了一半的文件
+     */
+    private void write(File cacheFile, long size, long modified, byte[] headerHash, byte[] key,
+                       int rows, int columns, double[] values) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建缓存目录: " + directory);
+        }
+
+        int dataOffset = align(FIXED_HEADER_SIZE + key.length);
+        ByteBuffer buf = ByteBuffer.allocate(dataOffset + values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(MAGIC);
+        buf.putLong(size);
+        buf.putLong(modified);
+        buf.put(headerHash);
+        buf.putInt(rows);
+        buf.putInt(columns);
+        buf.putInt(key.length);
+        buf.put(key);
+        buf.position(dataOffset);
+        buf.asDoubleBuffer().put(values);
+
+        File tmp = File.createTempFile("feature", ".tmp", directory);
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(tmp, "rw")) {
+                FileChannel channel = file.getChannel();
+                buf.rewind();
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * EDF文件头(固定部分和所有信号)的SHA-256；不是EDF文件(如归档文件)时计算前256字节的SHA-256
+     */
+    private static byte[] hashEdfHeader(File edfFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(edfFile, "r")) {
+            byte[] base = new byte[(int) Math.min(BASE_HEADER_SIZE, file.length())];
+            file.readFully(base);
+
+            int headerSize = base.length;
+            if (base.length == BASE_HEADER_SIZE) {
+                try {
+                    int signals = Integer.parseInt(new String(base, 252, 4, StandardCharsets.US_ASCII).trim());
+                    if (signals > 0) {
+                        headerSize = (int) Math.min(file.length(), (long) (signals + 1) * SIGNAL_HEADER_SIZE);
+                    }
+                } catch (NumberFormatException e) {
+                    // 不是EDF文件头，只使用前256字节
+                }
+            }
+
+            byte[] header = Arrays.copyOf(base, headerSize);
+            file.readFully(header, base.length, headerSize - base.length);
+            return sha256(header);
+        }
+    }
+
+    private static byte[] sha256(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                digest.update(part);
+                digest.update((byte) 0);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+}
\ No newline at end of file
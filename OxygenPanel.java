@@ -1,7 +1,6 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.List;
 
 class OxygenPanel extends JPanel {
     // 颜色配置
@@ -11,6 +10,7 @@ class OxygenPanel extends JPanel {
     private static final Color TEXT_COLOR = Color.BLACK;                        // 文本颜色
     private static final Color OXYGEN_LINE_COLOR = Color.GREEN;                 // 血氧曲线颜色
     private static final Color THRESHOLD_LINE_COLOR = Color.RED;                // 阈值线颜色
+    private static final Color EVENT_COLOR = new Color(255, 0, 0, 40);          // 氧减事件区域颜色
     private static final Color EMPTY_STATE_TEXT_COLOR = Color.GRAY;             // 空状态文本颜色
 
     // 线条样式
@@ -34,7 +34,6 @@ class OxygenPanel extends JPanel {
     private static final double MAX_ZOOM = 100.0;                                 // 最大缩放比例
 
     // 图表数据范围
-    private static final int TOTAL_DISPLAY_HOURS = 8;                             // 总显示小时数
     private static final int THRESHOLD_SATURATION = 90;                           // 饱和度阈值(%)
 
     // 布局边距
@@ -45,11 +44,14 @@ class OxygenPanel extends JPanel {
     private static final int LEGEND_HEIGHT = 20;                                  // 图例高度
 
     // 缩放阈值
-    private static final double MINUTES_SCALE_THRESHOLD = 4.0;                   // 分钟刻度显示阈值
-    private static final double FINE_MINUTES_SCALE_THRESHOLD = 8.0;              // 精细分钟刻度显示阈值
+    private static final double MINUTES_SCALE_THRESHOLD = 2.0;                   // 可见时长(小时)不超过此值时显示分钟刻度
+    private static final double FINE_MINUTES_SCALE_THRESHOLD = 1.0;              // 可见时长(小时)不超过此值时显示精细分钟刻度
 
     // 成员变量
-    private List<DataPoint> data;
+    private SleepRecording recording;
+    private DesaturationDetector detector;
+    private int scannedSamples = 0; // 已交给detector的样本数(加载过程中样本逐块增加)
+    private boolean loadFinished = false; // 加载已完成，不会再有新样本
     private double zoomFactor = 1.0;
     private int offsetX = 0;
     private Point dragStart;
@@ -66,7 +68,8 @@ class OxygenPanel extends JPanel {
             } else {
                 zoomFactor /= ZOOM_INCREMENT;
             }
-            zoomFactor = Math.max(MIN_ZOOM, Math.min(zoomFactor, data != null ? data.size() : MAX_ZOOM));
+            zoomFactor = Math.max(MIN_ZOOM, Math.min(zoomFactor, hasOxygenData()
+                    ? recording.getChannel(SleepRecording.SPO2_CHANNEL).size() : MAX_ZOOM));
 
             double mouseX = e.getX();
             offsetX = (int) (mouseX - (mouseX - offsetX) * (zoomFactor / oldZoom));
@@ -99,17 +102,28 @@ class OxygenPanel extends JPanel {
         });
     }
 
-    public void setData(List<DataPoint> data) {
-        this.data = data;
+    public void setData(SleepRecording recording) {
+        this.recording = recording;
+        this.detector = null;
+        this.scannedSamples = 0;
+        this.loadFinished = false;
         this.zoomFactor = MIN_ZOOM;
         this.offsetX = 0;
         repaint();
     }
 
+    /**
+     * 加载完成后由界面调用(在setData之后)，此后仍在进行中的氧减事件被结束
+     */
+    public void loadFinished() {
+        this.loadFinished = true;
+        repaint();
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        if (data == null || data.isEmpty()) {
+        if (!hasOxygenData()) {
             drawEmptyState(g);
             return;
         }
@@ -120,29 +134,22 @@ class OxygenPanel extends JPanel {
 
         int width = getWidth();
         int height = getHeight();
-        int dataSize = data.size();
 
         offsetX = Math.min(0, Math.max(offsetX, width - (int)(width * zoomFactor)));
 
+        updateEvents();
+
         // 绘制网格背景
         drawGrid(g2d, width, height);
 
+        // 标出氧减事件
+        drawEvents(g2d, width, height);
+
         // 绘制血氧饱和度曲线
         g2d.setColor(OXYGEN_LINE_COLOR);
         g2d.setStroke(new BasicStroke(OXYGEN_LINE_THICKNESS));
 
-        for (int i = 1; i < dataSize; i++) {
-            if (i >= data.size()) break;
-
-            int x1 = (int)((i - 1) * width / (double)dataSize * zoomFactor + offsetX);
-            int y1 = height - (data.get(i - 1).oxygenSaturation * height / 100);
-            int x2 = (int)(i * width / (double)dataSize * zoomFactor + offsetX);
-            int y2 = height - (data.get(i).oxygenSaturation * height / 100);
-
-            if ((x1 >= 0 || x2 >= 0) && (x1 <= width || x2 <= width)) {
-                g2d.drawLine(x1, y1, x2, y2);
-            }
-        }
+        drawOxygenCurve(g2d, width, height);
 
         // 绘制90%饱和度参考线
         g2d.setColor(THRESHOLD_LINE_COLOR);
@@ -164,6 +171,86 @@ class OxygenPanel extends JPanel {
         drawTitleAndLegend(g2d, width);
     }
 
+    /**
+     * 只把新加载的样本交给detector，加载完成后结束最后一个事件
+     */
+    private void updateEvents() {
+        SleepRecording.Channel spo2 = recording.getChannel(SleepRecording.SPO2_CHANNEL);
+        if (detector == null) {
+            detector = new DesaturationDetector(spo2.getSampleRate(), spo2.getStartTime());
+        }
+        int size = spo2.size();
+        if (size > scannedSamples) {
+            detector.process(spo2, scannedSamples, size);
+            scannedSamples = size;
+        }
+        if (loadFinished) {
+            detector.finish();
+        }
+    }
+
+    private void drawEvents(Graphics2D g2d, int width, int height) {
+        double pixelsPerSecond = width * zoomFactor / recording.getDuration();
+        g2d.setColor(EVENT_COLOR);
+        for (EDFAnnotationStruct event : detector.getEvents()) {
+            double onset = (double) event.onset / EDFreader.EDFLIB_TIME_DIMENSION;
+            double duration = (double) event.duration / EDFreader.EDFLIB_TIME_DIMENSION;
+            int x1 = (int) (onset * pixelsPerSecond + offsetX);
+            int x2 = (int) ((onset + duration) * pixelsPerSecond + offsetX);
+            if (x2 >= 0 && x1 <= width) {
+                g2d.fillRect(x1, 0, Math.max(1, x2 - x1), height);
+            }
+        }
+    }
+
+    private boolean hasOxygenData() {
+        return recording != null && recording.getChannelCount() > SleepRecording.SPO2_CHANNEL
+                && recording.getChannel(SleepRecording.SPO2_CHANNEL).size() > 0;
+    }
+
+    /**
+     * 绘制血氧饱和度曲线
+     * 每个像素列只绘制该列时间范围内样本的最小值到最大值；放大到每个像素不足两个样本时逐点连线
+     */
+    private void drawOxygenCurve(Graphics2D g2d, int width, int height) {
+        SleepRecording.Channel spo2 = recording.getChannel(SleepRecording.SPO2_CHANNEL);
+        double pixelsPerSecond = width * zoomFactor / recording.getDuration();
+
+        if (spo2.getSampleRate() / pixelsPerSecond < 2) {
+            int first = spo2.indexAt(-offsetX / pixelsPerSecond);
+            int last = Math.min(spo2.size() - 1, spo2.indexAt((width - offsetX) / pixelsPerSecond) + 1);
+            for (int i = first + 1; i <= last; i++) {
+                int x1 = (int) (spo2.timeAt(i - 1) * pixelsPerSecond + offsetX);
+                int y1 = (int) (height - spo2.get(i - 1) * height / 100);
+                int x2 = (int) (spo2.timeAt(i) * pixelsPerSecond + offsetX);
+                int y2 = (int) (height - spo2.get(i) * height / 100);
+                g2d.drawLine(x1, y1, x2, y2);
+            }
+            return;
+        }
+
+        double[] range = new double[2];
+        int lastY = -1;
+        for (int x = 0; x < width; x++) {
+            double t0 = (x - offsetX) / pixelsPerSecond;
+            double t1 = (x + 1 - offsetX) / pixelsPerSecond;
+            if (t1 <= spo2.getStartTime() || t0 >= spo2.getEndTime()) {
+                continue; // 记录范围之外或尚未加载
+            }
+
+            int from = spo2.indexAt(t0);
+            int to = Math.max(from + 1, spo2.indexAt(t1));
+            spo2.minMax(from, to, range);
+
+            // 与上一列相连，再画出本列的最小值到最大值
+            if (lastY >= 0) {
+                g2d.drawLine(x - 1, lastY, x, (int) (height - spo2.get(from) * height / 100));
+            }
+            g2d.drawLine(x, (int) (height - range[1] * height / 100), x, (int) (height - range[0] * height / 100));
+            lastY = (int) (height - spo2.get(to - 1) * height / 100);
+        }
+    }
+
     private void drawEmptyState(Graphics g) {
         g.setColor(EMPTY_STATE_TEXT_COLOR);
         g.setFont(new Font("SimHei", Font.PLAIN, CHART_TITLE_FONT_SIZE));
@@ -173,6 +260,20 @@ class OxygenPanel extends JPanel {
         g.drawString(message, x, y);
     }
 
+    /**
+     * 每秒对应的像素数，时间轴按记录的实际时长缩放
+     */
+    private double pixelsPerSecond(int width) {
+        return width * zoomFactor / recording.getDuration();
+    }
+
+    /**
+     * 当前可见的时长(小时)，用于选择网格和刻度的精度
+     */
+    private double visibleHours() {
+        return recording.getDuration() / 3600 / zoomFactor;
+    }
+
     private void drawGrid(Graphics2D g2d, int width, int height) {
         g2d.setColor(GRID_COLOR);
 
@@ -187,10 +288,10 @@ class OxygenPanel extends JPanel {
         }
 
         // 垂直网格线（基于时间刻度）
-        if (zoomFactor < MINUTES_SCALE_THRESHOLD) {
+        if (visibleHours() > MINUTES_SCALE_THRESHOLD) {
             // 低缩放时显示小时刻度
             drawHourGrid(g2d, width, height);
-        } else if (zoomFactor < FINE_MINUTES_SCALE_THRESHOLD) {
+        } else if (visibleHours() > FINE_MINUTES_SCALE_THRESHOLD) {
             // 中等缩放时显示15分钟刻度
             drawMinuteGrid(g2d, width, height);
         } else {
@@ -200,10 +301,11 @@ class OxygenPanel extends JPanel {
     }
 
     private void drawHourGrid(Graphics2D g2d, int width, int height) {
-        int pixelsPerHour = (int)(width * zoomFactor / TOTAL_DISPLAY_HOURS);
+        double pixelsPerHour = pixelsPerSecond(width) * 3600;
+        int totalHours = (int) (recording.getDuration() / 3600);
 
-        int startHour = Math.max(0, (-offsetX) / pixelsPerHour);
-        int endHour = Math.min(TOTAL_DISPLAY_HOURS, startHour + width / pixelsPerHour + 2);
+        int startHour = Math.max(0, (int) (-offsetX / pixelsPerHour));
+        int endHour = Math.min(totalHours, startHour + (int) (width / pixelsPerHour) + 2);
 
         for (int hour = startHour; hour <= endHour; hour++) {
             int x = (int)(hour * pixelsPerHour + offsetX);
@@ -214,12 +316,12 @@ class OxygenPanel extends JPanel {
     }
 
     private void drawMinuteGrid(Graphics2D g2d, int width, int height) {
-        int totalMinutes = TOTAL_DISPLAY_HOURS * 60;
-        int pixelsPerMinute = (int)(width * zoomFactor / totalMinutes);
+        double pixelsPerMinute = pixelsPerSecond(width) * 60;
+        int totalMinutes = (int) (recording.getDuration() / 60);
 
         // 计算起始和结束分钟，每5分钟绘制一个网格线
-        int startMinute = Math.max(0, (-offsetX) / pixelsPerMinute / MINUTE_GRID_INTERVAL * MINUTE_GRID_INTERVAL);
-        int endMinute = Math.min(totalMinutes, startMinute + width / pixelsPerMinute + 10);
+        int startMinute = Math.max(0, (int) (-offsetX / pixelsPerMinute) / MINUTE_GRID_INTERVAL * MINUTE_GRID_INTERVAL);
+        int endMinute = Math.min(totalMinutes, startMinute + (int) (width / pixelsPerMinute) + 10);
 
         for (int minute = startMinute; minute <= endMinute; minute += MINUTE_GRID_INTERVAL) {
             int x = (int)(minute * pixelsPerMinute + offsetX);
@@ -230,12 +332,12 @@ class OxygenPanel extends JPanel {
     }
 
     private void drawFineMinuteGrid(Graphics2D g2d, int width, int height) {
-        int totalMinutes = TOTAL_DISPLAY_HOURS * 60;
-        int pixelsPerMinute = (int)(width * zoomFactor / totalMinutes);
+        double pixelsPerMinute = pixelsPerSecond(width) * 60;
+        int totalMinutes = (int) (recording.getDuration() / 60);
 
         // 计算起始和结束分钟，每分钟绘制一个网格线
-        int startMinute = Math.max(0, (-offsetX) / pixelsPerMinute);
-        int endMinute = Math.min(totalMinutes, startMinute + width / pixelsPerMinute + 2);
+        int startMinute = Math.max(0, (int) (-offsetX / pixelsPerMinute));
+        int endMinute = Math.min(totalMinutes, startMinute + (int) (width / pixelsPerMinute) + 2);
 
         for (int minute = startMinute; minute <= endMinute; minute++) {
             int x = (int)(minute * pixelsPerMinute + offsetX);
@@ -249,10 +351,10 @@ class OxygenPanel extends JPanel {
         g2d.setColor(TEXT_COLOR);
         g2d.setFont(new Font("SimHei", Font.PLAIN, TIME_LABEL_FONT_SIZE));
 
-        if (zoomFactor < MINUTES_SCALE_THRESHOLD) {
+        if (visibleHours() > MINUTES_SCALE_THRESHOLD) {
             // 低缩放时显示小时刻度
             drawHourScale(g2d, width, height);
-        } else if (zoomFactor < FINE_MINUTES_SCALE_THRESHOLD) {
+        } else if (visibleHours() > FINE_MINUTES_SCALE_THRESHOLD) {
             // 中等缩放时显示15分钟刻度
             drawMinuteScale(g2d, width, height);
         } else {
@@ -262,10 +364,11 @@ class OxygenPanel extends JPanel {
     }
 
     private void drawHourScale(Graphics2D g2d, int width, int height) {
-        int pixelsPerHour = (int)(width * zoomFactor / TOTAL_DISPLAY_HOURS);
+        double pixelsPerHour = pixelsPerSecond(width) * 3600;
+        int totalHours = (int) (recording.getDuration() / 3600);
 
-        int startHour = Math.max(0, (-offsetX) / pixelsPerHour);
-        int endHour = Math.min(TOTAL_DISPLAY_HOURS, startHour + width / pixelsPerHour + 2);
+        int startHour = Math.max(0, (int) (-offsetX / pixelsPerHour));
+        int endHour = Math.min(totalHours, startHour + (int) (width / pixelsPerHour) + 2);
 
         for (int hour = startHour; hour <= endHour; hour++) {
             int x = (int)(hour * pixelsPerHour + offsetX);
@@ -277,12 +380,12 @@ class OxygenPanel extends JPanel {
     }
 
     private void drawMinuteScale(Graphics2D g2d, int width, int height) {
-        int totalMinutes = TOTAL_DISPLAY_HOURS * 60;
-        int pixelsPerMinute = (int)(width * zoomFactor / totalMinutes);
+        double pixelsPerMinute = pixelsPerSecond(width) * 60;
+        int totalMinutes = (int) (recording.getDuration() / 60);
 
         // 计算起始和结束分钟，每15分钟绘制一个刻度
-        int startMinute = Math.max(0, (-offsetX) / pixelsPerMinute / MINUTE_LABEL_INTERVAL * MINUTE_LABEL_INTERVAL);
-        int endMinute = Math.min(totalMinutes, startMinute + width / pixelsPerMinute + 30);
+        int startMinute = Math.max(0, (int) (-offsetX / pixelsPerMinute) / MINUTE_LABEL_INTERVAL * MINUTE_LABEL_INTERVAL);
+        int endMinute = Math.min(totalMinutes, startMinute + (int) (width / pixelsPerMinute) + 30);
 
         for (int minute = startMinute; minute <= endMinute; minute += MINUTE_LABEL_INTERVAL) {
             int x = (int)(minute * pixelsPerMinute + offsetX);
@@ -296,12 +399,12 @@ class OxygenPanel extends JPanel {
     }
 
     private void drawFineMinuteScale(Graphics2D g2d, int width, int height) {
-        int totalMinutes = TOTAL_DISPLAY_HOURS * 60;
-        int pixelsPerMinute = (int)(width * zoomFactor / totalMinutes);
+        double pixelsPerMinute = pixelsPerSecond(width) * 60;
+        int totalMinutes = (int) (recording.getDuration() / 60);
 
         // 计算起始和结束分钟，每5分钟绘制一个刻度，每分钟绘制一个小刻度
-        int startMinute = Math.max(0, (-offsetX) / pixelsPerMinute / FINE_MINUTE_LABEL_INTERVAL * FINE_MINUTE_LABEL_INTERVAL);
-        int endMinute = Math.min(totalMinutes, startMinute + width / pixelsPerMinute + 10);
+        int startMinute = Math.max(0, (int) (-offsetX / pixelsPerMinute) / FINE_MINUTE_LABEL_INTERVAL * FINE_MINUTE_LABEL_INTERVAL);
+        int endMinute = Math.min(totalMinutes, startMinute + (int) (width / pixelsPerMinute) + 10);
 
         for (int minute = startMinute; minute <= endMinute; minute++) {
             int x = (int)(minute * pixelsPerMinute + offsetX);
@@ -323,7 +426,7 @@ class OxygenPanel extends JPanel {
     private void drawTitleAndLegend(Graphics2D g2d, int width) {
         g2d.setColor(TEXT_COLOR);
         g2d.setFont(new Font("SimHei", Font.BOLD, CHART_TITLE_FONT_SIZE));
-        g2d.drawString("血氧饱和度 (SpO2)", Y_AXIS_MARGIN, TITLE_MARGIN);
+        g2d.drawString(String.format("血氧饱和度 (SpO2)  ODI: %.1f/h", detector.getOdi()), Y_AXIS_MARGIN, TITLE_MARGIN);
 
         // 绘制图例
         g2d.setFont(new Font("SimHei", Font.PLAIN, LEGEND_FONT_SIZE));
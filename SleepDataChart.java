@@ -4,6 +4,7 @@ import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class SleepDataChart {
     // 常量定义，避免硬编码数字
@@ -21,12 +22,33 @@ public class SleepDataChart {
     private static final String DEFAULT_FILE_NAME_PREFIX = "sleep_data_"; // 测试文件默认前缀
     private static final String FILE_EXTENSION = ".edf";                   // 文件扩展名
     private static final String DATE_FORMAT = "yyyyMMdd_HHmmss";           // 时间戳格式
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;            // 每MB字节数
 
     private JFrame frame;
     private SleepPanel chartPanel;
     private OxygenPanel oxygenPanel;
     private JFileChooser fileChooser;
-    private String currentFilePath;
+    private JLabel fileLabel;
+    private JLabel statusLabel;
+    private JButton cancelButton;
+    private SwingWorker<SleepRecording, LoadProgress> loader;   // 当前的后台加载任务
+
+    /**
+     * 后台加载任务发布给界面线程的进度
+     */
+    private static class LoadProgress {
+        final SleepRecording recording;
+        final long recordsRead;
+        final long totalRecords;
+        final long bytesRead;
+
+        LoadProgress(SleepRecording recording, long recordsRead, long totalRecords, long bytesRead) {
+            this.recording = recording;
+            this.recordsRead = recordsRead;
+            this.totalRecords = totalRecords;
+            this.bytesRead = bytesRead;
+        }
+    }
 
     public SleepDataChart() {
         // 初始化主窗口
@@ -84,22 +106,26 @@ public class SleepDataChart {
         JButton openButton = new JButton("打开文件");
         JButton generateButton = new JButton("生成测试数据");
         JButton helpButton = new JButton("帮助");
+        cancelButton = new JButton("取消加载");
+        cancelButton.setEnabled(false);
 
         // 当前文件标签
-        JLabel fileLabel = new JLabel("当前文件: 未选择文件");
+        fileLabel = new JLabel("当前文件: 未选择文件");
 
         // 状态标签
-        JLabel statusLabel = new JLabel("就绪");
+        statusLabel = new JLabel("就绪");
 
         // 添加按钮事件
         openButton.addActionListener(e -> openFile());
         generateButton.addActionListener(e -> generateTestData());
         helpButton.addActionListener(e -> showHelpDialog());
+        cancelButton.addActionListener(e -> cancelLoading());
 
         // 添加组件到面板
         panel.add(openButton);
         panel.add(generateButton);
         panel.add(helpButton);
+        panel.add(cancelButton);
         panel.add(Box.createHorizontalStrut(20));
         panel.add(fileLabel);
         panel.add(Box.createHorizontalGlue());
@@ -113,37 +139,136 @@ public class SleepDataChart {
         int returnValue = fileChooser.showOpenDialog(frame);
         if (returnValue == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
-            try {
-                currentFilePath = selectedFile.getAbsolutePath();
-                List<DataPoint> data = EDFProcessor.readSleepDataEDFFile(currentFilePath);
-                chartPanel.setData(data);
-                oxygenPanel.setData(data);
-                showStatus("已加载文件: " + selectedFile.getName());
-            } catch (Exception ex) {
-                showErrorDialog("读取文件时出错: " + ex.getMessage());
-                ex.printStackTrace();
-            }
+            startLoading(selectedFile.getAbsolutePath(), 0);
         }
     }
 
     private void generateTestData() {
-        try {
-            // 创建带有时间戳的文件名
-            String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
-            String filePath = DEFAULT_FILE_NAME_PREFIX + timestamp + FILE_EXTENSION;
-
-            // 调用数据生成方法，生成指定时长的测试数据
-            EDFProcessor.createTestEDFDataFile(filePath, TEST_DATA_DURATION_MINUTES);
-
-            // 加载生成的文件
-            List<DataPoint> data = EDFProcessor.readSleepDataEDFFile(filePath);
-            chartPanel.setData(data);
-            oxygenPanel.setData(data);
-            currentFilePath = filePath;
-            showStatus("已生成并加载测试数据: " + filePath);
-        } catch (Exception ex) {
-            showErrorDialog("生成测试数据时出错: " + ex.getMessage());
-            ex.printStackTrace();
+        // 创建带有时间戳的文件名
+        String timestamp = new SimpleDateFormat(DATE_FORMAT).format(new Date());
+        String filePath = DEFAULT_FILE_NAME_PREFIX + timestamp + FILE_EXTENSION;
+
+        // 在后台生成指定时长的测试数据，然后加载
+        startLoading(filePath, TEST_DATA_DURATION_MINUTES);
+    }
+
+    /**
+     * 在后台线程中加载文件(generateMinutes大于0时先生成测试数据)，事件线程不会被阻塞
+     * 已读取的数据块会立即显示在图表中；打开另一个文件时取消当前的加载
+     */
+    private void startLoading(String filePath, int generateMinutes) {
+        cancelLoading();
+
+        fileLabel.setText("当前文件: " + new File(filePath).getName());
+        chartPanel.setData(null);
+        oxygenPanel.setData(null);
+
+        SwingWorker<SleepRecording, LoadProgress> worker = new SwingWorker<SleepRecording, LoadProgress>() {
+            private long startTime;
+            private SleepRecording shown;   // 已交给面板显示的记录
+
+            @Override
+            protected SleepRecording doInBackground() throws Exception {
+                if (generateMinutes > 0) {
+                    EDFProcessor.createTestEDFDataFile(filePath, generateMinutes);
+                }
+
+                startTime = System.nanoTime();
+                return EDFProcessor.readSleepRecording(filePath, new EDFProcessor.LoadListener() {
+                    @Override
+                    public void started(SleepRecording recording) {
+                        publish(new LoadProgress(recording, 0, 0, 0));
+                    }
+
+                    @Override
+                    public boolean progress(long recordsRead, long totalRecords, long bytesRead) {
+                        publish(new LoadProgress(null, recordsRead, totalRecords, bytesRead));
+                        return !isCancelled();
+                    }
+                });
+            }
+
+            @Override
+            protected void process(List<LoadProgress> chunks) {
+                if (loader != this || isCancelled()) {
+                    return;
+                }
+
+                // 第一块到达时就把(部分加载的)记录交给面板，以后只需重绘
+                for (LoadProgress chunk : chunks) {
+                    if (chunk.recording != null) {
+                        shown = chunk.recording;
+                        chartPanel.setData(shown);
+                        oxygenPanel.setData(shown);
+                    }
+                }
+
+                LoadProgress last = chunks.get(chunks.size() - 1);
+                if (last.totalRecords > 0) {
+                    double seconds = Math.max(1e-9, (System.nanoTime() - startTime) / 1e9);
+                    showStatus(String.format("正在加载: %d%% (%.1f MB/s)",
+                            last.recordsRead * 100 / last.totalRecords, last.bytesRead / BYTES_PER_MB / seconds));
+                }
+                chartPanel.repaint();
+                oxygenPanel.repaint();
+            }
+
+            @Override
+            protected void done() {
+                if (loader != this) {
+                    return;
+                }
+                loader = null;
+                cancelButton.setEnabled(false);
+
+                if (isCancelled()) {
+                    showStatus("加载已取消");
+                    return;
+                }
+
+                try {
+                    // 加载过程中已经显示的记录不再重新设置，保留用户的缩放和平移
+                    SleepRecording recording = get();
+                    if (recording != shown) {
+                        chartPanel.setData(recording);
+                        oxygenPanel.setData(recording);
+                    } else {
+                        chartPanel.repaint();
+                    }
+                    oxygenPanel.loadFinished();
+
+                    double seconds = Math.max(1e-9, (System.nanoTime() - startTime) / 1e9);
+                    double megabytes = new File(filePath).length() / BYTES_PER_MB;
+                    showStatus(String.format("%s: %s (%.1f MB, %.2f 秒, %.1f MB/s)",
+                            generateMinutes > 0 ? "已生成并加载测试数据" : "已加载文件",
+                            new File(filePath).getName(), megabytes, seconds, megabytes / seconds));
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    showStatus("加载失败");
+                    showErrorDialog((generateMinutes > 0 ? "生成测试数据时出错: " : "读取文件时出错: ") + cause.getMessage());
+                    cause.printStackTrace();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        loader = worker;
+        cancelButton.setEnabled(true);
+        showStatus(generateMinutes > 0 ? "正在生成测试数据..." : "正在加载...");
+        worker.execute();
+    }
+
+    /**
+     * 取消当前的后台加载(如果有)
+     */
+    private void cancelLoading() {
+        if (loader != null) {
+            SwingWorker<SleepRecording, LoadProgress> worker = loader;
+            loader = null;
+            worker.cancel(true);
+            cancelButton.setEnabled(false);
+            showStatus("加载已取消");
         }
     }
 
@@ -167,8 +292,7 @@ public class SleepDataChart {
     }
 
     private void showStatus(String message) {
-        // 在实际应用中可以更新状态栏
-        System.out.println(message);
+        statusLabel.setText(message);
     }
 
     private void showErrorDialog(String message) {
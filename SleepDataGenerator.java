@@ -0,0 +1,405 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 模拟睡眠数据生成器
+ * 相同的种子和参数总是生成相同的样本和事件；数据按块(若干个一秒的数据记录)在多个线程中并行生成，
+ * 每块使用从根随机数拆分出的独立SplittableRandom，再按顺序写入EDFwriter
+ */
+class SleepDataGenerator {
+    // 常量定义区域
+    private static final int MIN_EEG_VALUE = 0;                         // EEG信号最小值
+    private static final int MAX_EEG_VALUE = 255;                       // EEG信号最大值
+    private static final int MIN_SPO2_VALUE = 80;                       // 血氧饱和度最小值
+    private static final int MAX_SPO2_VALUE = 100;                      // 血氧饱和度最大值
+    private static final int SECONDS_IN_MINUTE = 60;                    // 每分钟的秒数
+    private static final int SECONDS_IN_HOUR = 3600;                    // 每小时的秒数
+    private static final int INITIAL_AWAKE_DURATION_MINUTES = 30;       // 初始清醒状态持续时间（分钟）
+    private static final int FINAL_AWAKE_DURATION_MINUTES = 30;         // 最终清醒状态持续时间（分钟）
+    private static final int SLEEP_CYCLE_DURATION_MINUTES = 90;         // 睡眠周期持续时间（分钟）
+    private static final int NON_REM_PHASE_DURATION_MINUTES = 60;       // 每个周期中浅睡眠/深睡眠阶段的持续时间（分钟）
+    private static final int MIN_APNEAS_PER_HOUR = 1;                   // 每小时最少呼吸暂停次数
+    private static final int MAX_APNEAS_PER_HOUR = 5;                   // 每小时最多呼吸暂停次数
+    private static final int MIN_APNEA_DURATION_SECONDS = 10;           // 最小呼吸暂停持续时间（秒）
+    private static final int MAX_APNEA_DURATION_SECONDS = 60;           // 最大呼吸暂停持续时间（秒）
+    private static final int MAX_APNEA_EFFECT = 25;                     // 呼吸暂停对血氧的最大影响百分比
+    private static final double APNEA_RECOVERY_FACTOR = 0.7;            // 呼吸暂停恢复因子
+    private static final double OXYGEN_BASE_AWAKE = 96;                 // 清醒状态下的基础血氧饱和度
+    private static final double OXYGEN_BASE_DEEP_SLEEP = 94;            // 深度睡眠状态下的基础血氧饱和度
+    private static final double HIGH_FREQ_NOISE_AMPLITUDE = 10;         // EEG高频噪声振幅
+    private static final double LOW_FREQ_DELTA_WAVE_AMPLITUDE = 30;     // 深度睡眠时的低频delta波振幅(1Hz)
+    private static final double LOW_FREQ_REM_WAVE_AMPLITUDE = 20;       // REM睡眠时的低频波振幅(5Hz)
+    private static final double NATURAL_OXYGEN_FLUCTUATION = 0.5;       // 血氧自然波动幅度
+    private static final int BYTES_PER_CHUNK = 1024 * 1024;             // 每个并行生成块的大致大小(字节)
+    private static final long ANNOTATION_TIME_UNITS = 10000;            // EDFwriter.writeAnnotation的时间单位(100微秒)
+
+    // 睡眠阶段常量
+    private static final byte AWAKE_STAGE = 0;                          // 清醒状态
+    private static final byte LIGHT_SLEEP_STAGE = 1;                    // 浅睡眠状态
+    private static final byte DEEP_SLEEP_STAGE = 2;                     // 深度睡眠状态
+    private static final byte REM_SLEEP_STAGE = 3;                      // REM睡眠状态
+
+    private long seed = 20240101L;
+    private int durationMinutes = 480;
+    private int eegChannels = 1;
+    private int eegSampleRate = 60;
+    private int spo2SampleRate = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // 生成过程中使用的事件表
+    private byte[] sleepStages;                                         // 每分钟的睡眠阶段
+    private int[] apneaStarts;                                          // 呼吸暂停开始时间(秒)，按升序排列
+    private int[] apneaDurations;                                       // 对应的持续时间(秒)
+
+    /**
+     * 随机数种子，默认为固定值
+     */
+    public SleepDataGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * 记录时长(分钟)，默认为480(8小时)
+     */
+    public SleepDataGenerator setDurationMinutes(int minutes) {
+        if (minutes < 1 || minutes > 100 * 24 * 60) {
+            throw new IllegalArgumentException("记录时长必须在1分钟到100天之间: " + minutes);
+        }
+        this.durationMinutes = minutes;
+        return this;
+    }
+
+    /**
+     * 脑电通道数，默认为1；第一个通道的标签为"EEG"，其余为"EEG 2"、"EEG 3"等
+     */
+    public SleepDataGenerator setEegChannels(int channels) {
+        if (channels < 1 || channels > 511) {
+            throw new IllegalArgumentException("脑电通道数必须在1到511之间: " + channels);
+        }
+        this.eegChannels = channels;
+        return this;
+    }
+
+    /**
+     * 脑电采样率(Hz)，默认为60
+     */
+    public SleepDataGenerator setEegSampleRate(int rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("采样率必须大于0: " + rate);
+        }
+        this.eegSampleRate = rate;
+        return this;
+    }
+
+    /**
+     * 血氧采样率(Hz)，默认为1
+     */
+    public SleepDataGenerator setSpo2SampleRate(int rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("采样率必须大于0: " + rate);
+        }
+        this.spo2SampleRate = rate;
+        return this;
+    }
+
+    /**
+     * 生成数据的线程数，默认为处理器数
+     */
+    public SleepDataGenerator setThreads(int threads) {
+        if (threads < 1 || threads > 256) {
+            throw new IllegalArgumentException("线程数必须在1到256之间: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * 生成EDF+文件，信号顺序为EEG、SpO2，然后是其余的脑电通道
+     */
+    public void generate(String filePath) throws IOException, EDFException {
+        int totalSeconds = durationMinutes * SECONDS_IN_MINUTE;
+        int numSignals = eegChannels + 1;
+        int recordSize = (eegChannels * eegSampleRate + spo2SampleRate) * 2;
+        if (recordSize > 10 * 1024 * 1024) {
+            throw new IllegalArgumentException("数据记录过大: " + recordSize + " 字节");
+        }
+
+        // 事件表只依赖种子，在主线程中生成
+        SplittableRandom root = new SplittableRandom(seed);
+        createSleepStages(root.split());
+        createApneaEvents(root.split());
+
+        EDFwriter edfWriter = new EDFwriter(filePath, EDFwriter.EDFLIB_FILETYPE_EDFPLUS, numSignals);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int s = 0; s < numSignals; s++) {
+                boolean spo2 = s == SleepRecording.SPO2_CHANNEL;
+                edfWriter.setSampleFrequency(s, spo2 ? spo2SampleRate : eegSampleRate);
+                edfWriter.setSignalLabel(s, spo2 ? "SpO2" : (s == 0 ? "EEG" : "EEG " + s));
+                edfWriter.setPhysicalDimension(s, spo2 ? "%" : "uV");
+                edfWriter.setPhysicalMinimum(s, spo2 ? MIN_SPO2_VALUE : MIN_EEG_VALUE);
+                edfWriter.setPhysicalMaximum(s, spo2 ? MAX_SPO2_VALUE : MAX_EEG_VALUE);
+                // 数字范围与物理范围相同，数字值就是四舍五入后的物理值
+                edfWriter.setDigitalMinimum(s, spo2 ? MIN_SPO2_VALUE : MIN_EEG_VALUE);
+                edfWriter.setDigitalMaximum(s, spo2 ? MAX_SPO2_VALUE : MAX_EEG_VALUE);
+                edfWriter.setTransducer(s, spo2 ? "脉搏血氧仪" : "AgAgCl电极");
+                edfWriter.setPreFilter(s, spo2 ? "无" : "HP:0.1Hz LP:75Hz");
+            }
+
+            // 设置患者和记录信息
+            edfWriter.setPatientName("测试患者");
+            edfWriter.setPatientCode("PAT001");
+            edfWriter.setAdministrationCode("ADMIN001");
+            edfWriter.setTechnician("技术人员");
+            edfWriter.setEquipment("睡眠监测仪");
+
+            Calendar cal = Calendar.getInstance();
+            edfWriter.setStartDateTime(
+                    cal.get(Calendar.YEAR),
+                    cal.get(Calendar.MONTH) + 1, // Calendar月份从0开始
+                    cal.get(Calendar.DAY_OF_MONTH),
+                    cal.get(Calendar.HOUR_OF_DAY),
+                    cal.get(Calendar.MINUTE),
+                    cal.get(Calendar.SECOND),
+                    0
+            );
+
+            // 预先分配文件空间，长时间的记录在磁盘上保持连续
+            edfWriter.setExpectedDuration(totalSeconds);
+
+            int chunkSeconds = Math.max(1, BYTES_PER_CHUNK / recordSize);
+            int maxPending = threads * 2;
+            ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+
+            // 按顺序提交各块，随机数流也按顺序拆分，结果与线程数和调度无关；
+            // 同时最多有maxPending块在生成或等待写入，内存占用有上限
+            for (int start = 0; start < totalSeconds || !pending.isEmpty(); ) {
+                if (start < totalSeconds && pending.size() < maxPending) {
+                    int from = start;
+                    int to = Math.min(totalSeconds, start + chunkSeconds);
+                    SplittableRandom random = root.split();
+                    pending.add(pool.submit(() -> generateChunk(from, to, recordSize, random)));
+                    start = to;
+                    continue;
+                }
+
+                ByteBuffer chunk = pending.remove().get();
+                while (chunk.hasRemaining()) {
+                    if (edfWriter.blockWriteDigitalByteBuffer(chunk, false) != 0) {
+                        throw new IOException("写入数据记录失败");
+                    }
+                }
+            }
+
+            // 添加注释
+            edfWriter.writeAnnotation(0, -1, "记录开始");
+            for (int i = 0; i < apneaStarts.length; i++) {
+                edfWriter.writeAnnotation(apneaStarts[i] * ANNOTATION_TIME_UNITS,
+                        apneaDurations[i] * ANNOTATION_TIME_UNITS, "呼吸暂停");
+            }
+            edfWriter.writeAnnotation(totalSeconds * ANNOTATION_TIME_UNITS, -1, "记录结束");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("生成数据时被中断");
+        } catch (ExecutionException e) {
+            throw new IOException("生成数据失败", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            edfWriter.close();
+        }
+    }
+
+    /**
+     * 模拟睡眠阶段(清醒、浅睡眠、深睡眠、REM)，每分钟一个
+     * 开始和最后30分钟为清醒或浅睡眠，中间每90分钟一个周期：60分钟浅睡眠/深睡眠，然后30分钟REM
+     */
+    private void createSleepStages(SplittableRandom random) {
+        sleepStages = new byte[durationMinutes];
+        for (int minute = 0; minute < durationMinutes; minute++) {
+            int sinceOnset = minute - INITIAL_AWAKE_DURATION_MINUTES;
+            if (sinceOnset < 0 || minute >= durationMinutes - FINAL_AWAKE_DURATION_MINUTES) {
+                sleepStages[minute] = (byte) random.nextInt(LIGHT_SLEEP_STAGE + 1); // 0:清醒, 1:浅睡眠
+            } else if (sinceOnset % SLEEP_CYCLE_DURATION_MINUTES < NON_REM_PHASE_DURATION_MINUTES) {
+                sleepStages[minute] = (byte) (LIGHT_SLEEP_STAGE + random.nextInt(2)); // 1:浅睡眠, 2:深睡眠
+            } else {
+                sleepStages[minute] = REM_SLEEP_STAGE;
+            }
+        }
+    }
+
+    /**
+     * 每小时随机添加几次呼吸暂停，按开始时间排序后保存，生成样本时用二分查找定位
+     */
+    private void createApneaEvents(SplittableRandom random) {
+        int totalSeconds = durationMinutes * SECONDS_IN_MINUTE;
+        long[] events = new long[(durationMinutes / 60 + 1) * MAX_APNEAS_PER_HOUR];
+        int n = 0;
+        for (int hour = 0; hour * SECONDS_IN_HOUR < totalSeconds; hour++) {
+            int numApneas = MIN_APNEAS_PER_HOUR + random.nextInt(MAX_APNEAS_PER_HOUR - MIN_APNEAS_PER_HOUR + 1);
+            for (int i = 0; i < numApneas; i++) {
+                int start = hour * SECONDS_IN_HOUR + random.nextInt(SECONDS_IN_HOUR);
+                int duration = MIN_APNEA_DURATION_SECONDS
+                        + random.nextInt(MAX_APNEA_DURATION_SECONDS - MIN_APNEA_DURATION_SECONDS + 1);
+                if (start + duration <= totalSeconds) {
+                    events[n++] = ((long) start << 32) | duration;
+                }
+            }
+        }
+        Arrays.sort(events, 0, n);
+
+        apneaStarts = new int[n];
+        apneaDurations = new int[n];
+        for (int i = 0; i < n; i++) {
+            apneaStarts[i] = (int) (events[i] >>> 32);
+            apneaDurations[i] = (int) events[i];
+        }
+    }
+
+    /**
+     * 时间t(秒)处呼吸暂停引起的血氧下降，没有呼吸暂停时为0
+     * 只需检查开始时间在(t - 最长持续时间, t]之间的事件
+     */
+    private double apneaEffect(double t) {
+        int i = Arrays.binarySearch(apneaStarts, (int) Math.floor(t));
+        i = i >= 0 ? i : -i - 2;
+        // 相同开始时间的事件可能有多个，从最后一个开始向前查找
+        while (i + 1 < apneaStarts.length && apneaStarts[i + 1] <= t) {
+            i++;
+        }
+        for (; i >= 0 && apneaStarts[i] > t - MAX_APNEA_DURATION_SECONDS; i--) {
+            double progress = (t - apneaStarts[i]) / apneaDurations[i];
+            if (progress < 1.0) {
+                if (progress < APNEA_RECOVERY_FACTOR) {
+                    return progress * MAX_APNEA_EFFECT; // 最大下降25%
+                }
+                return MAX_APNEA_EFFECT - (progress - APNEA_RECOVERY_FACTOR) * MAX_APNEA_EFFECT * 2; // 快速恢复
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 生成[from, to)秒的数据记录(每秒一个)，返回可以直接写入文件的字节(小端序16位数字值)
+     */
+    private ByteBuffer generateChunk(int from, int to, int recordSize, SplittableRandom random) {
+        ByteBuffer buf = ByteBuffer.allocate((to - from) * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        // 一秒内的delta波和REM波形对所有秒都相同，预先计算
+        double[] deltaWave = new double[eegSampleRate];
+        double[] remWave = new double[eegSampleRate];
+        for (int i = 0; i < eegSampleRate; i++) {
+            deltaWave[i] = LOW_FREQ_DELTA_WAVE_AMPLITUDE * Math.sin(i * 2 * Math.PI / eegSampleRate * 1); // 1Hz
+            remWave[i] = LOW_FREQ_REM_WAVE_AMPLITUDE * Math.sin(i * 2 * Math.PI / eegSampleRate * 5); // 5Hz
+        }
+
+        for (int second = from; second < to; second++) {
+            int sleepStage = sleepStages[second / SECONDS_IN_MINUTE];
+
+            // 基于睡眠阶段的EEG基础值
+            double eegBase = 0;
+            switch (sleepStage) {
+                case AWAKE_STAGE: // 清醒
+                    eegBase = 150 + random.nextInt(30);
+                    break;
+                case LIGHT_SLEEP_STAGE: // 浅睡眠
+                    eegBase = 120 + random.nextInt(20);
+                    break;
+                case DEEP_SLEEP_STAGE: // 深睡眠
+                    eegBase = 80 + random.nextInt(40);
+                    break;
+                case REM_SLEEP_STAGE: // REM
+                    eegBase = 140 + random.nextInt(40);
+                    break;
+            }
+            double[] wave = sleepStage == DEEP_SLEEP_STAGE ? deltaWave
+                    : sleepStage == REM_SLEEP_STAGE ? remWave : null;
+
+            // 信号顺序与文件中相同: EEG、SpO2、其余的脑电通道
+            for (int s = 0; s <= eegChannels; s++) {
+                if (s == SleepRecording.SPO2_CHANNEL) {
+                    // 基于睡眠阶段的血氧饱和度基础值
+                    double oxygenBase = (sleepStage == DEEP_SLEEP_STAGE || sleepStage == REM_SLEEP_STAGE) ?
+                            OXYGEN_BASE_DEEP_SLEEP : OXYGEN_BASE_AWAKE;
+                    for (int i = 0; i < spo2SampleRate; i++) {
+                        double oxygen = oxygenBase - apneaEffect(second + (double) i / spo2SampleRate)
+                                + random.nextGaussian() * NATURAL_OXYGEN_FLUCTUATION;
+                        buf.putShort((short) clamp(Math.round(oxygen), MIN_SPO2_VALUE, MAX_SPO2_VALUE));
+                    }
+                    continue;
+                }
+
+                for (int i = 0; i < eegSampleRate; i++) {
+                    // 模拟EEG信号，添加高频波动和睡眠阶段特征
+                    double signal = eegBase + random.nextGaussian() * HIGH_FREQ_NOISE_AMPLITUDE;
+                    if (wave != null) {
+                        signal += wave[i];
+                    }
+                    buf.putShort((short) clamp(Math.round(signal), MIN_EEG_VALUE, MAX_EEG_VALUE));
+                }
+            }
+        }
+
+        buf.flip();
+        return buf;
+    }
+
+    private static long clamp(long value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * 命令行用法: java SleepDataGenerator [-minutes n] [-eeg n] [-rate n] [-spo2rate n] [-seed n] [-threads n] <文件>
+     * 用于生成多天、多通道的负载测试文件
+     */
+    public static void main(String[] args) {
+        SleepDataGenerator generator = new SleepDataGenerator();
+        String filePath = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].startsWith("-") && i + 1 < args.length) {
+                    int value = Integer.parseInt(args[i + 1]);
+                    switch (args[i++]) {
+                        case "-minutes": generator.setDurationMinutes(value); break;
+                        case "-eeg": generator.setEegChannels(value); break;
+                        case "-rate": generator.setEegSampleRate(value); break;
+                        case "-spo2rate": generator.setSpo2SampleRate(value); break;
+                        case "-seed": generator.setSeed(value); break;
+                        case "-threads": generator.setThreads(value); break;
+                        default: throw new IllegalArgumentException("未知选项: " + args[i - 1]);
+                    }
+                } else {
+                    filePath = args[i];
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+
+        if (filePath == null) {
+            System.out.println("用法: java SleepDataGenerator [-minutes n] [-eeg n] [-rate n] [-spo2rate n] [-seed n] [-threads n] <文件>");
+            System.exit(1);
+        }
+
+        try {
+            long start = System.nanoTime();
+            generator.generate(filePath);
+            System.out.printf("已生成 %s，用时 %.2f 秒%n", filePath, (System.nanoTime() - start) / 1e9);
+        } catch (IOException | EDFException e) {
+            System.out.println("生成失败: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
\ No newline at end of file
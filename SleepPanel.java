@@ -1,25 +1,25 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.List;
 
 /**
  * 睡眠监测面板，用于显示和交互脑电信号数据
  */
 class SleepPanel extends JPanel {
     // 数据和视图状态
-    protected List<DataPoint> data;
+    protected SleepRecording recording;
     protected double zoomFactor = 1.0;
     protected int offsetX = 0;
     private Point dragStart;
+    private double maxEegSignal = 1;
+    private int scannedSamples = 0; // 已计算过最大值的样本数(加载过程中样本逐块增加)
 
     // 缩放阈值常量
-    private static final double MINUTES_SCALE_THRESHOLD = 4.0; // 分钟刻度显示阈值
-    private static final double FINE_MINUTES_SCALE_THRESHOLD = 8.0; // 精细分钟刻度显示阈值
+    private static final double MINUTES_SCALE_THRESHOLD = 2.0; // 可见时长(小时)不超过此值时显示分钟刻度
+    private static final double FINE_MINUTES_SCALE_THRESHOLD = 1.0; // 可见时长(小时)不超过此值时显示精细分钟刻度
 
     // 界面常量
     private static final int GRID_HORIZONTAL_DIVISIONS = 5; // 水平网格线数量
-    private static final int TOTAL_DISPLAY_HOURS = 8; // 总显示小时数
     private static final int OXYGEN_THRESHOLD = 90; // 低血氧阈值
     private static final int SIGNAL_LINE_WIDTH = 1; // 正常信号线条宽度
     private static final int LOW_OXYGEN_LINE_WIDTH = 2; // 低血氧信号线条宽度
@@ -40,8 +40,10 @@ class SleepPanel extends JPanel {
     private static final int MINUTE_INTERVAL_COARSE = 15; // 中等缩放时间隔
     private static final int MINUTE_INTERVAL_FINE = 5; // 高缩放时间隔
 
-    public void setData(List<DataPoint> data) {
-        this.data = data;
+    public void setData(SleepRecording recording) {
+        this.recording = recording;
+        this.maxEegSignal = 1;
+        this.scannedSamples = 0;
         this.zoomFactor = 1.0;
         this.offsetX = 0;
         repaint();
@@ -60,7 +62,8 @@ class SleepPanel extends JPanel {
                 zoomFactor /= 1.1;
             }
             // 限制缩放范围
-            zoomFactor = Math.max(1, Math.min(zoomFactor, data != null ? data.size() : 100));
+            zoomFactor = Math.max(1, Math.min(zoomFactor, recording != null && !recording.isEmpty()
+                    ? recording.getChannel(SleepRecording.EEG_CHANNEL).size() : 100));
 
             // 保持鼠标位置不变的缩放逻辑
             double mouseX = e.getX();
@@ -97,7 +100,7 @@ class SleepPanel extends JPanel {
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        if (data == null || data.isEmpty()) {
+        if (recording == null || recording.isEmpty()) {
             drawEmptyState(g);
             return;
         }
@@ -109,19 +112,32 @@ class SleepPanel extends JPanel {
 
         int width = getWidth();
         int height = getHeight();
-        int maxEegSignal = data.stream().mapToInt(dp -> dp.eegSignal).max().orElse(1);
-        int dataSize = data.size();
+        updateMaxEegSignal();
 
         // 限制平移范围
         offsetX = Math.min(0, Math.max(offsetX, width - (int)(width * zoomFactor)));
 
         // 绘制背景和内容
         drawGrid(g2d, width, height);
-        drawEegSignal(g2d, width, height, maxEegSignal, dataSize);
+        drawEegSignal(g2d, width, height);
         drawTimeScale(g2d, width, height);
         drawTitleAndLegend(g2d, width);
     }
 
+    /**
+     * 更新脑电信号最大值，只遍历上次之后新加载的样本，不在每次重绘时遍历所有样本
+     */
+    private void updateMaxEegSignal() {
+        SleepRecording.Channel eeg = recording.getChannel(SleepRecording.EEG_CHANNEL);
+        int size = eeg.size();
+        if (size > scannedSamples) {
+            double[] range = new double[2];
+            eeg.minMax(scannedSamples, size, range);
+            maxEegSignal = Math.max(maxEegSignal, range[1]);
+            scannedSamples = size;
+        }
+    }
+
     /**
      * 绘制空状态提示
      */
@@ -134,6 +150,20 @@ class SleepPanel extends JPanel {
         g.drawString(message, x, y);
     }
 
+    /**
+     * 每秒对应的像素数，时间轴按记录的实际时长缩放
+     */
+    private double pixelsPerSecond(int width) {
+        return width * zoomFactor / recording.getDuration();
+    }
+
+    /**
+     * 当前可见的时长(小时)，用于选择网格和刻度的精度
+     */
+    private double visibleHours() {
+        return recording.getDuration() / 3600 / zoomFactor;
+    }
+
     /**
      * 绘制网格背景
      */
@@ -147,9 +177,9 @@ class SleepPanel extends JPanel {
         }
 
         // 根据缩放级别绘制不同精度的垂直网格线
-        if (zoomFactor < MINUTES_SCALE_THRESHOLD) {
+        if (visibleHours() > MINUTES_SCALE_THRESHOLD) {
             drawHourGrid(g2d, width, height);
-        } else if (zoomFactor < FINE_MINUTES_SCALE_THRESHOLD) {
+        } else if (visibleHours() > FINE_MINUTES_SCALE_THRESHOLD) {
             drawMinuteGrid(g2d, width, height);
         } else {
             drawFineMinuteGrid(g2d, width, height);
@@ -160,10 +190,11 @@ class SleepPanel extends JPanel {
      * 绘制小时网格线
      */
     private void drawHourGrid(Graphics2D g2d, int width, int height) {
-        int pixelsPerHour = (int)(width * zoomFactor / TOTAL_DISPLAY_HOURS);
+        double pixelsPerHour = pixelsPerSecond(width) * 3600;
+        int totalHours = (int) (recording.getDuration() / 3600);
 
-        int startHour = Math.max(0, (-offsetX) / pixelsPerHour);
-        int endHour = Math.min(TOTAL_DISPLAY_HOURS, startHour + width / pixelsPerHour + 2);
+        int startHour = Math.max(0, (int) (-offsetX / pixelsPerHour));
+        int endHour = Math.min(totalHours, startHour + (int) (width / pixelsPerHour) + 2);
 
         for (int hour = startHour; hour <= endHour; hour++) {
             int x = (int)(hour * pixelsPerHour + offsetX);
@@ -177,11 +208,11 @@ class SleepPanel extends JPanel {
      * 绘制15分钟间隔网格线
      */
     private void drawMinuteGrid(Graphics2D g2d, int width, int height) {
-        int totalMinutes = TOTAL_DISPLAY_HOURS * 60;
-        int pixelsPerMinute = (int)(width * zoomFactor / totalMinutes);
+        double pixelsPerMinute = pixelsPerSecond(width) * 60;
+        int totalMinutes = (int) (recording.getDuration() / 60);
 
-        int startMinute = Math.max(0, (-offsetX) / pixelsPerMinute / MINUTE_INTERVAL_COARSE * MINUTE_INTERVAL_COARSE);
-        int endMinute = Math.min(totalMinutes, startMinute + width / pixelsPerMinute + 10);
+        int startMinute = Math.max(0, (int) (-offsetX / pixelsPerMinute) / MINUTE_INTERVAL_COARSE * MINUTE_INTERVAL_COARSE);
+        int endMinute = Math.min(totalMinutes, startMinute + (int) (width / pixelsPerMinute) + 10);
 
         for (int minute = startMinute; minute <= endMinute; minute += MINUTE_INTERVAL_COARSE) {
             int x = (int)(minute * pixelsPerMinute + offsetX);
@@ -195,11 +226,11 @@ class SleepPanel extends JPanel {
      * 绘制精细分钟网格线（5分钟间隔）
      */
     private void drawFineMinuteGrid(Graphics2D g2d, int width, int height) {
-        int totalMinutes = TOTAL_DISPLAY_HOURS * 60;
-        int pixelsPerMinute = (int)(width * zoomFactor / totalMinutes);
+        double pixelsPerMinute = pixelsPerSecond(width) * 60;
+        int totalMinutes = (int) (recording.getDuration() / 60);
 
-        int startMinute = Math.max(0, (-offsetX) / pixelsPerMinute / MINUTE_INTERVAL_FINE * MINUTE_INTERVAL_FINE);
-        int endMinute = Math.min(totalMinutes, startMinute + width / pixelsPerMinute + 10);
+        int startMinute = Math.max(0, (int) (-offsetX / pixelsPerMinute) / MINUTE_INTERVAL_FINE * MINUTE_INTERVAL_FINE);
+        int endMinute = Math.min(totalMinutes, startMinute + (int) (width / pixelsPerMinute) + 10);
 
         for (int minute = startMinute; minute <= endMinute; minute += MINUTE_INTERVAL_FINE) {
             int x = (int)(minute * pixelsPerMinute + offsetX);
@@ -211,26 +242,76 @@ class SleepPanel extends JPanel {
 
     /**
      * 绘制脑电信号曲线
+     * 每个像素列只绘制该列时间范围内样本的最小值到最大值，绘制量与样本数无关；
+     * 放大到每个像素不足两个样本时逐点连线
      */
-    private void drawEegSignal(Graphics2D g2d, int width, int height, int maxEegSignal, int dataSize) {
+    private void drawEegSignal(Graphics2D g2d, int width, int height) {
         Stroke normalStroke = new BasicStroke(SIGNAL_LINE_WIDTH);
         Stroke lowOxygenStroke = new BasicStroke(LOW_OXYGEN_LINE_WIDTH);
+        SleepRecording.Channel eeg = recording.getChannel(SleepRecording.EEG_CHANNEL);
+        SleepRecording.Channel spo2 = recording.getChannelCount() > SleepRecording.SPO2_CHANNEL
+                ? recording.getChannel(SleepRecording.SPO2_CHANNEL) : null;
+
+        double pixelsPerSecond = width * zoomFactor / recording.getDuration();
+        double[] range = new double[2];
+        double[] oxygenRange = new double[2];
+        Boolean lastLowOxygen = null;
+
+        if (eeg.getSampleRate() / pixelsPerSecond < 2) {
+            // 逐点连线，只处理可见范围内的样本
+            int first = eeg.indexAt(-offsetX / pixelsPerSecond);
+            int last = Math.min(eeg.size() - 1, eeg.indexAt((width - offsetX) / pixelsPerSecond) + 1);
+            for (int i = first + 1; i <= last; i++) {
+                int x1 = (int) (eeg.timeAt(i - 1) * pixelsPerSecond + offsetX);
+                int y1 = (int) (height - eeg.get(i - 1) * height / maxEegSignal);
+                int x2 = (int) (eeg.timeAt(i) * pixelsPerSecond + offsetX);
+                int y2 = (int) (height - eeg.get(i) * height / maxEegSignal);
+
+                boolean isLowOxygen = spo2 != null
+                        && (spo2.get(spo2.indexAt(eeg.timeAt(i - 1))) < OXYGEN_THRESHOLD
+                        || spo2.get(spo2.indexAt(eeg.timeAt(i))) < OXYGEN_THRESHOLD);
+                if (lastLowOxygen == null || lastLowOxygen != isLowOxygen) {
+                    g2d.setColor(isLowOxygen ? LOW_OXYGEN_COLOR : SIGNAL_COLOR);
+                    g2d.setStroke(isLowOxygen ? lowOxygenStroke : normalStroke);
+                    lastLowOxygen = isLowOxygen;
+                }
+                g2d.drawLine(x1, y1, x2, y2);
+            }
+            return;
+        }
 
-        for (int i = 1; i < dataSize; i++) {
-            if (i >= data.size()) break;
-
-            int x1 = (int)((i - 1) * width / (double)dataSize * zoomFactor + offsetX);
-            int y1 = height - (data.get(i - 1).eegSignal * height / maxEegSignal);
-            int x2 = (int)(i * width / (double)dataSize * zoomFactor + offsetX);
-            int y2 = height - (data.get(i).eegSignal * height / maxEegSignal);
-
-            if ((x1 >= 0 || x2 >= 0) && (x1 <= width || x2 <= width)) {
-                boolean isLowOxygen = data.get(i-1).oxygenSaturation < OXYGEN_THRESHOLD || data.get(i).oxygenSaturation < OXYGEN_THRESHOLD;
+        int lastY = -1;
+        for (int x = 0; x < width; x++) {
+            double t0 = (x - offsetX) / pixelsPerSecond;
+            double t1 = (x + 1 - offsetX) / pixelsPerSecond;
+            if (t1 <= eeg.getStartTime() || t0 >= eeg.getEndTime()) {
+                continue; // 记录范围之外或尚未加载
+            }
 
+            int from = eeg.indexAt(t0);
+            int to = Math.max(from + 1, eeg.indexAt(t1));
+            eeg.minMax(from, to, range);
+            int yMin = (int) (height - range[0] * height / maxEegSignal);
+            int yMax = (int) (height - range[1] * height / maxEegSignal);
+
+            boolean isLowOxygen = false;
+            if (spo2 != null) {
+                int oxygenFrom = spo2.indexAt(t0);
+                spo2.minMax(oxygenFrom, Math.max(oxygenFrom + 1, spo2.indexAt(t1)), oxygenRange);
+                isLowOxygen = oxygenRange[0] < OXYGEN_THRESHOLD;
+            }
+            if (lastLowOxygen == null || lastLowOxygen != isLowOxygen) {
                 g2d.setColor(isLowOxygen ? LOW_OXYGEN_COLOR : SIGNAL_COLOR);
                 g2d.setStroke(isLowOxygen ? lowOxygenStroke : normalStroke);
-                g2d.drawLine(x1, y1, x2, y2);
+                lastLowOxygen = isLowOxygen;
+            }
+
+            // 与上一列相连，再画出本列的最小值到最大值
+            if (lastY >= 0) {
+                g2d.drawLine(x - 1, lastY, x, (int) (height - eeg.get(from) * height / maxEegSignal));
             }
+            g2d.drawLine(x, yMax, x, yMin);
+            lastY = (int) (height - eeg.get(to - 1) * height / maxEegSignal);
         }
     }
 
@@ -241,9 +322,9 @@ class SleepPanel extends JPanel {
         g2d.setColor(TEXT_COLOR);
         g2d.setFont(LEGEND_FONT);
 
-        if (zoomFactor < MINUTES_SCALE_THRESHOLD) {
+        if (visibleHours() > MINUTES_SCALE_THRESHOLD) {
             drawHourScale(g2d, width, height);
-        } else if (zoomFactor < FINE_MINUTES_SCALE_THRESHOLD) {
+        } else if (visibleHours() > FINE_MINUTES_SCALE_THRESHOLD) {
             drawMinuteScale(g2d, width, height);
         } else {
             drawFineMinuteScale(g2d, width, height);
@@ -254,10 +335,11 @@ class SleepPanel extends JPanel {
      * 绘制小时刻度
      */
     private void drawHourScale(Graphics2D g2d, int width, int height) {
-        int pixelsPerHour = (int)(width * zoomFactor / TOTAL_DISPLAY_HOURS);
+        double pixelsPerHour = pixelsPerSecond(width) * 3600;
+        int totalHours = (int) (recording.getDuration() / 3600);
 
-        int startHour = Math.max(0, (-offsetX) / pixelsPerHour);
-        int endHour = Math.min(TOTAL_DISPLAY_HOURS, startHour + width / pixelsPerHour + 2);
+        int startHour = Math.max(0, (int) (-offsetX / pixelsPerHour));
+        int endHour = Math.min(totalHours, startHour + (int) (width / pixelsPerHour) + 2);
 
         for (int hour = startHour; hour <= endHour; hour++) {
             int x = (int)(hour * pixelsPerHour + offsetX);
@@ -272,11 +354,11 @@ class SleepPanel extends JPanel {
      * 绘制15分钟间隔刻度
      */
     private void drawMinuteScale(Graphics2D g2d, int width, int height) {
-        int totalMinutes = TOTAL_DISPLAY_HOURS * 60;
-        int pixelsPerMinute = (int)(width * zoomFactor / totalMinutes);
+        double pixelsPerMinute = pixelsPerSecond(width) * 60;
+        int totalMinutes = (int) (recording.getDuration() / 60);
 
-        int startMinute = Math.max(0, (-offsetX) / pixelsPerMinute / MINUTE_INTERVAL_COARSE * MINUTE_INTERVAL_COARSE);
-        int endMinute = Math.min(totalMinutes, startMinute + width / pixelsPerMinute + 30);
+        int startMinute = Math.max(0, (int) (-offsetX / pixelsPerMinute) / MINUTE_INTERVAL_COARSE * MINUTE_INTERVAL_COARSE);
+        int endMinute = Math.min(totalMinutes, startMinute + (int) (width / pixelsPerMinute) + 30);
 
         for (int minute = startMinute; minute <= endMinute; minute += MINUTE_INTERVAL_COARSE) {
             int x = (int)(minute * pixelsPerMinute + offsetX);
@@ -293,11 +375,11 @@ class SleepPanel extends JPanel {
      * 绘制精细分钟刻度（5分钟间隔）
      */
     private void drawFineMinuteScale(Graphics2D g2d, int width, int height) {
-        int totalMinutes = TOTAL_DISPLAY_HOURS * 60;
-        int pixelsPerMinute = (int)(width * zoomFactor / totalMinutes);
+        double pixelsPerMinute = pixelsPerSecond(width) * 60;
+        int totalMinutes = (int) (recording.getDuration() / 60);
 
-        int startMinute = Math.max(0, (-offsetX) / pixelsPerMinute / MINUTE_INTERVAL_FINE * MINUTE_INTERVAL_FINE);
-        int endMinute = Math.min(totalMinutes, startMinute + width / pixelsPerMinute + 10);
+        int startMinute = Math.max(0, (int) (-offsetX / pixelsPerMinute) / MINUTE_INTERVAL_FINE * MINUTE_INTERVAL_FINE);
+        int endMinute = Math.min(totalMinutes, startMinute + (int) (width / pixelsPerMinute) + 10);
 
         for (int minute = startMinute; minute <= endMinute; minute += MINUTE_INTERVAL_FINE) {
             int x = (int)(minute * pixelsPerMinute + offsetX);
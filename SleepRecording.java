@@ -0,0 +1,239 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 睡眠记录的列式数据容器
+ * 每个通道把全部样本保存在一个基本类型数组中(EDF为short[]数字值，BDF为float[]物理值)，
+ * 并有各自的采样率和时间基准，不再为每个时间点创建一个DataPoint对象
+ */
+class SleepRecording {
+    // EDFProcessor读取的通道顺序
+    static final int EEG_CHANNEL = 0;                 // 脑电通道
+    static final int SPO2_CHANNEL = 1;                // 血氧饱和度通道
+
+    private final List<Channel> channels = new ArrayList<>();
+    private final double duration;                    // 记录总时长(秒)
+
+    /**
+     * 单个通道的样本和时间基准
+     */
+    static class Channel {
+        private final String label;
+        private final String unit;
+        private final double sampleRate;              // 采样率(Hz)
+        private final double startTime;               // 第一个样本相对记录开始的时间(秒)
+        private final short[] digital;                // 16位数字值，物理值 = scale * (digital + offset)
+        private final float[] physical;               // 超过16位的信号直接保存物理值(追加时用scale和offset换算)
+        private final double scale;
+        private final double offset;
+        private volatile int size;                    // 已保存的样本数(加载线程写入，界面线程读取)
+
+        private Channel(String label, String unit, double sampleRate, double startTime,
+                        short[] digital, float[] physical, double scale, double offset) {
+            this.label = label;
+            this.unit = unit;
+            this.sampleRate = sampleRate;
+            this.startTime = startTime;
+            this.digital = digital;
+            this.physical = physical;
+            this.scale = scale;
+            this.offset = offset;
+        }
+
+        /**
+         * 创建保存16位数字值的通道，capacity为样本总数
+         */
+        static Channel ofDigital(String label, String unit, double sampleRate, double startTime,
+                                 int capacity, double scale, double offset) {
+            return new Channel(label, unit, sampleRate, startTime, new short[capacity], null, scale, offset);
+        }
+
+        /**
+         * 创建直接保存物理值的通道，capacity为样本总数，scale和offset用于换算追加的数字值
+         */
+        static Channel ofPhysical(String label, String unit, double sampleRate, double startTime,
+                                  int capacity, double scale, double offset) {
+            return new Channel(label, unit, sampleRate, startTime, null, new float[capacity], scale, offset);
+        }
+
+        /**
+         * 追加数字值，返回追加的样本数(超出容量的部分被忽略)
+         */
+        int appendDigital(int[] buf, int n) {
+            int start = size;
+            n = Math.min(n, capacity() - start);
+            for (int i = 0; i < n; i++) {
+                if (digital != null) {
+                    digital[start + i] = (short) buf[i];
+                } else {
+                    physical[start + i] = (float) (scale * (buf[i] + offset));
+                }
+            }
+            size = start + n;
+            return n;
+        }
+
+        /**
+         * 追加EDF/BDF文件中的n个原始样本(小端序，sampleSize为2或3字节)，从buf的pos处开始
+         */
+        void appendSamples(byte[] buf, int pos, int n, int sampleSize) {
+            int start = size;
+            n = Math.min(n, capacity() - start);
+            if (digital != null && sampleSize == 2) {
+                for (int i = 0; i < n; i++, pos += 2) {
+                    digital[start + i] = (short) ((buf[pos] & 0xff) | (buf[pos + 1] << 8));
+                }
+            } else {
+                for (int i = 0; i < n; i++, pos += sampleSize) {
+                    int v = sampleSize == 2
+                            ? (buf[pos] & 0xff) | (buf[pos + 1] << 8)
+                            : (buf[pos] & 0xff) | ((buf[pos + 1] & 0xff) << 8) | (buf[pos + 2] << 16);
+                    if (digital != null) {
+                        digital[start + i] = (short) v;
+                    } else {
+                        physical[start + i] = (float) (scale * (v + offset));
+                    }
+                }
+            }
+            size = start + n;
+        }
+
+        /**
+         * 追加物理值，返回追加的样本数(超出容量的部分被忽略)
+         */
+        int appendPhysical(double[] buf, int n) {
+            int start = size;
+            n = Math.min(n, capacity() - start);
+            for (int i = 0; i < n; i++) {
+                if (digital != null) {
+                    // 超出16位范围的值被限制在范围内，而不是溢出成相反的符号
+                    long v = Math.round(buf[i] / scale - offset);
+                    digital[start + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+                } else {
+                    physical[start + i] = (float) buf[i];
+                }
+            }
+            size = start + n;
+            return n;
+        }
+
+        private int capacity() {
+            return digital != null ? digital.length : physical.length;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        public double getStartTime() {
+            return startTime;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 第i个样本的物理值
+         */
+        public double get(int i) {
+            return digital != null ? scale * (digital[i] + offset) : physical[i];
+        }
+
+        /**
+         * 第i个样本相对记录开始的时间(秒)
+         */
+        public double timeAt(int i) {
+            return startTime + i / sampleRate;
+        }
+
+        /**
+         * 已保存样本的结束时间(秒)，加载过程中随样本增加而增长
+         */
+        public double getEndTime() {
+            return timeAt(size);
+        }
+
+        /**
+         * 给定时间(秒)处或之前的最后一个样本的序号，限制在0到size-1之间
+         */
+        public int indexAt(double seconds) {
+            double index = Math.floor((seconds - startTime) * sampleRate);
+            return (int) Math.max(0, Math.min(size - 1, index));
+        }
+
+        /**
+         * 样本区间[from, to)的最小值和最大值，结果写入result[0]和result[1]
+         */
+        public void minMax(int from, int to, double[] result) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            if (digital != null) {
+                int dmin = Integer.MAX_VALUE;
+                int dmax = Integer.MIN_VALUE;
+                for (int i = from; i < to; i++) {
+                    int v = digital[i];
+                    if (v < dmin) dmin = v;
+                    if (v > dmax) dmax = v;
+                }
+                if (from < to) {
+                    // scale可能为负数
+                    min = Math.min(scale * (dmin + offset), scale * (dmax + offset));
+                    max = Math.max(scale * (dmin + offset), scale * (dmax + offset));
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    float v = physical[i];
+                    if (v < min) min = v;
+                    if (v > max) max = v;
+                }
+            }
+            result[0] = min;
+            result[1] = max;
+        }
+    }
+
+    SleepRecording(double duration) {
+        this.duration = duration;
+    }
+
+    void addChannel(Channel channel) {
+        channels.add(channel);
+    }
+
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    public Channel getChannel(int index) {
+        return channels.get(index);
+    }
+
+    /**
+     * 按标签查找通道(忽略大小写和首尾空格)，找不到时返回null
+     */
+    public Channel getChannel(String label) {
+        for (Channel channel : channels) {
+            if (channel.getLabel().trim().equalsIgnoreCase(label.trim())) {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public boolean isEmpty() {
+        return channels.isEmpty() || channels.get(0).size() == 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,310 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * 脑电频带功率计算
+ * 把通道分成30秒的分期(epoch)，每个分期用Welch法(4秒Hann窗，50%重叠)估计功率谱，
+ * 再求delta、theta、alpha、sigma和beta各频带的功率(uV^2)
+ * 相同长度的FFT共用一个预先计算的变换表，临时数组每个线程一份，分期在ForkJoinPool中并行计算
+ */
+class SpectralFeatures {
+    static final double EPOCH_SECONDS = 30.0;                           // 分期长度(秒)
+    static final double SEGMENT_SECONDS = 4.0;                          // Welch法每段的长度(秒)
+
+    // 频带序号
+    static final int DELTA = 0;
+    static final int THETA = 1;
+    static final int ALPHA = 2;
+    static final int SIGMA = 3;
+    static final int BETA = 4;
+    static final int NUM_BANDS = 5;
+
+    static final String[] BAND_NAMES = {"delta", "theta", "alpha", "sigma", "beta"};
+    static final double[][] BAND_LIMITS = {                             // 各频带的频率范围[下限, 上限)(Hz)
+            {0.5, 4.0}, {4.0, 8.0}, {8.0, 12.0}, {12.0, 16.0}, {16.0, 30.0}
+    };
+
+    private static final int EPOCHS_PER_TASK = 32;                      // 每个并行任务计算的分期数
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 计算用的线程数，默认为处理器数
+     */
+    public SpectralFeatures setThreads(int threads) {
+        if (threads < 1 || threads > 256) {
+            throw new IllegalArgumentException("线程数必须在1到256之间: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * 通道中完整分期的个数，不足30秒的最后一段不计算
+     */
+    static int getEpochCount(SleepRecording.Channel channel) {
+        return (int) (channel.size() / Math.round(EPOCH_SECONDS * channel.getSampleRate()));
+    }
+
+    /**
+     * 计算一个通道所有分期的频带功率，结果的第epoch * NUM_BANDS + band个元素是该分期该频带的功率
+     */
+    public double[] compute(SleepRecording.Channel channel) {
+        return compute(new SleepRecording.Channel[]{channel})[0];
+    }
+
+    /**
+     * 计算多个通道所有分期的频带功率，所有通道的分期一起分配给线程
+     * 返回的result[c]与compute(channels[c])的结果相同
+     */
+    public double[][] compute(SleepRecording.Channel[] channels) {
+        double[][] result = new double[channels.length][];
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int c = 0; c < channels.length; c++) {
+            SleepRecording.Channel channel = channels[c];
+            int epochs = getEpochCount(channel);
+            double[] power = new double[epochs * NUM_BANDS];
+            result[c] = power;
+            if (epochs == 0) {
+                continue;
+            }
+
+            // 相同采样率的通道共用一个计划
+            EpochPlan plan = EpochPlan.get(channel.getSampleRate());
+            for (int first = 0; first < epochs; first += EPOCHS_PER_TASK) {
+                int from = first;
+                int to = Math.min(epochs, first + EPOCHS_PER_TASK);
+                tasks.add(() -> {
+                    for (int e = from; e < to; e++) {
+                        plan.bandPower(channel, e, power, e * NUM_BANDS);
+                    }
+                    return null;
+                });
+            }
+        }
+
+        if (tasks.size() == 1 || threads == 1) {
+            try {
+                for (Callable<Void> task : tasks) {
+                    task.call();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return result;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("计算频带功率时被中断", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("计算频带功率失败", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /**
+     * 一个采样率下计算分期功率所需的全部常量：Hann窗、FFT变换表和各频带的频率点范围
+     * 计划本身不可变，可以被多个线程同时使用；每个线程的临时数组保存在ThreadLocal中
+     */
+    private static class EpochPlan {
+        private static final List<EpochPlan> plans = new ArrayList<>();
+
+        final double sampleRate;
+        final int epochSamples;                       // 每个分期的样本数
+        final int segmentSamples;                     // 每段的样本数
+        final int step;                               // 相邻两段的间隔(50%重叠)
+        final double[] window;                        // Hann窗
+        final double psdScale;                        // 把|X[k]|^2换算为功率谱密度的系数
+        final double binWidth;                        // 频率分辨率(Hz)
+        final int[] bandFirst = new int[NUM_BANDS];   // 每个频带的第一个频率点
+        final int[] bandEnd = new int[NUM_BANDS];     // 每个频带最后一个频率点之后的序号
+        final RealFFT fft;
+        final ThreadLocal<double[][]> scratch;
+
+        static synchronized EpochPlan get(double sampleRate) {
+            for (EpochPlan plan : plans) {
+                if (plan.sampleRate == sampleRate) {
+                    return plan;
+                }
+            }
+            EpochPlan plan = new EpochPlan(sampleRate);
+            plans.add(plan);
+            return plan;
+        }
+
+        private EpochPlan(double sampleRate) {
+            this.sampleRate = sampleRate;
+            epochSamples = (int) Math.round(EPOCH_SECONDS * sampleRate);
+            segmentSamples = Math.max(2, Math.min(epochSamples, (int) Math.round(SEGMENT_SECONDS * sampleRate)));
+            step = Math.max(1, segmentSamples / 2);
+
+            int size = 2;
+            while (size < segmentSamples) {
+                size *= 2;
+            }
+            fft = new RealFFT(size);
+
+            window = new double[segmentSamples];
+            double sumSquares = 0;
+            for (int i = 0; i < segmentSamples; i++) {
+                window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / segmentSamples);
+                sumSquares += window[i] * window[i];
+            }
+            psdScale = 1.0 / (sampleRate * sumSquares);
+            binWidth = sampleRate / size;
+
+            for (int b = 0; b < NUM_BANDS; b++) {
+                bandFirst[b] = Math.min(size / 2 + 1, (int) Math.ceil(BAND_LIMITS[b][0] / binWidth));
+                bandEnd[b] = Math.min(size / 2 + 1, (int) Math.ceil(BAND_LIMITS[b][1] / binWidth));
+            }
+
+            // [0]: 加窗的一段，[1]: 平均功率谱
+            scratch = ThreadLocal.withInitial(() -> new double[][]{new double[fft.size()], new double[fft.size() / 2 + 1]});
+        }
+
+        /**
+         * 计算第epoch个分期的各频带功率，写入result[pos]到result[pos + NUM_BANDS - 1]
+         */
+        void bandPower(SleepRecording.Channel channel, int epoch, double[] result, int pos) {
+            double[][] buffers = scratch.get();
+            double[] segment = buffers[0];
+            double[] psd = buffers[1];
+            int start = epoch * epochSamples;
+            int segments = 0;
+
+            Arrays.fill(psd, 0);
+            for (int s = start; s + segmentSamples <= start + epochSamples; s += step) {
+                // 去掉每段的平均值，再加窗，超出段长的部分补零
+                double mean = 0;
+                for (int i = 0; i < segmentSamples; i++) {
+                    segment[i] = channel.get(s + i);
+                    mean += segment[i];
+                }
+                mean /= segmentSamples;
+                for (int i = 0; i < segmentSamples; i++) {
+                    segment[i] = (segment[i] - mean) * window[i];
+                }
+                Arrays.fill(segment, segmentSamples, segment.length, 0);
+
+                fft.addPowerSpectrum(segment, psd);
+                segments++;
+            }
+
+            for (int b = 0; b < NUM_BANDS; b++) {
+                double sum = 0;
+                for (int k = bandFirst[b]; k < bandEnd[b]; k++) {
+                    // 单边谱: 除直流和奈奎斯特频率外乘2
+                    sum += (k == 0 || k == psd.length - 1) ? psd[k] : 2 * psd[k];
+                }
+                result[pos + b] = sum * psdScale * binWidth / segments;
+            }
+        }
+    }
+
+    /**
+     * 长度为2的幂的实数FFT：把n个实数样本当作n/2个复数做复数FFT，再分离出实数序列的频谱
+     * 位反转表和旋转因子在构造时计算一次
+     */
+    static class RealFFT {
+        private final int n;
+        private final int half;                       // 复数FFT的长度
+        private final int[] bitReverse;
+        private final double[] cos;                   // 长度为n的旋转因子，cos[k] = cos(2*pi*k/n)
+        private final double[] sin;
+
+        RealFFT(int n) {
+            if (n < 2 || Integer.bitCount(n) != 1) {
+                throw new IllegalArgumentException("FFT长度必须是2的幂: " + n);
+            }
+            this.n = n;
+            this.half = n / 2;
+
+            bitReverse = new int[half];
+            int bits = Integer.numberOfTrailingZeros(half);
+            for (int i = 0; i < half; i++) {
+                bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+
+            cos = new double[half];
+            sin = new double[half];
+            for (int k = 0; k < half; k++) {
+                cos[k] = Math.cos(2 * Math.PI * k / n);
+                sin[k] = Math.sin(2 * Math.PI * k / n);
+            }
+        }
+
+        int size() {
+            return n;
+        }
+
+        /**
+         * 计算x(长度n)的FFT，把|X[k]|^2(k = 0..n/2)加到power中；x被用作临时数组，内容会被改变
+         */
+        void addPowerSpectrum(double[] x, double[] power) {
+            // x[2m]和x[2m+1]组成第m个复数的实部和虚部，按位反转顺序排列
+            for (int i = 0; i < half; i++) {
+                int j = bitReverse[i];
+                if (j > i) {
+                    double re = x[2 * i];
+                    double im = x[2 * i + 1];
+                    x[2 * i] = x[2 * j];
+                    x[2 * i + 1] = x[2 * j + 1];
+                    x[2 * j] = re;
+                    x[2 * j + 1] = im;
+                }
+            }
+
+            // 长度为n/2的复数FFT(基2，原位)，长度为len的蝶形的旋转因子是exp(-2*pi*i*k/len) = 表中的第k*n/len个
+            for (int len = 2; len <= half; len *= 2) {
+                int stride = n / len;
+                for (int i = 0; i < half; i += len) {
+                    for (int k = 0; k < len / 2; k++) {
+                        double wr = cos[k * stride];
+                        double wi = -sin[k * stride];
+                        int a = 2 * (i + k);
+                        int b = 2 * (i + k + len / 2);
+                        double tr = x[b] * wr - x[b + 1] * wi;
+                        double ti = x[b] * wi + x[b + 1] * wr;
+                        x[b] = x[a] - tr;
+                        x[b + 1] = x[a + 1] - ti;
+                        x[a] += tr;
+                        x[a + 1] += ti;
+                    }
+                }
+            }
+
+            // 分离: X[k] = (Z[k] + conj(Z[m-k]))/2 - i/2 * exp(-2*pi*i*k/n) * (Z[k] - conj(Z[m-k]))
+            power[0] += (x[0] + x[1]) * (x[0] + x[1]);
+            power[half] += (x[0] - x[1]) * (x[0] - x[1]);
+            for (int k = 1; k < half; k++) {
+                double zr = x[2 * k];
+                double zi = x[2 * k + 1];
+                double cr = x[2 * (half - k)];
+                double ci = -x[2 * (half - k) + 1];
+                double evenRe = (zr + cr) / 2;            // 偶数样本的频谱
+                double evenIm = (zi + ci) / 2;
+                double oddRe = (zi - ci) / 2;             // 奇数样本的频谱: -i/2 * (Z[k] - conj(Z[m-k]))
+                double oddIm = -(zr - cr) / 2;
+                double wr = cos[k];
+                double wi = -sin[k];
+                double re = evenRe + oddRe * wr - oddIm * wi;
+                double im = evenIm + oddRe * wi + oddIm * wr;
+                power[k] += re * re + im * im;
+            }
+        }
+    }
+}
\ No newline at end of file